@@ -62,6 +62,36 @@ public interface Column<T> extends List<T>, Sizable {
 	/** Returns the actual type of data stored in the column. */
 	Class<T> getType();
 
+	/**
+	 * Gets a counter which changes whenever the data of this column changes,
+	 * allowing derived structures such as indexes to detect when they are out of
+	 * date.
+	 * <p>
+	 * Changes made directly to a backing array, bypassing the column's methods,
+	 * are not counted.
+	 * </p>
+	 *
+	 * @return The modification count, or -1 if this column does not keep track
+	 *         of its modifications.
+	 */
+	default long getModificationCount() {
+		return -1;
+	}
+
+	/**
+	 * Gets statistics of this column's values, including its zone map.
+	 * Implementations which count their modifications cache the statistics
+	 * until the next modification.
+	 */
+	default ColumnStatistics getStatistics() {
+		return ColumnStatistics.of(this);
+	}
+
+	/** Gets whether the value of the given row is missing ({@code null}). */
+	default boolean isNull(final int index) {
+		return get(index) == null;
+	}
+
 	// -- List and Collection methods --
 
 	@Override
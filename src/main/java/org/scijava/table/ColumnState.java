@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import java.util.function.IntPredicate;
+
+/**
+ * What a {@link PrimitiveColumn} tracks besides its values: the number of
+ * modifications made to them, their statistics and the rows whose values are
+ * missing.
+ */
+final class ColumnState {
+
+	/** Number of modifications made to the column's data. */
+	private long modifications;
+
+	/** Statistics of the column's data, computed on demand. */
+	private ColumnStatistics statistics;
+
+	/** Rows whose values are missing, or null if there have been none. */
+	private NullMask nulls;
+
+	long getModificationCount() {
+		return modifications;
+	}
+
+	/** Counts a modification of the column's data. */
+	void modified() {
+		modifications++;
+	}
+
+	ColumnStatistics getStatistics(final Column<?> column) {
+		return statistics = ColumnStatistics.update(column, statistics);
+	}
+
+	// -- Missing values --
+
+	boolean isNull(final int row) {
+		return nulls != null && nulls.get(row);
+	}
+
+	int getNullCount() {
+		return nulls == null ? 0 : nulls.count();
+	}
+
+	/** Counts a value set at the row, which is then no longer missing. */
+	void setValue(final int row) {
+		modifications++;
+		if (nulls != null) nulls.clear(row);
+	}
+
+	/** Marks the value at the row as missing. */
+	void setNull(final int row) {
+		if (nulls == null) nulls = new NullMask();
+		nulls.set(row);
+	}
+
+	/** Marks the rows {@code [from, to)} as holding values. */
+	void clearNulls(final int from, final int to) {
+		if (nulls != null) nulls.clear(from, to);
+	}
+
+	/** Marks all rows as holding values. */
+	void clearNulls() {
+		if (nulls != null) nulls.clear();
+	}
+
+	/** Gets the first missing row, or -1 if there is none. */
+	int firstNull() {
+		return nulls == null ? -1 : nulls.first();
+	}
+
+	/** Gets the last missing row, or -1 if there is none. */
+	int lastNull() {
+		return nulls == null ? -1 : nulls.last();
+	}
+
+	/**
+	 * Finds the first of the rows {@code [0, size)} matching the predicate,
+	 * skipping missing rows.
+	 */
+	int indexOf(final int size, final IntPredicate matches) {
+		for (int i = 0; i < size; i++) {
+			if (matches.test(i) && !isNull(i)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the last of the rows {@code [0, size)} matching the predicate,
+	 * skipping missing rows.
+	 */
+	int lastIndexOf(final int size, final IntPredicate matches) {
+		for (int i = size - 1; i >= 0; i--) {
+			if (matches.test(i) && !isNull(i)) return i;
+		}
+		return -1;
+	}
+
+	/** Whether any row has ever been marked as missing. */
+	boolean hasNulls() {
+		return nulls != null;
+	}
+
+	// -- Resizing --
+
+	/** Shifts the missing rows at or after {@code index} down by {@code count}. */
+	void insert(final int index, final int count) {
+		if (nulls != null) nulls.insert(index, count);
+	}
+
+	/**
+	 * Removes the missing rows {@code [index, index + count)} of a column of the
+	 * given size, before the column deletes their values.
+	 */
+	void delete(final int index, final int count, final int size) {
+		// NB: Shift the missing rows first, as resizing drops those at the end.
+		if (nulls != null && index >= 0 && count >= 0 && index + count <= size) {
+			nulls.delete(index, count);
+		}
+	}
+
+	/** Counts a resize of the column, forgetting missing rows beyond it. */
+	void setSize(final int size) {
+		modifications++;
+		if (nulls != null) nulls.truncate(size);
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Summary statistics of a {@link Column}, along with a <em>zone map</em>: the
+ * minimum and maximum of each consecutive block ("zone") of
+ * {@link #ZONE_SIZE} rows. Range filters can consult the zone map to skip
+ * whole zones which cannot contain a match.
+ * <p>
+ * Statistics are a snapshot of the column at the time they were computed. The
+ * built-in columns cache their statistics, recomputing them lazily after their
+ * {@link Column#getModificationCount() modification count} changes; see
+ * {@link Column#getStatistics()}.
+ * </p>
+ * <p>
+ * Minima and maxima are only available for numeric columns: primitive number
+ * columns, and object columns containing only numbers and {@code null}s. They
+ * ignore {@code null} and {@link Double#NaN} values.
+ * </p>
+ */
+public final class ColumnStatistics {
+
+	/** Number of rows per zone of the zone map. */
+	public static final int ZONE_SIZE = 4096;
+
+	private final long modificationCount;
+	private final int rowCount;
+	private final int nullCount;
+	private final int nanCount;
+	private final double min;
+	private final double max;
+
+	/** Minimum of each zone, or null if the column is not numeric. */
+	private final double[] zoneMins;
+
+	/** Maximum of each zone, or null if the column is not numeric. */
+	private final double[] zoneMaxs;
+
+	private ColumnStatistics(final Column<?> column) {
+		modificationCount = column.getModificationCount();
+		rowCount = column.size();
+		final int zones = (rowCount + ZONE_SIZE - 1) / ZONE_SIZE;
+		final double[] mins = new double[zones];
+		final double[] maxs = new double[zones];
+		final boolean primitive = Columns.isNumeric(column) && column
+			.getType() != Object.class;
+		final IntToDoubleFunction values = primitive ? Columns.doubleValues(column)
+			: null;
+		final boolean masked = Columns.hasNulls(column);
+		boolean numeric = primitive || Columns.isNumeric(column);
+		int nulls = 0, nans = 0;
+		double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+		for (int z = 0; z < zones; z++) {
+			double zoneLo = Double.POSITIVE_INFINITY;
+			double zoneHi = Double.NEGATIVE_INFINITY;
+			final int end = Math.min(rowCount, (z + 1) * ZONE_SIZE);
+			for (int r = z * ZONE_SIZE; r < end; r++) {
+				final double v;
+				if (primitive) {
+					if (masked && column.isNull(r)) {
+						nulls++;
+						continue;
+					}
+					v = values.applyAsDouble(r);
+				}
+				else {
+					final Object value = column.get(r);
+					if (value == null) {
+						nulls++;
+						continue;
+					}
+					if (!(value instanceof Number)) {
+						numeric = false;
+						continue;
+					}
+					v = ((Number) value).doubleValue();
+				}
+				if (v != v) {
+					nans++;
+					continue;
+				}
+				if (v < zoneLo) zoneLo = v;
+				if (v > zoneHi) zoneHi = v;
+			}
+			mins[z] = zoneLo;
+			maxs[z] = zoneHi;
+			if (zoneLo < lo) lo = zoneLo;
+			if (zoneHi > hi) hi = zoneHi;
+		}
+		nullCount = nulls;
+		nanCount = nans;
+		final boolean empty = lo > hi;
+		min = numeric && !empty ? lo : Double.NaN;
+		max = numeric && !empty ? hi : Double.NaN;
+		zoneMins = numeric ? mins : null;
+		zoneMaxs = numeric ? maxs : null;
+	}
+
+	/** Computes the statistics of the given column. */
+	public static ColumnStatistics of(final Column<?> column) {
+		return new ColumnStatistics(column);
+	}
+
+	/**
+	 * Gets the statistics of the given column, reusing the previously computed
+	 * ones if the column has not been modified since.
+	 */
+	static ColumnStatistics update(final Column<?> column,
+		final ColumnStatistics cached)
+	{
+		final long count = column.getModificationCount();
+		if (cached != null && count >= 0 && cached.modificationCount == count) {
+			return cached;
+		}
+		return of(column);
+	}
+
+	/** Gets the column's modification count these statistics reflect. */
+	public long getModificationCount() {
+		return modificationCount;
+	}
+
+	/** Gets the number of rows of the column. */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/** Gets the number of {@code null} values. */
+	public int getNullCount() {
+		return nullCount;
+	}
+
+	/** Gets the number of {@link Double#NaN} values. */
+	public int getNaNCount() {
+		return nanCount;
+	}
+
+	/** Gets whether minima and maxima are available. */
+	public boolean isNumeric() {
+		return zoneMins != null;
+	}
+
+	/**
+	 * Gets the smallest value, or {@link Double#NaN} if the column is not
+	 * numeric or has no values.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the largest value, or {@link Double#NaN} if the column is not
+	 * numeric or has no values.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	// -- Zone map methods --
+
+	/** Gets the number of zones, i.e., of blocks of {@link #ZONE_SIZE} rows. */
+	public int getZoneCount() {
+		return (rowCount + ZONE_SIZE - 1) / ZONE_SIZE;
+	}
+
+	/**
+	 * Gets the smallest value of the given zone; {@code +Infinity} if the zone
+	 * has no values, or {@link Double#NaN} if the column is not numeric.
+	 */
+	public double getZoneMin(final int zone) {
+		return zoneMins == null ? Double.NaN : zoneMins[zone];
+	}
+
+	/**
+	 * Gets the largest value of the given zone; {@code -Infinity} if the zone
+	 * has no values, or {@link Double#NaN} if the column is not numeric.
+	 */
+	public double getZoneMax(final int zone) {
+		return zoneMaxs == null ? Double.NaN : zoneMaxs[zone];
+	}
+
+	/**
+	 * Gets whether the given zone may contain values in {@code [min, max]}.
+	 * Always true for columns which are not numeric.
+	 */
+	public boolean mayContain(final int zone, final double min,
+		final double max)
+	{
+		if (zoneMins == null) return true;
+		return zoneMaxs[zone] >= min && zoneMins[zone] <= max;
+	}
+
+	@Override
+	public String toString() {
+		return "rows=" + rowCount + ", nulls=" + nullCount + ", NaNs=" +
+			nanCount + ", min=" + min + ", max=" + max;
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Utility methods for working with {@link Column}s.
+ */
+public final class Columns {
+
+	private Columns() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Gets whether the given column holds numbers which can be read via
+	 * {@link #doubleValues(Column)}.
+	 */
+	public static boolean isNumeric(final Column<?> column) {
+		return Number.class.isAssignableFrom(column.getType()) ||
+			column.getType() == Object.class;
+	}
+
+	/**
+	 * Gets whether the given column is a {@link PrimitiveColumn} with missing
+	 * values, whose backing array therefore cannot be read directly.
+	 */
+	public static boolean hasNulls(final Column<?> column) {
+		return column instanceof PrimitiveColumn && //
+			((PrimitiveColumn<?, ?>) column).getNullCount() > 0;
+	}
+
+	/**
+	 * Creates a function reading the values of the given column as
+	 * {@code double}s. For primitive columns, the backing array is read directly,
+	 * avoiding boxing; other columns must contain {@link Number}s. Missing
+	 * ({@code null}) values are mapped to {@link Double#NaN}.
+	 * <p>
+	 * The returned function is a snapshot of the column's storage, and must not
+	 * be used after the column has been resized.
+	 * </p>
+	 *
+	 * @throws IllegalArgumentException if the column does not hold numbers
+	 */
+	public static IntToDoubleFunction doubleValues(final Column<?> column) {
+		final IntToDoubleFunction values = hasNulls(column) ? null : arrayValues(
+			column);
+		if (values != null) return values;
+		if (!isNumeric(column)) {
+			throw new IllegalArgumentException("Not a numeric column: " + column
+				.getHeader());
+		}
+		return r -> {
+			final Object value = column.get(r);
+			return value == null ? Double.NaN : ((Number) value).doubleValue();
+		};
+	}
+
+	/**
+	 * Creates a new column of the same kind as the given one, containing the
+	 * values at the given rows, in order.
+	 *
+	 * @param column The column whose values should be copied.
+	 * @param rows The rows to copy.
+	 * @param count The number of entries of {@code rows} to use.
+	 * @return A new column with {@code count} rows.
+	 */
+	public static <T> Column<T> copy(final Column<T> column, final int[] rows,
+		final int count)
+	{
+		final Column<?> result = copyValues(column, rows, count);
+		if (hasNulls(column)) {
+			@SuppressWarnings("unchecked")
+			final Column<Object> c = (Column<Object>) result;
+			for (int i = 0; i < count; i++) {
+				if (column.isNull(rows[i])) c.set(i, null);
+			}
+		}
+		@SuppressWarnings("unchecked")
+		final Column<T> typedResult = (Column<T>) result;
+		return typedResult;
+	}
+
+	/**
+	 * Converts the given column to the narrowest primitive column matching the
+	 * runtime types of its values: {@link Boolean}s become a {@link BoolColumn},
+	 * {@link Character}s a {@link CharColumn}, and numbers the column of the
+	 * widest number type present, e.g. {@link Byte}s and {@link Short}s a
+	 * {@link ShortColumn}. Integers mixed with floating point numbers become a
+	 * {@link DoubleColumn}, unless there are {@link Long}s, which a
+	 * {@code double} cannot represent exactly. {@code null} values are kept as
+	 * missing values of the new column.
+	 *
+	 * @return A new column with the same header and values, or the given column
+	 *         itself if it is already primitive, is empty or entirely
+	 *         {@code null}, or holds values of any other type.
+	 */
+	public static Column<?> compact(final Column<?> column) {
+		if (column instanceof PrimitiveColumn) return column;
+		Kind kind = null;
+		for (final Object value : column) {
+			if (value == null) continue;
+			kind = Kind.widen(kind, Kind.of(value));
+			if (kind == Kind.MIXED) return column;
+		}
+		if (kind == null) return column;
+		final Column<?> result = kind.create(column.getHeader());
+		@SuppressWarnings("unchecked")
+		final Column<Object> c = (Column<Object>) result;
+		c.setSize(column.size());
+		for (int r = 0; r < column.size(); r++)
+			c.set(r, kind.convert(column.get(r)));
+		return result;
+	}
+
+	// -- Helper methods --
+
+	/** Reads the backing array of a numeric primitive column, if any. */
+	private static IntToDoubleFunction arrayValues(final Column<?> column) {
+		if (column instanceof DoubleColumn) {
+			final double[] a = ((DoubleColumn) column).getArray();
+			return r -> a[r];
+		}
+		if (column instanceof FloatColumn) {
+			final float[] a = ((FloatColumn) column).getArray();
+			return r -> a[r];
+		}
+		if (column instanceof LongColumn) {
+			final long[] a = ((LongColumn) column).getArray();
+			return r -> a[r];
+		}
+		if (column instanceof IntColumn) {
+			final int[] a = ((IntColumn) column).getArray();
+			return r -> a[r];
+		}
+		if (column instanceof ShortColumn) {
+			final short[] a = ((ShortColumn) column).getArray();
+			return r -> a[r];
+		}
+		if (column instanceof ByteColumn) {
+			final byte[] a = ((ByteColumn) column).getArray();
+			return r -> a[r];
+		}
+		return null;
+	}
+
+	private static <T> Column<?> copyValues(final Column<T> column,
+		final int[] rows, final int count)
+	{
+		final Column<?> result;
+		if (column instanceof DoubleColumn) {
+			final double[] src = ((DoubleColumn) column).getArray();
+			final double[] dest = new double[count];
+			for (int i = 0; i < count; i++)
+				dest[i] = src[rows[i]];
+			final DoubleColumn c = new DoubleColumn(column.getHeader());
+			c.fill(dest);
+			result = c;
+		}
+		else if (column instanceof FloatColumn) {
+			final float[] src = ((FloatColumn) column).getArray();
+			final float[] dest = new float[count];
+			for (int i = 0; i < count; i++)
+				dest[i] = src[rows[i]];
+			final FloatColumn c = new FloatColumn(column.getHeader());
+			c.fill(dest);
+			result = c;
+		}
+		else if (column instanceof LongColumn) {
+			final long[] src = ((LongColumn) column).getArray();
+			final long[] dest = new long[count];
+			for (int i = 0; i < count; i++)
+				dest[i] = src[rows[i]];
+			final LongColumn c = new LongColumn(column.getHeader());
+			c.fill(dest);
+			result = c;
+		}
+		else if (column instanceof IntColumn) {
+			final int[] src = ((IntColumn) column).getArray();
+			final int[] dest = new int[count];
+			for (int i = 0; i < count; i++)
+				dest[i] = src[rows[i]];
+			final IntColumn c = new IntColumn(column.getHeader());
+			c.fill(dest);
+			result = c;
+		}
+		else if (column instanceof ShortColumn) {
+			final short[] src = ((ShortColumn) column).getArray();
+			final short[] dest = new short[count];
+			for (int i = 0; i < count; i++)
+				dest[i] = src[rows[i]];
+			final ShortColumn c = new ShortColumn(column.getHeader());
+			c.fill(dest);
+			result = c;
+		}
+		else if (column instanceof ByteColumn) {
+			final byte[] src = ((ByteColumn) column).getArray();
+			final byte[] dest = new byte[count];
+			for (int i = 0; i < count; i++)
+				dest[i] = src[rows[i]];
+			final ByteColumn c = new ByteColumn(column.getHeader());
+			c.fill(dest);
+			result = c;
+		}
+		else if (column instanceof CharColumn) {
+			final char[] src = ((CharColumn) column).getArray();
+			final char[] dest = new char[count];
+			for (int i = 0; i < count; i++)
+				dest[i] = src[rows[i]];
+			final CharColumn c = new CharColumn(column.getHeader());
+			c.fill(dest);
+			result = c;
+		}
+		else if (column instanceof BoolColumn) {
+			final boolean[] src = ((BoolColumn) column).getArray();
+			final boolean[] dest = new boolean[count];
+			for (int i = 0; i < count; i++)
+				dest[i] = src[rows[i]];
+			final BoolColumn c = new BoolColumn(column.getHeader());
+			c.fill(dest);
+			result = c;
+		}
+		else if (column instanceof GenericColumn) {
+			final GenericColumn c = new GenericColumn(column.getHeader());
+			c.setSize(count);
+			for (int i = 0; i < count; i++)
+				c.setValue(i, column.get(rows[i]));
+			result = c;
+		}
+		else {
+			final DefaultColumn<T> c = //
+				new DefaultColumn<>(column.getType(), column.getHeader());
+			c.setSize(count);
+			for (int i = 0; i < count; i++)
+				c.setValue(i, column.get(rows[i]));
+			result = c;
+		}
+		return result;
+	}
+
+	// -- Helper classes --
+
+	/** The primitive column types, with numbers ordered by width. */
+	private enum Kind {
+		BOOL, CHAR, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, MIXED;
+
+		private static Kind of(final Object value) {
+			if (value instanceof Double) return DOUBLE;
+			if (value instanceof Integer) return INT;
+			if (value instanceof Boolean) return BOOL;
+			if (value instanceof Long) return LONG;
+			if (value instanceof Float) return FLOAT;
+			if (value instanceof Short) return SHORT;
+			if (value instanceof Byte) return BYTE;
+			if (value instanceof Character) return CHAR;
+			return MIXED;
+		}
+
+		private static Kind widen(final Kind a, final Kind b) {
+			if (a == null || a == b) return b;
+			if (a.isNumber() && b.isNumber()) {
+				if (a.isFloat() == b.isFloat()) return a.compareTo(b) > 0 ? a : b;
+				return a == LONG || b == LONG ? MIXED : DOUBLE;
+			}
+			return MIXED;
+		}
+
+		private boolean isNumber() {
+			return compareTo(BYTE) >= 0 && compareTo(DOUBLE) <= 0;
+		}
+
+		private boolean isFloat() {
+			return this == FLOAT || this == DOUBLE;
+		}
+
+		private Column<?> create(final String header) {
+			switch (this) {
+				case BOOL:
+					return new BoolColumn(header);
+				case CHAR:
+					return new CharColumn(header);
+				case BYTE:
+					return new ByteColumn(header);
+				case SHORT:
+					return new ShortColumn(header);
+				case INT:
+					return new IntColumn(header);
+				case LONG:
+					return new LongColumn(header);
+				case FLOAT:
+					return new FloatColumn(header);
+				case DOUBLE:
+					return new DoubleColumn(header);
+				default:
+					throw new IllegalStateException("No column for " + this);
+			}
+		}
+
+		private Object convert(final Object value) {
+			if (value == null || !isNumber()) return value;
+			final Number n = (Number) value;
+			switch (this) {
+				case BYTE:
+					return n.byteValue();
+				case SHORT:
+					return n.shortValue();
+				case INT:
+					return n.intValue();
+				case LONG:
+					return n.longValue();
+				case FLOAT:
+					return n.floatValue();
+				default:
+					return n.doubleValue();
+			}
+		}
+	}
+
+}
@@ -46,6 +46,12 @@ public class DefaultColumn<T> extends ObjectArray<T> implements Column<T> {
 	/** The column header. */
 	private String header;
 
+	/** Number of modifications made to the column's data. */
+	private long modifications;
+
+	/** Statistics of the column's data, computed on demand. */
+	private ColumnStatistics statistics;
+
 	public DefaultColumn(final Class<T> type) {
 		super(type);
 		this.type = type;
@@ -74,4 +80,36 @@ public class DefaultColumn<T> extends ObjectArray<T> implements Column<T> {
 		return type;
 	}
 
+	@Override
+	public long getModificationCount() {
+		return modifications;
+	}
+
+	@Override
+	public ColumnStatistics getStatistics() {
+		return statistics = ColumnStatistics.update(this, statistics);
+	}
+
+	// -- ObjectArray methods --
+
+	@Override
+	public T setValue(final int index, final T value) {
+		modifications++;
+		return super.setValue(index, value);
+	}
+
+	@Override
+	public void setArray(final T[] array) {
+		modifications++;
+		super.setArray(array);
+	}
+
+	// -- Sizable methods --
+
+	@Override
+	public void setSize(final int size) {
+		modifications++;
+		super.setSize(size);
+	}
+
 }
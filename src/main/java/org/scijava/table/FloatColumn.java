@@ -44,6 +44,9 @@ public class FloatColumn extends FloatArray implements
 	/** The column header. */
 	private String header;
 
+	/** Modification count, statistics and missing rows of the column. */
+	private final ColumnState state = new ColumnState();
+
 	public FloatColumn() {}
 
 	public FloatColumn(final String header) {
@@ -67,11 +70,32 @@ public class FloatColumn extends FloatArray implements
 		return Float.class;
 	}
 
+	@Override
+	public long getModificationCount() {
+		return state.getModificationCount();
+	}
+
+	@Override
+	public ColumnStatistics getStatistics() {
+		return state.getStatistics(this);
+	}
+
+	@Override
+	public boolean isNull(final int index) {
+		return state.isNull(index);
+	}
+
 	// -- PrimitiveColumn methods --
 
+	@Override
+	public int getNullCount() {
+		return state.getNullCount();
+	}
+
 	@Override
 	public void fill(final float[] values) {
 		setArray(values.clone());
+		state.clearNulls();
 		setSize(values.length);
 	}
 
@@ -82,7 +106,108 @@ public class FloatColumn extends FloatArray implements
 		else {
 			System.arraycopy(values, 0, getArray(), offset, values.length);
 		}
+		state.clearNulls(offset, offset + values.length);
 		setSize(values.length);
 	}
 
+	// -- FloatArray methods --
+
+	@Override
+	public float setValue(final int index, final float value) {
+		state.setValue(index);
+		return super.setValue(index, value);
+	}
+
+	@Override
+	public void setArray(final float[] array) {
+		// NB: The superclass constructor sets the array before the state exists.
+		if (state != null) state.modified();
+		super.setArray(array);
+	}
+
+	/** Finds the first row holding the value, skipping missing rows. */
+	@Override
+	public int indexOf(final float value) {
+		if (!state.hasNulls()) return super.indexOf(value);
+		final float[] array = getArray();
+		return state.indexOf(size(), i -> array[i] == value);
+	}
+
+	/** Finds the last row holding the value, skipping missing rows. */
+	@Override
+	public int lastIndexOf(final float value) {
+		if (!state.hasNulls()) return super.lastIndexOf(value);
+		final float[] array = getArray();
+		return state.lastIndexOf(size(), i -> array[i] == value);
+	}
+
+	// -- PrimitiveArray methods --
+
+	@Override
+	public void insert(final int index, final int count) {
+		super.insert(index, count);
+		state.insert(index, count);
+	}
+
+	@Override
+	public void delete(final int index, final int count) {
+		state.delete(index, count, size());
+		super.delete(index, count);
+	}
+
+	// -- List methods --
+
+	@Override
+	public Float get(final int index) {
+		return isNull(index) ? null : super.get(index);
+	}
+
+	/**
+	 * Sets the value of the given row. Setting {@code null} marks the value as
+	 * missing.
+	 */
+	@Override
+	public Float set(final int index, final Float element) {
+		final Float old = get(index);
+		if (element == null) {
+			setValue(index, Float.NaN);
+			state.setNull(index);
+		}
+		else setValue(index, element);
+		return old;
+	}
+
+	@Override
+	public void add(final int index, final Float element) {
+		insert(index, 1);
+		set(index, element);
+	}
+
+	/** Finds the first missing row when given {@code null}. */
+	@Override
+	public int indexOf(final Object o) {
+		if (o == null) return state.firstNull();
+		return super.indexOf(o);
+	}
+
+	/** Finds the last missing row when given {@code null}. */
+	@Override
+	public int lastIndexOf(final Object o) {
+		if (o == null) return state.lastNull();
+		return super.lastIndexOf(o);
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		return o == null ? getNullCount() > 0 : super.contains(o);
+	}
+
+	// -- Sizable methods --
+
+	@Override
+	public void setSize(final int size) {
+		super.setSize(size);
+		state.setSize(size);
+	}
+
 }
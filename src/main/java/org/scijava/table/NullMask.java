@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import java.util.BitSet;
+
+/**
+ * The rows of a {@link PrimitiveColumn} whose values are missing.
+ */
+final class NullMask {
+
+	private final BitSet rows = new BitSet();
+
+	boolean get(final int row) {
+		return rows.get(row);
+	}
+
+	void set(final int row) {
+		rows.set(row);
+	}
+
+	void clear(final int row) {
+		rows.clear(row);
+	}
+
+	void clear(final int from, final int to) {
+		rows.clear(from, to);
+	}
+
+	void clear() {
+		rows.clear();
+	}
+
+	int count() {
+		return rows.cardinality();
+	}
+
+	/** Gets the first missing row, or -1 if there is none. */
+	int first() {
+		return rows.nextSetBit(0);
+	}
+
+	/** Gets the last missing row, or -1 if there is none. */
+	int last() {
+		return rows.length() - 1;
+	}
+
+	/** Shifts the rows at or after {@code index} down by {@code count}. */
+	void insert(final int index, final int count) {
+		final int length = rows.length();
+		if (index >= length) return;
+		final BitSet moved = rows.get(index, length);
+		rows.clear(index, length);
+		for (int i = moved.nextSetBit(0); i >= 0; i = moved.nextSetBit(i + 1))
+			rows.set(index + count + i);
+	}
+
+	/** Removes the rows {@code [index, index + count)}. */
+	void delete(final int index, final int count) {
+		final int length = rows.length();
+		if (index >= length) return;
+		final BitSet moved = rows.get(index + count, Math.max(index + count,
+			length));
+		rows.clear(index, length);
+		for (int i = moved.nextSetBit(0); i >= 0; i = moved.nextSetBit(i + 1))
+			rows.set(index + i);
+	}
+
+	/** Forgets the rows at or after {@code size}. */
+	void truncate(final int size) {
+		final int length = rows.length();
+		if (size < length) rows.clear(size, length);
+	}
+}
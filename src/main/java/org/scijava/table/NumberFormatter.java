@@ -0,0 +1,552 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Formats floating point numbers as text, without intermediate allocation
+ * when writing into a byte buffer.
+ * <p>
+ * All modes start from the shortest decimal which rounds to the number, found
+ * with the Schubfach algorithm:
+ * </p>
+ * <ul>
+ * <li>{@link #shortest()} writes it in the layout of {@link Double#toString},
+ * e.g. {@code 123.0}, {@code 0.001} or {@code 1.2345678900987654E9}. Parsing
+ * the text yields the same number again.</li>
+ * <li>{@link #fixed(int)} rounds it half up to a number of decimals, like
+ * {@code String.format("%.2f", x)} but without grouping or localization, e.g.
+ * {@code 1234.57}.</li>
+ * <li>{@link #scientific(int)} rounds it half up to a number of digits after
+ * the point of a scientific notation, e.g. {@code 1.23E3}.</li>
+ * </ul>
+ * <p>
+ * Formatters are immutable and thread-safe. As a {@link Function}, they
+ * format {@link Double} and {@link Float} values, and any other value with
+ * {@link String#valueOf(Object)}, so they can be used as column formatters
+ * when saving tables.
+ * </p>
+ */
+public final class NumberFormatter implements Function<Object, String> {
+
+	private static final int SHORTEST = 0, FIXED = 1, SCIENTIFIC = 2;
+
+	private static final NumberFormatter SHORTEST_FORMATTER =
+		new NumberFormatter(SHORTEST, 0);
+
+	// -- Constants of the Schubfach algorithm --
+
+	/** Range of decimal exponents for which powers of ten are tabulated. */
+	private static final int K_MIN = -324, K_MAX = 292;
+
+	/**
+	 * The 126 bit approximation from above of each tabulated power of ten, as
+	 * pairs of its high 63 and low 63 bits.
+	 */
+	private static final long[] POWERS_OF_TEN = powersOfTen();
+
+	private static final long[] LONG_POWERS_OF_TEN = { 1L, 10L, 100L, 1000L,
+		10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+		10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+		100000000000000L, 1000000000000000L, 10000000000000000L,
+		100000000000000000L, 1000000000000000000L };
+
+	private static final long MASK_63 = (1L << 63) - 1;
+	private static final long MASK_32 = (1L << 32) - 1;
+
+	private static final int DOUBLE_PRECISION = 53, FLOAT_PRECISION = 24;
+	private static final int DOUBLE_Q_MIN = -1074, FLOAT_Q_MIN = -149;
+	private static final long DOUBLE_C_MIN = 1L << DOUBLE_PRECISION - 1;
+	private static final int FLOAT_C_MIN = 1 << FLOAT_PRECISION - 1;
+
+	/** Significands below which subnormals need an extra decimal digit. */
+	private static final int DOUBLE_C_TINY = 3, FLOAT_C_TINY = 8;
+
+	private static final byte[] NAN = ascii("NaN");
+	private static final byte[] INFINITY = ascii("Infinity");
+
+	/** Number of bytes any double or float takes in the shortest layout. */
+	private static final int SHORTEST_LENGTH = 32;
+
+	/** Number of decimal digits of {@link Double#MAX_VALUE}'s integer part. */
+	private static final int MAX_INTEGER_DIGITS = 309;
+
+	private final int mode;
+	private final int decimals;
+
+	private NumberFormatter(final int mode, final int decimals) {
+		this.mode = mode;
+		this.decimals = decimals;
+	}
+
+	// -- Factory methods --
+
+	/**
+	 * Gets the formatter writing the shortest text which parses back to the
+	 * same number, in the layout of {@link Double#toString} and
+	 * {@link Float#toString}.
+	 */
+	public static NumberFormatter shortest() {
+		return SHORTEST_FORMATTER;
+	}
+
+	/**
+	 * Creates a formatter writing numbers in positional notation, rounded half
+	 * up to the given number of decimals.
+	 *
+	 * @param decimals the number of digits after the point, or 0 to write no
+	 *          point
+	 */
+	public static NumberFormatter fixed(final int decimals) {
+		if (decimals < 0) {
+			throw new IllegalArgumentException("Invalid decimals: " + decimals);
+		}
+		return new NumberFormatter(FIXED, decimals);
+	}
+
+	/**
+	 * Creates a formatter writing numbers in scientific notation, e.g.
+	 * {@code 1.23E-4}, with the significand rounded half up to the given number
+	 * of decimals.
+	 *
+	 * @param decimals the number of digits after the point, or 0 to write no
+	 *          point
+	 */
+	public static NumberFormatter scientific(final int decimals) {
+		if (decimals < 0) {
+			throw new IllegalArgumentException("Invalid decimals: " + decimals);
+		}
+		return new NumberFormatter(SCIENTIFIC, decimals);
+	}
+
+	// -- NumberFormatter methods --
+
+	/**
+	 * Gets the maximum number of bytes written by
+	 * {@link #format(double, byte[], int)} or
+	 * {@link #format(float, byte[], int)}.
+	 */
+	public int maxLength() {
+		switch (mode) {
+			case FIXED:
+				return Math.max(SHORTEST_LENGTH, MAX_INTEGER_DIGITS + decimals + 2);
+			case SCIENTIFIC:
+				return SHORTEST_LENGTH + decimals;
+			default:
+				return SHORTEST_LENGTH;
+		}
+	}
+
+	public String format(final double value) {
+		final byte[] buf = new byte[maxLength()];
+		return new String(buf, 0, format(value, buf, 0),
+			StandardCharsets.ISO_8859_1);
+	}
+
+	public String format(final float value) {
+		final byte[] buf = new byte[maxLength()];
+		return new String(buf, 0, format(value, buf, 0),
+			StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Writes a {@code double} as ASCII text into {@code buf}, which must have
+	 * room for {@link #maxLength()} bytes from {@code pos}.
+	 *
+	 * @return the position after the last byte written
+	 */
+	public int format(final double value, final byte[] buf, int pos) {
+		final long bits = Double.doubleToRawLongBits(value);
+		final long t = bits & DOUBLE_C_MIN - 1;
+		final int bq = (int) (bits >>> DOUBLE_PRECISION - 1) & 0x7ff;
+		if (bq == 0x7ff) return special(t != 0, bits < 0, buf, pos);
+		if (bits < 0) buf[pos++] = '-';
+		if (bq != 0) {
+			// normal
+			final int mq = -DOUBLE_Q_MIN + 1 - bq;
+			final long c = DOUBLE_C_MIN | t;
+			if (0 < mq && mq < DOUBLE_PRECISION) {
+				// integers are their own shortest decimal
+				final long f = c >> mq;
+				if (f << mq == c) return decimal(f, 0, buf, pos);
+			}
+			return shortest(-mq, c, 0, buf, pos);
+		}
+		if (t != 0) {
+			// subnormal
+			return t < DOUBLE_C_TINY ? shortest(DOUBLE_Q_MIN, 10 * t, -1, buf,
+				pos) : shortest(DOUBLE_Q_MIN, t, 0, buf, pos);
+		}
+		return decimal(0, 0, buf, pos);
+	}
+
+	/**
+	 * Writes a {@code float} as ASCII text into {@code buf}, which must have
+	 * room for {@link #maxLength()} bytes from {@code pos}.
+	 *
+	 * @return the position after the last byte written
+	 */
+	public int format(final float value, final byte[] buf, int pos) {
+		final int bits = Float.floatToRawIntBits(value);
+		final int t = bits & FLOAT_C_MIN - 1;
+		final int bq = bits >>> FLOAT_PRECISION - 1 & 0xff;
+		if (bq == 0xff) return special(t != 0, bits < 0, buf, pos);
+		if (bits < 0) buf[pos++] = '-';
+		if (bq != 0) {
+			// normal
+			final int mq = -FLOAT_Q_MIN + 1 - bq;
+			final int c = FLOAT_C_MIN | t;
+			if (0 < mq && mq < FLOAT_PRECISION) {
+				// integers are their own shortest decimal
+				final int f = c >> mq;
+				if (f << mq == c) return decimal(f, 0, buf, pos);
+			}
+			return shortest(-mq, c, 0, buf, pos);
+		}
+		if (t != 0) {
+			// subnormal
+			return t < FLOAT_C_TINY ? shortest(FLOAT_Q_MIN, 10 * t, -1, buf, pos)
+				: shortest(FLOAT_Q_MIN, t, 0, buf, pos);
+		}
+		return decimal(0, 0, buf, pos);
+	}
+
+	// -- Function methods --
+
+	@Override
+	public String apply(final Object value) {
+		if (value instanceof Double) return format(((Double) value).doubleValue());
+		if (value instanceof Float) return format(((Float) value).floatValue());
+		return String.valueOf(value);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Finds the shortest decimal rounding to {@code c 2^q}, a {@code double},
+	 * and writes it scaled by {@code 10^dk}.
+	 */
+	private int shortest(final int q, final long c, final int dk,
+		final byte[] buf, final int pos)
+	{
+		final int out = (int) c & 1;
+		final long cb = c << 2;
+		final long cbr = cb + 2;
+		final long cbl;
+		final int k;
+		if (c != DOUBLE_C_MIN || q == DOUBLE_Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		}
+		else {
+			// the gap below a power of two is half as wide
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		final int h = q + flog2pow10(-k) + 2;
+		final int index = 2 * (k - K_MIN);
+		final long g1 = POWERS_OF_TEN[index], g0 = POWERS_OF_TEN[index + 1];
+		final long vb = roundOdd(g1, g0, cb << h);
+		final long vbl = roundOdd(g1, g0, cbl << h);
+		final long vbr = roundOdd(g1, g0, cbr << h);
+
+		final long s = vb >> 2;
+		if (s >= 100) {
+			// prefer a decimal with one digit less, if one is in range
+			final long sp10 = s / 10 * 10;
+			final long tp10 = sp10 + 10;
+			final boolean upin = vbl + out <= sp10 << 2;
+			final boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) return decimal(upin ? sp10 : tp10, k, buf, pos);
+		}
+		final long t = s + 1;
+		final boolean uin = vbl + out <= s << 2;
+		final boolean win = (t << 2) + out <= vbr;
+		if (uin != win) return decimal(uin ? s : t, k + dk, buf, pos);
+		// both in range: pick the closer one, or the even one on a tie
+		final long cmp = vb - (s + t << 1);
+		return decimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buf,
+			pos);
+	}
+
+	/**
+	 * Finds the shortest decimal rounding to {@code c 2^q}, a {@code float},
+	 * and writes it scaled by {@code 10^dk}.
+	 */
+	private int shortest(final int q, final int c, final int dk,
+		final byte[] buf, final int pos)
+	{
+		final int out = c & 1;
+		final long cb = (long) c << 2;
+		final long cbr = cb + 2;
+		final long cbl;
+		final int k;
+		if (c != FLOAT_C_MIN || q == FLOAT_Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		}
+		else {
+			// the gap below a power of two is half as wide
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		final int h = q + flog2pow10(-k) + 33;
+		final long g = POWERS_OF_TEN[2 * (k - K_MIN)] + 1;
+		final int vb = roundOdd(g, cb << h);
+		final int vbl = roundOdd(g, cbl << h);
+		final int vbr = roundOdd(g, cbr << h);
+
+		final int s = vb >> 2;
+		if (s >= 100) {
+			// prefer a decimal with one digit less, if one is in range
+			final int sp10 = s / 10 * 10;
+			final int tp10 = sp10 + 10;
+			final boolean upin = vbl + out <= sp10 << 2;
+			final boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) return decimal(upin ? sp10 : tp10, k, buf, pos);
+		}
+		final int t = s + 1;
+		final boolean uin = vbl + out <= s << 2;
+		final boolean win = (t << 2) + out <= vbr;
+		if (uin != win) return decimal(uin ? s : t, k + dk, buf, pos);
+		// both in range: pick the closer one, or the even one on a tie
+		final int cmp = vb - (s + t << 1);
+		return decimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buf,
+			pos);
+	}
+
+	/**
+	 * Writes the decimal {@code f 10^e} in this formatter's layout, rounding it
+	 * first if the layout has fewer digits.
+	 */
+	private int decimal(long f, final int e, final byte[] buf, final int pos) {
+		// normalize to the significant digits d0.d1...dn and exponent of d0
+		int len, exp;
+		if (f == 0) {
+			len = 1;
+			exp = 0;
+		}
+		else {
+			int scale = e;
+			while (f % 10 == 0) {
+				f /= 10;
+				scale++;
+			}
+			len = length(f);
+			exp = scale + len - 1;
+		}
+		if (mode == SHORTEST) {
+			// layout of Double.toString
+			if (exp >= -3 && exp < 7) {
+				return plain(f, len, exp, Math.max(1, len - exp - 1), buf, pos);
+			}
+			return scientific(f, len, exp, Math.max(1, len - 1), buf, pos);
+		}
+
+		// round half up to the digits kept
+		final int keep = mode == FIXED ? exp + decimals + 1 : decimals + 1;
+		if (keep < len) {
+			if (keep < 0) {
+				f = 0;
+			}
+			else {
+				final long p = LONG_POWERS_OF_TEN[len - keep];
+				f = f / p + (f % p >= p / 2 ? 1 : 0);
+			}
+			if (f == 0) {
+				len = 1;
+				exp = 0;
+			}
+			else if (keep == 0 || f == LONG_POWERS_OF_TEN[keep]) {
+				// carried into a new leading digit
+				f = 1;
+				len = 1;
+				exp++;
+			}
+			else len = keep;
+		}
+		return mode == FIXED ? plain(f, len, exp, decimals, buf, pos) :
+			scientific(f, len, exp, decimals, buf, pos);
+	}
+
+	/** Writes d0.d1...dn 10^exp in positional notation. */
+	private static int plain(final long f, final int len, final int exp,
+		final int decimals, final byte[] buf, int pos)
+	{
+		if (exp < 0) {
+			buf[pos++] = '0';
+			if (decimals == 0) return pos;
+			buf[pos++] = '.';
+			pos = zeros(buf, pos, -exp - 1);
+			digits(f, len, buf, pos);
+			return zeros(buf, pos + len, decimals - (len - exp - 1));
+		}
+		final int integers = exp + 1;
+		digits(f, len, buf, pos);
+		if (len <= integers) {
+			pos = zeros(buf, pos + len, integers - len);
+			if (decimals == 0) return pos;
+			buf[pos++] = '.';
+			return zeros(buf, pos, decimals);
+		}
+		final int point = pos + integers;
+		System.arraycopy(buf, point, buf, point + 1, len - integers);
+		buf[point] = '.';
+		return zeros(buf, pos + len + 1, decimals - (len - integers));
+	}
+
+	/** Writes d0.d1...dn 10^exp in scientific notation. */
+	private static int scientific(final long f, final int len, final int exp,
+		final int decimals, final byte[] buf, int pos)
+	{
+		digits(f, len, buf, pos + 1);
+		buf[pos] = buf[pos + 1];
+		if (decimals == 0) pos++;
+		else {
+			buf[pos + 1] = '.';
+			pos = zeros(buf, pos + len + 1, decimals - (len - 1));
+		}
+		buf[pos++] = 'E';
+		int n = exp;
+		if (n < 0) {
+			buf[pos++] = '-';
+			n = -n;
+		}
+		final int nLen = length(n);
+		digits(n, nLen, buf, pos);
+		return pos + nLen;
+	}
+
+	private static int special(final boolean nan, final boolean negative,
+		final byte[] buf, int pos)
+	{
+		if (nan) {
+			System.arraycopy(NAN, 0, buf, pos, NAN.length);
+			return pos + NAN.length;
+		}
+		if (negative) buf[pos++] = '-';
+		System.arraycopy(INFINITY, 0, buf, pos, INFINITY.length);
+		return pos + INFINITY.length;
+	}
+
+	/** Writes the {@code len} decimal digits of {@code f}. */
+	private static void digits(long f, final int len, final byte[] buf,
+		final int pos)
+	{
+		for (int i = pos + len - 1; i >= pos; i--) {
+			buf[i] = (byte) ('0' + f % 10);
+			f /= 10;
+		}
+	}
+
+	private static int zeros(final byte[] buf, int pos, final int count) {
+		for (int i = 0; i < count; i++)
+			buf[pos++] = '0';
+		return pos;
+	}
+
+	/** Gets the number of decimal digits of a positive number. */
+	private static int length(final long f) {
+		int len = 1;
+		while (len < LONG_POWERS_OF_TEN.length && f >= LONG_POWERS_OF_TEN[len])
+			len++;
+		return len;
+	}
+
+	/**
+	 * Computes {@code g cp / 2^127} for the 126 bit {@code g = g1 2^63 + g0},
+	 * rounded to odd.
+	 */
+	private static long roundOdd(final long g1, final long g0, final long cp) {
+		final long x1 = multiplyHigh(g0, cp);
+		final long y0 = g1 * cp;
+		final long y1 = multiplyHigh(g1, cp);
+		final long z = (y0 >>> 1) + x1;
+		final long vbp = y1 + (z >>> 63);
+		return vbp | (z & MASK_63) + MASK_63 >>> 63;
+	}
+
+	/** Computes {@code g cp / 2^95} for the 63 bit {@code g}, rounded to odd. */
+	private static int roundOdd(final long g, final long cp) {
+		final long x1 = multiplyHigh(g, cp);
+		final long vbp = x1 >>> 31;
+		return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+	}
+
+	/** Computes the high 64 bits of the 128-bit product of two non-negatives. */
+	private static long multiplyHigh(final long a, final long b) {
+		final long a0 = a & 0xffffffffL, a1 = a >>> 32;
+		final long b0 = b & 0xffffffffL, b1 = b >>> 32;
+		final long t = a1 * b0 + (a0 * b0 >>> 32);
+		final long u = a0 * b1 + (t & 0xffffffffL);
+		return a1 * b1 + (t >>> 32) + (u >>> 32);
+	}
+
+	/** Computes {@code floor(q log10(2))}. */
+	private static int flog10pow2(final int q) {
+		return (int) (q * 661_971_961_083L >> 41);
+	}
+
+	/** Computes {@code floor(q log10(2) + log10(3/4))}. */
+	private static int flog10threeQuartersPow2(final int q) {
+		return (int) (q * 661_971_961_083L - 274_743_187_321L >> 41);
+	}
+
+	/** Computes {@code floor(e log2(10))}. */
+	private static int flog2pow10(final int e) {
+		return (int) (e * 913_124_641_741L >> 38);
+	}
+
+	private static long[] powersOfTen() {
+		final long[] table = new long[2 * (K_MAX - K_MIN + 1)];
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			// g = floor(10^-k 2^-r) + 1, with r such that 2^125 <= g < 2^126
+			final int r = flog2pow10(-k) - 125;
+			BigInteger num = BigInteger.ONE, den = BigInteger.ONE;
+			if (k < 0) num = BigInteger.TEN.pow(-k);
+			else den = BigInteger.TEN.pow(k);
+			if (r < 0) num = num.shiftLeft(-r);
+			else den = den.shiftLeft(r);
+			final BigInteger g = num.divide(den).add(BigInteger.ONE);
+			final int index = 2 * (k - K_MIN);
+			table[index] = g.shiftRight(63).longValue();
+			table[index + 1] = g.longValue() & MASK_63;
+		}
+		return table;
+	}
+
+	private static byte[] ascii(final String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,385 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses numbers from text without allocating, reporting malformed input by
+ * return value rather than by exception.
+ * <p>
+ * Decimal floating point numbers are converted with the Eisel-Lemire
+ * algorithm, which yields the correctly rounded {@code double} for all but a
+ * vanishingly small fraction of inputs; those, and hexadecimal floating point
+ * numbers, are delegated to {@link Double#parseDouble}. The accepted syntax is
+ * that of {@link Double#parseDouble}, i.e. surrounding whitespace and a
+ * trailing type suffix are allowed, plus the spellings {@code Nan} and
+ * {@code infinity} of the special values.
+ * </p>
+ * <p>
+ * Instances hold the last parsed value, and are therefore not thread-safe.
+ * </p>
+ */
+public final class NumberParser {
+
+	/** Range of decimal exponents for which powers of five are tabulated. */
+	private static final int MIN_POWER = -342, MAX_POWER = 308;
+
+	/**
+	 * The 128 most significant bits of each tabulated power of five (for
+	 * negative powers, of its reciprocal), as pairs of high and low words.
+	 */
+	private static final long[] POWERS_OF_FIVE = powersOfFive();
+
+	/** Powers of ten which are exactly representable as {@code double}s. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+		1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+		1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private double doubleValue;
+	private long longValue;
+
+	/** Buffer into which character sequences are copied for parsing. */
+	private byte[] scratch = new byte[32];
+
+	/**
+	 * Parses a {@code double}.
+	 *
+	 * @return true if the text is a number, whose value is then available from
+	 *         {@link #doubleValue()}.
+	 */
+	public boolean parseDouble(final CharSequence text) {
+		final int length = ascii(text);
+		return length >= 0 && parseDouble(scratch, 0, length);
+	}
+
+	/**
+	 * Parses a {@code double} from the ASCII-compatible bytes
+	 * {@code buf[start, end)}.
+	 *
+	 * @return true if the text is a number, whose value is then available from
+	 *         {@link #doubleValue()}.
+	 */
+	public boolean parseDouble(final byte[] buf, int start, int end) {
+		while (start < end && isWhitespace(buf[start]))
+			start++;
+		while (end > start && isWhitespace(buf[end - 1]))
+			end--;
+		int i = start;
+		final boolean negative = i < end && buf[i] == '-';
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) i++;
+		if (i == end) return false;
+
+		final byte first = buf[i];
+		if (first == 'N' || first == 'I' || first == 'i') {
+			final double special = special(buf, i, end);
+			if (special == 0) return false;
+			doubleValue = negative ? -special : special;
+			return true;
+		}
+		if (first == '0' && i + 1 < end && (buf[i + 1] | 0x20) == 'x') {
+			return parseWithJDK(buf, start, end);
+		}
+
+		// significand: up to 19 significant digits, more are truncated
+		long significand = 0;
+		int digits = 0, exponent = 0;
+		boolean point = false, any = false, truncated = false;
+		for (; i < end; i++) {
+			final byte b = buf[i];
+			if (b >= '0' && b <= '9') {
+				any = true;
+				if (digits == 0 && b == '0') {
+					if (point) exponent--;
+					continue;
+				}
+				if (digits < 19) {
+					significand = 10 * significand + (b - '0');
+					digits++;
+					if (point) exponent--;
+				}
+				else {
+					if (b != '0') truncated = true;
+					if (!point) exponent++;
+				}
+			}
+			else if (b == '.' && !point) point = true;
+			else break;
+		}
+		if (!any) return false;
+
+		// exponent
+		if (i < end && (buf[i] | 0x20) == 'e') {
+			i++;
+			final boolean negativeExponent = i < end && buf[i] == '-';
+			if (i < end && (buf[i] == '-' || buf[i] == '+')) i++;
+			if (i == end || buf[i] < '0' || buf[i] > '9') return false;
+			int e = 0;
+			for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++) {
+				// NB: Saturate; the result is zero or infinite anyway.
+				if (e < 100000) e = 10 * e + (buf[i] - '0');
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+
+		// type suffix
+		if (i < end && ((buf[i] | 0x20) == 'd' || (buf[i] | 0x20) == 'f')) i++;
+		if (i != end) return false;
+
+		double value = toDouble(significand, exponent);
+		if (truncated && value == value) {
+			// NB: The true value lies between the truncated significand and its
+			// successor; if both round alike, so does the true value.
+			if (toDouble(significand + 1, exponent) != value) value = Double.NaN;
+		}
+		if (value != value) return parseWithJDK(buf, start, end);
+		doubleValue = negative ? -value : value;
+		return true;
+	}
+
+	/**
+	 * Parses a decimal {@code long}, like {@link Long#parseLong(String)}.
+	 *
+	 * @return true if the text is such a number, whose value is then available
+	 *         from {@link #longValue()}.
+	 */
+	public boolean parseLong(final CharSequence text) {
+		final int length = ascii(text);
+		return length >= 0 && parseLong(scratch, 0, length);
+	}
+
+	/**
+	 * Parses a decimal {@code long} from the ASCII-compatible bytes
+	 * {@code buf[start, end)}, like {@link Long#parseLong(String)}.
+	 *
+	 * @return true if the text is such a number, whose value is then available
+	 *         from {@link #longValue()}.
+	 */
+	public boolean parseLong(final byte[] buf, final int start, final int end) {
+		int i = start;
+		final boolean negative = i < end && buf[i] == '-';
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) i++;
+		if (i == end) return false;
+		// NB: Accumulate negatively, as Long.MIN_VALUE has no positive counterpart.
+		final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long value = 0;
+		for (; i < end; i++) {
+			final int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9) return false;
+			if (value < Long.MIN_VALUE / 10) return false;
+			value *= 10;
+			if (value < limit + digit) return false;
+			value -= digit;
+		}
+		longValue = negative ? value : -value;
+		return true;
+	}
+
+	/**
+	 * Parses a decimal {@code int}, like {@link Integer#parseInt(String)}.
+	 *
+	 * @return true if the text is such a number, whose value is then available
+	 *         from {@link #longValue()}.
+	 */
+	public boolean parseInt(final byte[] buf, final int start, final int end) {
+		return parseLong(buf, start, end) && longValue == (int) longValue;
+	}
+
+	/** Gets the value of the last {@code double} parsed successfully. */
+	public double doubleValue() {
+		return doubleValue;
+	}
+
+	/** Gets the value of the last integer parsed successfully. */
+	public long longValue() {
+		return longValue;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Copies the given characters into the scratch buffer.
+	 *
+	 * @return The number of characters, or -1 if any is not ASCII.
+	 */
+	private int ascii(final CharSequence text) {
+		final int length = text.length();
+		if (scratch.length < length) scratch = new byte[Math.max(length,
+			2 * scratch.length)];
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (c > 0x7f) return -1;
+			scratch[i] = (byte) c;
+		}
+		return length;
+	}
+
+	/** Parses NaN or infinity, returning 0 if the text is neither. */
+	private static double special(final byte[] buf, final int start,
+		final int end)
+	{
+		if (matches(buf, start, end, "NaN") || matches(buf, start, end, "Nan")) {
+			return Double.NaN;
+		}
+		if (matches(buf, start, end, "Infinity") || //
+			matches(buf, start, end, "infinity"))
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		return 0;
+	}
+
+	private static boolean matches(final byte[] buf, final int start,
+		final int end, final String word)
+	{
+		if (end - start != word.length()) return false;
+		for (int i = 0; i < word.length(); i++) {
+			if (buf[start + i] != word.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private boolean parseWithJDK(final byte[] buf, final int start,
+		final int end)
+	{
+		try {
+			doubleValue = Double.parseDouble(new String(buf, start, end - start,
+				StandardCharsets.ISO_8859_1));
+			return true;
+		}
+		catch (final NumberFormatException exc) {
+			return false;
+		}
+	}
+
+	/**
+	 * Computes the {@code double} nearest to {@code significand * 10^exponent}.
+	 *
+	 * @return The value, or NaN if it cannot be determined cheaply.
+	 */
+	private static double toDouble(final long significand, final int exponent) {
+		if (significand == 0 || exponent < MIN_POWER) return 0;
+		if (exponent > MAX_POWER) return Double.POSITIVE_INFINITY;
+		// Clinger's fast path: both operands, hence the result, are exact
+		if (significand >= 0 && significand <= 1L << 53 && exponent >= -22 &&
+			exponent <= 22)
+		{
+			return exponent >= 0 ? significand * POWERS_OF_TEN[exponent]
+				: significand / POWERS_OF_TEN[-exponent];
+		}
+		return eiselLemire(significand, exponent);
+	}
+
+	/**
+	 * Computes {@code w * 10^q} by multiplying with a truncated 128-bit power of
+	 * five, per Lemire, "Number Parsing at a Gigabyte per Second" (2021).
+	 */
+	private static double eiselLemire(long w, final int q) {
+		final int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		final int index = 2 * (q - MIN_POWER);
+		long high = multiplyHigh(w, POWERS_OF_FIVE[index]);
+		long low = w * POWERS_OF_FIVE[index];
+		if ((high & 0x1ff) == 0x1ff) {
+			// the product's 55 leading bits may be inexact: refine it
+			final long secondHigh = multiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+			low += secondHigh;
+			if (Long.compareUnsigned(secondHigh, low) > 0) high++;
+			if (low == -1 && (q < -27 || q > 55)) return Double.NaN;
+		}
+		final int upperBit = (int) (high >>> 63);
+		long mantissa = high >>> (upperBit + 9);
+		int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+		if (power2 <= 0) {
+			// subnormal
+			if (-power2 + 1 >= 64) return 0;
+			mantissa >>>= -power2 + 1;
+			mantissa += mantissa & 1;
+			mantissa >>>= 1;
+			power2 = mantissa < 1L << 52 ? 0 : 1;
+			return Double.longBitsToDouble(mantissa | (long) power2 << 52);
+		}
+		if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && q <= 23 &&
+			(mantissa & 3) == 1 && mantissa << (upperBit + 9) == high)
+		{
+			// exactly halfway between two doubles: round to even
+			mantissa &= ~1L;
+		}
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if (mantissa >= 2L << 52) {
+			mantissa = 1L << 52;
+			power2++;
+		}
+		mantissa &= ~(1L << 52);
+		if (power2 >= 0x7ff) return Double.POSITIVE_INFINITY;
+		return Double.longBitsToDouble(mantissa | (long) power2 << 52);
+	}
+
+	/** Computes the high 64 bits of the unsigned 128-bit product. */
+	private static long multiplyHigh(final long a, final long b) {
+		final long a0 = a & 0xffffffffL, a1 = a >>> 32;
+		final long b0 = b & 0xffffffffL, b1 = b >>> 32;
+		final long t = a1 * b0 + (a0 * b0 >>> 32);
+		final long u = a0 * b1 + (t & 0xffffffffL);
+		return a1 * b1 + (t >>> 32) + (u >>> 32);
+	}
+
+	private static boolean isWhitespace(final byte b) {
+		return b >= 0 && b <= ' ';
+	}
+
+	private static long[] powersOfFive() {
+		final long[] table = new long[2 * (MAX_POWER - MIN_POWER + 1)];
+		final BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+		for (int q = MIN_POWER; q <= MAX_POWER; q++) {
+			BigInteger value;
+			if (q < 0) {
+				final BigInteger power = BigInteger.valueOf(5).pow(-q);
+				final int z = power.subtract(BigInteger.ONE).bitLength();
+				final int b = q >= -27 ? z + 127 : 2 * z + 128;
+				value = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+				while (value.compareTo(two128) >= 0)
+					value = value.shiftRight(1);
+			}
+			else {
+				value = BigInteger.valueOf(5).pow(q);
+				final int shift = 128 - value.bitLength();
+				value = shift >= 0 ? value.shiftLeft(shift) : value.shiftRight(-shift);
+			}
+			final int index = 2 * (q - MIN_POWER);
+			table[index] = value.shiftRight(64).longValue();
+			table[index + 1] = value.longValue();
+		}
+		return table;
+	}
+}
@@ -50,4 +50,13 @@ public interface PrimitiveColumn<ArrayType, BaseType> extends Column<BaseType>,
 	/** Fills the column with the values in the given array. */
 	void fill(ArrayType values, int offset);
 
+	/**
+	 * Gets the number of rows whose values are missing, i.e., which were set to
+	 * {@code null}. The backing array holds a placeholder value for such rows:
+	 * NaN for floating point columns, and zero or {@code false} otherwise.
+	 */
+	default int getNullCount() {
+		return 0;
+	}
+
 }
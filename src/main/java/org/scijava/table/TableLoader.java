@@ -184,14 +184,13 @@ public class TableLoader {
 		tok.whitespaceChars(44, 44);
 		tok.whitespaceChars(127, 255);
 
+		final NumberParser numbers = new NumberParser();
 		int row = 0, col = 0;
 		while (tok.nextToken() != StreamTokenizer.TT_EOF) {
 			if (tok.ttype == StreamTokenizer.TT_WORD) {
 				double value;
-				try {
-					value = Double.parseDouble(tok.sval);
-				}
-				catch (NumberFormatException e) {
+				if (numbers.parseDouble(tok.sval)) value = numbers.doubleValue();
+				else {
 					value = Double.NaN;
 					if (row == 0) values.setColumnHeader(col, tok.sval);
 				}
@@ -228,6 +228,28 @@ public final class Tables {
 		};
 	}
 
+	/**
+	 * Replaces each column of the given table with the narrowest primitive
+	 * column able to hold its values, as determined by
+	 * {@link Columns#compact(Column)}. Boxed values take several times the
+	 * memory of primitives, so this is worthwhile for large tables which are no
+	 * longer going to receive values of other types.
+	 *
+	 * @param table The table whose columns should be compacted.
+	 * @return The number of columns which were replaced.
+	 */
+	public static int compact(final GenericTable table) {
+		int count = 0;
+		for (int c = 0; c < table.getColumnCount(); c++) {
+			final Column<?> column = table.get(c);
+			final Column<?> compact = Columns.compact(column);
+			if (compact == column) continue;
+			table.set(c, compact);
+			count++;
+		}
+		return count;
+	}
+
 	// -- Internal methods --
 
 	/**
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.expression;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.scijava.parsington.ExpressionParser;
+import org.scijava.parsington.Function;
+import org.scijava.parsington.SyntaxTree;
+import org.scijava.parsington.Variable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.Table;
+
+/**
+ * A formula over the columns of a table, such as {@code Mean/Area*1000} or
+ * {@code log(IntDen)}, used to derive a new {@link DoubleColumn}.
+ * <p>
+ * The formula is parsed once, by {@link #parse(String)}. Variables refer to
+ * column headers; headers which are not valid identifiers can be written
+ * between backquotes, e.g. {@code `Mean (px)` * 2}. The constants {@code pi}
+ * and {@code e} are available unless shadowed by a column.
+ * </p>
+ * <p>
+ * Supported are the arithmetic operators {@code + - * / % ^}, comparisons and
+ * logical operators (yielding 1 or 0), the conditional {@code a ? b : c}, and
+ * the functions {@code abs sqrt cbrt exp log ln log10 sin cos tan asin acos
+ * atan floor ceil round signum} and {@code min max pow atan2}.
+ * </p>
+ * <p>
+ * To evaluate the formula, it is first {@link #compile compiled} against a
+ * particular table, which resolves the headers to columns once and builds an
+ * evaluator working directly on the primitive column arrays.
+ * </p>
+ */
+public final class ColumnExpression {
+
+	private final String formula;
+	private final SyntaxTree tree;
+	private final Map<String, String> quoted;
+	private final Set<String> columns;
+
+	private ColumnExpression(final String formula, final SyntaxTree tree,
+		final Map<String, String> quoted)
+	{
+		this.formula = formula;
+		this.tree = tree;
+		this.quoted = quoted;
+		final Set<String> names = new LinkedHashSet<>();
+		collectVariables(tree, names);
+		this.columns = Collections.unmodifiableSet(names);
+	}
+
+	/**
+	 * Parses the given formula.
+	 *
+	 * @throws IllegalArgumentException if the formula is malformed
+	 */
+	public static ColumnExpression parse(final String formula) {
+		final Map<String, String> quoted = new HashMap<>();
+		// NB: Backquoted headers are replaced by placeholder identifiers, with a
+		// prefix chosen not to clash with anything in the formula.
+		String prefix = "column";
+		while (formula.contains(prefix))
+			prefix = "q" + prefix;
+		final StringBuilder sb = new StringBuilder();
+		int i = 0;
+		while (i < formula.length()) {
+			final char c = formula.charAt(i);
+			if (c != '`') {
+				sb.append(c);
+				i++;
+				continue;
+			}
+			final int end = formula.indexOf('`', i + 1);
+			if (end < 0) {
+				throw new IllegalArgumentException("Unbalanced backquote at position " +
+					i + ": " + formula);
+			}
+			final String name = prefix + quoted.size();
+			quoted.put(name, formula.substring(i + 1, end));
+			sb.append(name);
+			i = end + 1;
+		}
+		final SyntaxTree tree = new ExpressionParser().parseTree(sb.toString());
+		if (tree == null) {
+			throw new IllegalArgumentException("Empty expression: " + formula);
+		}
+		return new ColumnExpression(formula, tree, quoted);
+	}
+
+	/** Gets the formula this expression was parsed from. */
+	public String getFormula() {
+		return formula;
+	}
+
+	/**
+	 * Gets the names referenced by the formula: column headers, as well as any
+	 * constants.
+	 */
+	public Set<String> getVariables() {
+		return columns;
+	}
+
+	/**
+	 * Binds this expression to the columns of the given table.
+	 *
+	 * @throws IllegalArgumentException if the formula references a column the
+	 *           table lacks, or an unsupported operator or function
+	 */
+	public CompiledExpression compile(final Table<?, ?> table) {
+		return new CompiledExpression(new ExpressionCompiler(this, table)
+			.compile(), table.getRowCount());
+	}
+
+	/**
+	 * Evaluates this expression for every row of the given table.
+	 *
+	 * @return A new column, with the formula as its header.
+	 */
+	public DoubleColumn evaluate(final Table<?, ?> table) {
+		return compile(table).evaluate(formula);
+	}
+
+	@Override
+	public String toString() {
+		return formula;
+	}
+
+	// -- Internal methods --
+
+	SyntaxTree tree() {
+		return tree;
+	}
+
+	/** Gets the column header the given variable refers to. */
+	String header(final String variable) {
+		final String header = quoted.get(variable);
+		return header == null ? variable : header;
+	}
+
+	// -- Helper methods --
+
+	private void collectVariables(final SyntaxTree node, final Set<String> names)
+	{
+		final Object token = node.token();
+		if (token instanceof Variable) {
+			names.add(header(((Variable) token).getToken()));
+			return;
+		}
+		// NB: Skip the name of the function, but not its arguments.
+		final int first = token instanceof Function ? 1 : 0;
+		for (int i = first; i < node.count(); i++)
+			collectVariables(node.child(i), names);
+	}
+}
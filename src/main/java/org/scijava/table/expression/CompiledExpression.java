@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.expression;
+
+import java.util.stream.IntStream;
+
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.expression.Kernel.Scratch;
+
+/**
+ * A {@link ColumnExpression} bound to the columns of a particular table.
+ * <p>
+ * Rows are evaluated in blocks, each operation of the formula running as a
+ * tight loop over the block. The compiled expression reads the columns'
+ * current storage, so it must be recompiled after the table's columns are
+ * replaced or resized.
+ * </p>
+ */
+public final class CompiledExpression {
+
+	/** Number of rows evaluated together. */
+	static final int BLOCK_SIZE = 4096;
+
+	private final Kernel kernel;
+	private final int rowCount;
+
+	CompiledExpression(final Kernel kernel, final int rowCount) {
+		this.kernel = kernel;
+		this.rowCount = rowCount;
+	}
+
+	/** Gets the number of rows of the table this expression is bound to. */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/** Evaluates the expression for a single row. */
+	public double evaluate(final int row) {
+		checkRows(row, 1);
+		final double[] result = new double[1];
+		kernel.eval(row, 1, result, 0, new Scratch(1));
+		return result[0];
+	}
+
+	/**
+	 * Evaluates the expression for {@code count} rows starting at
+	 * {@code start}, storing the results into {@code out} starting at
+	 * {@code offset}.
+	 */
+	public void evaluate(final int start, final int count, final double[] out,
+		final int offset)
+	{
+		checkRows(start, count);
+		final Scratch scratch = new Scratch(BLOCK_SIZE);
+		for (int s = 0; s < count; s += BLOCK_SIZE) {
+			final int n = Math.min(BLOCK_SIZE, count - s);
+			kernel.eval(start + s, n, out, offset + s, scratch);
+		}
+	}
+
+	/**
+	 * Evaluates the expression for every row.
+	 *
+	 * @param header The header of the resulting column.
+	 * @return A new column holding the results.
+	 */
+	public DoubleColumn evaluate(final String header) {
+		return evaluate(header, false);
+	}
+
+	/**
+	 * Evaluates the expression for every row, optionally splitting the rows
+	 * across all available processors.
+	 *
+	 * @param header The header of the resulting column.
+	 * @param parallel Whether to evaluate blocks of rows concurrently.
+	 * @return A new column holding the results.
+	 */
+	public DoubleColumn evaluate(final String header, final boolean parallel) {
+		final double[] values = new double[rowCount];
+		if (parallel && rowCount > BLOCK_SIZE) {
+			final ThreadLocal<Scratch> scratch = //
+				ThreadLocal.withInitial(() -> new Scratch(BLOCK_SIZE));
+			final int blocks = (rowCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			IntStream.range(0, blocks).parallel().forEach(b -> {
+				final int start = b * BLOCK_SIZE;
+				final int n = Math.min(BLOCK_SIZE, rowCount - start);
+				kernel.eval(start, n, values, start, scratch.get());
+			});
+		}
+		else evaluate(0, rowCount, values, 0);
+		final DoubleColumn column = new DoubleColumn(header);
+		column.fill(values);
+		return column;
+	}
+
+	// -- Helper methods --
+
+	private void checkRows(final int start, final int count) {
+		if (start < 0 || count < 0 || start + count > rowCount) {
+			throw new IndexOutOfBoundsException("Invalid rows: " + start + " - " +
+				(start + count - 1));
+		}
+	}
+}
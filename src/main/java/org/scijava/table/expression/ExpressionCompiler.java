@@ -0,0 +1,416 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.expression;
+
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntToDoubleFunction;
+
+import org.scijava.parsington.Function;
+import org.scijava.parsington.Group;
+import org.scijava.parsington.Operator;
+import org.scijava.parsington.SyntaxTree;
+import org.scijava.parsington.Variable;
+import org.scijava.table.ByteColumn;
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.FloatColumn;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.ShortColumn;
+import org.scijava.table.Table;
+import org.scijava.table.expression.Kernel.Constant;
+
+/**
+ * Compiles the syntax tree of a {@link ColumnExpression} into a tree of
+ * {@link Kernel}s bound to the columns of a particular table.
+ * <p>
+ * Every kernel processes a whole block of rows with a tight loop over
+ * primitive arrays. Subexpressions without column references are folded into
+ * constants, and binary operations with a constant operand get dedicated
+ * loops.
+ * </p>
+ */
+final class ExpressionCompiler {
+
+	private final ColumnExpression expression;
+	private final Table<?, ?> table;
+
+	ExpressionCompiler(final ColumnExpression expression,
+		final Table<?, ?> table)
+	{
+		this.expression = expression;
+		this.table = table;
+	}
+
+	Kernel compile() {
+		return compile(expression.tree());
+	}
+
+	// -- Helper methods --
+
+	private Kernel compile(final SyntaxTree tree) {
+		final Object token = tree.token();
+		if (token instanceof Number) {
+			return new Constant(((Number) token).doubleValue());
+		}
+		if (token instanceof Variable) return variable(((Variable) token)
+			.getToken());
+		if (token instanceof Function) {
+			final String name = ((Variable) tree.child(0).token()).getToken();
+			final SyntaxTree args = tree.child(1);
+			final Kernel[] kernels = new Kernel[args.count()];
+			for (int i = 0; i < kernels.length; i++)
+				kernels[i] = compile(args.child(i));
+			return function(name, kernels);
+		}
+		if (token instanceof Group) {
+			if (tree.count() != 1) throw unsupported(token);
+			return compile(tree.child(0));
+		}
+		if (token instanceof Operator) {
+			final String symbol = ((Operator) token).getToken();
+			if (tree.count() == 1) return unary(symbol, compile(tree.child(0)));
+			if (symbol.equals("?")) {
+				final SyntaxTree choices = tree.child(1);
+				if (!(choices.token() instanceof Operator) || //
+					!((Operator) choices.token()).getToken().equals(":"))
+				{
+					throw unsupported(token);
+				}
+				return conditional(compile(tree.child(0)), compile(choices.child(0)),
+					compile(choices.child(1)));
+			}
+			if (tree.count() == 2) {
+				return binary(symbol, compile(tree.child(0)), compile(tree.child(1)));
+			}
+		}
+		throw unsupported(token);
+	}
+
+	private Kernel variable(final String name) {
+		final String header = expression.header(name);
+		final int col = table.getColumnIndex(header);
+		if (col >= 0) return column(table.get(col));
+		if (header.equals(name)) {
+			if (name.equals("pi")) return new Constant(Math.PI);
+			if (name.equals("e")) return new Constant(Math.E);
+		}
+		throw new IllegalArgumentException("No such column: " + header);
+	}
+
+	private static Kernel column(final Column<?> column) {
+		// NB: Missing values must be read as NaN, not as their placeholders.
+		if (Columns.hasNulls(column)) return values(column);
+		if (column instanceof DoubleColumn) {
+			final double[] a = ((DoubleColumn) column).getArray();
+			return (start, count, out, offset, scratch) -> System.arraycopy(a, start, out,
+				offset, count);
+		}
+		if (column instanceof FloatColumn) {
+			final float[] a = ((FloatColumn) column).getArray();
+			return (start, count, out, offset, scratch) -> {
+				for (int i = 0; i < count; i++)
+					out[offset + i] = a[start + i];
+			};
+		}
+		if (column instanceof LongColumn) {
+			final long[] a = ((LongColumn) column).getArray();
+			return (start, count, out, offset, scratch) -> {
+				for (int i = 0; i < count; i++)
+					out[offset + i] = a[start + i];
+			};
+		}
+		if (column instanceof IntColumn) {
+			final int[] a = ((IntColumn) column).getArray();
+			return (start, count, out, offset, scratch) -> {
+				for (int i = 0; i < count; i++)
+					out[offset + i] = a[start + i];
+			};
+		}
+		if (column instanceof ShortColumn) {
+			final short[] a = ((ShortColumn) column).getArray();
+			return (start, count, out, offset, scratch) -> {
+				for (int i = 0; i < count; i++)
+					out[offset + i] = a[start + i];
+			};
+		}
+		if (column instanceof ByteColumn) {
+			final byte[] a = ((ByteColumn) column).getArray();
+			return (start, count, out, offset, scratch) -> {
+				for (int i = 0; i < count; i++)
+					out[offset + i] = a[start + i];
+			};
+		}
+		return values(column);
+	}
+
+	private static Kernel values(final Column<?> column) {
+		final IntToDoubleFunction values = Columns.doubleValues(column);
+		return (start, count, out, offset, scratch) -> {
+			for (int i = 0; i < count; i++)
+				out[offset + i] = values.applyAsDouble(start + i);
+		};
+	}
+
+	private static Kernel unary(final String symbol, final Kernel operand) {
+		switch (symbol) {
+			case "+":
+				return operand;
+			case "-":
+				return map(operand, v -> -v);
+			case "!":
+				return map(operand, v -> v == 0 ? 1 : 0);
+			default:
+				throw new IllegalArgumentException("Unsupported operator: " + symbol);
+		}
+	}
+
+	private static Kernel binary(final String symbol, final Kernel left,
+		final Kernel right)
+	{
+		final Op op = Op.of(symbol);
+		if (left instanceof Constant && right instanceof Constant) {
+			return new Constant(op.apply(((Constant) left).value,
+				((Constant) right).value));
+		}
+		if (right instanceof Constant) {
+			final double c = ((Constant) right).value;
+			switch (op) {
+				case ADD:
+					return map(left, v -> v + c);
+				case SUB:
+					return map(left, v -> v - c);
+				case MUL:
+					return (start, count, out, offset, scratch) -> {
+						left.eval(start, count, out, offset, scratch);
+						for (int i = 0; i < count; i++)
+							out[offset + i] *= c;
+					};
+				case DIV:
+					return (start, count, out, offset, scratch) -> {
+						left.eval(start, count, out, offset, scratch);
+						for (int i = 0; i < count; i++)
+							out[offset + i] /= c;
+					};
+				default:
+					return map(left, v -> op.apply(v, c));
+			}
+		}
+		return (start, count, out, offset, scratch) -> {
+			left.eval(start, count, out, offset, scratch);
+			final double[] tmp = scratch.acquire();
+			right.eval(start, count, tmp, 0, scratch);
+			switch (op) {
+				case ADD:
+					for (int i = 0; i < count; i++)
+						out[offset + i] += tmp[i];
+					break;
+				case SUB:
+					for (int i = 0; i < count; i++)
+						out[offset + i] -= tmp[i];
+					break;
+				case MUL:
+					for (int i = 0; i < count; i++)
+						out[offset + i] *= tmp[i];
+					break;
+				case DIV:
+					for (int i = 0; i < count; i++)
+						out[offset + i] /= tmp[i];
+					break;
+				default:
+					for (int i = 0; i < count; i++)
+						out[offset + i] = op.apply(out[offset + i], tmp[i]);
+			}
+			scratch.release();
+		};
+	}
+
+	private static Kernel conditional(final Kernel condition,
+		final Kernel ifTrue, final Kernel ifFalse)
+	{
+		if (condition instanceof Constant) {
+			return ((Constant) condition).value != 0 ? ifTrue : ifFalse;
+		}
+		return (start, count, out, offset, scratch) -> {
+			condition.eval(start, count, out, offset, scratch);
+			final double[] a = scratch.acquire();
+			ifTrue.eval(start, count, a, 0, scratch);
+			final double[] b = scratch.acquire();
+			ifFalse.eval(start, count, b, 0, scratch);
+			for (int i = 0; i < count; i++)
+				out[offset + i] = out[offset + i] != 0 ? a[i] : b[i];
+			scratch.release();
+			scratch.release();
+		};
+	}
+
+	private static Kernel function(final String name, final Kernel[] args) {
+		if (args.length == 1) {
+			final Kernel arg = args[0];
+			switch (name) {
+				case "abs":
+					return map(arg, Math::abs);
+				case "sqrt":
+					return map(arg, Math::sqrt);
+				case "cbrt":
+					return map(arg, Math::cbrt);
+				case "exp":
+					return map(arg, Math::exp);
+				case "log":
+				case "ln":
+					return map(arg, Math::log);
+				case "log10":
+					return map(arg, Math::log10);
+				case "sin":
+					return map(arg, Math::sin);
+				case "cos":
+					return map(arg, Math::cos);
+				case "tan":
+					return map(arg, Math::tan);
+				case "asin":
+					return map(arg, Math::asin);
+				case "acos":
+					return map(arg, Math::acos);
+				case "atan":
+					return map(arg, Math::atan);
+				case "floor":
+					return map(arg, Math::floor);
+				case "ceil":
+					return map(arg, Math::ceil);
+				case "round":
+					return map(arg, Math::rint);
+				case "signum":
+					return map(arg, Math::signum);
+			}
+		}
+		if (args.length == 2) {
+			switch (name) {
+				case "min":
+					return binary(Op.MIN, args[0], args[1]);
+				case "max":
+					return binary(Op.MAX, args[0], args[1]);
+				case "pow":
+					return binary(Op.POW, args[0], args[1]);
+				case "atan2":
+					return binary(Op.ATAN2, args[0], args[1]);
+			}
+		}
+		throw new IllegalArgumentException("Unsupported function: " + name + "/" +
+			args.length);
+	}
+
+	private static Kernel binary(final Op op, final Kernel left,
+		final Kernel right)
+	{
+		return binary(op.symbol, left, right);
+	}
+
+	/** Applies an element-wise function to the results of a kernel. */
+	private static Kernel map(final Kernel operand,
+		final DoubleUnaryOperator f)
+	{
+		if (operand instanceof Constant) {
+			return new Constant(f.applyAsDouble(((Constant) operand).value));
+		}
+		return (start, count, out, offset, scratch) -> {
+			operand.eval(start, count, out, offset, scratch);
+			for (int i = 0; i < count; i++)
+				out[offset + i] = f.applyAsDouble(out[offset + i]);
+		};
+	}
+
+	private static IllegalArgumentException unsupported(final Object token) {
+		return new IllegalArgumentException("Unsupported expression element: " +
+			token);
+	}
+
+	/** Binary operations. Comparisons and logical operations yield 1 or 0. */
+	private enum Op {
+			ADD("+"), SUB("-"), MUL("*"), DIV("/"), MOD("%"), POW("^"), LT("<"),
+			GT(">"), LE("<="), GE(">="), EQ("=="), NE("!="), AND("&&"), OR("||"),
+			MIN("min"), MAX("max"), ATAN2("atan2");
+
+		private final String symbol;
+
+		private Op(final String symbol) {
+			this.symbol = symbol;
+		}
+
+		static Op of(final String symbol) {
+			for (final Op op : values()) {
+				if (op.symbol.equals(symbol)) return op;
+			}
+			throw new IllegalArgumentException("Unsupported operator: " + symbol);
+		}
+
+		double apply(final double a, final double b) {
+			switch (this) {
+				case ADD:
+					return a + b;
+				case SUB:
+					return a - b;
+				case MUL:
+					return a * b;
+				case DIV:
+					return a / b;
+				case MOD:
+					return a % b;
+				case POW:
+					return Math.pow(a, b);
+				case LT:
+					return a < b ? 1 : 0;
+				case GT:
+					return a > b ? 1 : 0;
+				case LE:
+					return a <= b ? 1 : 0;
+				case GE:
+					return a >= b ? 1 : 0;
+				case EQ:
+					return a == b ? 1 : 0;
+				case NE:
+					return a != b ? 1 : 0;
+				case AND:
+					return a != 0 && b != 0 ? 1 : 0;
+				case OR:
+					return a != 0 || b != 0 ? 1 : 0;
+				case MIN:
+					return Math.min(a, b);
+				case MAX:
+					return Math.max(a, b);
+				case ATAN2:
+					return Math.atan2(a, b);
+				default:
+					throw new IllegalStateException("Unknown operator: " + this);
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.expression;
+
+import java.util.Arrays;
+
+/**
+ * A compiled node of a {@link ColumnExpression}, evaluating a block of
+ * consecutive rows at a time.
+ */
+@FunctionalInterface
+interface Kernel {
+
+	/**
+	 * Evaluates rows {@code [start, start + count)} into
+	 * {@code out[offset, offset + count)}.
+	 *
+	 * @param scratch Temporary buffers for intermediate results; each holds up
+	 *          to one block of rows.
+	 */
+	void eval(int start, int count, double[] out, int offset, Scratch scratch);
+
+	/** A kernel producing the same value for every row. */
+	final class Constant implements Kernel {
+
+		final double value;
+
+		Constant(final double value) {
+			this.value = value;
+		}
+
+		@Override
+		public void eval(final int start, final int count, final double[] out,
+			final int offset, final Scratch scratch)
+		{
+			Arrays.fill(out, offset, offset + count, value);
+		}
+	}
+
+	/**
+	 * A stack of reusable block buffers. Each thread evaluating an expression
+	 * needs its own instance.
+	 */
+	final class Scratch {
+
+		private final int blockSize;
+		private double[][] buffers = new double[4][];
+		private int depth;
+
+		Scratch(final int blockSize) {
+			this.blockSize = blockSize;
+		}
+
+		/** Borrows a buffer; must be paired with {@link #release()}. */
+		double[] acquire() {
+			if (depth == buffers.length) {
+				buffers = Arrays.copyOf(buffers, 2 * depth);
+			}
+			if (buffers[depth] == null) buffers[depth] = new double[blockSize];
+			return buffers[depth++];
+		}
+
+		/** Returns the most recently borrowed buffer. */
+		void release() {
+			depth--;
+		}
+	}
+}
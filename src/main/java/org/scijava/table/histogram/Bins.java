@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.histogram;
+
+import java.util.Arrays;
+
+/**
+ * The bins of a {@link Histogram}: uniform bins of equal width, logarithmic
+ * bins of equal width on a log scale, or bins with explicit edges.
+ * <p>
+ * Each bin includes its lower edge; the last bin also includes its upper
+ * edge. Values outside the bins are counted as underflow or overflow.
+ * </p>
+ */
+public final class Bins {
+
+	private final int count;
+	private final double min;
+	private final double max;
+
+	/** Edges of the bins, or null for uniform and logarithmic bins. */
+	private final double[] edges;
+
+	/** Whether the bins are uniform on a log scale. */
+	private final boolean log;
+
+	/** Offset and scale mapping (log) values to bin coordinates. */
+	private final double offset, scale;
+
+	private Bins(final int count, final double min, final double max,
+		final double[] edges, final boolean log)
+	{
+		if (count < 1) throw new IllegalArgumentException("Invalid bin count: " +
+			count);
+		if (!(min < max) || Double.isInfinite(min) || Double.isInfinite(max)) {
+			throw new IllegalArgumentException("Invalid range: [" + min + ", " +
+				max + "]");
+		}
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.edges = edges;
+		this.log = log;
+		offset = log ? Math.log(min) : min;
+		scale = count / ((log ? Math.log(max) : max) - offset);
+	}
+
+	/** Creates {@code count} bins of equal width spanning {@code [min, max]}. */
+	public static Bins uniform(final double min, final double max,
+		final int count)
+	{
+		return new Bins(count, min, max, null, false);
+	}
+
+	/**
+	 * Creates {@code count} bins spanning {@code [min, max]}, of equal width on
+	 * a log scale. Values up to zero count as underflow.
+	 */
+	public static Bins log(final double min, final double max,
+		final int count)
+	{
+		if (!(min > 0)) throw new IllegalArgumentException("Invalid minimum: " +
+			min);
+		return new Bins(count, min, max, null, true);
+	}
+
+	/**
+	 * Creates bins with the given edges.
+	 *
+	 * @param edges The strictly increasing edges of the bins: the lower edge of
+	 *          each bin, followed by the upper edge of the last one.
+	 */
+	public static Bins edges(final double... edges) {
+		if (edges.length < 2) {
+			throw new IllegalArgumentException("At least two edges are needed");
+		}
+		for (int i = 1; i < edges.length; i++) {
+			if (!(edges[i - 1] < edges[i])) {
+				throw new IllegalArgumentException("Edges are not increasing: " +
+					Arrays.toString(edges));
+			}
+		}
+		return new Bins(edges.length - 1, edges[0], edges[edges.length - 1],
+			edges.clone(), false);
+	}
+
+	/** Gets the number of bins. */
+	public int getCount() {
+		return count;
+	}
+
+	/** Gets the lower edge of the first bin. */
+	public double getMin() {
+		return min;
+	}
+
+	/** Gets the upper edge of the last bin. */
+	public double getMax() {
+		return max;
+	}
+
+	/** Gets the lower edge of the given bin. */
+	public double getLowerEdge(final int bin) {
+		return edge(bin);
+	}
+
+	/** Gets the upper edge of the given bin. */
+	public double getUpperEdge(final int bin) {
+		return edge(bin + 1);
+	}
+
+	/** Gets the edges of all bins, from the lower edge of the first bin. */
+	public double[] getEdges() {
+		final double[] result = new double[count + 1];
+		for (int i = 0; i <= count; i++)
+			result[i] = edge(i);
+		return result;
+	}
+
+	/**
+	 * Gets the bin of the given value.
+	 *
+	 * @return The index of the bin, or -1 if the value is outside of the bins or
+	 *         NaN.
+	 */
+	public int indexOf(final double value) {
+		final int slot = slot(value);
+		return slot >= 1 && slot <= count ? slot - 1 : -1;
+	}
+
+	@Override
+	public String toString() {
+		return (edges != null ? "edges" : log ? "log" : "uniform") + count +
+			"[" + min + ", " + max + "]";
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Gets the slot counting the given value: 0 for underflow, {@code 1} to
+	 * {@code count} for the bins, {@code count + 1} for overflow and
+	 * {@code count + 2} for NaN.
+	 */
+	int slot(final double value) {
+		if (edges != null) return edgeSlot(value);
+		// NB: Clamping with min/max compiles to branch-free code. Values below
+		// the range end up at -1, values at or above it at count.
+		final double v = log ? Math.log(Math.max(value, 0)) : value;
+		final double x = Math.max(-1, Math.min((v - offset) * scale, count));
+		final int slot = (int) (x + 1);
+		return value != value ? count + 2 : value == max ? count : slot;
+	}
+
+	// -- Helper methods --
+
+	private double edge(final int i) {
+		if (i < 0 || i > count) {
+			throw new IndexOutOfBoundsException("Invalid bin: " + i);
+		}
+		if (edges != null) return edges[i];
+		if (i == count) return max;
+		final double e = offset + i / scale;
+		return log ? Math.exp(e) : e;
+	}
+
+	private int edgeSlot(final double value) {
+		if (value != value) return count + 2;
+		// NB: Adding zero turns -0.0 into 0.0, which binarySearch considers larger.
+		final int index = Arrays.binarySearch(edges, value + 0.0);
+		if (index >= 0) return Math.min(index, count - 1) + 1;
+		// NB: The insertion point is the slot: 0 below the first edge, count + 1
+		// above the last one.
+		return -index - 1;
+	}
+}
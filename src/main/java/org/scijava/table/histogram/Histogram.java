@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.histogram;
+
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.FloatColumn;
+import org.scijava.table.IntColumn;
+
+/**
+ * A histogram of the values of a numeric {@link Column}.
+ * <p>
+ * Large columns are split into blocks of rows which are counted in parallel,
+ * each into its own array of bins, and the arrays are then summed. Values
+ * outside the bins are counted separately as underflow and overflow, and
+ * {@link Double#NaN} and {@code null} values as NaNs.
+ * </p>
+ */
+public final class Histogram {
+
+	/** Number of rows counted by each parallel task. */
+	static final int BLOCK_SIZE = 1 << 16;
+
+	private final Bins bins;
+
+	/** Counts of {@link Bins#slot} values. */
+	private final long[] slots;
+
+	private Histogram(final Bins bins, final long[] slots) {
+		this.bins = bins;
+		this.slots = slots;
+	}
+
+	/**
+	 * Computes the histogram of the given numeric column.
+	 *
+	 * @throws IllegalArgumentException if the column does not hold numbers
+	 */
+	public static Histogram of(final Column<?> column, final Bins bins) {
+		final int size = column.size();
+		final int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final IntToDoubleFunction values = Columns.doubleValues(column);
+		final long[] slots = IntStream.range(0, blocks).parallel() //
+			.mapToObj(b -> count(column, values, bins, b * BLOCK_SIZE, Math.min(
+				size, (b + 1) * BLOCK_SIZE))) //
+			.reduce(Histogram::add) //
+			.orElseGet(() -> new long[bins.getCount() + 3]);
+		return new Histogram(bins, slots);
+	}
+
+	/** Gets the bins of the histogram. */
+	public Bins getBins() {
+		return bins;
+	}
+
+	/** Gets the number of values in the given bin. */
+	public long getCount(final int bin) {
+		if (bin < 0 || bin >= bins.getCount()) {
+			throw new IndexOutOfBoundsException("Invalid bin: " + bin);
+		}
+		return slots[bin + 1];
+	}
+
+	/** Gets the numbers of values in each bin. */
+	public long[] getCounts() {
+		final long[] counts = new long[bins.getCount()];
+		System.arraycopy(slots, 1, counts, 0, counts.length);
+		return counts;
+	}
+
+	/** Gets the number of values below the first bin. */
+	public long getUnderflow() {
+		return slots[0];
+	}
+
+	/** Gets the number of values above the last bin. */
+	public long getOverflow() {
+		return slots[bins.getCount() + 1];
+	}
+
+	/** Gets the number of NaN and {@code null} values. */
+	public long getNaNCount() {
+		return slots[bins.getCount() + 2];
+	}
+
+	/** Gets the number of values within the bins. */
+	public long getTotal() {
+		long total = 0;
+		for (int s = 1; s <= bins.getCount(); s++)
+			total += slots[s];
+		return total;
+	}
+
+	// -- Helper methods --
+
+	private static long[] count(final Column<?> column,
+		final IntToDoubleFunction values, final Bins bins, final int from,
+		final int to)
+	{
+		final long[] slots = new long[bins.getCount() + 3];
+		final boolean direct = !Columns.hasNulls(column);
+		if (direct && column instanceof DoubleColumn) {
+			final double[] a = ((DoubleColumn) column).getArray();
+			for (int r = from; r < to; r++)
+				slots[bins.slot(a[r])]++;
+		}
+		else if (direct && column instanceof FloatColumn) {
+			final float[] a = ((FloatColumn) column).getArray();
+			for (int r = from; r < to; r++)
+				slots[bins.slot(a[r])]++;
+		}
+		else if (direct && column instanceof IntColumn) {
+			final int[] a = ((IntColumn) column).getArray();
+			for (int r = from; r < to; r++)
+				slots[bins.slot(a[r])]++;
+		}
+		else {
+			for (int r = from; r < to; r++)
+				slots[bins.slot(values.applyAsDouble(r))]++;
+		}
+		return slots;
+	}
+
+	/** Adds the counts of {@code b} to those of {@code a}. */
+	static long[] add(final long[] a, final long[] b) {
+		for (int i = 0; i < a.length; i++)
+			a[i] += b[i];
+		return a;
+	}
+}
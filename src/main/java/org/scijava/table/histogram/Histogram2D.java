@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.histogram;
+
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+
+/**
+ * A two-dimensional histogram of the values of two numeric {@link Column}s of
+ * the same table, e.g. for density plots.
+ * <p>
+ * Each row is counted in the bin of its pair of values. Rows with a value
+ * outside the bins, or NaN or {@code null} in either column, are only counted
+ * by {@link #getOutsideCount()}. Like {@link Histogram}, large columns are
+ * counted in parallel.
+ * </p>
+ */
+public final class Histogram2D {
+
+	private final Bins xBins, yBins;
+
+	/** Counts of the bins, row by row of {@link #yBins}. */
+	private final long[] counts;
+
+	private Histogram2D(final Bins xBins, final Bins yBins, final long[] counts) {
+		this.xBins = xBins;
+		this.yBins = yBins;
+		this.counts = counts;
+	}
+
+	/**
+	 * Computes the 2D histogram of the given numeric columns.
+	 *
+	 * @throws IllegalArgumentException if the columns do not hold numbers, or
+	 *           differ in size
+	 */
+	public static Histogram2D of(final Column<?> x, final Column<?> y,
+		final Bins xBins, final Bins yBins)
+	{
+		if (x.size() != y.size()) {
+			throw new IllegalArgumentException("Column sizes differ: " + x.size() +
+				" != " + y.size());
+		}
+		final int size = x.size();
+		final int block = Histogram.BLOCK_SIZE;
+		final int blocks = (size + block - 1) / block;
+		final IntToDoubleFunction xValues = Columns.doubleValues(x);
+		final IntToDoubleFunction yValues = Columns.doubleValues(y);
+		final int length = xBins.getCount() * yBins.getCount() + 1;
+		final long[] counts = IntStream.range(0, blocks).parallel() //
+			.mapToObj(b -> count(xValues, yValues, xBins, yBins, b * block, Math.min(
+				size, (b + 1) * block))) //
+			.reduce(Histogram::add) //
+			.orElseGet(() -> new long[length]);
+		return new Histogram2D(xBins, yBins, counts);
+	}
+
+	/** Gets the bins along the first column. */
+	public Bins getXBins() {
+		return xBins;
+	}
+
+	/** Gets the bins along the second column. */
+	public Bins getYBins() {
+		return yBins;
+	}
+
+	/** Gets the number of rows in the given pair of bins. */
+	public long getCount(final int xBin, final int yBin) {
+		if (xBin < 0 || xBin >= xBins.getCount() || yBin < 0 || yBin >= yBins
+			.getCount())
+		{
+			throw new IndexOutOfBoundsException("Invalid bin: " + xBin + ", " +
+				yBin);
+		}
+		return counts[yBin * xBins.getCount() + xBin];
+	}
+
+	/** Gets the counts of all bins, indexed as {@code [yBin][xBin]}. */
+	public long[][] getCounts() {
+		final int nx = xBins.getCount();
+		final long[][] result = new long[yBins.getCount()][nx];
+		for (int yBin = 0; yBin < result.length; yBin++)
+			System.arraycopy(counts, yBin * nx, result[yBin], 0, nx);
+		return result;
+	}
+
+	/** Gets the number of rows outside of the bins, or with missing values. */
+	public long getOutsideCount() {
+		return counts[counts.length - 1];
+	}
+
+	// -- Helper methods --
+
+	private static long[] count(final IntToDoubleFunction xValues,
+		final IntToDoubleFunction yValues, final Bins xBins, final Bins yBins,
+		final int from, final int to)
+	{
+		final int nx = xBins.getCount(), ny = yBins.getCount();
+		final int outside = nx * ny;
+		final long[] counts = new long[outside + 1];
+		for (int r = from; r < to; r++) {
+			final int xSlot = xBins.slot(xValues.applyAsDouble(r)) - 1;
+			final int ySlot = yBins.slot(yValues.applyAsDouble(r)) - 1;
+			final boolean inside = xSlot >= 0 && xSlot < nx && ySlot >= 0 &&
+				ySlot < ny;
+			counts[inside ? ySlot * nx + xSlot : outside]++;
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,1089 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.scijava.io.AbstractIOPlugin;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleInputStream;
+import org.scijava.io.handle.DataHandleOutputStream;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.table.CharColumn;
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.PrimitiveColumn;
+import org.scijava.table.Table;
+import org.scijava.table.io.FlatBuffers.TableBuilder;
+import org.scijava.util.FileUtils;
+
+/**
+ * Plugin for reading/writing {@link Table}s in the
+ * <a href="https://arrow.apache.org/docs/format/Columnar.html">Apache Arrow
+ * IPC</a> formats: the file format, with the extensions {@code .arrow} and
+ * {@code .feather}, and the stream format, with the extension
+ * {@code .arrows}.
+ * <p>
+ * Signed integers, floating point numbers and booleans map to the matching
+ * primitive columns, and validity bitmaps to missing values. Unsigned
+ * integers widen to the next larger signed type, except for 64 bit ones,
+ * which keep their bits in a {@code long}. Strings, and dictionary-encoded
+ * values, are read into {@link GenericColumn}s; the rows of a dictionary
+ * share the instances of its values. Other types, and compressed record
+ * batches, are not supported.
+ * </p>
+ * <p>
+ * Files are memory-mapped, and their buffers bulk-copied into the columns.
+ * When writing, text columns with at most half as many distinct values as
+ * rows are dictionary-encoded. Row headers are kept in a column named
+ * {@value #INDEX_COLUMN}, as pandas does for its index.
+ * </p>
+ */
+@SuppressWarnings("rawtypes")
+@Plugin(type = TableIOPlugin.class)
+public class ArrowTableIOPlugin extends AbstractIOPlugin<Table> implements
+	TableIOPlugin
+{
+
+	@Parameter
+	private DataHandleService dataHandleService;
+
+	/** The name of the column holding the row headers. */
+	public static final String INDEX_COLUMN = "__index_level_0__";
+
+	private static final Set<String> FILE_EXTENSIONS = //
+		Collections.unmodifiableSet(new HashSet<>(//
+			Arrays.asList("arrow", "feather")));
+
+	private static final String STREAM_EXTENSION = "arrows";
+
+	private static final byte[] MAGIC = "ARROW1".getBytes(
+		StandardCharsets.US_ASCII);
+
+	private static final int CONTINUATION = 0xffffffff;
+
+	/** Number of rows written into each record batch. */
+	private static final int BATCH_SIZE = 1 << 16;
+
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// -- Metadata constants --
+
+	private static final short METADATA_V5 = 4;
+
+	private static final byte SCHEMA = 1, DICTIONARY_BATCH = 2,
+		RECORD_BATCH = 3;
+
+	private static final byte NULL = 1, INT = 2, FLOATING_POINT = 3,
+		BINARY = 4, UTF8 = 5, BOOL = 6, DECIMAL = 7, DATE = 8, TIME = 9,
+		TIMESTAMP = 10, INTERVAL = 11, LIST = 12, STRUCT = 13, UNION = 14,
+		FIXED_SIZE_BINARY = 15, FIXED_SIZE_LIST = 16, MAP = 17, DURATION = 18,
+		LARGE_BINARY = 19, LARGE_UTF8 = 20, LARGE_LIST = 21,
+		RUN_END_ENCODED = 22;
+
+	private static final short SINGLE = 1, DOUBLE = 2;
+
+	/** Sizes of the structs describing nodes, buffers and blocks. */
+	private static final int NODE_SIZE = 16, BUFFER_SIZE = 16, BLOCK_SIZE = 24;
+
+	@Override
+	public boolean supportsOpen(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		final File file = ((FileLocation) source).getFile();
+		return file.exists() && supportsFile(file);
+	}
+
+	@Override
+	public boolean supportsSave(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		return supportsFile(((FileLocation) source).getFile());
+	}
+
+	@Override
+	public GenericTable open(final Location source, final TableIOOptions options)
+		throws IOException
+	{
+		TableIOOptions.rejectRowFilter(options.values, "Arrow");
+		final Messages messages = new Messages();
+		if (source instanceof FileLocation && isFile(((FileLocation) source)
+			.getFile()))
+		{
+			readFile(((FileLocation) source).getFile(), messages);
+		}
+		else {
+			try (final DataHandle<? extends Location> handle = //
+				dataHandleService.create(source))
+			{
+				if (!handle.exists()) throw new IOException("Cannot open source");
+				readStream(new BufferedInputStream(new DataHandleInputStream<>(
+					handle)), messages);
+			}
+		}
+		if (messages.schema == null) throw new IOException("No Arrow schema");
+		return decode(messages, options.values);
+	}
+
+	@Override
+	public void save(final Table<?, ?> table, final Location destination,
+		final TableIOOptions options) throws IOException
+	{
+		final List<OutputColumn> columns = new ArrayList<>();
+		for (int c = 0; c < table.getColumnCount(); c++) {
+			columns.add(new OutputColumn(table.getColumnHeader(c), Columns.compact(
+				(Column<?>) table.get(c))));
+		}
+		final int rowCount = table.getRowCount();
+		if (options.values.writeRowHeaders()) {
+			final GenericColumn headers = new GenericColumn(INDEX_COLUMN);
+			boolean any = false;
+			for (int row = 0; row < rowCount; row++) {
+				final String header = table.getRowHeader(row);
+				headers.add(header);
+				any |= header != null;
+			}
+			if (any) columns.add(new OutputColumn(INDEX_COLUMN, headers));
+		}
+		long dictionaryId = 0;
+		for (final OutputColumn column : columns) {
+			if (column.isText()) column.encode(dictionaryId++);
+		}
+
+		final boolean file = !STREAM_EXTENSION.equalsIgnoreCase(FileUtils
+			.getExtension(destination.getName()));
+		try (final DataHandle<Location> handle = //
+			dataHandleService.create(destination))
+		{
+			final CountingOutputStream out = new CountingOutputStream(
+				new BufferedOutputStream(new DataHandleOutputStream<>(handle),
+					1 << 16));
+			final List<long[]> dictionaryBlocks = new ArrayList<>();
+			final List<long[]> batchBlocks = new ArrayList<>();
+			if (file) {
+				out.write(MAGIC);
+				out.pad(2);
+			}
+			writeMessage(out, SCHEMA, schema(columns), null);
+			for (final OutputColumn column : columns) {
+				if (column.dictionary == null) continue;
+				final OutputColumn values = new OutputColumn(null, column.dictionary);
+				final Batch batch = new Batch(Collections.singletonList(values), 0,
+					values.column.size());
+				dictionaryBlocks.add(writeMessage(out, DICTIONARY_BATCH,
+					new TableBuilder().addLong(0, column.dictionaryId).addTable(1, batch
+						.metadata()), batch));
+			}
+			for (int start = 0; start < rowCount || start == 0; start +=
+				BATCH_SIZE)
+			{
+				final Batch batch = new Batch(columns, start, Math.min(rowCount,
+					start + BATCH_SIZE));
+				batchBlocks.add(writeMessage(out, RECORD_BATCH, batch.metadata(),
+					batch));
+			}
+			// end of stream
+			out.writeIntLE(CONTINUATION);
+			out.writeIntLE(0);
+			if (file) {
+				final byte[] footer = FlatBuffers.serialize(new TableBuilder()
+					.addShort(0, METADATA_V5).addTable(1, schema(columns)).addStructs(2,
+						blocks(dictionaryBlocks), dictionaryBlocks.size()).addStructs(3,
+							blocks(batchBlocks), batchBlocks.size()));
+				out.write(footer);
+				out.writeIntLE(footer.length);
+				out.write(MAGIC);
+			}
+			out.flush();
+			handle.setLength(out.position());
+		}
+	}
+
+	// -- Helper methods --
+
+	private boolean supportsFile(final File file) {
+		final String extension = FileUtils.getExtension(file).toLowerCase();
+		return FILE_EXTENSIONS.contains(extension) || STREAM_EXTENSION.equals(
+			extension);
+	}
+
+	/** Gets whether a file is in the Arrow file format, rather than a stream. */
+	private static boolean isFile(final File file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ))
+		{
+			if (channel.size() < 2 * MAGIC.length + 8) return false;
+			final byte[] magic = new byte[MAGIC.length];
+			map(channel, 0, MAGIC.length).get(magic);
+			return Arrays.equals(magic, MAGIC);
+		}
+	}
+
+	// -- Reading --
+
+	private static void readFile(final File file, final Messages messages)
+		throws IOException
+	{
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ))
+		{
+			final long size = channel.size();
+			final ByteBuffer tail = map(channel, size - 4 - MAGIC.length, 4 +
+				MAGIC.length);
+			final byte[] magic = new byte[MAGIC.length];
+			tail.position(4);
+			tail.get(magic);
+			final int footerLength = tail.getInt(0);
+			if (!Arrays.equals(magic, MAGIC) || footerLength <= 0 ||
+				footerLength > size - 4 - 2 * MAGIC.length)
+			{
+				throw new IOException("Corrupt Arrow file footer");
+			}
+			final FlatBuffers.Table footer = FlatBuffers.Table.root(map(channel,
+				size - 4 - MAGIC.length - footerLength, footerLength));
+			messages.schema = footer.getTable(1);
+			for (int i = 0; i < footer.getVectorLength(2); i++)
+				messages.dictionaries.add(readMessage(channel, footer, 2, i));
+			for (int i = 0; i < footer.getVectorLength(3); i++)
+				messages.batches.add(readMessage(channel, footer, 3, i));
+		}
+	}
+
+	/** Reads the message of a block listed in a file's footer. */
+	private static Message readMessage(final FileChannel channel,
+		final FlatBuffers.Table footer, final int field, final int index)
+		throws IOException
+	{
+		final long offset = footer.getStructLong(field, index, BLOCK_SIZE, 0);
+		final int metadataLength = footer.getStructInt(field, index, BLOCK_SIZE,
+			8);
+		final long bodyLength = footer.getStructLong(field, index, BLOCK_SIZE, 16);
+		if (offset < 0 || metadataLength < 8 || bodyLength < 0 ||
+			bodyLength > Integer.MAX_VALUE || offset + metadataLength +
+				bodyLength > channel.size())
+		{
+			throw new IOException("Corrupt Arrow file block");
+		}
+		final ByteBuffer metadata = map(channel, offset, metadataLength);
+		metadata.position(metadata.getInt(0) == CONTINUATION ? 8 : 4);
+		return new Message(FlatBuffers.Table.root(metadata), map(channel, offset +
+			metadataLength, bodyLength));
+	}
+
+	private static void readStream(final InputStream in,
+		final Messages messages) throws IOException
+	{
+		if (in.markSupported()) {
+			// skip the magic of the file format, whose messages form a stream
+			in.mark(8);
+			final byte[] magic = new byte[MAGIC.length];
+			if (in.read(magic) != magic.length || !Arrays.equals(magic, MAGIC)) {
+				in.reset();
+			}
+			else readFully(in, 2);
+		}
+		while (true) {
+			final byte[] prefix = new byte[4];
+			if (in.read(prefix, 0, 1) < 1) break;
+			readFully(in, prefix, 1, 3);
+			int length = ByteBuffer.wrap(prefix).order(ORDER).getInt();
+			if (length == CONTINUATION) {
+				length = ByteBuffer.wrap(readFully(in, 4)).order(ORDER).getInt();
+			}
+			if (length == 0) break;
+			final FlatBuffers.Table message = FlatBuffers.Table.root(ByteBuffer
+				.wrap(readFully(in, length)));
+			final long bodyLength = message.getLong(3, 0);
+			if (bodyLength < 0 || bodyLength > Integer.MAX_VALUE) {
+				throw new IOException("Invalid Arrow message body length: " +
+					bodyLength);
+			}
+			final ByteBuffer body = ByteBuffer.wrap(readFully(in, (int) bodyLength))
+				.order(ORDER);
+			final byte type = message.getByte(1, (byte) 0);
+			if (type == SCHEMA) messages.schema = message.getTable(2);
+			else if (type == DICTIONARY_BATCH) messages.dictionaries.add(
+				new Message(message, body));
+			else if (type == RECORD_BATCH) messages.batches.add(new Message(message,
+				body));
+		}
+	}
+
+	private static GenericTable decode(final Messages messages,
+		final TableIOOptions.Values options) throws IOException
+	{
+		final List<InputField> fields = new ArrayList<>();
+		for (int f = 0; f < messages.schema.getVectorLength(1); f++)
+			fields.add(new InputField(messages.schema.getTable(1, f)));
+
+		// read the dictionaries
+		final Map<Long, List<Object>> dictionaries = new HashMap<>();
+		for (final Message message : messages.dictionaries) {
+			final long id = message.header.getLong(0, 0);
+			final InputField field = fields.stream().filter(f -> f.dictionaryId == id)
+				.findFirst().orElseThrow(() -> new IOException(
+					"No field with dictionary " + id));
+			final FlatBuffers.Table data = message.header.getTable(1);
+			final int length = (int) data.getLong(0, 0);
+			final InputColumn values = new InputColumn(field.valueField(), length,
+				dictionaries);
+			values.read(new InputBatch(data, message.body), 0, length, 0);
+			final List<Object> previous = dictionaries.get(id);
+			final List<Object> entries = message.header.getBoolean(2) &&
+				previous != null ? previous : new ArrayList<>();
+			for (int i = 0; i < length; i++)
+				entries.add(values.get(i));
+			dictionaries.put(id, entries);
+		}
+
+		// find the columns to read
+		int rowHeaderField = -1;
+		final List<Integer> columnFields = new ArrayList<>();
+		final List<String> colHeaders = new ArrayList<>();
+		for (int f = 0; f < fields.size(); f++) {
+			final InputField field = fields.get(f);
+			if (options.readRowHeaders() && rowHeaderField < 0 && INDEX_COLUMN
+				.equals(field.name) && field.dictionaryId < 0 &&
+				(field.type == UTF8 || field.type == LARGE_UTF8))
+			{
+				rowHeaderField = f;
+				continue;
+			}
+			columnFields.add(f);
+			colHeaders.add(field.name);
+		}
+		final int[] selected = DefaultTableIOPlugin.selectColumns(colHeaders,
+			options);
+		long total = 0;
+		for (final Message batch : messages.batches)
+			total += batch.header.getLong(0, 0);
+		final int from = (int) Math.min(total, options.rowOffset());
+		final int count = (int) Math.min(options.rowLimit(), total - from);
+		final InputColumn[] columns = new InputColumn[fields.size()];
+		for (final int c : selected) {
+			final int f = columnFields.get(c);
+			columns[f] = new InputColumn(fields.get(f), count, dictionaries);
+		}
+		if (rowHeaderField >= 0) {
+			columns[rowHeaderField] = new InputColumn(fields.get(rowHeaderField),
+				count, dictionaries);
+		}
+
+		// read the selected rows of each batch
+		long start = 0;
+		for (final Message message : messages.batches) {
+			final long length = message.header.getLong(0, 0);
+			final long lo = Math.max(start, from), hi = Math.min(start + length,
+				(long) from + count);
+			if (lo < hi) {
+				final InputBatch batch = new InputBatch(message.header, message.body);
+				for (int f = 0; f < fields.size(); f++) {
+					if (columns[f] != null) {
+						columns[f].read(batch, (int) (lo - start), (int) (hi - start),
+							(int) (lo - from));
+					}
+					batch.skip(fields.get(f));
+				}
+			}
+			start += length;
+		}
+
+		final GenericTable table = new DefaultGenericTable();
+		for (final int c : selected)
+			table.add(columns[columnFields.get(c)].toColumn());
+		table.setRowCount(count);
+		if (rowHeaderField >= 0) {
+			final InputColumn headers = columns[rowHeaderField];
+			for (int row = 0; row < count; row++)
+				table.setRowHeader(row, (String) headers.get(row));
+		}
+		return table;
+	}
+
+	// -- Writing --
+
+	private static TableBuilder schema(final List<OutputColumn> columns) {
+		final List<TableBuilder> fields = new ArrayList<>();
+		for (final OutputColumn column : columns)
+			fields.add(column.field());
+		return new TableBuilder().addTables(1, fields);
+	}
+
+	/**
+	 * Writes an encapsulated message and its body.
+	 *
+	 * @return The block locating the message: its offset, metadata length and
+	 *         body length.
+	 */
+	private static long[] writeMessage(final CountingOutputStream out,
+		final byte type, final TableBuilder header, final Batch body)
+		throws IOException
+	{
+		final long bodyLength = body == null ? 0 : body.length();
+		final byte[] metadata = FlatBuffers.serialize(new TableBuilder().addShort(
+			0, METADATA_V5).addByte(1, type).addTable(2, header).addLong(3,
+				bodyLength));
+		final long offset = out.position();
+		out.writeIntLE(CONTINUATION);
+		out.writeIntLE(metadata.length);
+		out.write(metadata);
+		if (body != null) body.write(out);
+		return new long[] { offset, 8 + metadata.length, bodyLength };
+	}
+
+	private static byte[] blocks(final List<long[]> blocks) {
+		final ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE * blocks.size())
+			.order(ORDER);
+		for (final long[] block : blocks) {
+			buf.putLong(block[0]).putInt((int) block[1]).putInt(0).putLong(block[2]);
+		}
+		return buf.array();
+	}
+
+	private static TableBuilder intType(final int bitWidth,
+		final boolean signed)
+	{
+		return new TableBuilder().addInt(0, bitWidth).addBoolean(1, signed);
+	}
+
+	// -- Utility methods --
+
+	private static ByteBuffer map(final FileChannel channel, final long position,
+		final long size) throws IOException
+	{
+		return channel.map(MapMode.READ_ONLY, position, size).order(ORDER);
+	}
+
+	private static byte[] readFully(final InputStream in, final int length)
+		throws IOException
+	{
+		final byte[] bytes = new byte[length];
+		readFully(in, bytes, 0, length);
+		return bytes;
+	}
+
+	private static void readFully(final InputStream in, final byte[] bytes,
+		final int offset, final int length) throws IOException
+	{
+		int done = 0;
+		while (done < length) {
+			final int n = in.read(bytes, offset + done, length - done);
+			if (n < 0) throw new EOFException("Truncated Arrow stream");
+			done += n;
+		}
+	}
+
+	/** Gets a slice of a buffer, as little-endian buffer starting at 0. */
+	private static ByteBuffer slice(final ByteBuffer buf, final long offset,
+		final long length) throws IOException
+	{
+		if (offset < 0 || length < 0 || offset + length > buf.capacity()) {
+			throw new IOException("Arrow buffer out of bounds");
+		}
+		final ByteBuffer dup = buf.duplicate();
+		dup.limit((int) (offset + length)).position((int) offset);
+		return dup.slice().order(ORDER);
+	}
+
+	private static boolean bit(final ByteBuffer bits, final int index) {
+		return (bits.get(index >> 3) >> (index & 7) & 1) != 0;
+	}
+
+	// -- Helper classes --
+
+	/** The messages of an Arrow file or stream. */
+	private static final class Messages {
+
+		private FlatBuffers.Table schema;
+		private final List<Message> dictionaries = new ArrayList<>();
+		private final List<Message> batches = new ArrayList<>();
+	}
+
+	/** A dictionary or record batch, and its body. */
+	private static final class Message {
+
+		private final FlatBuffers.Table header;
+		private final ByteBuffer body;
+
+		private Message(final FlatBuffers.Table message, final ByteBuffer body) {
+			this.header = message.getTable(2);
+			this.body = body;
+		}
+	}
+
+	/** A field of a schema being read. */
+	private static final class InputField {
+
+		private final FlatBuffers.Table table;
+		private final String name;
+		private final byte type;
+		private final FlatBuffers.Table typeTable;
+		private final long dictionaryId;
+		private final FlatBuffers.Table indexType;
+		private final boolean encoded;
+
+		private InputField(final FlatBuffers.Table table) {
+			this(table, true);
+		}
+
+		private InputField(final FlatBuffers.Table table, final boolean encoded) {
+			this.table = table;
+			name = table.getString(0);
+			type = table.getByte(2, (byte) 0);
+			typeTable = table.getTable(3);
+			final FlatBuffers.Table dictionary = table.getTable(4);
+			dictionaryId = dictionary == null ? -1 : dictionary.getLong(0, 0);
+			indexType = dictionary == null ? null : dictionary.getTable(1);
+			this.encoded = encoded && dictionary != null;
+		}
+
+		/** Gets this field without its dictionary encoding. */
+		private InputField valueField() {
+			return new InputField(table, false);
+		}
+
+		private boolean isEncoded() {
+			return encoded;
+		}
+
+		private List<InputField> children() {
+			final List<InputField> children = new ArrayList<>();
+			for (int i = 0; i < table.getVectorLength(5); i++)
+				children.add(new InputField(table.getTable(5, i)));
+			return children;
+		}
+
+		/** Gets the primitive type of the values, or null if not primitive. */
+		private Class<?> elementType() throws IOException {
+			if (isEncoded()) return null;
+			if (type == INT) {
+				final int bitWidth = typeTable.getInt(0, 0);
+				final boolean signed = typeTable.getBoolean(1);
+				switch (bitWidth) {
+					case 8:
+						return signed ? byte.class : short.class;
+					case 16:
+						return signed ? short.class : int.class;
+					case 32:
+						return signed ? int.class : long.class;
+					case 64:
+						return long.class;
+					default:
+						throw unsupported();
+				}
+			}
+			if (type == FLOATING_POINT) {
+				final short precision = typeTable.getShort(0, (short) 0);
+				if (precision == SINGLE) return float.class;
+				if (precision == DOUBLE) return double.class;
+				throw unsupported();
+			}
+			if (type == BOOL) return boolean.class;
+			if (type == UTF8 || type == LARGE_UTF8) return null;
+			throw unsupported();
+		}
+
+		/** Gets the number of nodes of this field in a record batch. */
+		private int nodeCount() {
+			if (isEncoded()) return 1;
+			int count = 1;
+			for (final InputField child : children())
+				count += child.nodeCount();
+			return count;
+		}
+
+		/** Gets the number of buffers of this field in a record batch. */
+		private int bufferCount() throws IOException {
+			if (isEncoded()) return 2;
+			int count;
+			switch (type) {
+				case NULL:
+				case RUN_END_ENCODED:
+					count = 0;
+					break;
+				case INT:
+				case FLOATING_POINT:
+				case BOOL:
+				case DECIMAL:
+				case DATE:
+				case TIME:
+				case TIMESTAMP:
+				case INTERVAL:
+				case FIXED_SIZE_BINARY:
+				case DURATION:
+				case LIST:
+				case LARGE_LIST:
+				case MAP:
+					count = 2;
+					break;
+				case BINARY:
+				case UTF8:
+				case LARGE_BINARY:
+				case LARGE_UTF8:
+					count = 3;
+					break;
+				case STRUCT:
+				case FIXED_SIZE_LIST:
+					count = 1;
+					break;
+				case UNION:
+					count = typeTable.getShort(0, (short) 0) == 0 ? 1 : 2;
+					break;
+				default:
+					throw unsupported();
+			}
+			for (final InputField child : children())
+				count += child.bufferCount();
+			return count;
+		}
+
+		private IOException unsupported() {
+			return new IOException("Unsupported Arrow type " + type +
+				" of column " + name);
+		}
+	}
+
+	/** A record batch being read, walked field by field. */
+	private static final class InputBatch {
+
+		private final FlatBuffers.Table header;
+		private final ByteBuffer body;
+		private int node;
+		private int buffer;
+
+		private InputBatch(final FlatBuffers.Table header, final ByteBuffer body)
+			throws IOException
+		{
+			if (header.has(3)) {
+				throw new IOException("Compressed Arrow batches are not supported");
+			}
+			this.header = header;
+			this.body = body;
+		}
+
+		private long nullCount() {
+			return header.getStructLong(1, node, NODE_SIZE, 8);
+		}
+
+		/** Gets the given buffer of the current field. */
+		private ByteBuffer buffer(final int index) throws IOException {
+			final int b = buffer + index;
+			return slice(body, header.getStructLong(2, b, BUFFER_SIZE, 0), header
+				.getStructLong(2, b, BUFFER_SIZE, 8));
+		}
+
+		private void skip(final InputField field) throws IOException {
+			node += field.nodeCount();
+			buffer += field.bufferCount();
+		}
+	}
+
+	/** The values of a column being read, from one or more batches. */
+	private static final class InputColumn {
+
+		private final InputField field;
+		private final Map<Long, List<Object>> dictionaries;
+		private final PrimitiveColumn<?, ?> primitive;
+		private final Object array;
+		private final Object[] objects;
+		private final BitSet nulls = new BitSet();
+
+		private InputColumn(final InputField field, final int count,
+			final Map<Long, List<Object>> dictionaries) throws IOException
+		{
+			this.field = field;
+			this.dictionaries = dictionaries;
+			final Class<?> type = field.elementType();
+			if (type == null) {
+				primitive = null;
+				array = null;
+				objects = new Object[count];
+			}
+			else {
+				primitive = ColumnBuffers.newColumn(type, field.name);
+				array = Array.newInstance(type, count);
+				objects = null;
+			}
+		}
+
+		/**
+		 * Reads the rows {@code [lo, hi)} of the current field of a batch into
+		 * the rows from {@code dest}.
+		 */
+		private void read(final InputBatch batch, final int lo, final int hi,
+			final int dest) throws IOException
+		{
+			final int n = hi - lo;
+			if (batch.nullCount() > 0) {
+				final ByteBuffer validity = batch.buffer(0);
+				if (validity.capacity() > 0) {
+					for (int i = 0; i < n; i++) {
+						if (!bit(validity, lo + i)) nulls.set(dest + i);
+					}
+				}
+			}
+			final ByteBuffer values = batch.buffer(1);
+			if (field.isEncoded()) {
+				final List<Object> dictionary = dictionaries.get(field.dictionaryId);
+				if (dictionary == null) {
+					throw new IOException("Missing dictionary " + field.dictionaryId);
+				}
+				final FlatBuffers.Table indexType = field.indexType;
+				final int bitWidth = indexType == null ? 32 : indexType.getInt(0, 0);
+				final boolean signed = indexType == null || indexType.getBoolean(1);
+				for (int i = 0; i < n; i++) {
+					if (nulls.get(dest + i)) continue;
+					final long index = index(values, lo + i, bitWidth, signed);
+					if (index < 0 || index >= dictionary.size()) {
+						throw new IOException("Invalid dictionary index " + index);
+					}
+					objects[dest + i] = dictionary.get((int) index);
+				}
+			}
+			else if (objects != null) {
+				// strings
+				final ByteBuffer data = batch.buffer(2);
+				final boolean large = field.type == LARGE_UTF8;
+				for (int i = 0; i < n; i++) {
+					if (nulls.get(dest + i)) continue;
+					final int r = lo + i;
+					final long start = large ? values.getLong(8 * r) : values.getInt(4 *
+						r);
+					final long end = large ? values.getLong(8 * r + 8) : values.getInt(
+						4 * r + 4);
+					final byte[] bytes = new byte[(int) (end - start)];
+					final ByteBuffer s = data.duplicate();
+					s.position((int) start);
+					s.get(bytes);
+					objects[dest + i] = new String(bytes, StandardCharsets.UTF_8);
+				}
+			}
+			else readPrimitive(values, lo, n, dest);
+		}
+
+		private void readPrimitive(final ByteBuffer values, final int lo,
+			final int n, final int dest)
+		{
+			if (field.type == BOOL) {
+				final boolean[] a = (boolean[]) array;
+				for (int i = 0; i < n; i++)
+					a[dest + i] = bit(values, lo + i);
+				return;
+			}
+			final int bitWidth = field.type == INT ? field.typeTable.getInt(0, 0)
+				: 0;
+			final boolean widen = field.type == INT && !field.typeTable.getBoolean(
+				1) && bitWidth < 64;
+			if (!widen) {
+				final int width = ColumnBuffers.width(array.getClass()
+					.getComponentType());
+				values.position(lo * width);
+				ColumnBuffers.get(values, array, dest, n);
+				return;
+			}
+			for (int i = 0; i < n; i++) {
+				final long v = index(values, lo + i, bitWidth, false);
+				if (array instanceof short[]) ((short[]) array)[dest + i] = (short) v;
+				else if (array instanceof int[]) ((int[]) array)[dest + i] = (int) v;
+				else ((long[]) array)[dest + i] = v;
+			}
+		}
+
+		private Object get(final int row) {
+			if (nulls.get(row)) return null;
+			if (objects != null) return objects[row];
+			return Array.get(array, row);
+		}
+
+		private Column<?> toColumn() {
+			if (objects != null) {
+				final GenericColumn column = new GenericColumn(field.name);
+				column.addAll(Arrays.asList(objects));
+				return column;
+			}
+			@SuppressWarnings("unchecked")
+			final PrimitiveColumn<Object, Object> c =
+				(PrimitiveColumn<Object, Object>) primitive;
+			c.fill(array);
+			for (int r = nulls.nextSetBit(0); r >= 0; r = nulls.nextSetBit(r + 1))
+				c.set(r, null);
+			return c;
+		}
+
+		/** Reads an integer of the given width. */
+		private static long index(final ByteBuffer values, final int i,
+			final int bitWidth, final boolean signed)
+		{
+			switch (bitWidth) {
+				case 8:
+					return signed ? values.get(i) : values.get(i) & 0xff;
+				case 16:
+					return signed ? values.getShort(2 * i) : values.getShort(2 * i) &
+						0xffff;
+				case 32:
+					return signed ? values.getInt(4 * i) : values.getInt(4 * i) &
+						0xffffffffL;
+				default:
+					return values.getLong(8 * i);
+			}
+		}
+	}
+
+	/** A column being written. */
+	private static final class OutputColumn {
+
+		private final String name;
+		private final Column<?> column;
+		private final Class<?> elementType;
+
+		/** The distinct values of a dictionary-encoded column, or null. */
+		private GenericColumn dictionary;
+		private int[] indices;
+		private long dictionaryId;
+
+		private OutputColumn(final String name, final Column<?> column) {
+			this.name = name;
+			this.column = column;
+			elementType = column instanceof PrimitiveColumn &&
+				!(column instanceof CharColumn) ? ColumnBuffers.elementType(
+					(PrimitiveColumn<?, ?>) column) : null;
+		}
+
+		private boolean isText() {
+			return elementType == null;
+		}
+
+		/** Dictionary-encodes the column if it has few distinct values. */
+		private void encode(final long id) {
+			final Map<String, Integer> codes = new HashMap<>();
+			final GenericColumn values = new GenericColumn();
+			final int[] codesByRow = new int[column.size()];
+			int nonNull = 0;
+			for (int row = 0; row < column.size(); row++) {
+				final Object value = column.get(row);
+				if (value == null) continue;
+				nonNull++;
+				codesByRow[row] = codes.computeIfAbsent(value.toString(), s -> {
+					values.add(s);
+					return values.size() - 1;
+				});
+			}
+			if (nonNull == 0 || 2 * values.size() > nonNull) return;
+			dictionary = values;
+			indices = codesByRow;
+			dictionaryId = id;
+		}
+
+		private TableBuilder field() {
+			final byte type;
+			final TableBuilder typeTable;
+			if (elementType == double.class || elementType == float.class) {
+				type = FLOATING_POINT;
+				typeTable = new TableBuilder().addShort(0, elementType == double.class
+					? DOUBLE : SINGLE);
+			}
+			else if (elementType == boolean.class) {
+				type = BOOL;
+				typeTable = new TableBuilder();
+			}
+			else if (elementType != null) {
+				type = INT;
+				typeTable = intType(8 * ColumnBuffers.width(elementType), true);
+			}
+			else {
+				type = UTF8;
+				typeTable = new TableBuilder();
+			}
+			final TableBuilder field = new TableBuilder().addBoolean(1, true)
+				.addByte(2, type).addTable(3, typeTable).addTables(5, Collections
+					.emptyList());
+			if (name != null) field.addString(0, name);
+			if (dictionary != null) {
+				field.addTable(4, new TableBuilder().addLong(0, dictionaryId)
+					.addTable(1, intType(32, true)).addBoolean(2, false));
+			}
+			return field;
+		}
+	}
+
+	/** The rows {@code [start, end)} of some columns, as a record batch. */
+	private static final class Batch {
+
+		private final int start, end;
+		private final List<long[]> nodes = new ArrayList<>();
+		private final List<BufferWriter> buffers = new ArrayList<>();
+		private final List<Long> lengths = new ArrayList<>();
+
+		private Batch(final List<OutputColumn> columns, final int start,
+			final int end) throws IOException
+		{
+			this.start = start;
+			this.end = end;
+			for (final OutputColumn column : columns)
+				add(column);
+		}
+
+		private void add(final OutputColumn output) throws IOException {
+			final Column<?> column = output.column;
+			final int n = end - start;
+			final BitSet nulls = new BitSet(n);
+			for (int row = start; row < end; row++) {
+				if (column.isNull(row) || column.get(row) == null) nulls.set(row -
+					start);
+			}
+			nodes.add(new long[] { n, nulls.cardinality() });
+			if (nulls.isEmpty()) buffer(0, null);
+			else {
+				final byte[] validity = new byte[(n + 7) / 8];
+				for (int i = 0; i < n; i++) {
+					if (!nulls.get(i)) validity[i >> 3] |= 1 << (i & 7);
+				}
+				buffer(validity.length, out -> out.write(validity));
+			}
+
+			if (output.dictionary != null) {
+				final ByteBuffer indices = ByteBuffer.allocate(4 * n).order(ORDER);
+				indices.asIntBuffer().put(output.indices, start, n);
+				buffer(4 * n, out -> out.write(indices.array()));
+			}
+			else if (output.elementType == boolean.class) {
+				final byte[] bits = new byte[(n + 7) / 8];
+				for (int i = 0; i < n; i++) {
+					if (!nulls.get(i) && (Boolean) column.get(start + i)) {
+						bits[i >> 3] |= 1 << (i & 7);
+					}
+				}
+				buffer(bits.length, out -> out.write(bits));
+			}
+			else if (output.elementType != null) {
+				final PrimitiveColumn<?, ?> primitive = (PrimitiveColumn<?, ?>) column;
+				buffer((long) n * ColumnBuffers.width(output.elementType),
+					out -> ColumnBuffers.write(primitive, start, end, ORDER, out));
+			}
+			else {
+				final byte[][] strings = new byte[n][];
+				final ByteBuffer offsets = ByteBuffer.allocate(4 * (n + 1)).order(
+					ORDER);
+				long length = 0;
+				offsets.putInt(0);
+				for (int i = 0; i < n; i++) {
+					final Object value = column.get(start + i);
+					if (value != null) {
+						strings[i] = value.toString().getBytes(StandardCharsets.UTF_8);
+						length += strings[i].length;
+					}
+					if (length > Integer.MAX_VALUE) {
+						throw new IOException("Too much text in column " + output.name);
+					}
+					offsets.putInt((int) length);
+				}
+				buffer(offsets.capacity(), out -> out.write(offsets.array()));
+				buffer(length, out -> {
+					for (final byte[] s : strings) {
+						if (s != null) out.write(s);
+					}
+				});
+			}
+		}
+
+		private void buffer(final long length, final BufferWriter writer) {
+			lengths.add(length);
+			buffers.add(writer);
+		}
+
+		/** Gets the length of the body, with each buffer padded to 8 bytes. */
+		private long length() {
+			long length = 0;
+			for (final long l : lengths)
+				length += l + (-l & 7);
+			return length;
+		}
+
+		private TableBuilder metadata() {
+			final ByteBuffer nodeBytes = ByteBuffer.allocate(NODE_SIZE * nodes
+				.size()).order(ORDER);
+			for (final long[] node : nodes)
+				nodeBytes.putLong(node[0]).putLong(node[1]);
+			final ByteBuffer bufferBytes = ByteBuffer.allocate(BUFFER_SIZE * lengths
+				.size()).order(ORDER);
+			long offset = 0;
+			for (final long l : lengths) {
+				bufferBytes.putLong(offset).putLong(l);
+				offset += l + (-l & 7);
+			}
+			return new TableBuilder().addLong(0, end - start).addStructs(1, nodeBytes
+				.array(), nodes.size()).addStructs(2, bufferBytes.array(), lengths
+					.size());
+		}
+
+		private void write(final CountingOutputStream out) throws IOException {
+			for (int b = 0; b < buffers.size(); b++) {
+				final long l = lengths.get(b);
+				if (buffers.get(b) != null) buffers.get(b).write(out);
+				out.pad((int) (-l & 7));
+			}
+		}
+	}
+
+	/** Writes the bytes of one buffer. */
+	@FunctionalInterface
+	private interface BufferWriter {
+
+		void write(OutputStream out) throws IOException;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.scijava.table.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream ahead on a separate thread, so that producing its
+ * bytes, such as by decompressing them, overlaps with consuming them. The
+ * bytes are passed through a fixed set of reusable buffers.
+ */
+final class BackgroundInputStream extends InputStream {
+
+	/** Number of buffers read ahead at most. */
+	private static final int BUFFER_COUNT = 4;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Marks the end of the stream in the queue of filled buffers. */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final InputStream in;
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(
+		BUFFER_COUNT);
+	private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(
+		BUFFER_COUNT + 1);
+	private final Thread thread;
+
+	private ByteBuffer current;
+	private volatile IOException error;
+	private volatile boolean closed;
+
+	BackgroundInputStream(final InputStream in) {
+		this.in = in;
+		for (int i = 0; i < BUFFER_COUNT; i++)
+			free.add(ByteBuffer.allocate(BUFFER_SIZE));
+		thread = new Thread(this::readAhead, "TableIO-" + getClass()
+			.getSimpleName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// -- InputStream methods --
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) return -1;
+		return current.get() & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+		throws IOException
+	{
+		if (len == 0) return 0;
+		if (!fill()) return -1;
+		final int n = Math.min(len, current.remaining());
+		current.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return current == null ? 0 : current.remaining();
+	}
+
+	/** Stops reading ahead, closing the other stream. */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		thread.interrupt();
+		try {
+			thread.join();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing", exc);
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Makes sure the current buffer has bytes left to read.
+	 *
+	 * @return False at the end of the stream.
+	 */
+	private boolean fill() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		while (current == null || !current.hasRemaining()) {
+			if (current == END) {
+				if (error != null) throw error;
+				return false;
+			}
+			if (current != null) free.add(current);
+			try {
+				current = filled.take();
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading", exc);
+			}
+		}
+		return true;
+	}
+
+	/** Fills buffers from the other stream until its end, on the thread. */
+	private void readAhead() {
+		try (final InputStream stream = in) {
+			while (!closed) {
+				final ByteBuffer buf = free.take();
+				buf.clear();
+				final byte[] bytes = buf.array();
+				int n = 0, r = 0;
+				while (n < bytes.length && (r = stream.read(bytes, n, bytes.length -
+					n)) >= 0)
+				{
+					n += r;
+				}
+				buf.limit(n);
+				filled.put(buf);
+				if (r < 0) break;
+			}
+		}
+		catch (final IOException exc) {
+			error = exc;
+		}
+		catch (final InterruptedException exc) {
+			// NB: The stream was closed.
+		}
+		finally {
+			filled.offer(END);
+		}
+	}
+}
@@ -0,0 +1,554 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.scijava.io.AbstractIOPlugin;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleOutputStream;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.LongColumn;
+import org.scijava.table.PrimitiveColumn;
+import org.scijava.table.Table;
+import org.scijava.util.FileUtils;
+
+/**
+ * Plugin for reading/writing {@link Table}s in a binary columnar format, with
+ * the extension {@code .sjt}.
+ * <p>
+ * Each column is stored as one block of raw values, so reading a table maps
+ * the blocks of its selected columns and rows into memory and copies them
+ * straight into primitive columns, without any parsing. Columns which are not
+ * primitive are stored as text, and read back as {@link GenericColumn}s of
+ * strings; to store a {@link GenericColumn} of numbers as numbers, convert it
+ * with {@link Columns#compact} first.
+ * </p>
+ * <p>
+ * All numbers are little-endian. A file starts with a header:
+ * </p>
+ * <pre>
+ * magic          "SJTB"
+ * version        int32, 1
+ * header length  int32, including the checksum at its end
+ * row count      int32
+ * column count   int32
+ * row headers    block, of type 0 if there are none
+ * columns        one block per column
+ * checksum       int32, CRC32 of the header before it
+ * </pre>
+ * <p>
+ * describing each block as:
+ * </p>
+ * <pre>
+ * type           int8, 'd' 'f' 'j' 'i' 's' 'b' 'z' 'c' for double, float,
+ *                long, int, short, byte, boolean and char, 'S' for text
+ * header         int32 length in UTF-8 bytes, or -1 for null; the bytes
+ * offset         int64, position of the data, a multiple of 64
+ * length         int64, number of bytes of data
+ * nulls          int64, position of the missing values relative to the data,
+ *                or -1 if there are none
+ * index          int64, for text, position of the offsets relative to the data
+ * checksum       int32, CRC32 of the data
+ * </pre>
+ * <p>
+ * The data of a primitive block holds one value per row, booleans as one byte
+ * each. The data of a text block holds the UTF-8 bytes of all values, then at
+ * its index the offset of each value in these bytes plus their total length,
+ * as int64s. Missing values are marked by one bit per row, least significant
+ * bit first.
+ * </p>
+ */
+@SuppressWarnings("rawtypes")
+@Plugin(type = TableIOPlugin.class)
+public class BinaryTableIOPlugin extends AbstractIOPlugin<Table> implements
+	TableIOPlugin
+{
+
+	@Parameter
+	private DataHandleService dataHandleService;
+
+	static final String EXTENSION = "sjt";
+
+	private static final int MAGIC = 0x42544a53; // "SJTB"
+	private static final int VERSION = 1;
+
+	/** Alignment of the data blocks. */
+	private static final int ALIGNMENT = 64;
+
+	/** Number of bytes of the fixed start of the header. */
+	private static final int PREAMBLE_SIZE = 20;
+
+	private static final byte NONE = 0, TEXT = 'S';
+
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	@Override
+	public boolean supportsOpen(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		final File file = ((FileLocation) source).getFile();
+		return file.exists() && supportsFile(file);
+	}
+
+	@Override
+	public boolean supportsSave(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		return supportsFile(((FileLocation) source).getFile());
+	}
+
+	@Override
+	public GenericTable open(final Location source, final TableIOOptions options)
+		throws IOException
+	{
+		TableIOOptions.rejectRowFilter(options.values, "binary table");
+		if (!(source instanceof FileLocation)) {
+			throw new IOException("Unsupported location: " + source);
+		}
+		final File file = ((FileLocation) source).getFile();
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ))
+		{
+			return open(channel, options.values);
+		}
+	}
+
+	@Override
+	public void save(final Table<?, ?> table, final Location destination,
+		final TableIOOptions options) throws IOException
+	{
+		final boolean writeRH = options.values.writeRowHeaders();
+		final int rowCount = table.getRowCount();
+		final List<Block> blocks = new ArrayList<>();
+		final List<Column<?>> columns = new ArrayList<>();
+		final Block rowHeaders = new Block(writeRH ? TEXT : NONE, null);
+		blocks.add(rowHeaders);
+		for (int c = 0; c < table.getColumnCount(); c++) {
+			final Column<?> column = (Column<?>) table.get(c);
+			columns.add(column);
+			blocks.add(new Block(column instanceof PrimitiveColumn ? typeCode(
+				ColumnBuffers.elementType((PrimitiveColumn<?, ?>) column)) : TEXT,
+				table.getColumnHeader(c)));
+		}
+		int headerLength = PREAMBLE_SIZE + 4;
+		for (final Block block : blocks)
+			headerLength += block.headerSize();
+
+		try (final DataHandle<Location> handle = //
+			dataHandleService.create(destination))
+		{
+			final OutputStream raw = new DataHandleOutputStream<>(handle);
+			pad(raw, headerLength);
+			if (writeRH) {
+				final List<String> headers = new ArrayList<>(rowCount);
+				for (int row = 0; row < rowCount; row++)
+					headers.add(table.getRowHeader(row));
+				writeBlock(handle, raw, rowHeaders, out -> writeText(headers,
+					rowHeaders, out));
+			}
+			for (int c = 0; c < columns.size(); c++) {
+				final Column<?> column = columns.get(c);
+				final Block block = blocks.get(c + 1);
+				writeBlock(handle, raw, block, out -> {
+					if (block.type == TEXT) writeText(column, block, out);
+					else writePrimitive((PrimitiveColumn<?, ?>) column, block, out);
+				});
+			}
+			final long end = handle.offset();
+
+			// write the header, now that the blocks are known
+			final ByteBuffer header = ByteBuffer.allocate(headerLength).order(
+				ORDER);
+			header.putInt(MAGIC).putInt(VERSION).putInt(headerLength).putInt(
+				rowCount).putInt(columns.size());
+			for (final Block block : blocks)
+				block.write(header);
+			final CRC32 crc = new CRC32();
+			crc.update(header.array(), 0, header.position());
+			header.putInt((int) crc.getValue());
+			handle.seek(0);
+			handle.write(header.array());
+			handle.setLength(end);
+		}
+	}
+
+	// -- Helper methods --
+
+	private boolean supportsFile(final File file) {
+		return EXTENSION.equalsIgnoreCase(FileUtils.getExtension(file));
+	}
+
+	private static GenericTable open(final FileChannel channel,
+		final TableIOOptions.Values options) throws IOException
+	{
+		final long size = channel.size();
+		if (size < PREAMBLE_SIZE) throw new IOException("Not a binary table");
+		final ByteBuffer preamble = map(channel, 0, PREAMBLE_SIZE);
+		if (preamble.getInt(0) != MAGIC) throw new IOException(
+			"Not a binary table");
+		if (preamble.getInt(4) != VERSION) {
+			throw new IOException("Unsupported binary table version: " + preamble
+				.getInt(4));
+		}
+		final int headerLength = preamble.getInt(8);
+		if (headerLength < PREAMBLE_SIZE + 4 || headerLength > size) {
+			throw new IOException("Corrupt binary table header");
+		}
+		final ByteBuffer header = map(channel, 0, headerLength);
+		final CRC32 crc = new CRC32();
+		crc.update(slice(header, 0, headerLength - 4));
+		if (header.getInt(headerLength - 4) != (int) crc.getValue()) {
+			throw new IOException("Corrupt binary table header");
+		}
+		final int rowCount = header.getInt(12);
+		final int columnCount = header.getInt(16);
+		header.position(PREAMBLE_SIZE);
+		final Block rowHeaders = Block.read(header, size);
+		final List<Block> blocks = new ArrayList<>(columnCount);
+		final List<String> colHeaders = new ArrayList<>(columnCount);
+		for (int c = 0; c < columnCount; c++) {
+			final Block block = Block.read(header, size);
+			blocks.add(block);
+			colHeaders.add(block.header);
+		}
+
+		final int[] selected = DefaultTableIOPlugin.selectColumns(colHeaders,
+			options);
+		final int from = (int) Math.min(rowCount, options.rowOffset());
+		final int count = Math.min(options.rowLimit(), rowCount - from);
+		final GenericTable table = new DefaultGenericTable();
+		for (final int c : selected) {
+			final Block block = blocks.get(c);
+			if (options.verifyChecksums()) verify(channel, block);
+			final Column<?> column;
+			if (block.type == TEXT) {
+				final GenericColumn text = new GenericColumn(block.header);
+				text.addAll(readText(channel, block, from, count));
+				column = text;
+			}
+			else {
+				final Class<?> type = elementType(block.type);
+				final PrimitiveColumn<?, ?> values = ColumnBuffers.newColumn(type,
+					block.header);
+				ColumnBuffers.read(channel, block.offset + (long) from * ColumnBuffers
+					.width(type), ORDER, values, count);
+				final BitSet nulls = readNulls(channel, block, from, count);
+				@SuppressWarnings("unchecked")
+				final Column<Object> c2 = (Column<Object>) (Column<?>) values;
+				for (int r = nulls.nextSetBit(0); r >= 0; r = nulls.nextSetBit(r + 1))
+					c2.set(r, null);
+				column = values;
+			}
+			table.add(column);
+		}
+		table.setRowCount(count);
+		if (rowHeaders.type == TEXT && options.readRowHeaders()) {
+			if (options.verifyChecksums()) verify(channel, rowHeaders);
+			final List<String> headers = readText(channel, rowHeaders, from, count);
+			for (int r = 0; r < count; r++)
+				table.setRowHeader(r, headers.get(r));
+		}
+		return table;
+	}
+
+	private static void writeBlock(final DataHandle<Location> handle,
+		final OutputStream raw, final Block block, final BlockWriter writer)
+		throws IOException
+	{
+		pad(raw, (int) (-handle.offset() & ALIGNMENT - 1));
+		block.offset = handle.offset();
+		final CheckedOutputStream checked = new CheckedOutputStream(raw,
+			new CRC32());
+		final BufferedOutputStream out = new BufferedOutputStream(checked,
+			1 << 16);
+		writer.write(out);
+		out.flush();
+		block.length = handle.offset() - block.offset;
+		block.checksum = (int) checked.getChecksum().getValue();
+	}
+
+	private static void writePrimitive(final PrimitiveColumn<?, ?> column,
+		final Block block, final OutputStream out) throws IOException
+	{
+		final int rowCount = column.size();
+		ColumnBuffers.write(column, 0, rowCount, ORDER, out);
+		final long length = (long) rowCount * ColumnBuffers.width(ColumnBuffers
+			.elementType(column));
+		if (column.getNullCount() == 0) return;
+		final BitSet nulls = new BitSet(rowCount);
+		for (int row = 0; row < rowCount; row++) {
+			if (column.isNull(row)) nulls.set(row);
+		}
+		block.nulls = length + pad(out, (int) (-length & 7));
+		writeNulls(nulls, rowCount, out);
+	}
+
+	private static void writeText(final List<?> values, final Block block,
+		final OutputStream out) throws IOException
+	{
+		final int rowCount = values.size();
+		final long[] offsets = new long[rowCount + 1];
+		final BitSet nulls = new BitSet(rowCount);
+		for (int row = 0; row < rowCount; row++) {
+			final Object value = values.get(row);
+			long next = offsets[row];
+			if (value == null) nulls.set(row);
+			else {
+				final byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+				out.write(bytes);
+				next += bytes.length;
+			}
+			offsets[row + 1] = next;
+		}
+		block.index = offsets[rowCount] + pad(out, (int) (-offsets[rowCount] &
+			7));
+		final LongColumn index = new LongColumn();
+		index.fill(offsets);
+		ColumnBuffers.write(index, 0, offsets.length, ORDER, out);
+		if (nulls.isEmpty()) return;
+		block.nulls = block.index + 8L * offsets.length;
+		writeNulls(nulls, rowCount, out);
+	}
+
+	private static void writeNulls(final BitSet nulls, final int rowCount,
+		final OutputStream out) throws IOException
+	{
+		final byte[] bits = nulls.toByteArray();
+		out.write(bits);
+		pad(out, (rowCount + 7) / 8 - bits.length);
+	}
+
+	/** Writes {@code count} zeros, returning the count. */
+	private static int pad(final OutputStream out, final int count)
+		throws IOException
+	{
+		for (int i = 0; i < count; i++)
+			out.write(0);
+		return count;
+	}
+
+	private static List<String> readText(final FileChannel channel,
+		final Block block, final int from, final int count) throws IOException
+	{
+		final LongColumn index = new LongColumn();
+		ColumnBuffers.read(channel, block.offset + block.index + 8L * from, ORDER,
+			index, count + 1);
+		final long[] offsets = index.getArray();
+		final BitSet nulls = readNulls(channel, block, from, count);
+		final List<String> values = new ArrayList<>(count);
+		ByteBuffer window = null;
+		long windowStart = 0;
+		for (int r = 0; r < count; r++) {
+			if (nulls.get(r)) {
+				values.add(null);
+				continue;
+			}
+			final long start = offsets[r];
+			final int length = (int) (offsets[r + 1] - start);
+			if (window == null || start < windowStart || start + length >
+				windowStart + window.capacity())
+			{
+				windowStart = start;
+				window = map(channel, block.offset + start, Math.min(Math.max(length,
+					ColumnBuffers.MAX_MAP_SIZE), offsets[count] - start));
+			}
+			final byte[] bytes = new byte[length];
+			window.position((int) (start - windowStart));
+			window.get(bytes);
+			values.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+		return values;
+	}
+
+	/** Reads which of the rows {@code [from, from + count)} are missing. */
+	private static BitSet readNulls(final FileChannel channel, final Block block,
+		final int from, final int count) throws IOException
+	{
+		if (block.nulls < 0 || count == 0) return new BitSet();
+		final int first = from / 8;
+		final ByteBuffer bits = map(channel, block.offset + block.nulls + first,
+			(from + count + 7) / 8 - first);
+		final byte[] bytes = new byte[bits.remaining()];
+		bits.get(bytes);
+		return BitSet.valueOf(bytes).get(from - 8 * first, from - 8 * first +
+			count);
+	}
+
+	private static void verify(final FileChannel channel, final Block block)
+		throws IOException
+	{
+		final CRC32 crc = new CRC32();
+		for (long p = 0; p < block.length; p += ColumnBuffers.MAX_MAP_SIZE) {
+			crc.update(map(channel, block.offset + p, Math.min(
+				ColumnBuffers.MAX_MAP_SIZE, block.length - p)));
+		}
+		if ((int) crc.getValue() != block.checksum) {
+			throw new IOException("Checksum mismatch in column " + block.header);
+		}
+	}
+
+	private static ByteBuffer map(final FileChannel channel, final long position,
+		final long size) throws IOException
+	{
+		return channel.map(MapMode.READ_ONLY, position, size).order(ORDER);
+	}
+
+	private static ByteBuffer slice(final ByteBuffer buf, final int position,
+		final int length)
+	{
+		final ByteBuffer slice = buf.duplicate();
+		slice.position(position).limit(position + length);
+		return slice;
+	}
+
+	private static byte typeCode(final Class<?> elementType) {
+		if (elementType == double.class) return 'd';
+		if (elementType == float.class) return 'f';
+		if (elementType == long.class) return 'j';
+		if (elementType == int.class) return 'i';
+		if (elementType == short.class) return 's';
+		if (elementType == byte.class) return 'b';
+		if (elementType == boolean.class) return 'z';
+		return 'c';
+	}
+
+	private static Class<?> elementType(final byte typeCode) throws IOException {
+		switch (typeCode) {
+			case 'd':
+				return double.class;
+			case 'f':
+				return float.class;
+			case 'j':
+				return long.class;
+			case 'i':
+				return int.class;
+			case 's':
+				return short.class;
+			case 'b':
+				return byte.class;
+			case 'z':
+				return boolean.class;
+			case 'c':
+				return char.class;
+			default:
+				throw new IOException("Unknown column type: " + typeCode);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** Writes the data of one block. */
+	@FunctionalInterface
+	private interface BlockWriter {
+
+		void write(OutputStream out) throws IOException;
+	}
+
+	/** The description of one block of data, as stored in the header. */
+	private static final class Block {
+
+		private final byte type;
+		private final String header;
+		private long offset;
+		private long length;
+		private long nulls = -1;
+		private long index;
+		private int checksum;
+
+		private Block(final byte type, final String header) {
+			this.type = type;
+			this.header = header;
+		}
+
+		private int headerSize() {
+			return 1 + 4 + (header == null ? 0 : header.getBytes(
+				StandardCharsets.UTF_8).length) + 4 * 8 + 4;
+		}
+
+		private void write(final ByteBuffer buf) {
+			buf.put(type);
+			if (header == null) buf.putInt(-1);
+			else {
+				final byte[] bytes = header.getBytes(StandardCharsets.UTF_8);
+				buf.putInt(bytes.length).put(bytes);
+			}
+			buf.putLong(offset).putLong(length).putLong(nulls).putLong(index)
+				.putInt(checksum);
+		}
+
+		private static Block read(final ByteBuffer buf, final long fileSize)
+			throws IOException
+		{
+			final byte type = buf.get();
+			final int headerLength = buf.getInt();
+			String header = null;
+			if (headerLength >= 0) {
+				final byte[] bytes = new byte[headerLength];
+				buf.get(bytes);
+				header = new String(bytes, StandardCharsets.UTF_8);
+			}
+			final Block block = new Block(type, header);
+			block.offset = buf.getLong();
+			block.length = buf.getLong();
+			block.nulls = buf.getLong();
+			block.index = buf.getLong();
+			block.checksum = buf.getInt();
+			if (block.offset < 0 || block.length < 0 || block.offset +
+				block.length > fileSize)
+			{
+				throw new IOException("Corrupt binary table header");
+			}
+			return block;
+		}
+	}
+}
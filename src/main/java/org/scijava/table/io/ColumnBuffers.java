@@ -0,0 +1,357 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.scijava.table.BoolColumn;
+import org.scijava.table.ByteColumn;
+import org.scijava.table.CharColumn;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.FloatColumn;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.PrimitiveColumn;
+import org.scijava.table.ShortColumn;
+
+/**
+ * Copies the values of {@link PrimitiveColumn}s between their backing arrays
+ * and binary data, in bulk.
+ * <p>
+ * Values are stored at their natural width in the given byte order;
+ * {@code boolean}s take one byte each, 0 or 1.
+ * </p>
+ */
+final class ColumnBuffers {
+
+	/** Maximum number of bytes mapped into memory at once. */
+	static final int MAX_MAP_SIZE = 1 << 30;
+
+	/** Number of bytes encoded at once when writing. */
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private ColumnBuffers() {
+		// NB: prevent instantiation of utility class.
+	}
+
+	/**
+	 * Gets the primitive type of the values of a column, e.g.
+	 * {@code double.class} for a {@link DoubleColumn}.
+	 */
+	static Class<?> elementType(final PrimitiveColumn<?, ?> column) {
+		if (column instanceof DoubleColumn) return double.class;
+		if (column instanceof FloatColumn) return float.class;
+		if (column instanceof LongColumn) return long.class;
+		if (column instanceof IntColumn) return int.class;
+		if (column instanceof ShortColumn) return short.class;
+		if (column instanceof ByteColumn) return byte.class;
+		if (column instanceof BoolColumn) return boolean.class;
+		if (column instanceof CharColumn) return char.class;
+		throw new IllegalArgumentException("Unsupported column: " + column
+			.getClass().getName());
+	}
+
+	/** Creates an empty column of values of the given primitive type. */
+	static PrimitiveColumn<?, ?> newColumn(final Class<?> elementType,
+		final String header)
+	{
+		if (elementType == double.class) return new DoubleColumn(header);
+		if (elementType == float.class) return new FloatColumn(header);
+		if (elementType == long.class) return new LongColumn(header);
+		if (elementType == int.class) return new IntColumn(header);
+		if (elementType == short.class) return new ShortColumn(header);
+		if (elementType == byte.class) return new ByteColumn(header);
+		if (elementType == boolean.class) return new BoolColumn(header);
+		if (elementType == char.class) return new CharColumn(header);
+		throw new IllegalArgumentException("Unsupported type: " + elementType);
+	}
+
+	/** Gets the number of bytes taken by each value of a primitive type. */
+	static int width(final Class<?> elementType) {
+		if (elementType == double.class || elementType == long.class) return 8;
+		if (elementType == float.class || elementType == int.class) return 4;
+		if (elementType == short.class || elementType == char.class) return 2;
+		return 1;
+	}
+
+	/**
+	 * Fills a column with {@code count} values read from a file, mapping it into
+	 * memory rather than reading it through a stream.
+	 *
+	 * @param channel The file to read.
+	 * @param position The offset of the first value in the file.
+	 * @param order The byte order of the values.
+	 * @param column The column to fill, which is resized to {@code count}.
+	 * @param count The number of values to read.
+	 */
+	static void read(final FileChannel channel, final long position,
+		final ByteOrder order, final PrimitiveColumn<?, ?> column,
+		final int count) throws IOException
+	{
+		final Class<?> type = elementType(column);
+		final int width = width(type);
+		final Object array = Array.newInstance(type, count);
+		final int perMap = MAX_MAP_SIZE / width;
+		for (int i = 0; i < count; i += perMap) {
+			final int n = Math.min(perMap, count - i);
+			get(channel.map(MapMode.READ_ONLY, position + (long) i * width,
+				(long) n * width).order(order), array, i, n);
+		}
+		@SuppressWarnings("unchecked")
+		final PrimitiveColumn<Object, ?> c = (PrimitiveColumn<Object, ?>) column;
+		c.fill(array);
+	}
+
+	/**
+	 * Copies {@code count} values from a buffer into an array.
+	 *
+	 * @param buf The buffer, positioned at the first value.
+	 * @param array The primitive array to copy into.
+	 * @param index The index of the first value to write in the array.
+	 * @param count The number of values to copy.
+	 */
+	static void get(final ByteBuffer buf, final Object array, final int index,
+		final int count)
+	{
+		if (array instanceof double[]) {
+			buf.asDoubleBuffer().get((double[]) array, index, count);
+		}
+		else if (array instanceof float[]) {
+			buf.asFloatBuffer().get((float[]) array, index, count);
+		}
+		else if (array instanceof long[]) {
+			buf.asLongBuffer().get((long[]) array, index, count);
+		}
+		else if (array instanceof int[]) {
+			buf.asIntBuffer().get((int[]) array, index, count);
+		}
+		else if (array instanceof short[]) {
+			buf.asShortBuffer().get((short[]) array, index, count);
+		}
+		else if (array instanceof char[]) {
+			buf.asCharBuffer().get((char[]) array, index, count);
+		}
+		else if (array instanceof byte[]) {
+			buf.duplicate().get((byte[]) array, index, count);
+		}
+		else {
+			final boolean[] values = (boolean[]) array;
+			final int start = buf.position();
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.get(start + i) != 0;
+		}
+	}
+
+	/**
+	 * Copies {@code count} values from an array into a buffer, advancing the
+	 * buffer's position past them.
+	 */
+	static void put(final Object array, final int index, final int count,
+		final ByteBuffer buf)
+	{
+		final int bytes;
+		if (array instanceof double[]) {
+			buf.asDoubleBuffer().put((double[]) array, index, count);
+			bytes = 8 * count;
+		}
+		else if (array instanceof float[]) {
+			buf.asFloatBuffer().put((float[]) array, index, count);
+			bytes = 4 * count;
+		}
+		else if (array instanceof long[]) {
+			buf.asLongBuffer().put((long[]) array, index, count);
+			bytes = 8 * count;
+		}
+		else if (array instanceof int[]) {
+			buf.asIntBuffer().put((int[]) array, index, count);
+			bytes = 4 * count;
+		}
+		else if (array instanceof short[]) {
+			buf.asShortBuffer().put((short[]) array, index, count);
+			bytes = 2 * count;
+		}
+		else if (array instanceof char[]) {
+			buf.asCharBuffer().put((char[]) array, index, count);
+			bytes = 2 * count;
+		}
+		else if (array instanceof byte[]) {
+			buf.duplicate().put((byte[]) array, index, count);
+			bytes = count;
+		}
+		else {
+			final boolean[] values = (boolean[]) array;
+			final int start = buf.position();
+			for (int i = 0; i < count; i++)
+				buf.put(start + i, (byte) (values[index + i] ? 1 : 0));
+			bytes = count;
+		}
+		buf.position(buf.position() + bytes);
+	}
+
+	/**
+	 * Copies {@code count} values from a buffer into an array, taking values
+	 * {@code stride} bytes apart, such as one field of a sequence of records.
+	 *
+	 * @param buf The buffer, positioned at the first value.
+	 * @param stride The number of bytes from each value to the next.
+	 * @param array The primitive array to copy into.
+	 * @param index The index of the first value to write in the array.
+	 * @param count The number of values to copy.
+	 */
+	static void getStrided(final ByteBuffer buf, final int stride,
+		final Object array, final int index, final int count)
+	{
+		final int start = buf.position();
+		if (array instanceof double[]) {
+			final double[] values = (double[]) array;
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.getDouble(start + i * stride);
+		}
+		else if (array instanceof float[]) {
+			final float[] values = (float[]) array;
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.getFloat(start + i * stride);
+		}
+		else if (array instanceof long[]) {
+			final long[] values = (long[]) array;
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.getLong(start + i * stride);
+		}
+		else if (array instanceof int[]) {
+			final int[] values = (int[]) array;
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.getInt(start + i * stride);
+		}
+		else if (array instanceof short[]) {
+			final short[] values = (short[]) array;
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.getShort(start + i * stride);
+		}
+		else if (array instanceof char[]) {
+			final char[] values = (char[]) array;
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.getChar(start + i * stride);
+		}
+		else if (array instanceof byte[]) {
+			final byte[] values = (byte[]) array;
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.get(start + i * stride);
+		}
+		else {
+			final boolean[] values = (boolean[]) array;
+			for (int i = 0; i < count; i++)
+				values[index + i] = buf.get(start + i * stride) != 0;
+		}
+	}
+
+	/**
+	 * Copies {@code count} values from an array into a buffer, putting them
+	 * {@code stride} bytes apart from the buffer's position, which is left as
+	 * it is.
+	 */
+	static void putStrided(final Object array, final int index, final int count,
+		final ByteBuffer buf, final int stride)
+	{
+		final int start = buf.position();
+		if (array instanceof double[]) {
+			final double[] values = (double[]) array;
+			for (int i = 0; i < count; i++)
+				buf.putDouble(start + i * stride, values[index + i]);
+		}
+		else if (array instanceof float[]) {
+			final float[] values = (float[]) array;
+			for (int i = 0; i < count; i++)
+				buf.putFloat(start + i * stride, values[index + i]);
+		}
+		else if (array instanceof long[]) {
+			final long[] values = (long[]) array;
+			for (int i = 0; i < count; i++)
+				buf.putLong(start + i * stride, values[index + i]);
+		}
+		else if (array instanceof int[]) {
+			final int[] values = (int[]) array;
+			for (int i = 0; i < count; i++)
+				buf.putInt(start + i * stride, values[index + i]);
+		}
+		else if (array instanceof short[]) {
+			final short[] values = (short[]) array;
+			for (int i = 0; i < count; i++)
+				buf.putShort(start + i * stride, values[index + i]);
+		}
+		else if (array instanceof char[]) {
+			final char[] values = (char[]) array;
+			for (int i = 0; i < count; i++)
+				buf.putChar(start + i * stride, values[index + i]);
+		}
+		else if (array instanceof byte[]) {
+			final byte[] values = (byte[]) array;
+			for (int i = 0; i < count; i++)
+				buf.put(start + i * stride, values[index + i]);
+		}
+		else {
+			final boolean[] values = (boolean[]) array;
+			for (int i = 0; i < count; i++)
+				buf.put(start + i * stride, (byte) (values[index + i] ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Writes the values {@code [from, to)} of a column.
+	 *
+	 * @param column The column to write.
+	 * @param from The first row to write.
+	 * @param to The row after the last one to write.
+	 * @param order The byte order of the values.
+	 * @param out The output to write.
+	 */
+	static void write(final PrimitiveColumn<?, ?> column, final int from,
+		final int to, final ByteOrder order, final OutputStream out)
+		throws IOException
+	{
+		final Object array = column.getArray();
+		final int width = width(elementType(column));
+		final byte[] bytes = new byte[CHUNK_SIZE];
+		final ByteBuffer buf = ByteBuffer.wrap(bytes).order(order);
+		final int perChunk = CHUNK_SIZE / width;
+		for (int i = from; i < to; i += perChunk) {
+			final int n = Math.min(perChunk, to - i);
+			buf.clear();
+			put(array, i, n, buf);
+			out.write(bytes, 0, buf.position());
+		}
+	}
+}
@@ -0,0 +1,675 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Function;
+
+import org.scijava.table.BoolColumn;
+import org.scijava.table.Column;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.FloatColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.NumberParser;
+
+/**
+ * Accumulates the cells of one column of a table being read, parsing each cell
+ * directly into the storage of the resulting {@link Column}.
+ * <p>
+ * Columns of {@code double}, {@code float}, {@code int}, {@code long} and
+ * {@code boolean} values are stored in growing primitive arrays, which then
+ * back the resulting primitive column without further copying. Their cells
+ * are parsed from the bytes of the input by a {@link NumberParser}; only
+ * cells which fail to parse are decoded to {@link String}s, to report them.
+ * Their missing values are recorded via {@link #readNull()}, and marked as
+ * null in the resulting column. Other columns are decoded and parsed with
+ * their parser into a {@link GenericColumn}.
+ * </p>
+ * <p>
+ * The type of a column inferred from a sample of its cells may not fit the
+ * cells outside the sample. Readers {@link #createWidening created for such
+ * columns} then widen the column, along the same lattice as
+ * {@link TypeInference}, converting the values read so far.
+ * </p>
+ */
+abstract class ColumnReader {
+
+	/** Initial capacity of each column's storage. */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** Encoding of the cells, for those which must be decoded. */
+	protected final Charset charset;
+
+	/** Number of cells read so far. */
+	protected int size;
+
+	/** Rows whose values are missing, or null if there have been none. */
+	private BitSet nulls;
+
+	protected ColumnReader(final Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Parses the cell at {@code buf[start, end)}, appending its value to the
+	 * column.
+	 */
+	abstract void read(byte[] buf, int start, int end);
+
+	/** Appends a placeholder for a missing value to the column. */
+	abstract void readMissing();
+
+	/**
+	 * Creates a column sharing the storage of the values read so far, without
+	 * marking the missing values.
+	 */
+	abstract Column<?> wrap(String header);
+
+	/**
+	 * Creates an empty reader of the same kind, for reading another part of the
+	 * column, e.g. on another thread.
+	 */
+	abstract ColumnReader newSegment();
+
+	/** Appends the values of a reader of the same kind. */
+	abstract void appendValues(ColumnReader segment);
+
+	/** Gets whether the column can hold missing values. */
+	boolean isNullable() {
+		return true;
+	}
+
+	/** Appends a missing value to the column. */
+	void readNull() {
+		if (nulls == null) nulls = new BitSet();
+		nulls.set(size);
+		readMissing();
+	}
+
+	/** Appends the values read by a reader created via {@link #newSegment()}. */
+	void append(final ColumnReader segment) {
+		final BitSet other = segment.nulls;
+		if (other != null) {
+			if (nulls == null) nulls = new BitSet();
+			for (int r = other.nextSetBit(0); r >= 0; r = other.nextSetBit(r + 1))
+				nulls.set(size + r);
+		}
+		appendValues(segment);
+	}
+
+	/** Creates the column holding the values read so far. */
+	Column<?> build(final String header) {
+		return markNulls(wrap(header), 0);
+	}
+
+	/**
+	 * Creates a column sharing the storage of the values read so far, for
+	 * summarizing those from the given row on; only their missing values are
+	 * marked as null.
+	 */
+	Column<?> view(final int from) {
+		return markNulls(wrap(null), from);
+	}
+
+	/** Gets the number of cells read so far. */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Creates a reader for a column of the given type.
+	 *
+	 * @param type The type of the column's values, or null if unknown.
+	 * @param parser The parser to use for columns without a primitive type.
+	 * @param charset The encoding of the cells.
+	 */
+	static ColumnReader create(final Class<?> type,
+		final Function<String, ?> parser, final Charset charset)
+	{
+		if (type == Double.class) return new DoubleReader(charset);
+		if (type == Float.class) return new FloatReader(charset);
+		if (type == Integer.class) return new IntReader(charset);
+		if (type == Long.class) return new LongReader(charset);
+		if (type == Boolean.class) return new BoolReader(charset);
+		return new ObjectReader(parser, charset);
+	}
+
+	/**
+	 * Creates a reader for a column whose type was inferred from a sample of
+	 * its cells, which widens the column when a cell does not fit its type.
+	 *
+	 * @param type The inferred type: {@link Boolean}, {@link Integer},
+	 *          {@link Long}, {@link Double} or {@link String}.
+	 * @param charset The encoding of the cells.
+	 * @see TypeInference
+	 */
+	static ColumnReader createWidening(final Class<?> type,
+		final Charset charset)
+	{
+		return new WideningReader(WideningReader.kindOf(type), charset);
+	}
+
+	/** Decodes the cell at {@code buf[start, end)}. */
+	protected String decode(final byte[] buf, final int start, final int end) {
+		return new String(buf, start, end - start, charset);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Marks the missing values read so far, from the given row on, as null in
+	 * the given column.
+	 */
+	private Column<?> markNulls(final Column<?> column, final int from) {
+		if (nulls != null) {
+			for (int r = nulls.nextSetBit(from); r >= 0; r = nulls.nextSetBit(r +
+				1))
+			{
+				column.set(r, null);
+			}
+		}
+		return column;
+	}
+
+	/** Computes the capacity needed to append one more value. */
+	private static int grow(final int capacity) {
+		return Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1));
+	}
+
+	/** Compares a cell with a lowercase ASCII word, ignoring case. */
+	private static boolean is(final byte[] buf, final int start, final int end,
+		final String word)
+	{
+		if (end - start != word.length()) return false;
+		for (int i = 0; i < word.length(); i++) {
+			if ((buf[start + i] | 0x20) != word.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	// -- Helper classes --
+
+	/** Reads {@code double}s, via {@link NumberParser#parseDouble}. */
+	private static class DoubleReader extends ColumnReader {
+
+		private final NumberParser numbers = new NumberParser();
+		private double[] values = new double[0];
+
+		private DoubleReader(final Charset charset) {
+			super(charset);
+		}
+
+		@Override
+		void read(final byte[] buf, final int start, final int end) {
+			final double value = numbers.parseDouble(buf, start, end) ? numbers
+				.doubleValue() : Double.parseDouble(decode(buf, start, end));
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = value;
+		}
+
+		@Override
+		void readMissing() {
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = Double.NaN;
+		}
+
+		@Override
+		Column<?> wrap(final String header) {
+			final DoubleColumn column = new DoubleColumn(header);
+			column.setArray(values);
+			column.setSize(size);
+			return column;
+		}
+
+		@Override
+		ColumnReader newSegment() {
+			return new DoubleReader(charset);
+		}
+
+		@Override
+		void appendValues(final ColumnReader segment) {
+			final DoubleReader other = (DoubleReader) segment;
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, size + other.size);
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+	}
+
+	/** Reads {@code float}s, via {@link Float#parseFloat}. */
+	private static class FloatReader extends ColumnReader {
+
+		private float[] values = new float[0];
+
+		private FloatReader(final Charset charset) {
+			super(charset);
+		}
+
+		@Override
+		void read(final byte[] buf, final int start, final int end) {
+			final float value = Float.parseFloat(decode(buf, start, end));
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = value;
+		}
+
+		@Override
+		void readMissing() {
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = Float.NaN;
+		}
+
+		@Override
+		Column<?> wrap(final String header) {
+			final FloatColumn column = new FloatColumn(header);
+			column.setArray(values);
+			column.setSize(size);
+			return column;
+		}
+
+		@Override
+		ColumnReader newSegment() {
+			return new FloatReader(charset);
+		}
+
+		@Override
+		void appendValues(final ColumnReader segment) {
+			final FloatReader other = (FloatReader) segment;
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, size + other.size);
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+	}
+
+	/**
+	 * Reads {@code int}s, decoding only cells which {@link Integer#parseInt}
+	 * would reject, to report them.
+	 */
+	private static class IntReader extends ColumnReader {
+
+		private final NumberParser numbers = new NumberParser();
+		private int[] values = new int[0];
+
+		private IntReader(final Charset charset) {
+			super(charset);
+		}
+
+		@Override
+		void read(final byte[] buf, final int start, final int end) {
+			final int value = numbers.parseInt(buf, start, end) ? (int) numbers
+				.longValue() : Integer.parseInt(decode(buf, start, end));
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = value;
+		}
+
+		@Override
+		void readMissing() {
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			size++;
+		}
+
+		@Override
+		Column<?> wrap(final String header) {
+			final IntColumn column = new IntColumn(header);
+			column.setArray(values);
+			column.setSize(size);
+			return column;
+		}
+
+		@Override
+		ColumnReader newSegment() {
+			return new IntReader(charset);
+		}
+
+		@Override
+		void appendValues(final ColumnReader segment) {
+			final IntReader other = (IntReader) segment;
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, size + other.size);
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+	}
+
+	/**
+	 * Reads {@code long}s, decoding only cells which {@link Long#parseLong}
+	 * would reject, to report them.
+	 */
+	private static class LongReader extends ColumnReader {
+
+		private final NumberParser numbers = new NumberParser();
+		private long[] values = new long[0];
+
+		private LongReader(final Charset charset) {
+			super(charset);
+		}
+
+		@Override
+		void read(final byte[] buf, final int start, final int end) {
+			final long value = numbers.parseLong(buf, start, end) ? numbers
+				.longValue() : Long.parseLong(decode(buf, start, end));
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = value;
+		}
+
+		@Override
+		void readMissing() {
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			size++;
+		}
+
+		@Override
+		Column<?> wrap(final String header) {
+			final LongColumn column = new LongColumn(header);
+			column.setArray(values);
+			column.setSize(size);
+			return column;
+		}
+
+		@Override
+		ColumnReader newSegment() {
+			return new LongReader(charset);
+		}
+
+		@Override
+		void appendValues(final ColumnReader segment) {
+			final LongReader other = (LongReader) segment;
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, size + other.size);
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+	}
+
+	/** Reads {@code boolean}s, like {@link Boolean#parseBoolean}. */
+	private static class BoolReader extends ColumnReader {
+
+		private boolean[] values = new boolean[0];
+
+		private BoolReader(final Charset charset) {
+			super(charset);
+		}
+
+		@Override
+		void read(final byte[] buf, final int start, final int end) {
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = is(buf, start, end, "true");
+		}
+
+		@Override
+		void readMissing() {
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			size++;
+		}
+
+		@Override
+		Column<?> wrap(final String header) {
+			final BoolColumn column = new BoolColumn(header);
+			column.setArray(values);
+			column.setSize(size);
+			return column;
+		}
+
+		@Override
+		ColumnReader newSegment() {
+			return new BoolReader(charset);
+		}
+
+		@Override
+		void appendValues(final ColumnReader segment) {
+			final BoolReader other = (BoolReader) segment;
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, size + other.size);
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+	}
+
+	/** Decodes each cell, storing the result of the parser. */
+	private static class ObjectReader extends ColumnReader {
+
+		private final Function<String, ?> parser;
+		private Object[] values = new Object[0];
+
+		private ObjectReader(final Function<String, ?> parser,
+			final Charset charset)
+		{
+			super(charset);
+			this.parser = parser;
+		}
+
+		@Override
+		void read(final byte[] buf, final int start, final int end) {
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = parser.apply(decode(buf, start, end));
+		}
+
+		@Override
+		boolean isNullable() {
+			return false;
+		}
+
+		@Override
+		void readMissing() {
+			if (size == values.length) values = Arrays.copyOf(values, grow(size));
+			values[size++] = null;
+		}
+
+		@Override
+		Column<?> wrap(final String header) {
+			final GenericColumn column = new GenericColumn(header);
+			column.setArray(values);
+			column.setSize(size);
+			return column;
+		}
+
+		@Override
+		ColumnReader newSegment() {
+			return new ObjectReader(parser, charset);
+		}
+
+		@Override
+		void appendValues(final ColumnReader segment) {
+			final ObjectReader other = (ObjectReader) segment;
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, size + other.size);
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+	}
+
+	/**
+	 * Reads a column of an inferred type, widening it to {@code long},
+	 * {@code double} or {@link String} when a cell does not fit, and converting
+	 * the values read so far.
+	 */
+	private static class WideningReader extends ColumnReader {
+
+		private static final int BOOLEAN = 0;
+		private static final int INTEGER = 1;
+		private static final int LONG = 2;
+		private static final int DOUBLE = 3;
+		private static final int STRING = 4;
+
+		private int kind;
+		private ColumnReader delegate;
+
+		private WideningReader(final int kind, final Charset charset) {
+			super(charset);
+			this.kind = kind;
+			delegate = create(kind, charset);
+		}
+
+		@Override
+		void read(final byte[] buf, final int start, final int end) {
+			if (kind == BOOLEAN && !is(buf, start, end, "true") && !is(buf, start,
+				end, "false"))
+			{
+				widen(STRING);
+			}
+			while (true) {
+				try {
+					delegate.read(buf, start, end);
+					break;
+				}
+				catch (final NumberFormatException exc) {
+					widen(kind + 1);
+				}
+			}
+			size++;
+		}
+
+		/**
+		 * Like the {@link ObjectReader}, keeps null tokens as strings once widened
+		 * to them; those read before stay missing values.
+		 */
+		@Override
+		boolean isNullable() {
+			return kind != STRING;
+		}
+
+		@Override
+		void readMissing() {
+			delegate.readMissing();
+			size++;
+		}
+
+		@Override
+		Column<?> wrap(final String header) {
+			return delegate.wrap(header);
+		}
+
+		@Override
+		ColumnReader newSegment() {
+			return new WideningReader(kind, charset);
+		}
+
+		@Override
+		void appendValues(final ColumnReader segment) {
+			final WideningReader other = (WideningReader) segment;
+			final int common = kind == other.kind ? kind : kind == BOOLEAN ||
+				other.kind == BOOLEAN ? STRING : Math.max(kind, other.kind);
+			widen(common);
+			other.widen(common);
+			delegate.appendValues(other.delegate);
+			size += other.size;
+		}
+
+		private static int kindOf(final Class<?> type) {
+			if (type == Boolean.class) return BOOLEAN;
+			if (type == Integer.class) return INTEGER;
+			if (type == Long.class) return LONG;
+			if (type == Double.class) return DOUBLE;
+			return STRING;
+		}
+
+		private static ColumnReader create(final int kind,
+			final Charset charset)
+		{
+			switch (kind) {
+				case BOOLEAN:
+					return new BoolReader(charset);
+				case INTEGER:
+					return new IntReader(charset);
+				case LONG:
+					return new LongReader(charset);
+				case DOUBLE:
+					return new DoubleReader(charset);
+				default:
+					return new ObjectReader(String::valueOf, charset);
+			}
+		}
+
+		/**
+		 * Widens the column to the given kind, converting its values. A column of
+		 * {@code boolean}s is only ever widened to strings.
+		 */
+		private void widen(final int target) {
+			if (target <= kind) return;
+			final int n = delegate.size;
+			final ColumnReader widened = create(target, charset);
+			if (target == LONG) {
+				final int[] from = ((IntReader) delegate).values;
+				final long[] to = new long[n];
+				for (int i = 0; i < n; i++)
+					to[i] = from[i];
+				((LongReader) widened).values = to;
+			}
+			else if (target == DOUBLE) {
+				final double[] to = new double[n];
+				if (delegate instanceof IntReader) {
+					final int[] from = ((IntReader) delegate).values;
+					for (int i = 0; i < n; i++)
+						to[i] = from[i];
+				}
+				else {
+					final long[] from = ((LongReader) delegate).values;
+					for (int i = 0; i < n; i++)
+						to[i] = from[i];
+				}
+				((DoubleReader) widened).values = to;
+			}
+			else {
+				final Object[] to = new Object[n];
+				for (int i = 0; i < n; i++)
+					to[i] = String.valueOf(value(i));
+				((ObjectReader) widened).values = to;
+			}
+			widened.size = n;
+			delegate = widened;
+			kind = target;
+		}
+
+		/** Gets a value read so far, for converting it to a string. */
+		private Object value(final int i) {
+			switch (kind) {
+				case BOOLEAN:
+					return ((BoolReader) delegate).values[i];
+				case INTEGER:
+					return ((IntReader) delegate).values[i];
+				case LONG:
+					return ((LongReader) delegate).values[i];
+				default:
+					return ((DoubleReader) delegate).values[i];
+			}
+		}
+	}
+}
@@ -54,7 +54,7 @@ public class ColumnTableIOOptions extends AbstractOptions<ColumnTableIOOptions>
 	public class Values extends AbstractValues {
 
 		public Function<Object, String> formatter() {
-			return getValueOrDefault(formatterKey, String::valueOf);
+			return getValueOrDefault(formatterKey, TableIOOptions.DEFAULT_FORMATTER);
 		}
 
 		public Function<String, ?> parser() {
@@ -30,33 +30,95 @@
 
 package org.scijava.table.io;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.scijava.Priority;
 import org.scijava.io.AbstractIOPlugin;
 import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleInputStream;
+import org.scijava.io.handle.DataHandleOutputStream;
 import org.scijava.io.handle.DataHandleService;
 import org.scijava.io.location.FileLocation;
 import org.scijava.io.location.Location;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.table.BoolColumn;
+import org.scijava.table.ByteColumn;
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
 import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.FloatColumn;
+import org.scijava.table.GenericColumn;
 import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.NumberFormatter;
+import org.scijava.table.NumberParser;
+import org.scijava.table.ShortColumn;
 import org.scijava.table.Table;
+import org.scijava.table.sketch.ColumnSketch;
 import org.scijava.util.FileUtils;
 
 /**
  * Plugin for reading/writing {@link Table}s.
+ * <p>
+ * Files whose names end in {@code .gz} or {@code .deflate}, such as
+ * {@code table.csv.gz}, are decompressed while reading and compressed while
+ * writing, as gzip or zlib streams.
+ * </p>
+ * <p>
+ * Cells of files with the extension {@code .tsv}, compressed or not, are
+ * separated by tabs unless another {@link TableIOOptions#columnDelimiter
+ * column delimiter} is set.
+ * </p>
+ * <p>
+ * When reading, the defaults differ from those of earlier versions, which
+ * read every number as a {@link Double}, kept every cell as text and decoded
+ * the file in the platform's charset:
+ * </p>
+ * <ul>
+ * <li>Guessed columns hold the narrowest type fitting their values, so
+ * integers load as {@link Integer}s or {@link Long}s in primitive columns;
+ * set {@link TableIOOptions#columnType} to {@link Double} to read a column as
+ * before.</li>
+ * <li>Empty cells and the {@link TableIOOptions#nullTokens null tokens}
+ * {@code NA}, {@code N/A}, {@code n/a}, {@code null} and {@code NULL} become
+ * missing values in columns of numbers and booleans; set no null tokens to
+ * keep them all as text, which makes their column one of strings.</li>
+ * <li>Text is decoded as UTF-8; set {@link TableIOOptions#charset} to
+ * {@link java.nio.charset.Charset#defaultCharset()} for the platform's
+ * charset.</li>
+ * </ul>
  *
  * @author Leon Yang
  */
@@ -73,7 +135,29 @@ public class DefaultTableIOPlugin extends AbstractIOPlugin<Table> implements
 	// other plugins. Consider another way to check supportsOpen/Close.
 	private static final Set<String> SUPPORTED_EXTENSIONS = //
 		Collections.unmodifiableSet(new HashSet<>(//
-			Arrays.asList("csv", "txt", "prn", "dif", "rtf")));
+			Arrays.asList("csv", "tsv", "txt", "prn", "dif", "rtf")));
+
+	/** Minimum number of bytes read by each thread when reading in parallel. */
+	private static final long MIN_SPLIT_SIZE = 1 << 20;
+
+	/** Number of bytes read for each row sampled beyond the start of a file. */
+	private static final int PROBE_SIZE = 1 << 12;
+
+	/**
+	 * Parser of the cells of columns read with a {@link #guessParser guessed}
+	 * parser, one per thread as columns may be read on several.
+	 */
+	private static final ThreadLocal<NumberParser> NUMBERS = ThreadLocal
+		.withInitial(NumberParser::new);
+
+	/** Number of rows formatted by each task when writing in parallel. */
+	private static final int WRITE_BLOCK_SIZE = 1 << 14;
+
+	/** Size of the buffer of compressed bytes read from a file. */
+	private static final int COMPRESSED_BUFFER_SIZE = 1 << 16;
+
+	/** Number of rows read between updates of the column sketches. */
+	private static final int SKETCH_BLOCK_SIZE = 1 << 12;
 
 	@Override
 	public boolean supportsOpen(final Location source) {
@@ -91,172 +175,364 @@ public class DefaultTableIOPlugin extends AbstractIOPlugin<Table> implements
 		return supportsFile(file);
 	}
 
-	/**
-	 * Process a given line into a list of tokens.
-	 */
-	private ArrayList<String> processRow(final String line, final char separator,
-		final char quote) throws IOException
-	{
-		final ArrayList<String> row = new ArrayList<>();
-		final StringBuilder sb = new StringBuilder();
-		int idx = 0;
-		int start = idx;
-		while (idx < line.length()) {
-			if (line.charAt(idx) == quote) {
-				sb.append(line, start, idx);
-				boolean quoted = true;
-				idx++;
-				start = idx;
-				// find quoted string
-				while (idx < line.length()) {
-					if (line.charAt(idx) == quote) {
-						sb.append(line, start, idx);
-						if (idx + 1 < line.length() && line.charAt(idx + 1) == quote) {
-							sb.append(quote);
-							idx += 2;
-							start = idx;
-						}
-						else {
-							idx++;
-							start = idx;
-							quoted = false;
-							break;
-						}
-					}
-					else {
-						idx++;
-					}
-				}
-				if (quoted) {
-					throw new IOException(String.format(
-						"Unbalanced quote at position %d: %s", idx, line));
-				}
-			}
-			else if (line.charAt(idx) == separator) {
-				sb.append(line, start, idx);
-				row.add(sb.toString());
-				sb.setLength(0);
-				idx++;
-				start = idx;
-			}
-			else {
-				idx++;
-			}
-		}
-		sb.append(line, start, idx);
-		row.add(sb.toString());
-		return row;
-	}
-
 	@Override
 	public GenericTable open(final Location source, final TableIOOptions options)
 		throws IOException
 	{
-		return open(source, options.values);
+		return open(source, values(source, options));
 	}
 
 	private GenericTable open(final Location source,
 		final TableIOOptions.Values options) throws IOException
 	{
+		TableIOOptions.rejectRowFilter(options, "delimited text");
 
 		final GenericTable table = new DefaultGenericTable();
 
 		try (final DataHandle<? extends Location> handle = //
-			dataHandleService.create(source))
+			dataHandleService.create(source);
+				final Input input = new Input(source, handle, options))
 		{
 			if (!handle.exists()) {
 				throw new IOException("Cannot open source");
 			}
-			final long length = handle.length();
-
-			final byte[] buffer = new byte[(int) length];
-			handle.read(buffer);
-
-			final String text = new String(buffer);
-
+			final Charset charset = options.charset();
 			final char separator = options.columnDelimiter();
 			final char quote = options.quote();
+			TableTokenizer tokenizer = new TableTokenizer(input.open(0), 0,
+				separator, quote, charset);
 			final boolean readRowHeaders = options.readRowHeaders();
 			final boolean readColHeaders = options.readColumnHeaders();
+			final int first = readRowHeaders ? 1 : 0;
+			final NullTokens nullTokens = new NullTokens(options.nullTokens(),
+				charset);
 
-			// split by any line delimiter
-			final String[] lines = text.split("\\R");
-			if (lines.length == 0) return table;
-			// process first line to get number of cols
-			final Map<Integer, Function<String, ?>> columnParsers = new HashMap<>();
-			{
-				final ArrayList<String> tokens = processRow(lines[0], separator, quote);
-				if (readColHeaders) {
-					final List<String> colHeaders;
-					if (readRowHeaders) colHeaders = tokens.subList(1, tokens.size());
-					else colHeaders = tokens;
-					final String[] colHeadersArr = new String[colHeaders.size()];
-					table.appendColumns(colHeaders.toArray(colHeadersArr));
+			// read the column headers, and find the first row of data
+			final List<String> colHeaders = new ArrayList<>();
+			long dataStart = -1;
+			boolean headerRow = readColHeaders;
+			while (dataStart < 0 && tokenizer.next()) {
+				if (tokenizer.isBlank()) continue;
+				final int count = tokenizer.getFieldCount() - first;
+				if (headerRow) {
+					for (int i = 0; i < count; i++)
+						colHeaders.add(tokenizer.string(first + i, charset));
+					headerRow = false;
+					continue;
+				}
+				if (!readColHeaders) colHeaders.addAll(Collections.nCopies(count,
+					null));
+				dataStart = tokenizer.getRecordOffset();
+			}
+			final int[] columns = selectColumns(colHeaders, options);
+			final boolean[] fields = columns.length == colHeaders.size() ? null
+				: selectFields(columns, first);
+			tokenizer.select(fields);
+
+			Segment data = null;
+			if (dataStart >= 0) {
+				// decide the type of each column, sampling its values if guessing
+				final TypeInference types = options.guessParser() ? infer(handle,
+					!input.isCompressed(), tokenizer, fields, new TypeInference(
+						colHeaders.size(), columns, first, nullTokens), options) : null;
+				final ColumnReader[] readers = new ColumnReader[columns.length];
+				for (int i = 0; i < readers.length; i++)
+					readers[i] = getReader(columns[i], types, options, charset);
+				data = new Segment(readers, columns, colHeaders.size(), readRowHeaders,
+					nullTokens, sketches(columns, options));
+
+				// read the rows, from the first requested one; compressed data can
+				// only be skipped through
+				final boolean compressed = input.isCompressed();
+				final long start = options.rowOffset() == 0 || compressed ? dataStart
+					: findRow(source, handle, dataStart, options);
+				long skip = compressed ? options.rowOffset() : 0;
+				final int limit = options.rowLimit();
+				final long length = handle.length();
+				final int threads = options.threadCount();
+				final int parts = (int) Math.min(4 * threads, (length - start) /
+					MIN_SPLIT_SIZE);
+				handle.seek(start);
+				if (threads > 1 && parts > 1 && limit == Integer.MAX_VALUE &&
+					!compressed)
+				{
+					final long[] bounds = TableTokenizer.split(
+						new DataHandleInputStream<>(handle), start, length, parts, quote,
+						charset);
+					readParallel(source, bounds, data, fields, threads, separator,
+						quote, charset);
 				}
 				else {
-					final List<String> cols;
-					if (readRowHeaders) {
-						cols = tokens.subList(1, tokens.size());
-						table.appendColumns(cols.size());
-						table.appendRow(tokens.get(0));
-					}
-					else {
-						cols = tokens;
-						table.appendColumns(cols.size());
-						table.appendRow();
-					}
-					for (int i = 0; i < cols.size(); i++) {
-						final Function<String, ?> parser = getParser(cols.get(i), i,
-							options);
-						columnParsers.put(i, parser);
-						table.set(i, 0, parser.apply(cols.get(i)));
+					tokenizer = new TableTokenizer(input.open(start), start, separator,
+						quote, charset);
+					tokenizer.select(fields);
+					while (skip > 0 && tokenizer.next()) {
+						if (!tokenizer.isBlank()) skip--;
 					}
+					while (data.rowCount < limit && tokenizer.next())
+						data.read(tokenizer, charset);
+					data.sketch();
 				}
 			}
-			for (int lineNum = 1; lineNum < lines.length; lineNum++) {
-				final String line = lines[lineNum];
-				final ArrayList<String> tokens = processRow(line, separator, quote);
-				final List<String> cols;
+
+			for (int i = 0; i < columns.length; i++) {
+				final String header = colHeaders.get(columns[i]);
+				table.add(data == null ? new GenericColumn(header) : data.readers[i]
+					.build(header));
+			}
+			if (data != null) {
+				table.setRowCount(data.rowCount);
 				if (readRowHeaders) {
-					cols = tokens.subList(1, tokens.size());
-					table.appendRow(tokens.get(0));
+					for (int r = 0; r < data.rowCount; r++)
+						table.setRowHeader(r, data.rowHeaders.get(r));
 				}
-				else {
-					cols = tokens;
-					table.appendRow();
+			}
+		}
+		return table;
+	}
+
+	/** Gets the sketch of each column, or null if none are kept. */
+	private static ColumnSketch<?>[] sketches(final int[] columns,
+		final TableIOOptions.Values options)
+	{
+		final ColumnSketch<?>[] sketches = new ColumnSketch<?>[columns.length];
+		boolean any = false;
+		for (int i = 0; i < columns.length; i++) {
+			sketches[i] = options.columnSketch(columns[i]);
+			any |= sketches[i] != null;
+		}
+		return any ? sketches : null;
+	}
+
+	/**
+	 * Reads ranges of records on separate threads, appending them to the given
+	 * segment in order.
+	 */
+	private void readParallel(final Location source, final long[] bounds,
+		final Segment data, final boolean[] fields, final int threads,
+		final char separator, final char quote, final Charset charset)
+		throws IOException
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Segment>> parts = new ArrayList<>();
+			for (int p = 0; p < bounds.length - 1; p++) {
+				final long start = bounds[p], end = bounds[p + 1];
+				final Segment segment = data.newSegment();
+				parts.add(executor.submit(() -> {
+					try (final DataHandle<? extends Location> handle = //
+						dataHandleService.create(source))
+					{
+						handle.seek(start);
+						final TableTokenizer tokenizer = new TableTokenizer(
+							new RangeInputStream(new DataHandleInputStream<>(handle), end -
+								start), start, separator, quote, charset);
+						tokenizer.select(fields);
+						while (tokenizer.next())
+							segment.read(tokenizer, charset);
+						segment.sketch();
+					}
+					return segment;
+				}));
+			}
+			for (final Future<Segment> part : parts)
+				data.append(part.get());
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading", exc);
+		}
+		catch (final ExecutionException exc) {
+			throw unwrap(exc);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Finds the row at the {@link TableIOOptions#rowOffset row offset}, starting
+	 * from the closest row known from the row index, if one is kept.
+	 *
+	 * @return The offset of the row, or the length of the file if there are not
+	 *         that many rows.
+	 */
+	private long findRow(final Location source, final DataHandle<?> handle,
+		final long dataStart, final TableIOOptions.Values options)
+		throws IOException
+	{
+		final long row = options.rowOffset();
+		long from = dataStart, skip = row;
+		final int interval = options.rowIndex();
+		if (interval > 0 && source instanceof FileLocation) {
+			final RowIndex index = getRowIndex((FileLocation) source, handle,
+				dataStart, interval, options);
+			if (row >= index.getRowCount()) return handle.length();
+			final long indexedRow = index.indexedRow(row);
+			from = index.offset(indexedRow);
+			skip = row - indexedRow;
+		}
+		handle.seek(from);
+		final TableTokenizer tokenizer = new TableTokenizer(
+			new DataHandleInputStream<>(handle), from, options.columnDelimiter(),
+			options.quote(), options.charset());
+		tokenizer.select(new boolean[0]);
+		while (skip > 0 && tokenizer.next()) {
+			if (!tokenizer.isBlank()) skip--;
+		}
+		return skip > 0 ? handle.length() : tokenizer.getOffset();
+	}
+
+	/**
+	 * Reads the row index of a table from its sidecar file, building the index
+	 * if the sidecar is missing or stale.
+	 */
+	private RowIndex getRowIndex(final FileLocation source,
+		final DataHandle<?> handle, final long dataStart, final int interval,
+		final TableIOOptions.Values options) throws IOException
+	{
+		final char quote = options.quote();
+		final FileLocation sidecar = new FileLocation(source.getFile().getPath() +
+			RowIndex.SUFFIX);
+		try (final DataHandle<Location> indexHandle = //
+			dataHandleService.create(sidecar))
+		{
+			if (indexHandle.exists()) {
+				final RowIndex index = RowIndex.read(indexHandle);
+				if (index != null && index.isValid(handle, dataStart, interval,
+					quote))
+				{
+					return index;
 				}
-				if (cols.size() != table.getColumnCount()) {
-					throw new IOException("Line " + table.getRowCount() +
-						" is not the same length as the first line.");
+			}
+			handle.seek(dataStart);
+			final RowIndex index = RowIndex.build(handle, new TableTokenizer(
+				new DataHandleInputStream<>(handle), dataStart, options
+					.columnDelimiter(), quote, options.charset()), dataStart, interval,
+				quote);
+			try {
+				index.write(indexHandle);
+			}
+			catch (final IOException exc) {
+				// NB: The index still serves this read, if not later ones.
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Gets the indices of the columns to read, in ascending order.
+	 *
+	 * @throws IOException if a selected column does not exist.
+	 */
+	static int[] selectColumns(final List<String> colHeaders,
+		final TableIOOptions.Values options) throws IOException
+	{
+		final int[] indices = options.selectedColumns();
+		final List<String> headers = options.selectedColumnHeaders();
+		if (indices == null && headers == null) {
+			return IntStream.range(0, colHeaders.size()).toArray();
+		}
+		final BitSet selected = new BitSet();
+		if (indices != null) {
+			for (final int index : indices) {
+				if (index < 0 || index >= colHeaders.size()) {
+					throw new IOException("No column with index " + index);
 				}
-				for (int i = 0; i < cols.size(); i++) {
-					if (lineNum == 1 && readColHeaders) {
-						columnParsers.put(i, getParser(cols.get(i), i, options));
-					}
-					table.set(i, lineNum - 1, columnParsers.get(i).apply(cols.get(i)));
+				selected.set(index);
+			}
+		}
+		if (headers != null) {
+			for (final String header : headers) {
+				final int index = colHeaders.indexOf(header);
+				if (header == null || index < 0) {
+					throw new IOException("No column with header " + header);
 				}
+				selected.set(index);
 			}
 		}
-		return table;
+		return selected.stream().toArray();
+	}
+
+	/** Gets which fields of each record hold the given columns. */
+	private static boolean[] selectFields(final int[] columns, final int first) {
+		final boolean[] fields = new boolean[columns.length == 0 ? first
+			: first + columns[columns.length - 1] + 1];
+		if (first > 0) fields[0] = true;
+		for (final int column : columns)
+			fields[first + column] = true;
+		return fields;
+	}
+
+	/**
+	 * Infers the type of each column from a sample of rows: those following the
+	 * current record of the tokenizer, and single rows at evenly spaced offsets
+	 * through the rest of the file. If the file cannot be seeked, such as when
+	 * it is compressed, the whole sample is taken from the following rows.
+	 */
+	private static TypeInference infer(final DataHandle<?> handle,
+		final boolean seekable, final TableTokenizer tokenizer,
+		final boolean[] fields, final TypeInference types,
+		final TableIOOptions.Values options) throws IOException
+	{
+		final int sampleSize = options.sampleSize();
+		final int head = seekable ? (sampleSize + 1) / 2 : sampleSize;
+		int sampled = 0;
+		do {
+			if (tokenizer.isBlank()) continue;
+			types.sample(tokenizer);
+			sampled++;
+		}
+		while (sampled < head && tokenizer.next());
+		if (sampled < head || !seekable) return types;
+
+		final long start = tokenizer.getOffset();
+		final long length = handle.length();
+		final int probes = (int) Math.min(sampleSize - head, (length - start) /
+			PROBE_SIZE);
+		for (int p = 0; p < probes; p++) {
+			final long offset = start + p * (length - start) / probes;
+			handle.seek(offset);
+			final TableTokenizer probe = new TableTokenizer(
+				new DataHandleInputStream<>(handle), offset, options.columnDelimiter(),
+				options.quote(), options.charset(), PROBE_SIZE);
+			probe.select(fields);
+			try {
+				// NB: The offset may be anywhere within a record, so skip to the next
+				// one. A quote in either record means the next one may instead lie
+				// within a quoted multi-line cell, so the sample is dropped.
+				if (!probe.next() || probe.isQuoted() || !probe.next()) continue;
+				if (!probe.isBlank() && !probe.isQuoted()) types.sample(probe);
+			}
+			catch (final IOException exc) {
+				// NB: A misplaced probe can appear to end within quotes.
+			}
+		}
+		return types;
 	}
 
-	private static Function<String, ?> getParser(final String content,
-		final int column, final TableIOOptions.Values options)
+	/**
+	 * Creates the reader for the given column, whose type is decided by the
+	 * column's options or, when guessing, by the inferred types.
+	 */
+	private static ColumnReader getReader(final int column,
+		final TypeInference types, final TableIOOptions.Values options,
+		final Charset charset)
 	{
 		final ColumnTableIOOptions.Values colOptions = options.column(column);
-		if (colOptions != null) return colOptions.parser();
-		if (options.guessParser()) return guessParser(content);
-		return options.parser();
+		final Function<String, ?> parser;
+		if (colOptions != null) parser = colOptions.parser();
+		else if (types != null) {
+			return ColumnReader.createWidening(types.type(column), charset);
+		}
+		else parser = options.parser();
+		return ColumnReader.create(TableIOOptions.typeOf(parser), parser, charset);
 	}
 
 	static Function<String, ?> guessParser(final String content) {
-		try {
-			final Function<String, ?> function = s -> Double.valueOf(s.replace(
-				"infinity", "Infinity").replace("Nan", "NaN"));
-			function.apply(content);
-			return function;
+		if (NUMBERS.get().parseDouble(content)) {
+			return DefaultTableIOPlugin::parseDouble;
 		}
-		catch (final NumberFormatException ignored) {}
 		if (content.equalsIgnoreCase("true") || content.equalsIgnoreCase("false")) {
 			return Boolean::valueOf;
 		}
@@ -267,78 +543,184 @@ public class DefaultTableIOPlugin extends AbstractIOPlugin<Table> implements
 	public void save(final Table table, final Location destination,
 		final TableIOOptions options) throws IOException
 	{
-		save(table, destination, options.values);
+		save(table, destination, values(destination, options));
+	}
+
+	/**
+	 * Parses a {@code double} via {@link NumberParser}, which also accepts the
+	 * spellings {@code Nan} and {@code infinity}.
+	 */
+	private static Double parseDouble(final String s) {
+		final NumberParser numbers = NUMBERS.get();
+		if (!numbers.parseDouble(s)) {
+			throw new NumberFormatException("For input string: \"" + s + "\"");
+		}
+		return numbers.doubleValue();
 	}
 
 	private boolean supportsFile(final File file) {
 		if (file.isDirectory()) return false;
-		final String ext = FileUtils.getExtension(file).toLowerCase();
-		return SUPPORTED_EXTENSIONS.contains(ext);
+		return SUPPORTED_EXTENSIONS.contains(extension(file.getName()));
+	}
+
+	/** Gets the lower case extension of a file name, ignoring compression. */
+	private static String extension(String name) {
+		if (name == null) return "";
+		final Compression compression = Compression.of(name);
+		if (compression != null) {
+			name = name.substring(0, name.length() - compression.suffix.length());
+		}
+		return FileUtils.getExtension(name).toLowerCase();
+	}
+
+	/** Gets the values of the options, defaulting to tabs in TSV files. */
+	private static TableIOOptions.Values values(final Location location,
+		final TableIOOptions options)
+	{
+		return extension(location.getName()).equals("tsv") ? options
+			.withDefaultColumnDelimiter('\t') : options.values;
 	}
 
 	private void save(final Table table, final Location destination,
 		final TableIOOptions.Values options) throws IOException
 	{
 
+		final Compression compression = Compression.of(destination.getName());
+		// NB: Closing the compressing stream frees its native deflater.
 		try (final DataHandle<Location> handle = //
-			dataHandleService.create(destination))
+			dataHandleService.create(destination);
+				final OutputStream out = compression == null
+					? new DataHandleOutputStream<>(handle) : compression.compress(
+						new DataHandleOutputStream<>(handle)))
 		{
 			final boolean writeRH = options.writeRowHeaders();
 			final boolean writeCH = options.writeColumnHeaders();
-			final char separator = options.columnDelimiter();
-			final String eol = options.rowDelimiter();
-			final char quote = options.quote();
+			final TableWriter writer = newWriter(out, options);
+			final int columnCount = table.getColumnCount();
 
-			final StringBuilder sb = new StringBuilder();
 			// write column headers
 			if (writeCH) {
 				if (writeRH) {
-					sb.append(tryQuote(options.cornerText(), separator, quote));
-					if (table.getColumnCount() > 0) {
-						sb.append(separator);
-						sb.append(tryQuote(table.getColumnHeader(0), separator, quote));
-					}
+					writer.writeText(options.cornerText());
+					// avoid adding extra separator when there is 0 column
+					if (columnCount > 0) writer.writeDelimiter();
 				}
-				// avoid adding extra separator when there is 0 column
-				else if (table.getColumnCount() > 0) {
-					sb.append(tryQuote(table.getColumnHeader(0), separator, quote));
+				for (int col = 0; col < columnCount; col++) {
+					if (col > 0) writer.writeDelimiter();
+					writer.writeText(table.getColumnHeader(col));
 				}
-				for (int col = 1; col < table.getColumnCount(); col++) {
-					sb.append(separator);
-					sb.append(tryQuote(table.getColumnHeader(col), separator, quote));
-				}
-				sb.append(eol);
-				handle.writeBytes(sb.toString());
-				sb.setLength(0);
+				writer.endRow();
 			}
 			// write each row
-			for (int row = 0; row < table.getRowCount(); row++) {
-				Function<Object, String> formatter = getFormatter(options, 0);
-				if (writeRH) {
-					sb.append(tryQuote(table.getRowHeader(row), separator, quote));
-					if (table.getColumnCount() > 0) {
-						sb.append(separator);
-						sb.append(tryQuote(formatter.apply(table.get(0, row)), separator,
-							quote));
-					}
-				}
-				// avoid adding extra separator when there is 0 column
-				else if (table.getColumnCount() > 0) {
-					sb.append(tryQuote(formatter.apply(table.get(0, row)), separator,
-						quote));
-				}
-				for (int col = 1; col < table.getColumnCount(); col++) {
-					formatter = getFormatter(options, col);
-					sb.append(separator);
-					sb.append(tryQuote(formatter.apply(table.get(col, row)), separator,
-						quote));
+			final CellWriter[] cells = new CellWriter[columnCount];
+			for (int col = 0; col < columnCount; col++) {
+				cells[col] = getCellWriter((Column<?>) table.get(col), getFormatter(
+					options, col));
+			}
+			final int rowCount = table.getRowCount();
+			final int threads = options.threadCount();
+			if (threads > 1 && rowCount > WRITE_BLOCK_SIZE) {
+				writer.flush();
+				writeParallel(out, table, cells, options, threads);
+			}
+			else {
+				writeRows(writer, table, cells, writeRH, 0, rowCount);
+				writer.flush();
+			}
+			if (compression != null) ((DeflaterOutputStream) out).finish();
+			// NB: Drop whatever remains of a longer file being overwritten.
+			handle.setLength(handle.offset());
+		}
+
+	}
+
+	/**
+	 * Formats blocks of rows on multiple threads, writing each block out as soon
+	 * as it and all blocks before it are done. At most two blocks per thread are
+	 * in flight at once, each formatted into one of a fixed set of reusable
+	 * buffers.
+	 */
+	private void writeParallel(final OutputStream out, final Table table,
+		final CellWriter[] cells, final TableIOOptions.Values options,
+		final int threads) throws IOException
+	{
+		final boolean writeRH = options.writeRowHeaders();
+		final int rowCount = table.getRowCount();
+		final int maxBlocks = 2 * threads;
+		final BlockingQueue<Block> free = new ArrayBlockingQueue<>(maxBlocks);
+		for (int b = 0; b < maxBlocks; b++)
+			free.add(new Block(options));
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final Deque<Future<Block>> blocks = new ArrayDeque<>();
+			int next = 0;
+			while (next < rowCount || !blocks.isEmpty()) {
+				if (next < rowCount && blocks.size() < maxBlocks) {
+					final int start = next;
+					final int end = (int) Math.min(rowCount, (long) start +
+						WRITE_BLOCK_SIZE);
+					blocks.add(executor.submit(() -> {
+						final Block block = free.take();
+						block.bytes.reset();
+						writeRows(block.writer, table, cells, writeRH, start, end);
+						block.writer.flush();
+						return block;
+					}));
+					next = end;
+					continue;
 				}
-				sb.append(eol);
-				handle.writeBytes(sb.toString());
-				sb.setLength(0);
+				final Block block = blocks.remove().get();
+				block.bytes.writeTo(out);
+				free.add(block);
+			}
+			out.flush();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing", exc);
+		}
+		catch (final ExecutionException exc) {
+			throw unwrap(exc);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void writeRows(final TableWriter writer, final Table table,
+		final CellWriter[] cells, final boolean writeRH, final int start,
+		final int end) throws IOException
+	{
+		for (int row = start; row < end; row++) {
+			if (writeRH) {
+				writer.writeText(table.getRowHeader(row));
+				if (cells.length > 0) writer.writeDelimiter();
+			}
+			for (int col = 0; col < cells.length; col++) {
+				if (col > 0) writer.writeDelimiter();
+				cells[col].write(writer, row);
 			}
+			writer.endRow();
 		}
+	}
 
+	private static TableWriter newWriter(final OutputStream out,
+		final TableIOOptions.Values options)
+	{
+		return new TableWriter(out, options.columnDelimiter(), options.quote(),
+			options.rowDelimiter(), options.charset());
+	}
+
+	/**
+	 * Gets the exception to rethrow for a failed task, throwing it directly if
+	 * it is unchecked.
+	 */
+	private static IOException unwrap(final ExecutionException exc) {
+		final Throwable cause = exc.getCause();
+		if (cause instanceof IOException) return (IOException) cause;
+		if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+		if (cause instanceof Error) throw (Error) cause;
+		return new IOException(cause);
 	}
 
 	private Function<Object, String> getFormatter(
@@ -350,22 +732,306 @@ public class DefaultTableIOPlugin extends AbstractIOPlugin<Table> implements
 	}
 
 	/**
-	 * Try to quote a string if:
-	 * <li>it is null or empty</li>
-	 * <li>it has quotes inside</li>
-	 * <li>it has separators or EOL inside</li>
-	 *
-	 * @param str string to quote
-	 * @return string, possibly quoted
+	 * Gets how to write the cells of a column. Values of primitive columns
+	 * without missing values are written straight from the column's array,
+	 * unless a custom formatter is used. Floating point numbers are written
+	 * with a {@link NumberFormatter}: the shortest one by default, or the
+	 * custom formatter if it is one.
 	 */
-	private String tryQuote(final String str, final char separator,
-		final char quote)
+	private static CellWriter getCellWriter(final Column<?> column,
+		final Function<Object, String> formatter)
 	{
-		if (str == null || str.length() == 0) return "" + quote + quote;
-		if (str.indexOf(quote) != -1) {
-			return quote + str.replace("" + quote, "" + quote + quote) + quote;
+		final boolean isDefault = formatter == TableIOOptions.DEFAULT_FORMATTER;
+		final NumberFormatter numbers = isDefault ? NumberFormatter.shortest()
+			: formatter instanceof NumberFormatter ? (NumberFormatter) formatter
+				: null;
+		final boolean hasNulls = Columns.hasNulls(column);
+		if (numbers != null && !hasNulls) {
+			if (column instanceof DoubleColumn) {
+				final double[] values = ((DoubleColumn) column).getArray();
+				return (writer, row) -> writer.writeDouble(values[row], numbers);
+			}
+			if (column instanceof FloatColumn) {
+				final float[] values = ((FloatColumn) column).getArray();
+				return (writer, row) -> writer.writeFloat(values[row], numbers);
+			}
+		}
+		if (isDefault && !hasNulls) {
+			if (column instanceof LongColumn) {
+				final long[] values = ((LongColumn) column).getArray();
+				return (writer, row) -> writer.writeLong(values[row]);
+			}
+			if (column instanceof IntColumn) {
+				final int[] values = ((IntColumn) column).getArray();
+				return (writer, row) -> writer.writeLong(values[row]);
+			}
+			if (column instanceof ShortColumn) {
+				final short[] values = ((ShortColumn) column).getArray();
+				return (writer, row) -> writer.writeLong(values[row]);
+			}
+			if (column instanceof ByteColumn) {
+				final byte[] values = ((ByteColumn) column).getArray();
+				return (writer, row) -> writer.writeLong(values[row]);
+			}
+			if (column instanceof BoolColumn) {
+				final boolean[] values = ((BoolColumn) column).getArray();
+				return (writer, row) -> writer.writeBoolean(values[row]);
+			}
+		}
+		if (numbers != null) {
+			return (writer, row) -> {
+				final Object value = column.get(row);
+				if (value instanceof Double) writer.writeDouble((Double) value, numbers);
+				else if (value instanceof Float) writer.writeFloat((Float) value,
+					numbers);
+				else writer.writeText(formatter.apply(value));
+			};
+		}
+		return (writer, row) -> writer.writeText(formatter.apply(column.get(row)));
+	}
+
+	// -- Helper classes --
+
+	/** A buffer into which a block of rows is formatted. */
+	private static final class Block {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+			TableWriter.BUFFER_SIZE);
+		private final TableWriter writer;
+
+		private Block(final TableIOOptions.Values options) {
+			writer = newWriter(bytes, options);
+		}
+	}
+
+	/** Writes the cells of one column. */
+	@FunctionalInterface
+	private interface CellWriter {
+
+		void write(TableWriter writer, int row) throws IOException;
+	}
+
+	/** Consecutive rows of a table being read. */
+	private static class Segment {
+
+		private final ColumnReader[] readers;
+
+		/** The column read by each reader. */
+		private final int[] columns;
+
+		/** The number of columns of each record, read or not. */
+		private final int columnCount;
+
+		/** The header of each row, or null if not reading row headers. */
+		private final List<String> rowHeaders;
+
+		private final NullTokens nullTokens;
+
+		/** The sketch of each column, or null if none are kept. */
+		private final ColumnSketch<?>[] sketches;
+
+		private int rowCount;
+
+		/** The number of rows already added to the sketches. */
+		private int sketched;
+
+		private Segment(final ColumnReader[] readers, final int[] columns,
+			final int columnCount, final boolean readRowHeaders,
+			final NullTokens nullTokens, final ColumnSketch<?>[] sketches)
+		{
+			this.readers = readers;
+			this.columns = columns;
+			this.columnCount = columnCount;
+			rowHeaders = readRowHeaders ? new ArrayList<>() : null;
+			this.nullTokens = nullTokens;
+			this.sketches = sketches;
+		}
+
+		/** Creates an empty segment with readers of the same kinds. */
+		private Segment newSegment() {
+			final ColumnReader[] segmentReaders = new ColumnReader[readers.length];
+			for (int i = 0; i < readers.length; i++)
+				segmentReaders[i] = readers[i].newSegment();
+			return new Segment(segmentReaders, columns, columnCount,
+				rowHeaders != null, nullTokens, sketches);
+		}
+
+		/** Reads the current record of the tokenizer. */
+		private void read(final TableTokenizer tokenizer, final Charset charset)
+			throws IOException
+		{
+			if (tokenizer.isBlank()) return;
+			final int first = rowHeaders == null ? 0 : 1;
+			if (tokenizer.getFieldCount() - first != columnCount) {
+				throw new IOException("Record at byte " + tokenizer
+					.getRecordOffset() + " is not the same length as the first line.");
+			}
+			if (rowHeaders != null) rowHeaders.add(tokenizer.string(0, charset));
+			final byte[] buf = tokenizer.buffer();
+			for (int i = 0; i < readers.length; i++) {
+				final ColumnReader reader = readers[i];
+				final int field = first + columns[i];
+				final int start = tokenizer.start(field);
+				final int end = tokenizer.end(field);
+				if (reader.isNullable() && nullTokens.matches(buf, start, end)) {
+					reader.readNull();
+				}
+				else reader.read(buf, start, end);
+			}
+			rowCount++;
+			if (sketches != null && rowCount - sketched == SKETCH_BLOCK_SIZE) {
+				sketch();
+			}
+		}
+
+		/**
+		 * Adds the rows read since the last call to the sketches, while they are
+		 * still cached. Segments read in parallel share the sketches.
+		 */
+		private void sketch() {
+			if (sketches == null) return;
+			for (int i = 0; i < readers.length; i++) {
+				final ColumnSketch<?> sketch = sketches[i];
+				if (sketch == null) continue;
+				final Column<?> column = readers[i].view(sketched);
+				synchronized (sketch) {
+					sketch.update(column, sketched, rowCount);
+				}
+			}
+			sketched = rowCount;
+		}
+
+		/** Appends the rows of the given segment. */
+		private void append(final Segment segment) {
+			for (int i = 0; i < readers.length; i++)
+				readers[i].append(segment.readers[i]);
+			if (rowHeaders != null) rowHeaders.addAll(segment.rowHeaders);
+			rowCount += segment.rowCount;
+		}
+	}
+
+	/** A compression format, recognized by the suffix of file names. */
+	private enum Compression {
+
+		GZIP(".gz"), DEFLATE(".deflate");
+
+		private final String suffix;
+
+		Compression(final String suffix) {
+			this.suffix = suffix;
+		}
+
+		private static Compression of(final String name) {
+			if (name == null) return null;
+			final String lower = name.toLowerCase();
+			for (final Compression compression : values()) {
+				if (lower.endsWith(compression.suffix)) return compression;
+			}
+			return null;
+		}
+
+		private InputStream decompress(final InputStream in) throws IOException {
+			return this == GZIP ? new GZIPInputStream(in, COMPRESSED_BUFFER_SIZE)
+				: new InflaterInputStream(in);
+		}
+
+		private DeflaterOutputStream compress(final OutputStream out)
+			throws IOException
+		{
+			return this == GZIP ? new GZIPOutputStream(out, COMPRESSED_BUFFER_SIZE)
+				: new DeflaterOutputStream(out);
+		}
+	}
+
+	/**
+	 * Opens the bytes of a file from a given offset. Compressed files are read
+	 * through a stream of their own, decompressing them from the start.
+	 */
+	private class Input implements Closeable {
+
+		private final Location source;
+		private final DataHandle<?> handle;
+		private final TableIOOptions.Values options;
+		private final Compression compression;
+
+		/** The open stream of decompressed bytes, if any. */
+		private InputStream stream;
+
+		private Input(final Location source, final DataHandle<?> handle,
+			final TableIOOptions.Values options)
+		{
+			this.source = source;
+			this.handle = handle;
+			this.options = options;
+			compression = Compression.of(source.getName());
+		}
+
+		private boolean isCompressed() {
+			return compression != null;
+		}
+
+		/** Opens the bytes from the given offset, closing the last stream. */
+		private InputStream open(final long offset) throws IOException {
+			if (compression == null) {
+				handle.seek(offset);
+				return new DataHandleInputStream<>(handle);
+			}
+			close();
+			final DataHandle<Location> compressed = dataHandleService.create(source);
+			try {
+				stream = compression.decompress(new BufferedInputStream(
+					new DataHandleInputStream<>(compressed), COMPRESSED_BUFFER_SIZE));
+			}
+			catch (final IOException exc) {
+				compressed.close();
+				throw exc;
+			}
+			if (options.backgroundDecompression()) {
+				stream = new BackgroundInputStream(stream);
+			}
+			for (long skipped = 0; skipped < offset;) {
+				final long n = stream.skip(offset - skipped);
+				if (n > 0) skipped += n;
+				else if (stream.read() < 0) break;
+				else skipped++;
+			}
+			return stream;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (stream == null) return;
+			stream.close();
+			stream = null;
+		}
+	}
+
+	/** Reads no more than a given number of bytes of another stream. */
+	private static class RangeInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		private RangeInputStream(final InputStream in, final long length) {
+			super(in);
+			remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) return -1;
+			final int b = super.read();
+			if (b >= 0) remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+			throws IOException
+		{
+			if (remaining <= 0) return -1;
+			final int r = super.read(b, off, (int) Math.min(len, remaining));
+			if (r > 0) remaining -= r;
+			return r;
 		}
-		if (str.indexOf(separator) != -1) return quote + str + quote;
-		return str;
 	}
 }
@@ -58,6 +58,9 @@ public class ExportTableCommand extends ContextCommand {
 	@Parameter(required = false, label = "Column delimiter")
 	private char columnDelimiter = ',';
 
+	@Parameter(required = false, label = "Threads", min = "1")
+	private int threadCount = 1;
+
 	@Parameter
 	private LogService log;
 
@@ -80,7 +83,8 @@ public class ExportTableCommand extends ContextCommand {
 			TableIOOptions options = new TableIOOptions()
 					.writeColumnHeaders(writeColHeaders)
 					.writeRowHeaders(writeRowHeaders)
-					.columnDelimiter(columnDelimiter);
+					.columnDelimiter(columnDelimiter)
+					.threadCount(threadCount);
 			tableIO.save(tableDisplay.get(0), outputFile.getAbsolutePath(), options);
 		}
 		catch (IOException exc) {
@@ -0,0 +1,374 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and builds the tables of FlatBuffers, the serialization format of
+ * Apache Arrow's metadata, without generated code.
+ * <p>
+ * Only what Arrow needs is supported: tables of scalars, strings, tables,
+ * unions, and vectors of tables and of structs.
+ * </p>
+ */
+final class FlatBuffers {
+
+	private FlatBuffers() {
+		// NB: prevent instantiation of utility class.
+	}
+
+	/**
+	 * Serializes a table as the root of a FlatBuffer, padded to a multiple of 8
+	 * bytes.
+	 */
+	static byte[] serialize(final TableBuilder root) {
+		final Output out = new Output();
+		out.pos = 4;
+		final int rootPos = out.table(root);
+		out.buf.putInt(0, rootPos);
+		out.align(8, 0);
+		return Arrays.copyOf(out.buf.array(), out.pos);
+	}
+
+	/** A view of a table in a FlatBuffer. */
+	static final class Table {
+
+		private final ByteBuffer bb;
+		private final int pos;
+
+		private Table(final ByteBuffer bb, final int pos) {
+			this.bb = bb;
+			this.pos = pos;
+		}
+
+		/** Gets the root table of a FlatBuffer, starting at the buffer's position. */
+		static Table root(final ByteBuffer buf) {
+			final ByteBuffer bb = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+			return new Table(bb, bb.getInt(0));
+		}
+
+		boolean has(final int field) {
+			return offset(field) != 0;
+		}
+
+		byte getByte(final int field, final byte defaultValue) {
+			final int o = offset(field);
+			return o == 0 ? defaultValue : bb.get(pos + o);
+		}
+
+		boolean getBoolean(final int field) {
+			return getByte(field, (byte) 0) != 0;
+		}
+
+		short getShort(final int field, final short defaultValue) {
+			final int o = offset(field);
+			return o == 0 ? defaultValue : bb.getShort(pos + o);
+		}
+
+		int getInt(final int field, final int defaultValue) {
+			final int o = offset(field);
+			return o == 0 ? defaultValue : bb.getInt(pos + o);
+		}
+
+		long getLong(final int field, final long defaultValue) {
+			final int o = offset(field);
+			return o == 0 ? defaultValue : bb.getLong(pos + o);
+		}
+
+		/** Gets a table or union value, or null if absent. */
+		Table getTable(final int field) {
+			final int o = offset(field);
+			return o == 0 ? null : new Table(bb, deref(pos + o));
+		}
+
+		String getString(final int field) {
+			final int o = offset(field);
+			if (o == 0) return null;
+			final int start = deref(pos + o);
+			final byte[] bytes = new byte[bb.getInt(start)];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = bb.get(start + 4 + i);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/** Gets the number of elements of a vector, or 0 if absent. */
+		int getVectorLength(final int field) {
+			final int o = offset(field);
+			return o == 0 ? 0 : bb.getInt(deref(pos + o));
+		}
+
+		/** Gets an element of a vector of tables. */
+		Table getTable(final int field, final int index) {
+			final int element = deref(pos + offset(field)) + 4 + 4 * index;
+			return new Table(bb, deref(element));
+		}
+
+		/** Gets a {@code long} of an element of a vector of structs. */
+		long getStructLong(final int field, final int index, final int structSize,
+			final int fieldOffset)
+		{
+			final int start = deref(pos + offset(field)) + 4;
+			return bb.getLong(start + index * structSize + fieldOffset);
+		}
+
+		/** Gets an {@code int} of an element of a vector of structs. */
+		int getStructInt(final int field, final int index, final int structSize,
+			final int fieldOffset)
+		{
+			final int start = deref(pos + offset(field)) + 4;
+			return bb.getInt(start + index * structSize + fieldOffset);
+		}
+
+		private int offset(final int field) {
+			final int vtable = pos - bb.getInt(pos);
+			final int vtableSize = bb.getShort(vtable) & 0xffff;
+			final int entry = 4 + 2 * field;
+			return entry + 2 <= vtableSize ? bb.getShort(vtable + entry) & 0xffff
+				: 0;
+		}
+
+		private int deref(final int offsetPos) {
+			return offsetPos + bb.getInt(offsetPos);
+		}
+	}
+
+	/** A table to be serialized, built up field by field. */
+	static final class TableBuilder {
+
+		private final List<Object> values = new ArrayList<>();
+		private final List<Integer> sizes = new ArrayList<>();
+
+		TableBuilder addByte(final int field, final int value) {
+			return set(field, (long) value, 1);
+		}
+
+		TableBuilder addBoolean(final int field, final boolean value) {
+			return set(field, value ? 1L : 0L, 1);
+		}
+
+		TableBuilder addShort(final int field, final int value) {
+			return set(field, (long) value, 2);
+		}
+
+		TableBuilder addInt(final int field, final int value) {
+			return set(field, (long) value, 4);
+		}
+
+		TableBuilder addLong(final int field, final long value) {
+			return set(field, value, 8);
+		}
+
+		TableBuilder addString(final int field, final String value) {
+			return set(field, value, 4);
+		}
+
+		TableBuilder addTable(final int field, final TableBuilder value) {
+			return set(field, value, 4);
+		}
+
+		TableBuilder addTables(final int field, final List<TableBuilder> value) {
+			return set(field, new ArrayList<>(value), 4);
+		}
+
+		/**
+		 * Adds a vector of structs, whose fields are aligned to at most 8 bytes.
+		 *
+		 * @param bytes The little-endian bytes of the structs.
+		 * @param count The number of structs.
+		 */
+		TableBuilder addStructs(final int field, final byte[] bytes,
+			final int count)
+		{
+			return set(field, new Structs(bytes, count), 4);
+		}
+
+		private TableBuilder set(final int field, final Object value,
+			final int size)
+		{
+			while (values.size() <= field) {
+				values.add(null);
+				sizes.add(0);
+			}
+			values.set(field, value);
+			sizes.set(field, size);
+			return this;
+		}
+	}
+
+	// -- Helper classes --
+
+	private static final class Structs {
+
+		private final byte[] bytes;
+		private final int count;
+
+		private Structs(final byte[] bytes, final int count) {
+			this.bytes = bytes;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Writes FlatBuffer objects front to back: each table is preceded by its
+	 * vtable and followed by the objects it refers to, so that all offsets
+	 * point forward.
+	 */
+	private static final class Output {
+
+		private ByteBuffer buf = ByteBuffer.allocate(256).order(
+			ByteOrder.LITTLE_ENDIAN);
+		private int pos;
+
+		private int table(final TableBuilder table) {
+			final int fieldCount = table.values.size();
+			// lay out the fields by decreasing size, so all are aligned
+			final int[] offsets = new int[fieldCount];
+			int size = 4;
+			for (int width = 8; width >= 1; width /= 2) {
+				for (int f = 0; f < fieldCount; f++) {
+					if (table.values.get(f) == null || table.sizes.get(f) != width) {
+						continue;
+					}
+					offsets[f] = size;
+					size += width;
+				}
+			}
+
+			// the vtable
+			align(2, 0);
+			final int vtable = pos;
+			ensure(4 + 2 * fieldCount);
+			buf.putShort(pos, (short) (4 + 2 * fieldCount));
+			buf.putShort(pos + 2, (short) size);
+			for (int f = 0; f < fieldCount; f++)
+				buf.putShort(pos + 4 + 2 * f, (short) offsets[f]);
+			pos += 4 + 2 * fieldCount;
+
+			// the table, with 8-byte fields aligned
+			align(8, 4);
+			final int start = pos;
+			ensure(size);
+			buf.putInt(start, start - vtable);
+			pos += size;
+			for (int f = 0; f < fieldCount; f++) {
+				final Object value = table.values.get(f);
+				if (value instanceof Long) {
+					final long v = (Long) value;
+					final int p = start + offsets[f];
+					switch (table.sizes.get(f)) {
+						case 1:
+							buf.put(p, (byte) v);
+							break;
+						case 2:
+							buf.putShort(p, (short) v);
+							break;
+						case 4:
+							buf.putInt(p, (int) v);
+							break;
+						default:
+							buf.putLong(p, v);
+					}
+				}
+			}
+			// the objects referred to
+			for (int f = 0; f < fieldCount; f++) {
+				final Object value = table.values.get(f);
+				if (value == null || value instanceof Long) continue;
+				final int p = start + offsets[f];
+				// NB: writing the object may reallocate the buffer
+				final int target = object(value);
+				buf.putInt(p, target - p);
+			}
+			return start;
+		}
+
+		private int object(final Object value) {
+			if (value instanceof TableBuilder) return table((TableBuilder) value);
+			if (value instanceof String) {
+				final byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+				align(4, 0);
+				final int start = pos;
+				ensure(4 + bytes.length + 1);
+				buf.putInt(start, bytes.length);
+				for (int i = 0; i < bytes.length; i++)
+					buf.put(start + 4 + i, bytes[i]);
+				buf.put(start + 4 + bytes.length, (byte) 0);
+				pos += 4 + bytes.length + 1;
+				return start;
+			}
+			if (value instanceof Structs) {
+				final Structs structs = (Structs) value;
+				align(8, 4);
+				final int start = pos;
+				ensure(4 + structs.bytes.length);
+				buf.putInt(start, structs.count);
+				for (int i = 0; i < structs.bytes.length; i++)
+					buf.put(start + 4 + i, structs.bytes[i]);
+				pos += 4 + structs.bytes.length;
+				return start;
+			}
+			@SuppressWarnings("unchecked")
+			final List<TableBuilder> tables = (List<TableBuilder>) value;
+			align(4, 0);
+			final int start = pos;
+			ensure(4 + 4 * tables.size());
+			buf.putInt(start, tables.size());
+			pos += 4 + 4 * tables.size();
+			for (int i = 0; i < tables.size(); i++) {
+				final int p = start + 4 + 4 * i;
+				final int target = table(tables.get(i));
+				buf.putInt(p, target - p);
+			}
+			return start;
+		}
+
+		/** Pads with zeros until {@code pos % alignment == remainder}. */
+		private void align(final int alignment, final int remainder) {
+			final int padding = (remainder - pos) & alignment - 1;
+			ensure(padding);
+			pos += padding;
+		}
+
+		private void ensure(final int count) {
+			if (pos + count <= buf.capacity()) return;
+			final ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * buf
+				.capacity(), pos + count)).order(ByteOrder.LITTLE_ENDIAN);
+			bigger.put(buf.array(), 0, buf.capacity());
+			buf = bigger;
+		}
+	}
+}
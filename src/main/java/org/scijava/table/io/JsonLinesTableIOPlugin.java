@@ -0,0 +1,446 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.scijava.table.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scijava.io.AbstractIOPlugin;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleInputStream;
+import org.scijava.io.handle.DataHandleOutputStream;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.table.BoolColumn;
+import org.scijava.table.ByteColumn;
+import org.scijava.table.Column;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.FloatColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.ShortColumn;
+import org.scijava.table.Table;
+import org.scijava.util.FileUtils;
+
+/**
+ * Plugin for reading/writing {@link Table}s as
+ * <a href="https://jsonlines.org/">JSON Lines</a>, also known as NDJSON: one
+ * JSON object per line, whose members are the cells of a row.
+ * <p>
+ * Each distinct key becomes a column, in order of first appearance. The type
+ * of each column is inferred from the first {@link TableIOOptions#sampleSize
+ * sampled} records: booleans, integers and other numbers become
+ * {@link BoolColumn}s, {@link IntColumn}s or {@link LongColumn}s, and
+ * {@link DoubleColumn}s; strings and nested objects and arrays, kept as their
+ * JSON text, {@link String}s. A column is widened when a later value does
+ * not fit its type. Keys first seen after the sample hold strings.
+ * Absent keys and {@code null}s are missing values. Keys are matched to
+ * columns by comparing their bytes with the key found at the same position
+ * of the previous record, so records listing their keys in the same order
+ * are read without decoding them.
+ * </p>
+ * <p>
+ * Rows are written straight from the columns, missing values and
+ * non-finite numbers as {@code null}s. Row headers are kept under the key
+ * {@value ArrowTableIOPlugin#INDEX_COLUMN}.
+ * </p>
+ */
+@SuppressWarnings("rawtypes")
+@Plugin(type = TableIOPlugin.class)
+public class JsonLinesTableIOPlugin extends AbstractIOPlugin<Table> implements
+	TableIOPlugin
+{
+
+	@Parameter
+	private DataHandleService dataHandleService;
+
+	private static final String[] EXTENSIONS = { "jsonl", "ndjson" };
+
+	private static final String INDEX_COLUMN = ArrowTableIOPlugin.INDEX_COLUMN;
+
+	private static final byte[] OPEN = { '{' }, CLOSE = { '}', '\n' },
+		COMMA = { ',' }, NULL = { 'n', 'u', 'l', 'l' };
+
+	@Override
+	public boolean supportsOpen(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		final File file = ((FileLocation) source).getFile();
+		return file.exists() && supportsFile(file);
+	}
+
+	@Override
+	public boolean supportsSave(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		return supportsFile(((FileLocation) source).getFile());
+	}
+
+	@Override
+	public GenericTable open(final Location source, final TableIOOptions options)
+		throws IOException
+	{
+		final TableIOOptions.Values values = options.values;
+		TableIOOptions.rejectRowFilter(values, "JSON Lines");
+		try (final DataHandle<? extends Location> handle = //
+			dataHandleService.create(source))
+		{
+			if (!handle.exists()) {
+				throw new IOException("Cannot open source");
+			}
+
+			// find the keys and infer their types from the sample
+			final Keys keys = new Keys();
+			final TypeInference types = new TypeInference(0, new int[0], 0, null);
+			JsonLinesTokenizer tokenizer = new JsonLinesTokenizer(
+				new DataHandleInputStream<>(handle), 0);
+			for (int r = 0; r < values.sampleSize() && tokenizer.next(); r++) {
+				for (int f = 0; f < tokenizer.getFieldCount(); f++) {
+					final int key = keys.find(tokenizer, f);
+					final int kind = tokenizer.kind(f);
+					if (kind == JsonLinesTokenizer.NUMBER ||
+						kind == JsonLinesTokenizer.BOOLEAN)
+					{
+						types.sample(key, tokenizer.buffer(), tokenizer.start(f), tokenizer
+							.end(f));
+					}
+					else if (kind != JsonLinesTokenizer.NULL) types.sampleString(key);
+				}
+			}
+
+			// decide which keys to read into which columns
+			final int rowHeaderKey = values.readRowHeaders() ? keys.indices
+				.getOrDefault(INDEX_COLUMN, -1) : -1;
+			final List<Integer> dataKeys = new ArrayList<>();
+			final List<String> colHeaders = new ArrayList<>();
+			for (int k = 0; k < keys.names.size(); k++) {
+				if (k == rowHeaderKey) continue;
+				dataKeys.add(k);
+				colHeaders.add(keys.names.get(k));
+			}
+			final int[] selected = DefaultTableIOPlugin.selectColumns(colHeaders,
+				values);
+			final boolean growing = selected.length == colHeaders.size();
+			final List<ColumnReader> readers = new ArrayList<>();
+			final List<String> headers = new ArrayList<>();
+			for (final int c : selected) {
+				final int key = dataKeys.get(c);
+				keys.columns[key] = readers.size();
+				readers.add(ColumnReader.createWidening(types.type(key),
+					StandardCharsets.UTF_8));
+				headers.add(keys.names.get(key));
+			}
+
+			// read the rows, from the first requested one
+			handle.seek(0);
+			tokenizer = new JsonLinesTokenizer(new DataHandleInputStream<>(handle),
+				0);
+			for (long r = 0; r < values.rowOffset() && tokenizer.skip(); r++) {
+				// NB: Skip the records before the first requested one.
+			}
+			final List<String> rowHeaders = new ArrayList<>();
+			int[] filled = new int[readers.size()];
+			int rowCount = 0;
+			while (rowCount < values.rowLimit() && tokenizer.next()) {
+				final int stamp = rowCount + 1;
+				String rowHeader = null;
+				for (int f = 0; f < tokenizer.getFieldCount(); f++) {
+					final int key = keys.find(tokenizer, f);
+					int c = keys.columns[key];
+					if (key == rowHeaderKey) {
+						if (tokenizer.kind(f) == JsonLinesTokenizer.STRING) {
+							rowHeader = new String(tokenizer.buffer(), tokenizer.start(f),
+								tokenizer.end(f) - tokenizer.start(f), StandardCharsets.UTF_8);
+						}
+						continue;
+					}
+					if (c < 0) {
+						if (!growing) continue;
+						// a key first seen after the sample
+						c = readers.size();
+						keys.columns[key] = c;
+						final ColumnReader reader = ColumnReader.create(String.class,
+							String::valueOf, StandardCharsets.UTF_8);
+						for (int row = 0; row < rowCount; row++)
+							reader.readNull();
+						readers.add(reader);
+						headers.add(keys.names.get(key));
+						filled = Arrays.copyOf(filled, readers.size());
+					}
+					// NB: For duplicate keys, the first value wins.
+					if (filled[c] == stamp) continue;
+					filled[c] = stamp;
+					final ColumnReader reader = readers.get(c);
+					if (tokenizer.kind(f) == JsonLinesTokenizer.NULL) reader.readNull();
+					else reader.read(tokenizer.buffer(), tokenizer.start(f), tokenizer
+						.end(f));
+				}
+				for (int c = 0; c < filled.length; c++) {
+					if (filled[c] != stamp) readers.get(c).readNull();
+				}
+				rowHeaders.add(rowHeader);
+				rowCount++;
+			}
+
+			final GenericTable table = new DefaultGenericTable();
+			for (int c = 0; c < readers.size(); c++)
+				table.add(readers.get(c).build(headers.get(c)));
+			table.setRowCount(rowCount);
+			if (rowHeaderKey >= 0) {
+				for (int r = 0; r < rowCount; r++)
+					table.setRowHeader(r, rowHeaders.get(r));
+			}
+			return table;
+		}
+	}
+
+	@Override
+	public void save(final Table<?, ?> table, final Location destination,
+		final TableIOOptions options) throws IOException
+	{
+		final int columnCount = table.getColumnCount();
+		final int rowCount = table.getRowCount();
+		boolean writeRH = false;
+		if (options.values.writeRowHeaders()) {
+			for (int r = 0; r < rowCount && !writeRH; r++)
+				writeRH = table.getRowHeader(r) != null;
+		}
+
+		// encode each key, with its colon, once
+		final byte[][] keys = new byte[columnCount + 1][];
+		keys[0] = key(INDEX_COLUMN);
+		final CellWriter[] cells = new CellWriter[columnCount];
+		for (int c = 0; c < columnCount; c++) {
+			final String header = table.getColumnHeader(c);
+			keys[c + 1] = key(header == null ? String.valueOf(c) : header);
+			cells[c] = getCellWriter((Column<?>) table.get(c));
+		}
+
+		try (final DataHandle<Location> handle = //
+			dataHandleService.create(destination))
+		{
+			final TableWriter writer = newWriter(new DataHandleOutputStream<>(
+				handle));
+			for (int row = 0; row < rowCount; row++) {
+				writer.write(OPEN);
+				if (writeRH) {
+					writer.write(keys[0]);
+					final String header = table.getRowHeader(row);
+					if (header == null) writer.write(NULL);
+					else writer.writeJsonString(header);
+					if (columnCount > 0) writer.write(COMMA);
+				}
+				for (int c = 0; c < columnCount; c++) {
+					if (c > 0) writer.write(COMMA);
+					writer.write(keys[c + 1]);
+					cells[c].write(writer, row);
+				}
+				writer.write(CLOSE);
+			}
+			writer.flush();
+			handle.setLength(handle.offset());
+		}
+	}
+
+	// -- Helper methods --
+
+	private static boolean supportsFile(final File file) {
+		final String extension = FileUtils.getExtension(file);
+		for (final String ext : EXTENSIONS) {
+			if (ext.equalsIgnoreCase(extension)) return true;
+		}
+		return false;
+	}
+
+	private static TableWriter newWriter(final OutputStream out) {
+		return new TableWriter(out, ',', '"', "\n", StandardCharsets.UTF_8);
+	}
+
+	/** Encodes a key as a JSON string followed by a colon. */
+	private static byte[] key(final String name) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final TableWriter writer = newWriter(bytes);
+		writer.writeJsonString(name);
+		writer.flush();
+		bytes.write(':');
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Gets how to write the values of a column. Values of primitive columns
+	 * are written straight from the column's array.
+	 */
+	private static CellWriter getCellWriter(final Column<?> column) {
+		if (column instanceof DoubleColumn) {
+			final double[] values = ((DoubleColumn) column).getArray();
+			return (writer, row) -> writeDouble(writer, values[row]);
+		}
+		if (column instanceof FloatColumn) {
+			final float[] values = ((FloatColumn) column).getArray();
+			return (writer, row) -> {
+				if (Float.isFinite(values[row])) writer.writeFloat(values[row]);
+				else writer.write(NULL);
+			};
+		}
+		if (column instanceof LongColumn) {
+			final long[] values = ((LongColumn) column).getArray();
+			return (writer, row) -> {
+				if (column.isNull(row)) writer.write(NULL);
+				else writer.writeLong(values[row]);
+			};
+		}
+		if (column instanceof IntColumn) {
+			final int[] values = ((IntColumn) column).getArray();
+			return (writer, row) -> {
+				if (column.isNull(row)) writer.write(NULL);
+				else writer.writeLong(values[row]);
+			};
+		}
+		if (column instanceof ShortColumn) {
+			final short[] values = ((ShortColumn) column).getArray();
+			return (writer, row) -> {
+				if (column.isNull(row)) writer.write(NULL);
+				else writer.writeLong(values[row]);
+			};
+		}
+		if (column instanceof ByteColumn) {
+			final byte[] values = ((ByteColumn) column).getArray();
+			return (writer, row) -> {
+				if (column.isNull(row)) writer.write(NULL);
+				else writer.writeLong(values[row]);
+			};
+		}
+		if (column instanceof BoolColumn) {
+			final boolean[] values = ((BoolColumn) column).getArray();
+			return (writer, row) -> {
+				if (column.isNull(row)) writer.write(NULL);
+				else writer.writeBoolean(values[row]);
+			};
+		}
+		return (writer, row) -> {
+			final Object value = column.get(row);
+			if (value == null) writer.write(NULL);
+			else if (value instanceof Boolean) writer.writeBoolean((Boolean) value);
+			else if (value instanceof Double || value instanceof Float) {
+				writeDouble(writer, ((Number) value).doubleValue());
+			}
+			else if (value instanceof Long || value instanceof Integer ||
+				value instanceof Short || value instanceof Byte)
+			{
+				writer.writeLong(((Number) value).longValue());
+			}
+			else writer.writeJsonString(value.toString());
+		};
+	}
+
+	private static void writeDouble(final TableWriter writer,
+		final double value) throws IOException
+	{
+		// NB: JSON has no NaN or infinity, which stand for missing values.
+		if (Double.isFinite(value)) writer.writeDouble(value);
+		else writer.write(NULL);
+	}
+
+	// -- Helper classes --
+
+	private interface CellWriter {
+
+		void write(TableWriter writer, int row) throws IOException;
+	}
+
+	/**
+	 * The keys seen so far, each matched to a column. Each position of a record
+	 * remembers its last key, so that keys listed in the same order as in the
+	 * previous record are found by comparing their bytes, without decoding them.
+	 */
+	private static final class Keys {
+
+		private final List<String> names = new ArrayList<>();
+		private final List<byte[]> bytes = new ArrayList<>();
+		private final Map<String, Integer> indices = new HashMap<>();
+
+		/** The column of each key, or -1 if it is not read. */
+		private int[] columns = new int[16];
+
+		/** The last key at each position of a record. */
+		private int[] last = new int[16];
+
+		/** Finds the key of a field of the tokenizer's record, adding it if new. */
+		private int find(final JsonLinesTokenizer tokenizer, final int field) {
+			final byte[] buf = tokenizer.buffer();
+			final int start = tokenizer.keyStart(field);
+			final int end = tokenizer.keyEnd(field);
+			if (field < last.length) {
+				final int key = last[field];
+				final byte[] known = key < bytes.size() ? bytes.get(key) : null;
+				if (known != null && equal(known, buf, start, end)) return key;
+			}
+			final String name = new String(buf, start, end - start,
+				StandardCharsets.UTF_8);
+			Integer key = indices.get(name);
+			if (key == null) {
+				key = names.size();
+				names.add(name);
+				bytes.add(Arrays.copyOfRange(buf, start, end));
+				indices.put(name, key);
+				if (key == columns.length) columns = Arrays.copyOf(columns, 2 * key);
+				columns[key] = -1;
+			}
+			if (field >= last.length) last = Arrays.copyOf(last, Math.max(field + 1,
+				2 * last.length));
+			last[field] = key;
+			return key;
+		}
+
+		private static boolean equal(final byte[] known, final byte[] buf,
+			final int start, final int end)
+		{
+			if (known.length != end - start) return false;
+			for (int i = 0; i < known.length; i++) {
+				if (known[i] != buf[start + i]) return false;
+			}
+			return true;
+		}
+	}
+}
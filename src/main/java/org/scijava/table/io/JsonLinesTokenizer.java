@@ -0,0 +1,451 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.scijava.table.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits <a href="https://jsonlines.org/">JSON Lines</a> into records and
+ * fields, reading the input in chunks.
+ * <p>
+ * Each line holds one JSON object, whose members are the fields of the
+ * record. Since JSON strings cannot hold raw line breaks, a record ends at the
+ * first {@code \n}; blank lines are skipped. As with {@link TableTokenizer},
+ * only the current record is kept in memory, and its keys and values are
+ * exposed as ranges of the {@link #buffer()}, valid until the next call to
+ * {@link #next()}. Strings are unescaped in place into UTF-8; numbers,
+ * {@code true} and {@code false} are exposed as they are written, and nested
+ * objects and arrays as their JSON text.
+ * </p>
+ */
+final class JsonLinesTokenizer {
+
+	/** Number of bytes read from the input at a time. */
+	static final int CHUNK_SIZE = 1 << 16;
+
+	// -- Kinds of values --
+
+	static final int STRING = 0;
+	static final int NUMBER = 1;
+	static final int BOOLEAN = 2;
+	static final int NULL = 3;
+	static final int NESTED = 4;
+
+	private final InputStream in;
+
+	private byte[] buf;
+
+	/** Number of valid bytes in the buffer. */
+	private int limit;
+
+	/** Offset in the input of the first byte of the buffer. */
+	private long bufferOffset;
+
+	/** Whether the input is exhausted. */
+	private boolean eof;
+
+	/** Position of the next byte to scan. */
+	private int pos;
+
+	// -- Current record --
+
+	private int recordStart;
+	private int fieldCount;
+	private int[] keyStarts = new int[16];
+	private int[] keyEnds = new int[16];
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int[] kinds = new int[16];
+
+	/** End of the last string unescaped by {@link #string}. */
+	private int stringEnd;
+
+	/**
+	 * Creates a tokenizer over the given input.
+	 *
+	 * @param in The input to read, which the tokenizer does not close.
+	 * @param offset The offset of the input within the file, for reporting.
+	 */
+	JsonLinesTokenizer(final InputStream in, final long offset) {
+		this.in = in;
+		bufferOffset = offset;
+		buf = new byte[CHUNK_SIZE];
+	}
+
+	/**
+	 * Advances to the next record, splitting it into fields.
+	 *
+	 * @return false if there are no more records.
+	 * @throws IOException if the record is not a JSON object.
+	 */
+	boolean next() throws IOException {
+		final int end = nextLine();
+		if (end < 0) return false;
+		fieldCount = 0;
+		parseObject(end);
+		return true;
+	}
+
+	/**
+	 * Advances past the next record without splitting it into fields.
+	 *
+	 * @return false if there are no more records.
+	 */
+	boolean skip() throws IOException {
+		fieldCount = 0;
+		return nextLine() >= 0;
+	}
+
+	/** Gets the offset in the input of the current record. */
+	long getRecordOffset() {
+		return bufferOffset + recordStart;
+	}
+
+	/** Gets the number of fields of the current record. */
+	int getFieldCount() {
+		return fieldCount;
+	}
+
+	/** Gets the buffer holding the current record. */
+	byte[] buffer() {
+		return buf;
+	}
+
+	/** Gets the start of the unescaped key of a field. */
+	int keyStart(final int field) {
+		return keyStarts[field];
+	}
+
+	/** Gets the end of the unescaped key of a field. */
+	int keyEnd(final int field) {
+		return keyEnds[field];
+	}
+
+	/** Gets the start of the value of a field. */
+	int start(final int field) {
+		return starts[field];
+	}
+
+	/** Gets the end of the value of a field. */
+	int end(final int field) {
+		return ends[field];
+	}
+
+	/**
+	 * Gets the kind of the value of a field: {@link #STRING}, {@link #NUMBER},
+	 * {@link #BOOLEAN}, {@link #NULL} or {@link #NESTED}.
+	 */
+	int kind(final int field) {
+		return kinds[field];
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Finds the next non-blank line, reading more of the input as needed.
+	 *
+	 * @return The end of the line, before any {@code \r}, or -1 at the end of
+	 *         the input.
+	 */
+	private int nextLine() throws IOException {
+		while (true) {
+			recordStart = pos;
+			int scan = pos;
+			int end;
+			while (true) {
+				end = indexOfLF(scan);
+				if (end >= 0 || eof) break;
+				scan = limit - recordStart;
+				fill();
+			}
+			if (end < 0) {
+				if (pos == limit) return -1;
+				end = limit;
+				pos = limit;
+			}
+			else pos = end + 1;
+			if (end > recordStart && buf[end - 1] == '\r') end--;
+			if (skipSpace(recordStart, end) < end) return end;
+		}
+	}
+
+	private int indexOfLF(final int from) {
+		for (int i = from; i < limit; i++) {
+			if (buf[i] == '\n') return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads more of the input, moving the current record to the front of the
+	 * buffer, and growing the buffer if the record fills it.
+	 */
+	private void fill() throws IOException {
+		final int length = limit - recordStart;
+		if (recordStart > 0) {
+			System.arraycopy(buf, recordStart, buf, 0, length);
+			bufferOffset += recordStart;
+			pos -= recordStart;
+			recordStart = 0;
+			limit = length;
+		}
+		if (limit == buf.length) buf = Arrays.copyOf(buf, 2 * buf.length);
+		final int n = in.read(buf, limit, buf.length - limit);
+		if (n < 0) eof = true;
+		else limit += n;
+	}
+
+	private void parseObject(final int end) throws IOException {
+		int p = skipSpace(recordStart, end);
+		if (at(p++, end) != '{') throw invalid(p - 1);
+		p = skipSpace(p, end);
+		if (at(p, end) == '}') p++;
+		else {
+			while (true) {
+				if (at(p++, end) != '"') throw invalid(p - 1);
+				final int keyStart = p;
+				p = string(p, end);
+				final int keyEnd = stringEnd;
+				p = skipSpace(p, end);
+				if (at(p++, end) != ':') throw invalid(p - 1);
+				p = skipSpace(p, end);
+				p = value(p, end, keyStart, keyEnd);
+				p = skipSpace(p, end);
+				final byte b = at(p++, end);
+				if (b == '}') break;
+				if (b != ',') throw invalid(p - 1);
+				p = skipSpace(p, end);
+			}
+		}
+		if (skipSpace(p, end) < end) throw invalid(p);
+	}
+
+	/** Parses a value, adding it as a field; returns the position after it. */
+	private int value(int p, final int end, final int keyStart,
+		final int keyEnd) throws IOException
+	{
+		final int start;
+		final int valueEnd;
+		final int kind;
+		final byte b = at(p, end);
+		if (b == '"') {
+			start = p + 1;
+			p = string(start, end);
+			valueEnd = stringEnd;
+			kind = STRING;
+		}
+		else if (b == '{' || b == '[') {
+			start = p;
+			p = nested(p, end);
+			valueEnd = p;
+			kind = NESTED;
+		}
+		else {
+			start = p;
+			while (p < end && isLiteral(buf[p]))
+				p++;
+			valueEnd = p;
+			if (is(start, p, "true") || is(start, p, "false")) kind = BOOLEAN;
+			else if (is(start, p, "null")) kind = NULL;
+			else if (p > start && (b == '-' || b >= '0' && b <= '9')) kind = NUMBER;
+			else throw invalid(start);
+		}
+		if (fieldCount == starts.length) {
+			final int n = 2 * fieldCount;
+			keyStarts = Arrays.copyOf(keyStarts, n);
+			keyEnds = Arrays.copyOf(keyEnds, n);
+			starts = Arrays.copyOf(starts, n);
+			ends = Arrays.copyOf(ends, n);
+			kinds = Arrays.copyOf(kinds, n);
+		}
+		keyStarts[fieldCount] = keyStart;
+		keyEnds[fieldCount] = keyEnd;
+		starts[fieldCount] = start;
+		ends[fieldCount] = valueEnd;
+		kinds[fieldCount] = kind;
+		fieldCount++;
+		return p;
+	}
+
+	/**
+	 * Unescapes a string in place, from just after its opening quote, setting
+	 * {@link #stringEnd}.
+	 *
+	 * @return The position after the closing quote.
+	 */
+	private int string(int p, final int end) throws IOException {
+		int w = p;
+		while (true) {
+			if (p >= end) throw invalid(end);
+			final byte b = buf[p++];
+			if (b == '"') break;
+			if (b != '\\') {
+				buf[w++] = b;
+				continue;
+			}
+			final byte e = at(p++, end);
+			switch (e) {
+				case '"':
+				case '\\':
+				case '/':
+					buf[w++] = e;
+					break;
+				case 'b':
+					buf[w++] = '\b';
+					break;
+				case 'f':
+					buf[w++] = '\f';
+					break;
+				case 'n':
+					buf[w++] = '\n';
+					break;
+				case 'r':
+					buf[w++] = '\r';
+					break;
+				case 't':
+					buf[w++] = '\t';
+					break;
+				case 'u':
+					int c = hex(p, end);
+					p += 4;
+					if (Character.isHighSurrogate((char) c) && p + 6 <= end &&
+						buf[p] == '\\' && buf[p + 1] == 'u')
+					{
+						final int low = hex(p + 2, end);
+						if (Character.isLowSurrogate((char) low)) {
+							c = Character.toCodePoint((char) c, (char) low);
+							p += 6;
+						}
+					}
+					// NB: The escape is longer than its encoding, so never overtaken.
+					w = encode(c, w);
+					break;
+				default:
+					throw invalid(p - 1);
+			}
+		}
+		stringEnd = w;
+		return p;
+	}
+
+	/** Encodes a code point in UTF-8; returns the position after it. */
+	private int encode(final int c, int w) {
+		if (c < 0x80) buf[w++] = (byte) c;
+		else if (c < 0x800) {
+			buf[w++] = (byte) (0xc0 | c >> 6);
+			buf[w++] = (byte) (0x80 | c & 0x3f);
+		}
+		else if (c < 0x10000) {
+			buf[w++] = (byte) (0xe0 | c >> 12);
+			buf[w++] = (byte) (0x80 | c >> 6 & 0x3f);
+			buf[w++] = (byte) (0x80 | c & 0x3f);
+		}
+		else {
+			buf[w++] = (byte) (0xf0 | c >> 18);
+			buf[w++] = (byte) (0x80 | c >> 12 & 0x3f);
+			buf[w++] = (byte) (0x80 | c >> 6 & 0x3f);
+			buf[w++] = (byte) (0x80 | c & 0x3f);
+		}
+		return w;
+	}
+
+	private int hex(final int p, final int end) throws IOException {
+		int value = 0;
+		for (int i = p; i < p + 4; i++) {
+			final int digit = Character.digit(at(i, end), 16);
+			if (digit < 0) throw invalid(i);
+			value = value << 4 | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Skips a nested object or array, without unescaping its strings.
+	 *
+	 * @return The position after it.
+	 */
+	private int nested(int p, final int end) throws IOException {
+		int depth = 0;
+		do {
+			if (p >= end) throw invalid(end);
+			final byte b = buf[p++];
+			if (b == '{' || b == '[') depth++;
+			else if (b == '}' || b == ']') depth--;
+			else if (b == '"') {
+				while (at(p, end) != '"') {
+					if (buf[p] == '\\') p++;
+					p++;
+				}
+				p++;
+			}
+		}
+		while (depth > 0);
+		return p;
+	}
+
+	/**
+	 * Gets a byte of the current record, which must end before {@code end}:
+	 * beyond it, the buffer holds stale bytes of earlier records.
+	 */
+	private byte at(final int p, final int end) throws IOException {
+		if (p >= end) throw invalid(end);
+		return buf[p];
+	}
+
+	private int skipSpace(int p, final int end) {
+		while (p < end && (buf[p] == ' ' || buf[p] == '\t' || buf[p] == '\r' ||
+			buf[p] == '\n'))
+		{
+			p++;
+		}
+		return p;
+	}
+
+	private static boolean isLiteral(final byte b) {
+		return b >= '0' && b <= '9' || b >= 'a' && b <= 'z' || b == '-' ||
+			b == '+' || b == '.' || b == 'E';
+	}
+
+	private boolean is(final int start, final int end, final String word) {
+		if (end - start != word.length()) return false;
+		for (int i = 0; i < word.length(); i++) {
+			if (buf[start + i] != word.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private IOException invalid(final int p) {
+		return new IOException("Invalid JSON at byte " + (bufferOffset + p));
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+/**
+ * Recognizes the cells of a table which stand for missing values, such as
+ * {@code NA}, by comparing their bytes against the encoded tokens.
+ */
+final class NullTokens {
+
+	private final byte[][] tokens;
+
+	/** Bit {@code n} is set if a token is {@code n} bytes long. */
+	private final long lengths;
+
+	NullTokens(final Collection<String> tokens, final Charset charset) {
+		this.tokens = new byte[tokens.size()][];
+		long mask = 0;
+		int i = 0;
+		for (final String token : tokens) {
+			final byte[] bytes = token.getBytes(charset);
+			this.tokens[i++] = bytes;
+			if (bytes.length < 64) mask |= 1L << bytes.length;
+		}
+		lengths = mask;
+	}
+
+	/** Gets whether the cell at {@code buf[start, end)} is a null token. */
+	boolean matches(final byte[] buf, final int start, final int end) {
+		final int length = end - start;
+		if (length < 64 && (lengths & 1L << length) == 0) return false;
+		for (final byte[] token : tokens) {
+			if (token.length != length) continue;
+			int i = 0;
+			while (i < length && buf[start + i] == token[i])
+				i++;
+			if (i == length) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,957 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.scijava.io.AbstractIOPlugin;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleOutputStream;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.table.CharColumn;
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.PrimitiveColumn;
+import org.scijava.table.Table;
+import org.scijava.util.FileUtils;
+
+/**
+ * Plugin for reading/writing {@link Table}s as
+ * <a href="https://numpy.org/doc/stable/reference/generated/numpy.lib.format.html">
+ * NumPy arrays</a>, in {@code .npy} files and {@code .npz} archives.
+ * <p>
+ * A one-dimensional array becomes a single column, a two-dimensional array
+ * one column per column of the array, and a structured array one column per
+ * field, named after it. Booleans, integers and floating point numbers
+ * become the matching primitive columns, unsigned integers widening to the
+ * next larger type, and fixed-length strings {@link String}s. The data of
+ * {@code .npy} files is memory-mapped and copied straight into the columns;
+ * only the requested rows are read.
+ * </p>
+ * <p>
+ * A table whose columns share one primitive type, such as a
+ * {@link org.scijava.table.DoubleTable}, is written as a two-dimensional
+ * array, in C order unless {@link TableIOOptions#fortranOrder Fortran order}
+ * is requested; other tables are written as structured arrays. NumPy has no
+ * missing values: they become NaN, promoting columns of integers to
+ * {@code float64}, or empty strings.
+ * </p>
+ * <p>
+ * An {@code .npz} archive holds one array per column, named after its
+ * header, as written by {@code numpy.savez}; with the
+ * {@link TableIOOptions#compression compression} {@code "deflate"}, the
+ * arrays are compressed, as by {@code numpy.savez_compressed}. Row headers
+ * are kept in an array named {@value ArrowTableIOPlugin#INDEX_COLUMN}. An
+ * archive with a single array is read as that array.
+ * </p>
+ */
+@SuppressWarnings("rawtypes")
+@Plugin(type = TableIOPlugin.class)
+public class NumPyTableIOPlugin extends AbstractIOPlugin<Table> implements
+	TableIOPlugin
+{
+
+	@Parameter
+	private DataHandleService dataHandleService;
+
+	private static final String NPY = "npy", NPZ = "npz";
+
+	private static final byte[] MAGIC = { (byte) 0x93, 'N', 'U', 'M', 'P',
+		'Y' };
+
+	/** Alignment of the data, after the header. */
+	private static final int ALIGNMENT = 64;
+
+	/** Number of bytes of records encoded at once when writing. */
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private static final String INDEX_COLUMN = ArrowTableIOPlugin.INDEX_COLUMN;
+
+	private static final Pattern TYPE = Pattern.compile(
+		"([<>|=]?)([a-zA-Z])(\\d+)");
+
+	private static final Charset UTF_32LE = Charset.forName("UTF-32LE"),
+		UTF_32BE = Charset.forName("UTF-32BE");
+
+	@Override
+	public boolean supportsOpen(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		final File file = ((FileLocation) source).getFile();
+		return file.exists() && supportsFile(file);
+	}
+
+	@Override
+	public boolean supportsSave(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		return supportsFile(((FileLocation) source).getFile());
+	}
+
+	@Override
+	public GenericTable open(final Location source, final TableIOOptions options)
+		throws IOException
+	{
+		TableIOOptions.rejectRowFilter(options.values, "NumPy");
+		if (!(source instanceof FileLocation)) {
+			throw new IOException("NumPy arrays can only be read from files");
+		}
+		final File file = ((FileLocation) source).getFile();
+		if (NPZ.equalsIgnoreCase(FileUtils.getExtension(file))) {
+			return openArchive(file, options.values);
+		}
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ))
+		{
+			final long size = channel.size();
+			final Source data = (position, length) -> channel.map(MapMode.READ_ONLY,
+				position, length);
+			final NpyArray array = NpyArray.parse(data, size);
+			return read(array.columns(null), options.values);
+		}
+	}
+
+	@Override
+	public void save(final Table<?, ?> table, final Location destination,
+		final TableIOOptions options) throws IOException
+	{
+		final TableIOOptions.Values values = options.values;
+		final List<OutputField> fields = new ArrayList<>();
+		for (int c = 0; c < table.getColumnCount(); c++) {
+			final String header = table.getColumnHeader(c);
+			fields.add(new OutputField(header, Columns.compact((Column<?>) table
+				.get(c))));
+		}
+		final boolean archive = NPZ.equalsIgnoreCase(FileUtils.getExtension(
+			destination.getName()));
+		try (final DataHandle<Location> handle = //
+			dataHandleService.create(destination))
+		{
+			final CountingOutputStream out = new CountingOutputStream(
+				new BufferedOutputStream(new DataHandleOutputStream<>(handle),
+					1 << 16));
+			if (archive) writeArchive(table, fields, values, out);
+			else writeArray(fields, table.getRowCount(), values.fortranOrder(),
+				false, out);
+			out.flush();
+			handle.setLength(out.position());
+		}
+	}
+
+	// -- Helper methods --
+
+	private static boolean supportsFile(final File file) {
+		final String extension = FileUtils.getExtension(file);
+		return NPY.equalsIgnoreCase(extension) || NPZ.equalsIgnoreCase(extension);
+	}
+
+	// -- Reading --
+
+	private static GenericTable openArchive(final File file,
+		final TableIOOptions.Values options) throws IOException
+	{
+		final Map<String, NpyArray> arrays = new LinkedHashMap<>();
+		try (final ZipFile zip = new ZipFile(file)) {
+			final Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				final ZipEntry entry = entries.nextElement();
+				final String name = entry.getName();
+				if (entry.isDirectory() || !name.endsWith("." + NPY)) continue;
+				final byte[] bytes = readFully(zip.getInputStream(entry));
+				final ByteBuffer buf = ByteBuffer.wrap(bytes);
+				final Source data = (position, length) -> {
+					final ByteBuffer dup = buf.duplicate();
+					dup.limit((int) (position + length)).position((int) position);
+					return dup.slice();
+				};
+				arrays.put(name.substring(0, name.length() - NPY.length() - 1),
+					NpyArray.parse(data, bytes.length));
+			}
+		}
+		if (arrays.size() == 1) {
+			return read(arrays.values().iterator().next().columns(null), options);
+		}
+		final List<InputColumn> columns = new ArrayList<>();
+		for (final Map.Entry<String, NpyArray> entry : arrays.entrySet()) {
+			final List<InputColumn> arrayColumns = entry.getValue().columns(entry
+				.getKey());
+			if (arrayColumns.size() != 1) {
+				throw new IOException("Array " + entry.getKey() +
+					" is not one-dimensional");
+			}
+			columns.addAll(arrayColumns);
+		}
+		return read(columns, options);
+	}
+
+	private static GenericTable read(final List<InputColumn> columns,
+		final TableIOOptions.Values options) throws IOException
+	{
+		InputColumn rowHeaders = null;
+		final List<InputColumn> dataColumns = new ArrayList<>();
+		final List<String> colHeaders = new ArrayList<>();
+		for (final InputColumn column : columns) {
+			if (options.readRowHeaders() && rowHeaders == null && INDEX_COLUMN
+				.equals(column.header) && column.field.isText())
+			{
+				rowHeaders = column;
+				continue;
+			}
+			dataColumns.add(column);
+			colHeaders.add(column.header);
+		}
+		long rowCount = -1;
+		for (final InputColumn column : columns) {
+			if (rowCount >= 0 && column.rowCount != rowCount) {
+				throw new IOException("Arrays of different lengths");
+			}
+			rowCount = column.rowCount;
+		}
+		if (rowCount > Integer.MAX_VALUE) throw new IOException("Too many rows");
+		final int from = (int) Math.min(Math.max(rowCount, 0), options
+			.rowOffset());
+		final int count = (int) Math.min(options.rowLimit(), Math.max(rowCount,
+			0) - from);
+
+		final GenericTable table = new DefaultGenericTable();
+		for (final int c : DefaultTableIOPlugin.selectColumns(colHeaders,
+			options))
+		{
+			table.add(dataColumns.get(c).read(from, count));
+		}
+		table.setRowCount(count);
+		if (rowHeaders != null) {
+			final Column<?> headers = rowHeaders.read(from, count);
+			for (int row = 0; row < count; row++)
+				table.setRowHeader(row, (String) headers.get(row));
+		}
+		return table;
+	}
+
+	private static byte[] readFully(final InputStream in) throws IOException {
+		try (final InputStream stream = in) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buf = new byte[1 << 16];
+			int n;
+			while ((n = stream.read(buf)) > 0)
+				out.write(buf, 0, n);
+			return out.toByteArray();
+		}
+	}
+
+	// -- Writing --
+
+	private static void writeArchive(final Table<?, ?> table,
+		final List<OutputField> fields, final TableIOOptions.Values options,
+		final OutputStream out) throws IOException
+	{
+		final String codec = options.compression();
+		final boolean deflate;
+		if (codec == null || codec.equals("uncompressed") || codec.equals(
+			"none") || codec.equals("stored"))
+		{
+			deflate = false;
+		}
+		else if (codec.equals("deflate")) deflate = true;
+		else throw new IOException("Unsupported NumPy compression codec: " + codec);
+
+		final int rowCount = table.getRowCount();
+		final List<OutputField> arrays = new ArrayList<>();
+		for (int c = 0; c < fields.size(); c++) {
+			final OutputField field = fields.get(c);
+			arrays.add(field.name != null ? field : new OutputField("arr_" + c,
+				field.column));
+		}
+		if (options.writeRowHeaders()) {
+			final GenericColumn headers = new GenericColumn(INDEX_COLUMN);
+			boolean any = false;
+			for (int row = 0; row < rowCount; row++) {
+				final String header = table.getRowHeader(row);
+				headers.add(header);
+				any |= header != null;
+			}
+			if (any) arrays.add(new OutputField(INDEX_COLUMN, headers));
+		}
+
+		final ZipOutputStream zip = new ZipOutputStream(out);
+		for (final OutputField array : arrays) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			writeArray(Collections.singletonList(array), rowCount, false,
+				true, bytes);
+			final ZipEntry entry = new ZipEntry(array.name + "." + NPY);
+			if (!deflate) {
+				final CRC32 crc = new CRC32();
+				crc.update(bytes.toByteArray());
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(bytes.size());
+				entry.setCrc(crc.getValue());
+			}
+			zip.putNextEntry(entry);
+			bytes.writeTo(zip);
+			zip.closeEntry();
+		}
+		zip.finish();
+	}
+
+	/**
+	 * Writes columns as an array: two-dimensional if they all have the same
+	 * type, or structured otherwise.
+	 *
+	 * @param flat Whether to write a single column as a one-dimensional array.
+	 */
+	private static void writeArray(final List<OutputField> fields,
+		final int rowCount, final boolean fortranOrder, final boolean flat,
+		final OutputStream out) throws IOException
+	{
+		boolean uniform = !fields.isEmpty();
+		for (final OutputField field : fields) {
+			uniform &= !field.isText() && field.descr.equals(fields.get(0).descr);
+		}
+		final StringBuilder header = new StringBuilder("{'descr': ");
+		final boolean oneDimensional = flat && fields.size() == 1;
+		if (oneDimensional || uniform) header.append(quote(fields.get(0).descr));
+		else {
+			header.append('[');
+			for (int f = 0; f < fields.size(); f++) {
+				final OutputField field = fields.get(f);
+				if (f > 0) header.append(", ");
+				header.append('(').append(quote(field.name != null ? field.name
+					: "f" + f)).append(", ").append(quote(field.descr)).append(')');
+			}
+			header.append(']');
+		}
+		final boolean fortran = fortranOrder && uniform && !oneDimensional;
+		header.append(", 'fortran_order': ").append(fortran ? "True" : "False");
+		header.append(", 'shape': (").append(rowCount);
+		if (oneDimensional || !uniform) header.append(",)");
+		else header.append(", ").append(fields.size()).append(')');
+		header.append(", }");
+		writeHeader(header.toString(), out);
+
+		if (fortran) {
+			for (final OutputField field : fields)
+				field.write(0, rowCount, out);
+			return;
+		}
+		int stride = 0;
+		for (final OutputField field : fields)
+			stride += field.width;
+		if (stride == 0) return;
+		final int rowsPerChunk = Math.max(1, CHUNK_SIZE / stride);
+		final ByteBuffer buf = ByteBuffer.allocate(rowsPerChunk * stride).order(
+			ByteOrder.LITTLE_ENDIAN);
+		for (int start = 0; start < rowCount; start += rowsPerChunk) {
+			final int n = Math.min(rowsPerChunk, rowCount - start);
+			int offset = 0;
+			for (final OutputField field : fields) {
+				buf.position(offset);
+				field.put(start, n, buf, stride);
+				offset += field.width;
+			}
+			out.write(buf.array(), 0, n * stride);
+		}
+	}
+
+	/** Writes the magic, version and header, padded to the alignment. */
+	private static void writeHeader(final String header, final OutputStream out)
+		throws IOException
+	{
+		final boolean latin1 = StandardCharsets.ISO_8859_1.newEncoder().canEncode(
+			header);
+		byte[] bytes = header.getBytes(latin1 ? StandardCharsets.ISO_8859_1
+			: StandardCharsets.UTF_8);
+		int version = latin1 ? 1 : 3;
+		int prefix = MAGIC.length + 2 + 2;
+		int padding = -(prefix + bytes.length + 1) & ALIGNMENT - 1;
+		if (version == 1 && bytes.length + padding + 1 > 0xffff) version = 2;
+		if (version > 1) {
+			prefix += 2;
+			padding = -(prefix + bytes.length + 1) & ALIGNMENT - 1;
+		}
+		final int length = bytes.length + padding + 1;
+		out.write(MAGIC);
+		out.write(version);
+		out.write(0);
+		out.write(length);
+		out.write(length >>> 8);
+		if (version > 1) {
+			out.write(length >>> 16);
+			out.write(length >>> 24);
+		}
+		out.write(bytes);
+		for (int i = 0; i < padding; i++)
+			out.write(' ');
+		out.write('\n');
+	}
+
+	private static String quote(final String s) {
+		return "'" + s.replace("\\", "\\\\").replace("'", "\\'") + "'";
+	}
+
+	// -- Helper classes --
+
+	/** Gives access to the bytes of an array's file. */
+	@FunctionalInterface
+	private interface Source {
+
+		ByteBuffer get(long position, long length) throws IOException;
+	}
+
+	/** The type of an array's elements, or of one field of a record. */
+	private static final class Field {
+
+		private final char kind;
+		private final int size;
+		private final ByteOrder order;
+		private final int offset;
+
+		private Field(final String descr, final int offset) throws IOException {
+			final Matcher m = TYPE.matcher(descr);
+			if (!m.matches()) throw unsupported(descr);
+			final String byteOrder = m.group(1);
+			kind = m.group(2).charAt(0);
+			size = Integer.parseInt(m.group(3));
+			order = byteOrder.equals(">") ? ByteOrder.BIG_ENDIAN : byteOrder.equals(
+				"=") ? ByteOrder.nativeOrder() : ByteOrder.LITTLE_ENDIAN;
+			this.offset = offset;
+			if (kind == 'V' || kind == 'S' || kind == 'U') return;
+			if (kind == 'b' && size == 1 || (kind == 'i' || kind == 'u') &&
+				(size == 1 || size == 2 || size == 4 || size == 8) || kind == 'f' &&
+					(size == 4 || size == 8))
+			{
+				return;
+			}
+			throw unsupported(descr);
+		}
+
+		/** Gets the number of bytes of each value. */
+		private int width() {
+			return kind == 'U' ? 4 * size : size;
+		}
+
+		private boolean isText() {
+			return kind == 'U' || kind == 'S';
+		}
+
+		/** Gets the primitive type of the stored values, or null for text. */
+		private Class<?> storedType() {
+			if (kind == 'b') return boolean.class;
+			if (kind == 'f') return size == 4 ? float.class : double.class;
+			if (isText()) return null;
+			return size == 1 ? byte.class : size == 2 ? short.class : size == 4
+				? int.class : long.class;
+		}
+
+		/** Gets the primitive type of the column, or null for text. */
+		private Class<?> columnType() {
+			if (kind != 'u' || size == 8) return storedType();
+			return size == 1 ? short.class : size == 2 ? int.class : long.class;
+		}
+
+		private static IOException unsupported(final String descr) {
+			return new IOException("Unsupported NumPy type: " + descr);
+		}
+	}
+
+	/** The header of an {@code .npy} file. */
+	private static final class NpyArray {
+
+		private final Source data;
+		private final long dataOffset;
+		private final List<Field> fields = new ArrayList<>();
+		private final List<String> names = new ArrayList<>();
+		private final boolean structured;
+		private final boolean fortranOrder;
+		private final long[] shape;
+		private final int itemSize;
+
+		private NpyArray(final Source data, final long dataOffset,
+			final Map<?, ?> header) throws IOException
+		{
+			this.data = data;
+			this.dataOffset = dataOffset;
+			final Object descr = header.get("descr");
+			final Object order = header.get("fortran_order");
+			final Object dims = header.get("shape");
+			if (!(dims instanceof List) || !(order instanceof Boolean)) {
+				throw new IOException("Invalid NumPy header");
+			}
+			fortranOrder = (Boolean) order;
+			final List<?> dimList = (List<?>) dims;
+			shape = new long[dimList.size()];
+			for (int d = 0; d < shape.length; d++)
+				shape[d] = (Long) dimList.get(d);
+			if (descr instanceof String) {
+				structured = false;
+				fields.add(new Field((String) descr, 0));
+				itemSize = fields.get(0).width();
+			}
+			else if (descr instanceof List) {
+				structured = true;
+				int offset = 0;
+				for (final Object item : (List<?>) descr) {
+					final List<?> tuple = (List<?>) item;
+					if (tuple.size() != 2 || !(tuple.get(1) instanceof String)) {
+						throw new IOException("Unsupported NumPy field: " + tuple);
+					}
+					final Object name = tuple.get(0);
+					final Field field = new Field((String) tuple.get(1), offset);
+					offset += field.width();
+					if (field.kind == 'V') {
+						// NB: unnamed void fields pad the records
+						if ("".equals(name)) continue;
+						throw Field.unsupported((String) tuple.get(1));
+					}
+					fields.add(field);
+					names.add(name instanceof List ? String.valueOf(((List<?>) name).get(
+						1)) : String.valueOf(name));
+				}
+				itemSize = offset;
+			}
+			else throw new IOException("Invalid NumPy header");
+			if (!structured && fields.get(0).kind == 'V') throw Field.unsupported((String) descr);
+		}
+
+		private static NpyArray parse(final Source data, final long size)
+			throws IOException
+		{
+			if (size < MAGIC.length + 4) throw new IOException("Not a NumPy file");
+			final ByteBuffer start = data.get(0, Math.min(size, 12)).order(
+				ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (start.get(i) != MAGIC[i]) throw new IOException("Not a NumPy file");
+			}
+			final int version = start.get(MAGIC.length);
+			final long headerLength = version == 1 ? start.getShort(8) & 0xffff
+				: start.getInt(8) & 0xffffffffL;
+			final int prefix = version == 1 ? 10 : 12;
+			if (version < 1 || version > 3 || prefix + headerLength > size) {
+				throw new IOException("Unsupported NumPy file version " + version);
+			}
+			final ByteBuffer headerBytes = data.get(prefix, headerLength);
+			final byte[] bytes = new byte[(int) headerLength];
+			headerBytes.get(bytes);
+			final String header = new String(bytes, version == 3
+				? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+			final Object dict = new Literal(header).parse();
+			if (!(dict instanceof Map)) throw new IOException("Invalid NumPy header");
+			final NpyArray array = new NpyArray(data, prefix + headerLength,
+				(Map<?, ?>) dict);
+			long expected = array.itemSize;
+			for (final long dim : array.shape)
+				expected *= dim;
+			if (array.dataOffset + expected > size) {
+				throw new IOException("Truncated NumPy array");
+			}
+			return array;
+		}
+
+		/**
+		 * Gets the columns of the array.
+		 *
+		 * @param name The name of the array, for the header of its column if it
+		 *          has only one, or null.
+		 */
+		private List<InputColumn> columns(final String name) throws IOException {
+			final List<InputColumn> columns = new ArrayList<>();
+			if (structured) {
+				if (shape.length != 1) {
+					throw new IOException("Structured arrays must be one-dimensional");
+				}
+				for (int f = 0; f < fields.size(); f++) {
+					final Field field = fields.get(f);
+					columns.add(new InputColumn(name != null && fields.size() == 1 ? name
+						: names.get(f), field, data, dataOffset + field.offset, itemSize,
+						shape[0]));
+				}
+				return columns;
+			}
+			final Field field = fields.get(0);
+			final int width = field.width();
+			if (shape.length == 1) {
+				columns.add(new InputColumn(name, field, data, dataOffset, width,
+					shape[0]));
+			}
+			else if (shape.length == 2) {
+				final long rows = shape[0], cols = shape[1];
+				for (long c = 0; c < cols; c++) {
+					final long offset = fortranOrder ? c * rows * width : c * width;
+					final int stride = fortranOrder ? width : (int) (cols * width);
+					columns.add(new InputColumn(name != null && cols == 1 ? name : null,
+						field, data, dataOffset + offset, stride, rows));
+				}
+			}
+			else {
+				throw new IOException("Unsupported NumPy array of " + shape.length +
+					" dimensions");
+			}
+			return columns;
+		}
+	}
+
+	/** A column of an array, laid out at regular intervals. */
+	private static final class InputColumn {
+
+		private final String header;
+		private final Field field;
+		private final Source data;
+		private final long position;
+		private final int stride;
+		private final long rowCount;
+
+		private InputColumn(final String header, final Field field,
+			final Source data, final long position, final int stride,
+			final long rowCount)
+		{
+			this.header = header;
+			this.field = field;
+			this.data = data;
+			this.position = position;
+			this.stride = stride;
+			this.rowCount = rowCount;
+		}
+
+		/** Reads the rows {@code [from, from + count)} of the column. */
+		private Column<?> read(final int from, final int count)
+			throws IOException
+		{
+			final int width = field.width();
+			final Class<?> storedType = field.storedType();
+			final Object values = storedType == null ? new Object[count] : Array
+				.newInstance(storedType, count);
+			final int rowsPerMap = Math.max(1, ColumnBuffers.MAX_MAP_SIZE / stride);
+			for (int i = 0; i < count; i += rowsPerMap) {
+				final int n = Math.min(rowsPerMap, count - i);
+				final ByteBuffer buf = data.get(position + (long) (from + i) * stride,
+					(long) (n - 1) * stride + width).order(field.order);
+				if (storedType == null) readText(buf, (Object[]) values, i, n);
+				else if (stride == width) ColumnBuffers.get(buf, values, i, n);
+				else ColumnBuffers.getStrided(buf, stride, values, i, n);
+			}
+			if (storedType == null) {
+				final GenericColumn column = new GenericColumn(header);
+				column.addAll(Arrays.asList((Object[]) values));
+				return column;
+			}
+			@SuppressWarnings("unchecked")
+			final PrimitiveColumn<Object, ?> column =
+				(PrimitiveColumn<Object, ?>) ColumnBuffers.newColumn(field
+					.columnType(), header);
+			column.fill(field.columnType() == storedType ? values : widen(values));
+			return column;
+		}
+
+		private void readText(final ByteBuffer buf, final Object[] values,
+			final int index, final int count)
+		{
+			final int width = field.width();
+			final byte[] bytes = new byte[width];
+			for (int i = 0; i < count; i++) {
+				buf.position(i * stride);
+				buf.get(bytes);
+				int length = width;
+				if (field.kind == 'U') {
+					// NB: trailing zero code points pad the string
+					while (length >= 4 && (field.order == ByteOrder.LITTLE_ENDIAN
+						? bytes[length - 1] | bytes[length - 2] | bytes[length - 3] |
+							bytes[length - 4] : bytes[length - 4] | bytes[length - 3] |
+								bytes[length - 2] | bytes[length - 1]) == 0)
+					{
+						length -= 4;
+					}
+					values[index + i] = new String(bytes, 0, length, field.order ==
+						ByteOrder.LITTLE_ENDIAN ? UTF_32LE : UTF_32BE);
+				}
+				else {
+					while (length > 0 && bytes[length - 1] == 0)
+						length--;
+					values[index + i] = new String(bytes, 0, length,
+						StandardCharsets.ISO_8859_1);
+				}
+			}
+		}
+
+		/** Widens unsigned values to the next larger type. */
+		private static Object widen(final Object values) {
+			if (values instanceof byte[]) {
+				final byte[] v = (byte[]) values;
+				final short[] w = new short[v.length];
+				for (int i = 0; i < v.length; i++)
+					w[i] = (short) (v[i] & 0xff);
+				return w;
+			}
+			if (values instanceof short[]) {
+				final short[] v = (short[]) values;
+				final int[] w = new int[v.length];
+				for (int i = 0; i < v.length; i++)
+					w[i] = v[i] & 0xffff;
+				return w;
+			}
+			final int[] v = (int[]) values;
+			final long[] w = new long[v.length];
+			for (int i = 0; i < v.length; i++)
+				w[i] = v[i] & 0xffffffffL;
+			return w;
+		}
+	}
+
+	/** A column being written, as an array or a field of records. */
+	private static final class OutputField {
+
+		private final String name;
+		private final Column<?> column;
+		private final String descr;
+		private final int width;
+
+		/** The values to write, or null for text. */
+		private final Object values;
+
+		/** The length of the longest text, in code points. */
+		private final int chars;
+
+		private OutputField(final String name, final Column<?> column) {
+			this.name = name;
+			this.column = column;
+			final Class<?> type = column instanceof PrimitiveColumn &&
+				!(column instanceof CharColumn) ? ColumnBuffers.elementType(
+					(PrimitiveColumn<?, ?>) column) : null;
+			if (type == null) {
+				int max = 1;
+				for (final Object value : column) {
+					if (value != null) {
+						final String s = value.toString();
+						max = Math.max(max, s.codePointCount(0, s.length()));
+					}
+				}
+				chars = max;
+				values = null;
+				descr = "<U" + chars;
+				width = 4 * chars;
+				return;
+			}
+			chars = 0;
+			final boolean floating = type == double.class || type == float.class;
+			if (!floating && Columns.hasNulls(column)) {
+				// NB: NumPy has no missing values, so use NaNs
+				final double[] doubles = new double[column.size()];
+				for (int row = 0; row < doubles.length; row++) {
+					final Object value = column.get(row);
+					doubles[row] = value == null ? Double.NaN : value instanceof Boolean
+						? (Boolean) value ? 1 : 0 : ((Number) value).doubleValue();
+				}
+				values = doubles;
+				descr = "<f8";
+				width = 8;
+				return;
+			}
+			values = ((PrimitiveColumn<?, ?>) column).getArray();
+			width = ColumnBuffers.width(type);
+			descr = type == boolean.class ? "|b1" : (width == 1 ? "|" : "<") +
+				(floating ? "f" : "i") + width;
+		}
+
+		private boolean isText() {
+			return values == null;
+		}
+
+		/** Writes the rows {@code [from, to)} contiguously. */
+		private void write(final int from, final int to, final OutputStream out)
+			throws IOException
+		{
+			if (values == ((PrimitiveColumn<?, ?>) column).getArray()) {
+				ColumnBuffers.write((PrimitiveColumn<?, ?>) column, from, to,
+					ByteOrder.LITTLE_ENDIAN, out);
+				return;
+			}
+			final ByteBuffer buf = ByteBuffer.allocate(CHUNK_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+			for (int i = from; i < to; i += CHUNK_SIZE / width) {
+				final int n = Math.min(CHUNK_SIZE / width, to - i);
+				buf.clear();
+				ColumnBuffers.put(values, i, n, buf);
+				out.write(buf.array(), 0, buf.position());
+			}
+		}
+
+		/**
+		 * Puts the values of {@code count} rows from {@code start} into a buffer,
+		 * {@code stride} bytes apart from its position.
+		 */
+		private void put(final int start, final int count, final ByteBuffer buf,
+			final int stride)
+		{
+			if (!isText()) {
+				ColumnBuffers.putStrided(values, start, count, buf, stride);
+				return;
+			}
+			final int base = buf.position();
+			for (int i = 0; i < count; i++) {
+				final Object value = column.get(start + i);
+				final String s = value == null ? "" : value.toString();
+				int p = base + i * stride;
+				final int end = p + width;
+				for (int k = 0; k < s.length(); k = s.offsetByCodePoints(k, 1)) {
+					buf.putInt(p, s.codePointAt(k));
+					p += 4;
+				}
+				for (; p < end; p += 4)
+					buf.putInt(p, 0);
+			}
+		}
+	}
+
+	/**
+	 * Parses the Python literal of an {@code .npy} header: a dictionary of
+	 * strings, booleans, integers, tuples and lists.
+	 */
+	private static final class Literal {
+
+		private final String s;
+		private int pos;
+
+		private Literal(final String s) {
+			this.s = s;
+		}
+
+		private Object parse() throws IOException {
+			try {
+				return value();
+			}
+			catch (final RuntimeException exc) {
+				throw new IOException("Invalid NumPy header: " + s, exc);
+			}
+		}
+
+		private Object value() throws IOException {
+			skipSpace();
+			final char c = s.charAt(pos);
+			if (c == '{') {
+				pos++;
+				final Map<Object, Object> map = new LinkedHashMap<>();
+				while (!end('}')) {
+					final Object key = value();
+					skipSpace();
+					expect(':');
+					map.put(key, value());
+					separator();
+				}
+				return map;
+			}
+			if (c == '(' || c == '[') {
+				pos++;
+				final List<Object> list = new ArrayList<>();
+				while (!end(c == '(' ? ')' : ']')) {
+					list.add(value());
+					separator();
+				}
+				return list;
+			}
+			if (c == '\'' || c == '"') {
+				pos++;
+				final StringBuilder sb = new StringBuilder();
+				while (s.charAt(pos) != c) {
+					char ch = s.charAt(pos++);
+					if (ch == '\\') ch = s.charAt(pos++);
+					sb.append(ch);
+				}
+				pos++;
+				return sb.toString();
+			}
+			final int start = pos;
+			while (pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) ||
+				s.charAt(pos) == '-'))
+			{
+				pos++;
+			}
+			final String token = s.substring(start, pos);
+			if (token.equals("True")) return true;
+			if (token.equals("False")) return false;
+			if (token.equals("None")) return null;
+			// NB: Python 2 wrote long integers with an L suffix
+			return Long.parseLong(token.endsWith("L") ? token.substring(0, token
+				.length() - 1) : token);
+		}
+
+		private boolean end(final char close) {
+			skipSpace();
+			if (s.charAt(pos) != close) return false;
+			pos++;
+			return true;
+		}
+
+		private void separator() {
+			skipSpace();
+			if (s.charAt(pos) == ',') pos++;
+		}
+
+		private void expect(final char c) throws IOException {
+			if (s.charAt(pos++) != c) {
+				throw new IOException("Invalid NumPy header: " + s);
+			}
+		}
+
+		private void skipSpace() {
+			while (Character.isWhitespace(s.charAt(pos)))
+				pos++;
+		}
+	}
+}
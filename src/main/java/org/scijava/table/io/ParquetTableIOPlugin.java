@@ -0,0 +1,1356 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.scijava.io.AbstractIOPlugin;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleOutputStream;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.table.CharColumn;
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.PrimitiveColumn;
+import org.scijava.table.Table;
+import org.scijava.table.io.Thrift.Struct;
+import org.scijava.util.FileUtils;
+
+/**
+ * Plugin for reading/writing {@link Table}s in the
+ * <a href="https://parquet.apache.org/docs/file-format/">Apache Parquet</a>
+ * format, with the extension {@code .parquet}.
+ * <p>
+ * Only the selected columns are read, and only the row groups holding the
+ * requested rows: by position, or, given a
+ * {@link TableIOOptions#rowFilter row filter}, by the minimum and maximum
+ * values recorded for each row group. Columns of booleans, integers and
+ * floating point numbers become the matching primitive columns, unsigned
+ * integers widening to the next larger type; strings and other binary values
+ * are read into {@link GenericColumn}s, dictionary-encoded strings sharing
+ * the instances of the dictionary's values. Data pages of both versions are
+ * supported, with plain and dictionary encodings, and the codecs which need
+ * no native library: Snappy and gzip. Nested schemas are not supported.
+ * </p>
+ * <p>
+ * When writing, each column is stored as an optional field, in row groups of
+ * {@link TableIOOptions#rowGroupSize} rows, compressed with Snappy unless
+ * another {@link TableIOOptions#compression codec} is given. Text columns
+ * with few distinct values are dictionary-encoded. Row headers are kept in a
+ * column named {@value ArrowTableIOPlugin#INDEX_COLUMN}, as pandas does for
+ * its index.
+ * </p>
+ */
+@SuppressWarnings("rawtypes")
+@Plugin(type = TableIOPlugin.class)
+public class ParquetTableIOPlugin extends AbstractIOPlugin<Table> implements
+	TableIOPlugin
+{
+
+	@Parameter
+	private DataHandleService dataHandleService;
+
+	private static final String EXTENSION = "parquet";
+
+	private static final byte[] MAGIC = "PAR1".getBytes(
+		StandardCharsets.US_ASCII);
+
+	private static final String INDEX_COLUMN = ArrowTableIOPlugin.INDEX_COLUMN;
+
+	/** Maximum number of rows in each data page written. */
+	private static final int PAGE_SIZE = 1 << 16;
+
+	/** Maximum number of values in each bit-packed run written. */
+	private static final int MAX_PACKED_RUN = 63 * 8;
+
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// -- Metadata constants --
+
+	private static final int BOOLEAN = 0, INT32 = 1, INT64 = 2, INT96 = 3,
+		FLOAT = 4, DOUBLE = 5, BYTE_ARRAY = 6, FIXED_LEN_BYTE_ARRAY = 7;
+
+	private static final int REQUIRED = 0, OPTIONAL = 1, REPEATED = 2;
+
+	private static final int UTF8 = 0, ENUM = 4, UINT_8 = 11, INT_8 = 15,
+		INT_16 = 16, INT_64 = 18, JSON = 19;
+
+	/** Members of the {@code LogicalType} union. */
+	private static final int STRING_TYPE = 1, ENUM_TYPE = 4, INTEGER_TYPE = 10,
+		JSON_TYPE = 12;
+
+	private static final int PLAIN = 0, PLAIN_DICTIONARY = 2, RLE = 3,
+		RLE_DICTIONARY = 8;
+
+	private static final int UNCOMPRESSED = 0, SNAPPY = 1, GZIP = 2;
+
+	private static final int DATA_PAGE = 0, DICTIONARY_PAGE = 2,
+		DATA_PAGE_V2 = 3;
+
+	@Override
+	public boolean supportsOpen(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		final File file = ((FileLocation) source).getFile();
+		return file.exists() && EXTENSION.equalsIgnoreCase(FileUtils.getExtension(
+			file));
+	}
+
+	@Override
+	public boolean supportsSave(final Location source) {
+		if (!(source instanceof FileLocation)) return false;
+		return EXTENSION.equalsIgnoreCase(FileUtils.getExtension(
+			((FileLocation) source).getFile()));
+	}
+
+	@Override
+	public GenericTable open(final Location source, final TableIOOptions options)
+		throws IOException
+	{
+		if (!(source instanceof FileLocation)) {
+			throw new IOException("Parquet tables can only be read from files");
+		}
+		final File file = ((FileLocation) source).getFile();
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ))
+		{
+			return open(channel, options.values);
+		}
+	}
+
+	@Override
+	public void save(final Table<?, ?> table, final Location destination,
+		final TableIOOptions options) throws IOException
+	{
+		final TableIOOptions.Values values = options.values;
+		final List<OutputColumn> columns = new ArrayList<>();
+		for (int c = 0; c < table.getColumnCount(); c++) {
+			columns.add(new OutputColumn(table.getColumnHeader(c), Columns.compact(
+				(Column<?>) table.get(c))));
+		}
+		final int rowCount = table.getRowCount();
+		if (values.writeRowHeaders()) {
+			final GenericColumn headers = new GenericColumn(INDEX_COLUMN);
+			boolean any = false;
+			for (int row = 0; row < rowCount; row++) {
+				final String header = table.getRowHeader(row);
+				headers.add(header);
+				any |= header != null;
+			}
+			if (any) columns.add(new OutputColumn(INDEX_COLUMN, headers));
+		}
+		final int codec = codec(values.compression());
+		final int rowGroupSize = values.rowGroupSize();
+
+		final List<Struct> schema = new ArrayList<>();
+		schema.add(new Struct().set(4, "schema").set(5, columns.size()));
+		for (final OutputColumn column : columns)
+			schema.add(column.schemaElement());
+
+		try (final DataHandle<Location> handle = //
+			dataHandleService.create(destination))
+		{
+			final CountingOutputStream out = new CountingOutputStream(
+				new BufferedOutputStream(new DataHandleOutputStream<>(handle),
+					1 << 16));
+			out.write(MAGIC);
+			final List<Struct> rowGroups = new ArrayList<>();
+			for (int start = 0; start < rowCount; start += rowGroupSize) {
+				final int end = (int) Math.min(rowCount, (long) start + rowGroupSize);
+				final long offset = out.position();
+				final List<Struct> chunks = new ArrayList<>();
+				long uncompressed = 0;
+				for (final OutputColumn column : columns) {
+					final ChunkWriter chunk = new ChunkWriter(out, codec);
+					chunks.add(chunk.write(column, start, end));
+					uncompressed += chunk.uncompressed;
+				}
+				rowGroups.add(new Struct().setList(1, Thrift.STRUCT, chunks).set(2,
+					uncompressed).set(3, (long) (end - start)).set(5, offset).set(6, out
+						.position() - offset).set(7, (short) rowGroups.size()));
+			}
+			final byte[] footer = new Struct().set(1, 1).setList(2, Thrift.STRUCT,
+				schema).set(3, (long) rowCount).setList(4, Thrift.STRUCT, rowGroups)
+				.set(6, "scijava-table").toBytes();
+			out.write(footer);
+			out.writeIntLE(footer.length);
+			out.write(MAGIC);
+			out.flush();
+			handle.setLength(out.position());
+		}
+	}
+
+	// -- Reading --
+
+	private static GenericTable open(final FileChannel channel,
+		final TableIOOptions.Values options) throws IOException
+	{
+		final long size = channel.size();
+		if (size < 2 * MAGIC.length + 4) throw new IOException("Not a Parquet file");
+		final ByteBuffer tail = map(channel, size - 4 - MAGIC.length, 4 +
+			MAGIC.length);
+		final byte[] magic = new byte[MAGIC.length];
+		tail.position(4);
+		tail.get(magic);
+		final int footerLength = tail.getInt(0);
+		if (!Arrays.equals(magic, MAGIC) || footerLength <= 0 ||
+			footerLength > size - 4 - 2 * MAGIC.length)
+		{
+			throw new IOException("Not a Parquet file");
+		}
+		final Struct footer = Thrift.read(map(channel, size - 4 - MAGIC.length -
+			footerLength, footerLength));
+
+		// the flat schema: a root followed by its fields
+		final List<Struct> schema = footer.getList(2);
+		final List<Leaf> leaves = new ArrayList<>();
+		for (int i = 1; i < schema.size(); i++) {
+			final Struct element = schema.get(i);
+			if (element.getInt(5, 0) > 0 || element.getInt(3,
+				OPTIONAL) == REPEATED)
+			{
+				throw new IOException("Nested Parquet schemas are not supported");
+			}
+			leaves.add(new Leaf(element));
+		}
+
+		// find the columns to read
+		int rowHeaderLeaf = -1;
+		final List<Integer> columnLeaves = new ArrayList<>();
+		final List<String> colHeaders = new ArrayList<>();
+		for (int l = 0; l < leaves.size(); l++) {
+			final Leaf leaf = leaves.get(l);
+			if (options.readRowHeaders() && rowHeaderLeaf < 0 && INDEX_COLUMN
+				.equals(leaf.name) && leaf.text)
+			{
+				rowHeaderLeaf = l;
+				continue;
+			}
+			columnLeaves.add(l);
+			colHeaders.add(leaf.name);
+		}
+		final int[] selected = DefaultTableIOPlugin.selectColumns(colHeaders,
+			options);
+		final ColumnBuilder[] builders = new ColumnBuilder[leaves.size()];
+		for (final int c : selected) {
+			final int l = columnLeaves.get(c);
+			builders[l] = new ColumnBuilder(leaves.get(l));
+		}
+		if (rowHeaderLeaf >= 0) {
+			builders[rowHeaderLeaf] = new ColumnBuilder(leaves.get(rowHeaderLeaf));
+		}
+		int filterLeaf = -1;
+		if (options.rowFilterColumn() != null) {
+			for (int l = 0; l < leaves.size() && filterLeaf < 0; l++) {
+				if (options.rowFilterColumn().equals(leaves.get(l).name)) filterLeaf = l;
+			}
+			if (filterLeaf < 0) {
+				throw new IOException("No column with header " + options
+					.rowFilterColumn());
+			}
+			if (leaves.get(filterLeaf).elementType() == null) {
+				throw new IOException("Cannot filter by non-numeric column " + options
+					.rowFilterColumn());
+			}
+		}
+
+		// read the requested rows of each row group
+		long skip = options.rowOffset();
+		int remaining = options.rowLimit();
+		for (final Struct rowGroup : footer.<Struct> getList(4)) {
+			if (remaining == 0) break;
+			final long rows = rowGroup.getLong(3, 0);
+			final List<Struct> chunks = rowGroup.getList(1);
+			if (chunks.size() != leaves.size()) {
+				throw new IOException("Invalid Parquet row group");
+			}
+			if (rows > Integer.MAX_VALUE) throw new IOException("Row group too large");
+			final Values[] values = new Values[leaves.size()];
+
+			// the ranges of rows to read, relative to the row group
+			final List<int[]> ranges = new ArrayList<>();
+			if (filterLeaf < 0) {
+				if (skip >= rows) {
+					skip -= rows;
+					continue;
+				}
+				final int lo = (int) skip;
+				final int hi = (int) Math.min(rows, lo + (long) remaining);
+				ranges.add(new int[] { lo, hi });
+				skip = 0;
+				remaining -= hi - lo;
+			}
+			else {
+				final Leaf leaf = leaves.get(filterLeaf);
+				final Struct meta = chunks.get(filterLeaf).getStruct(3);
+				if (!leaf.mayMatch(meta, options.rowFilterMin(), options
+					.rowFilterMax()))
+				{
+					continue;
+				}
+				values[filterLeaf] = readChunk(channel, chunks.get(filterLeaf), leaf);
+				final BitSet matches = values[filterLeaf].matches(options
+					.rowFilterMin(), options.rowFilterMax());
+				for (int lo = matches.nextSetBit(0); lo >= 0 && remaining > 0; lo =
+					matches.nextSetBit(lo))
+				{
+					final int hi = matches.nextClearBit(lo);
+					final int n = hi - lo;
+					if (skip >= n) skip -= n;
+					else {
+						final int from = lo + (int) skip;
+						final int to = (int) Math.min(hi, from + (long) remaining);
+						ranges.add(new int[] { from, to });
+						skip = 0;
+						remaining -= to - from;
+					}
+					lo = hi;
+				}
+			}
+			if (ranges.isEmpty()) continue;
+
+			for (int l = 0; l < leaves.size(); l++) {
+				if (builders[l] == null) continue;
+				if (values[l] == null) {
+					values[l] = readChunk(channel, chunks.get(l), leaves.get(l));
+				}
+				if (values[l].size != rows) {
+					throw new IOException("Wrong number of values in column " + leaves
+						.get(l).name);
+				}
+				for (final int[] range : ranges)
+					builders[l].append(values[l], range[0], range[1]);
+			}
+		}
+
+		final GenericTable table = new DefaultGenericTable();
+		int rowCount = 0;
+		for (final int c : selected) {
+			final ColumnBuilder builder = builders[columnLeaves.get(c)];
+			table.add(builder.build());
+			rowCount = builder.size;
+		}
+		if (rowHeaderLeaf >= 0) {
+			final ColumnBuilder headers = builders[rowHeaderLeaf];
+			rowCount = headers.size;
+			table.setRowCount(rowCount);
+			final Object[] names = (Object[]) headers.array;
+			for (int row = 0; row < rowCount; row++)
+				table.setRowHeader(row, (String) names[row]);
+		}
+		else table.setRowCount(rowCount);
+		return table;
+	}
+
+	/** Reads and decodes all values of a column chunk. */
+	private static Values readChunk(final FileChannel channel,
+		final Struct chunk, final Leaf leaf) throws IOException
+	{
+		final Struct meta = chunk.getStruct(3);
+		if (meta == null || chunk.has(1)) {
+			throw new IOException("Column chunks in other files are not supported");
+		}
+		final int codec = meta.getInt(4, UNCOMPRESSED);
+		final long count = meta.getLong(5, 0);
+		long start = meta.getLong(9, 0);
+		final long dictionaryOffset = meta.getLong(11, 0);
+		if (dictionaryOffset > 0 && dictionaryOffset < start) {
+			start = dictionaryOffset;
+		}
+		final long length = meta.getLong(7, 0);
+		if (count > Integer.MAX_VALUE || length > Integer.MAX_VALUE ||
+			start < 0 || start + length > channel.size())
+		{
+			throw new IOException("Invalid column chunk of " + leaf.name);
+		}
+		final ByteBuffer buf = map(channel, start, length);
+		final Values values = new Values(leaf, (int) count);
+		Object dictionary = null;
+		int row = 0;
+		while (row < count) {
+			if (!buf.hasRemaining()) {
+				throw new IOException("Truncated column chunk of " + leaf.name);
+			}
+			final Struct header = Thrift.read(buf);
+			final int type = header.getInt(1, -1);
+			final int uncompressedSize = header.getInt(2, 0);
+			final int compressedSize = header.getInt(3, 0);
+			final ByteBuffer page = slice(buf, buf.position(), compressedSize);
+			buf.position(buf.position() + compressedSize);
+			if (type == DICTIONARY_PAGE) {
+				final int n = header.getStruct(7).getInt(1, 0);
+				dictionary = leaf.convert(decodePlain(decompress(codec, page,
+					uncompressedSize), leaf, n));
+			}
+			else if (type == DATA_PAGE) {
+				final Struct dataHeader = header.getStruct(5);
+				final int n = dataHeader.getInt(1, 0);
+				final ByteBuffer data = decompress(codec, page, uncompressedSize);
+				int nonNull = n;
+				if (!leaf.required) {
+					final int levelsLength = data.getInt();
+					nonNull = readLevels(slice(data, data.position(), levelsLength), n,
+						values.nulls, row);
+					data.position(data.position() + levelsLength);
+				}
+				values.scatter(decodeValues(data, dataHeader.getInt(2, PLAIN), leaf,
+					nonNull, dictionary), nonNull, row, n);
+				row += n;
+			}
+			else if (type == DATA_PAGE_V2) {
+				final Struct dataHeader = header.getStruct(8);
+				final int n = dataHeader.getInt(1, 0);
+				final int levelsLength = dataHeader.getInt(5, 0);
+				final int skipped = dataHeader.getInt(6, 0) + levelsLength;
+				final int nonNull = leaf.required ? n : readLevels(slice(page,
+					skipped - levelsLength, levelsLength), n, values.nulls, row);
+				ByteBuffer data = slice(page, skipped, compressedSize - skipped);
+				if (dataHeader.getBoolean(7, true)) {
+					data = decompress(codec, data, uncompressedSize - skipped);
+				}
+				values.scatter(decodeValues(data, dataHeader.getInt(4, PLAIN), leaf,
+					nonNull, dictionary), nonNull, row, n);
+				row += n;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the definition levels of a page, marking the rows with a missing
+	 * value.
+	 *
+	 * @return The number of values which are not missing.
+	 */
+	private static int readLevels(final ByteBuffer levels, final int count,
+		final BitSet nulls, final int offset) throws IOException
+	{
+		final int[] defined = new int[count];
+		decodeHybrid(levels, 1, defined, count);
+		int nonNull = 0;
+		for (int i = 0; i < count; i++) {
+			if (defined[i] == 0) nulls.set(offset + i);
+			else nonNull++;
+		}
+		return nonNull;
+	}
+
+	/** Decodes the values of a data page into an array of the column's type. */
+	private static Object decodeValues(final ByteBuffer data,
+		final int encoding, final Leaf leaf, final int count,
+		final Object dictionary) throws IOException
+	{
+		if (encoding == PLAIN) return leaf.convert(decodePlain(data, leaf, count));
+		if (encoding == PLAIN_DICTIONARY || encoding == RLE_DICTIONARY) {
+			if (dictionary == null) {
+				throw new IOException("Missing dictionary page of " + leaf.name);
+			}
+			final int bitWidth = data.get() & 0xff;
+			final int[] indices = new int[count];
+			decodeHybrid(data, bitWidth, indices, count);
+			final int size = Array.getLength(dictionary);
+			final Object values = Array.newInstance(dictionary.getClass()
+				.getComponentType(), count);
+			for (int i = 0; i < count; i++) {
+				if (indices[i] < 0 || indices[i] >= size) {
+					throw new IOException("Invalid dictionary index in " + leaf.name);
+				}
+			}
+			gather(dictionary, indices, values);
+			return values;
+		}
+		if (encoding == RLE && leaf.physicalType == BOOLEAN) {
+			final int length = data.getInt();
+			final int[] bits = new int[count];
+			decodeHybrid(slice(data, data.position(), length), 1, bits, count);
+			final boolean[] values = new boolean[count];
+			for (int i = 0; i < count; i++)
+				values[i] = bits[i] != 0;
+			return values;
+		}
+		throw new IOException("Unsupported Parquet encoding " + encoding +
+			" of column " + leaf.name);
+	}
+
+	/** Decodes plain values into an array of their physical type. */
+	private static Object decodePlain(final ByteBuffer data, final Leaf leaf,
+		final int count) throws IOException
+	{
+		switch (leaf.physicalType) {
+			case BOOLEAN: {
+				final boolean[] values = new boolean[count];
+				final int start = data.position();
+				for (int i = 0; i < count; i++)
+					values[i] = (data.get(start + (i >> 3)) >> (i & 7) & 1) != 0;
+				return values;
+			}
+			case INT32:
+				return decodeArray(data, new int[count], 4);
+			case INT64:
+				return decodeArray(data, new long[count], 8);
+			case FLOAT:
+				return decodeArray(data, new float[count], 4);
+			case DOUBLE:
+				return decodeArray(data, new double[count], 8);
+			case BYTE_ARRAY:
+			case FIXED_LEN_BYTE_ARRAY: {
+				final Object[] values = new Object[count];
+				for (int i = 0; i < count; i++) {
+					final int length = leaf.physicalType == BYTE_ARRAY ? data.getInt()
+						: leaf.typeLength;
+					if (length < 0 || length > data.remaining()) {
+						throw new IOException("Invalid value in column " + leaf.name);
+					}
+					final byte[] bytes = new byte[length];
+					data.get(bytes);
+					values[i] = bytes;
+				}
+				return values;
+			}
+			default:
+				throw leaf.unsupported();
+		}
+	}
+
+	private static Object decodeArray(final ByteBuffer data, final Object array,
+		final int width) throws IOException
+	{
+		final int count = Array.getLength(array);
+		if ((long) count * width > data.remaining()) {
+			throw new IOException("Truncated Parquet page");
+		}
+		ColumnBuffers.get(data, array, 0, count);
+		data.position(data.position() + count * width);
+		return array;
+	}
+
+	/**
+	 * Decodes values of the given bit width in the hybrid of run-length
+	 * encoding and bit-packing which Parquet uses for levels and dictionary
+	 * indices.
+	 */
+	private static void decodeHybrid(final ByteBuffer buf, final int bitWidth,
+		final int[] values, final int count) throws IOException
+	{
+		if (bitWidth > 32) throw new IOException("Invalid bit width: " + bitWidth);
+		final int byteWidth = (bitWidth + 7) / 8;
+		final long mask = (1L << bitWidth) - 1;
+		int i = 0;
+		while (i < count) {
+			final long header = readVarint(buf);
+			if ((header & 1) == 0) {
+				final long run = header >>> 1;
+				if (run == 0) throw new IOException("Invalid run length");
+				int value = 0;
+				for (int b = 0; b < byteWidth; b++)
+					value |= (buf.get() & 0xff) << 8 * b;
+				final int end = (int) Math.min(count, i + run);
+				Arrays.fill(values, i, end, value);
+				i = end;
+			}
+			else {
+				final long groups = header >>> 1;
+				final int end = buf.position() + (int) (groups * bitWidth);
+				long bits = 0;
+				int available = 0;
+				for (long v = 0; v < 8 * groups && i < count; v++) {
+					while (available < bitWidth) {
+						bits |= (buf.get() & 0xffL) << available;
+						available += 8;
+					}
+					values[i++] = (int) (bits & mask);
+					bits >>>= bitWidth;
+					available -= bitWidth;
+				}
+				buf.position(end);
+			}
+		}
+	}
+
+	private static long readVarint(final ByteBuffer buf) {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			final byte b = buf.get();
+			value |= (long) (b & 0x7f) << shift;
+			if (b >= 0) return value;
+		}
+	}
+
+	/** Copies the values at the given indices into another array. */
+	private static void gather(final Object source, final int[] indices,
+		final Object dest)
+	{
+		final int n = indices.length;
+		if (source instanceof double[]) {
+			final double[] s = (double[]) source, d = (double[]) dest;
+			for (int i = 0; i < n; i++)
+				d[i] = s[indices[i]];
+		}
+		else if (source instanceof float[]) {
+			final float[] s = (float[]) source, d = (float[]) dest;
+			for (int i = 0; i < n; i++)
+				d[i] = s[indices[i]];
+		}
+		else if (source instanceof long[]) {
+			final long[] s = (long[]) source, d = (long[]) dest;
+			for (int i = 0; i < n; i++)
+				d[i] = s[indices[i]];
+		}
+		else if (source instanceof int[]) {
+			final int[] s = (int[]) source, d = (int[]) dest;
+			for (int i = 0; i < n; i++)
+				d[i] = s[indices[i]];
+		}
+		else if (source instanceof short[]) {
+			final short[] s = (short[]) source, d = (short[]) dest;
+			for (int i = 0; i < n; i++)
+				d[i] = s[indices[i]];
+		}
+		else if (source instanceof byte[]) {
+			final byte[] s = (byte[]) source, d = (byte[]) dest;
+			for (int i = 0; i < n; i++)
+				d[i] = s[indices[i]];
+		}
+		else if (source instanceof boolean[]) {
+			final boolean[] s = (boolean[]) source, d = (boolean[]) dest;
+			for (int i = 0; i < n; i++)
+				d[i] = s[indices[i]];
+		}
+		else {
+			final Object[] s = (Object[]) source, d = (Object[]) dest;
+			for (int i = 0; i < n; i++)
+				d[i] = s[indices[i]];
+		}
+	}
+
+	private static ByteBuffer decompress(final int codec, final ByteBuffer page,
+		final int uncompressedSize) throws IOException
+	{
+		if (codec == UNCOMPRESSED) return page;
+		final byte[] bytes = new byte[page.remaining()];
+		page.duplicate().get(bytes);
+		final byte[] data;
+		if (codec == SNAPPY) data = Snappy.uncompress(bytes, 0, bytes.length);
+		else if (codec == GZIP) {
+			data = new byte[uncompressedSize];
+			try (final InputStream in = new GZIPInputStream(
+				new ByteArrayInputStream(bytes)))
+			{
+				int done = 0;
+				while (done < data.length) {
+					final int n = in.read(data, done, data.length - done);
+					if (n < 0) throw new IOException("Truncated gzip data");
+					done += n;
+				}
+			}
+		}
+		else throw new IOException("Unsupported Parquet compression codec " + codec);
+		return ByteBuffer.wrap(data).order(ORDER);
+	}
+
+	// -- Writing --
+
+	private static int codec(final String name) throws IOException {
+		if (name == null || name.equals("snappy")) return SNAPPY;
+		if (name.equals("gzip")) return GZIP;
+		if (name.equals("uncompressed") || name.equals("none")) return UNCOMPRESSED;
+		throw new IOException("Unsupported Parquet compression codec: " + name);
+	}
+
+	private static byte[] compress(final int codec, final byte[] data)
+		throws IOException
+	{
+		if (codec == SNAPPY) return Snappy.compress(data, 0, data.length);
+		if (codec == GZIP) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+				gzip.write(data);
+			}
+			return out.toByteArray();
+		}
+		return data;
+	}
+
+	/**
+	 * Encodes values of the given bit width in the hybrid of run-length
+	 * encoding and bit-packing: runs of at least 8 equal values are run-length
+	 * encoded, and the other values bit-packed.
+	 */
+	private static void encodeHybrid(final int[] values, final int count,
+		final int bitWidth, final ByteArrayOutputStream out)
+	{
+		int literal = 0;
+		int i = 0;
+		while (i < count) {
+			int run = 1;
+			while (i + run < count && values[i + run] == values[i])
+				run++;
+			if (run < 8) {
+				i += run;
+				while (i - literal >= MAX_PACKED_RUN) {
+					pack(values, literal, MAX_PACKED_RUN, bitWidth, out);
+					literal += MAX_PACKED_RUN;
+				}
+				continue;
+			}
+			if (i > literal) {
+				// complete the last group of the bit-packed values from the run
+				final int padding = -(i - literal) & 7;
+				pack(values, literal, i - literal + padding, bitWidth, out);
+				i += padding;
+				run -= padding;
+			}
+			writeVarint((long) run << 1, out);
+			for (int b = 0; b < (bitWidth + 7) / 8; b++)
+				out.write(values[i] >>> 8 * b);
+			i += run;
+			literal = i;
+		}
+		if (count > literal) pack(values, literal, count - literal, bitWidth, out);
+	}
+
+	/** Bit-packs values, padding them with zeros to a multiple of 8. */
+	private static void pack(final int[] values, final int start,
+		final int count, final int bitWidth, final ByteArrayOutputStream out)
+	{
+		final int groups = (count + 7) / 8;
+		writeVarint((long) groups << 1 | 1, out);
+		long bits = 0;
+		int available = 0;
+		for (int i = 0; i < 8 * groups; i++) {
+			final long value = i < count ? values[start + i] & 0xffffffffL : 0;
+			bits |= value << available;
+			available += bitWidth;
+			while (available >= 8) {
+				out.write((int) bits);
+				bits >>>= 8;
+				available -= 8;
+			}
+		}
+	}
+
+	private static void writeVarint(long value,
+		final ByteArrayOutputStream out)
+	{
+		while ((value & ~0x7fL) != 0) {
+			out.write((int) (value & 0x7f | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	// -- Utility methods --
+
+	private static ByteBuffer map(final FileChannel channel, final long position,
+		final long size) throws IOException
+	{
+		return channel.map(MapMode.READ_ONLY, position, size).order(ORDER);
+	}
+
+	/** Gets a slice of a buffer, as little-endian buffer starting at 0. */
+	private static ByteBuffer slice(final ByteBuffer buf, final int offset,
+		final int length) throws IOException
+	{
+		if (offset < 0 || length < 0 || offset + length > buf.limit()) {
+			throw new IOException("Truncated Parquet page");
+		}
+		final ByteBuffer dup = buf.duplicate();
+		dup.limit(offset + length).position(offset);
+		return dup.slice().order(ORDER);
+	}
+
+	// -- Helper classes --
+
+	/** A column of the file's schema. */
+	private static final class Leaf {
+
+		private final String name;
+		private final int physicalType;
+		private final int typeLength;
+		private final boolean required;
+		private final boolean text;
+		private final int bitWidth;
+		private final boolean signed;
+
+		private Leaf(final Struct element) {
+			name = element.getString(4);
+			physicalType = element.getInt(1, -1);
+			typeLength = element.getInt(2, 0);
+			required = element.getInt(3, OPTIONAL) == REQUIRED;
+			final int converted = element.getInt(6, -1);
+			final Struct logical = element.getStruct(10);
+			text = converted == UTF8 || converted == ENUM || converted == JSON ||
+				logical != null && (logical.has(STRING_TYPE) || logical.has(
+					ENUM_TYPE) || logical.has(JSON_TYPE));
+			final Struct integer = logical == null ? null : logical.getStruct(
+				INTEGER_TYPE);
+			if (integer != null) {
+				bitWidth = integer.getInt(1, 64);
+				signed = integer.getBoolean(2, true);
+			}
+			else if (converted >= UINT_8 && converted <= INT_64) {
+				// UINT_8 to UINT_64, then INT_8 to INT_64
+				final int index = converted - UINT_8;
+				bitWidth = 8 << index % 4;
+				signed = index >= 4;
+			}
+			else {
+				bitWidth = physicalType == INT32 ? 32 : 64;
+				signed = true;
+			}
+		}
+
+		/** Gets the primitive type of the values, or null for objects. */
+		private Class<?> elementType() throws IOException {
+			switch (physicalType) {
+				case BOOLEAN:
+					return boolean.class;
+				case INT32:
+					if (bitWidth == 8) return signed ? byte.class : short.class;
+					if (bitWidth == 16) return signed ? short.class : int.class;
+					return signed ? int.class : long.class;
+				case INT64:
+					return long.class;
+				case FLOAT:
+					return float.class;
+				case DOUBLE:
+					return double.class;
+				case BYTE_ARRAY:
+				case FIXED_LEN_BYTE_ARRAY:
+					return null;
+				default:
+					throw unsupported();
+			}
+		}
+
+		/** Converts values of the physical type into the column's type. */
+		private Object convert(final Object values) throws IOException {
+			if (values instanceof int[]) {
+				final int[] ints = (int[]) values;
+				final Class<?> type = elementType();
+				if (type == byte.class) {
+					final byte[] bytes = new byte[ints.length];
+					for (int i = 0; i < ints.length; i++)
+						bytes[i] = (byte) ints[i];
+					return bytes;
+				}
+				if (type == short.class) {
+					final short[] shorts = new short[ints.length];
+					for (int i = 0; i < ints.length; i++)
+						shorts[i] = (short) (signed ? ints[i] : ints[i] & 0xff);
+					return shorts;
+				}
+				if (type == int.class && !signed) {
+					for (int i = 0; i < ints.length; i++)
+						ints[i] &= 0xffff;
+				}
+				if (type == long.class) {
+					final long[] longs = new long[ints.length];
+					for (int i = 0; i < ints.length; i++)
+						longs[i] = ints[i] & 0xffffffffL;
+					return longs;
+				}
+				return ints;
+			}
+			if (values instanceof Object[] && text) {
+				final Object[] objects = (Object[]) values;
+				for (int i = 0; i < objects.length; i++)
+					objects[i] = new String((byte[]) objects[i], StandardCharsets.UTF_8);
+			}
+			return values;
+		}
+
+		/**
+		 * Gets whether a column chunk may hold values in the given range,
+		 * according to its statistics.
+		 */
+		private boolean mayMatch(final Struct meta, final double min,
+			final double max)
+		{
+			final Struct statistics = meta.getStruct(12);
+			if (statistics == null) return true;
+			if (statistics.getLong(3, -1) == meta.getLong(5, 0)) return false;
+			byte[] lo = statistics.getBinary(6), hi = statistics.getBinary(5);
+			if ((lo == null || hi == null) && signed) {
+				// the deprecated fields, with signed order
+				lo = statistics.getBinary(2);
+				hi = statistics.getBinary(1);
+			}
+			if (lo == null || hi == null) return true;
+			final double low = statistic(lo), high = statistic(hi);
+			if (Double.isNaN(low) || Double.isNaN(high)) return true;
+			return high >= min && low <= max;
+		}
+
+		/** Decodes a minimum or maximum value, or NaN if unknown. */
+		private double statistic(final byte[] bytes) {
+			final ByteBuffer buf = ByteBuffer.wrap(bytes).order(ORDER);
+			switch (physicalType) {
+				case BOOLEAN:
+					return bytes.length < 1 ? Double.NaN : bytes[0] != 0 ? 1 : 0;
+				case INT32:
+					if (bytes.length < 4) return Double.NaN;
+					return signed ? buf.getInt() : buf.getInt() & 0xffffffffL;
+				case INT64:
+					return bytes.length < 8 || !signed ? Double.NaN : buf.getLong();
+				case FLOAT:
+					return bytes.length < 4 ? Double.NaN : buf.getFloat();
+				case DOUBLE:
+					return bytes.length < 8 ? Double.NaN : buf.getDouble();
+				default:
+					return Double.NaN;
+			}
+		}
+
+		private IOException unsupported() {
+			return new IOException("Unsupported Parquet type " + physicalType +
+				" of column " + name);
+		}
+	}
+
+	/** The decoded values of a column chunk. */
+	private static final class Values {
+
+		private final Object array;
+		private final BitSet nulls = new BitSet();
+		private final int size;
+
+		private Values(final Leaf leaf, final int size) throws IOException {
+			final Class<?> type = leaf.elementType();
+			array = Array.newInstance(type == null ? Object.class : type, size);
+			this.size = size;
+		}
+
+		/**
+		 * Places the values of a page, which leave out the missing ones, at the
+		 * page's rows.
+		 */
+		private void scatter(final Object values, final int nonNull,
+			final int offset, final int count) throws IOException
+		{
+			if (Array.getLength(values) < nonNull || offset + count > size) {
+				throw new IOException("Invalid Parquet page");
+			}
+			if (nonNull == count) {
+				System.arraycopy(values, 0, array, offset, count);
+				return;
+			}
+			final int end = offset + count;
+			int k = 0;
+			for (int i = nulls.nextClearBit(offset); i < end; i = nulls.nextClearBit(
+				i))
+			{
+				int next = nulls.nextSetBit(i);
+				if (next < 0 || next > end) next = end;
+				System.arraycopy(values, k, array, i, next - i);
+				k += next - i;
+				i = next;
+			}
+		}
+
+		/** Gets the rows whose value lies in {@code [min, max]}. */
+		private BitSet matches(final double min, final double max) {
+			final BitSet matches = new BitSet(size);
+			for (int i = 0; i < size; i++) {
+				if (nulls.get(i)) continue;
+				final double value;
+				if (array instanceof boolean[]) value = ((boolean[]) array)[i] ? 1 : 0;
+				else value = ((Number) Array.get(array, i)).doubleValue();
+				if (value >= min && value <= max) matches.set(i);
+			}
+			return matches;
+		}
+	}
+
+	/** The values of a column being read, from one or more row groups. */
+	private static final class ColumnBuilder {
+
+		private final Leaf leaf;
+		private Object array;
+		private final BitSet nulls = new BitSet();
+		private int size;
+
+		private ColumnBuilder(final Leaf leaf) throws IOException {
+			this.leaf = leaf;
+			final Class<?> type = leaf.elementType();
+			array = Array.newInstance(type == null ? Object.class : type, 16);
+		}
+
+		private void append(final Values values, final int from, final int to) {
+			final int n = to - from;
+			final int capacity = Array.getLength(array);
+			if (size + n > capacity) {
+				final Object bigger = Array.newInstance(array.getClass()
+					.getComponentType(), Math.max(size + n, 2 * capacity));
+				System.arraycopy(array, 0, bigger, 0, size);
+				array = bigger;
+			}
+			System.arraycopy(values.array, from, array, size, n);
+			for (int i = values.nulls.nextSetBit(from); i >= 0 && i < to; i =
+				values.nulls.nextSetBit(i + 1))
+			{
+				nulls.set(size + i - from);
+			}
+			size += n;
+		}
+
+		private Column<?> build() {
+			if (array instanceof Object[]) {
+				final GenericColumn column = new GenericColumn(leaf.name);
+				column.addAll(Arrays.asList((Object[]) array).subList(0, size));
+				return column;
+			}
+			final Object values = Array.newInstance(array.getClass()
+				.getComponentType(), size);
+			System.arraycopy(array, 0, values, 0, size);
+			@SuppressWarnings("unchecked")
+			final PrimitiveColumn<Object, Object> column =
+				(PrimitiveColumn<Object, Object>) ColumnBuffers.newColumn(values
+					.getClass().getComponentType(), leaf.name);
+			column.fill(values);
+			for (int r = nulls.nextSetBit(0); r >= 0; r = nulls.nextSetBit(r + 1))
+				column.set(r, null);
+			return column;
+		}
+	}
+
+	/** A column being written. */
+	private static final class OutputColumn {
+
+		private final String name;
+		private final Column<?> column;
+		private final Class<?> elementType;
+		private final int physicalType;
+
+		private OutputColumn(final String name, final Column<?> column) {
+			this.name = name == null ? "" : name;
+			this.column = column;
+			elementType = column instanceof PrimitiveColumn &&
+				!(column instanceof CharColumn) ? ColumnBuffers.elementType(
+					(PrimitiveColumn<?, ?>) column) : null;
+			if (elementType == boolean.class) physicalType = BOOLEAN;
+			else if (elementType == double.class) physicalType = DOUBLE;
+			else if (elementType == float.class) physicalType = FLOAT;
+			else if (elementType == long.class) physicalType = INT64;
+			else if (elementType != null) physicalType = INT32;
+			else physicalType = BYTE_ARRAY;
+		}
+
+		private Struct schemaElement() {
+			final Struct element = new Struct().set(1, physicalType).set(3,
+				OPTIONAL).set(4, name);
+			if (physicalType == BYTE_ARRAY) {
+				element.set(6, UTF8).set(10, new Struct().set(STRING_TYPE,
+					new Struct()));
+			}
+			else if (elementType == byte.class || elementType == short.class) {
+				final int bitWidth = 8 * ColumnBuffers.width(elementType);
+				element.set(6, bitWidth == 8 ? INT_8 : INT_16).set(10, new Struct()
+					.set(INTEGER_TYPE, new Struct().set(1, (byte) bitWidth).set(2,
+						true)));
+			}
+			return element;
+		}
+	}
+
+	/** Writes the pages of a column chunk. */
+	private static final class ChunkWriter {
+
+		private final CountingOutputStream out;
+		private final int codec;
+		private long uncompressed;
+
+		private ChunkWriter(final CountingOutputStream out, final int codec) {
+			this.out = out;
+			this.codec = codec;
+		}
+
+		/**
+		 * Writes the rows {@code [start, end)} of a column.
+		 *
+		 * @return The {@code ColumnChunk} describing what was written.
+		 */
+		private Struct write(final OutputColumn output, final int start,
+			final int end) throws IOException
+		{
+			final Column<?> column = output.column;
+			final long chunkStart = out.position();
+			final BitSet nulls = new BitSet(end - start);
+			for (int row = start; row < end; row++) {
+				if (column.isNull(row) || column.get(row) == null) nulls.set(row -
+					start);
+			}
+
+			// dictionary-encode text with few distinct values
+			int[] codes = null;
+			int bitWidth = 0;
+			final List<Object> encodings = new ArrayList<>();
+			encodings.add(RLE);
+			long dictionaryOffset = -1;
+			if (output.physicalType == BYTE_ARRAY) {
+				final Map<String, Integer> dictionary = new HashMap<>();
+				final ByteArrayOutputStream values = new ByteArrayOutputStream();
+				codes = new int[end - start];
+				for (int row = start; row < end; row++) {
+					if (nulls.get(row - start)) continue;
+					final String value = column.get(row).toString();
+					Integer code = dictionary.get(value);
+					if (code == null) {
+						code = dictionary.size();
+						dictionary.put(value, code);
+						writeText(value, values);
+					}
+					codes[row - start] = code;
+				}
+				final int nonNull = end - start - nulls.cardinality();
+				if (nonNull > 0 && 2 * dictionary.size() <= nonNull) {
+					dictionaryOffset = out.position();
+					writePage(DICTIONARY_PAGE, values.toByteArray(), 7, new Struct().set(
+						1, dictionary.size()).set(2, PLAIN_DICTIONARY).set(3, false));
+					encodings.add(PLAIN_DICTIONARY);
+					codes = compactCodes(codes, nulls);
+					bitWidth = Math.max(1, 32 - Integer.numberOfLeadingZeros(dictionary
+						.size() - 1));
+				}
+				else codes = null;
+			}
+			if (codes == null) encodings.add(PLAIN);
+
+			final long dataOffset = out.position();
+			int k = 0;
+			for (int from = start; from < end; from += PAGE_SIZE) {
+				final int to = Math.min(end, from + PAGE_SIZE);
+				final ByteArrayOutputStream page = new ByteArrayOutputStream();
+				final int[] levels = new int[to - from];
+				for (int row = from; row < to; row++)
+					levels[row - from] = nulls.get(row - start) ? 0 : 1;
+				final ByteArrayOutputStream encodedLevels = new ByteArrayOutputStream();
+				encodeHybrid(levels, levels.length, 1, encodedLevels);
+				final int levelsLength = encodedLevels.size();
+				for (int b = 0; b < 4; b++)
+					page.write(levelsLength >>> 8 * b);
+				encodedLevels.writeTo(page);
+				if (codes != null) {
+					final int n = to - from - nulls.get(from - start, to - start)
+						.cardinality();
+					page.write(bitWidth);
+					encodeHybrid(Arrays.copyOfRange(codes, k, k + n), n, bitWidth, page);
+					k += n;
+				}
+				else writePlain(column, from, to, nulls, start, output, page);
+				writePage(DATA_PAGE, page.toByteArray(), 5, new Struct().set(1, to -
+					from).set(2, codes != null ? PLAIN_DICTIONARY : PLAIN).set(3, RLE)
+					.set(4, RLE));
+			}
+
+			final Struct meta = new Struct().set(1, output.physicalType).setList(2,
+				Thrift.I32, encodings).setList(3, Thrift.BINARY, Arrays.asList(
+					output.name)).set(4, codec).set(5, (long) (end - start)).set(6,
+						uncompressed).set(7, out.position() - chunkStart).set(9, dataOffset)
+				.set(12, statistics(output, start, end, nulls));
+			if (dictionaryOffset >= 0) meta.set(11, dictionaryOffset);
+			return new Struct().set(2, chunkStart).set(3, meta);
+		}
+
+		/** Drops the codes of missing values. */
+		private static int[] compactCodes(final int[] codes, final BitSet nulls) {
+			final int[] compact = new int[codes.length - nulls.cardinality()];
+			int k = 0;
+			for (int i = 0; i < codes.length; i++) {
+				if (!nulls.get(i)) compact[k++] = codes[i];
+			}
+			return compact;
+		}
+
+		private void writePage(final int type, final byte[] data,
+			final int headerField, final Struct pageHeader) throws IOException
+		{
+			final byte[] compressed = compress(codec, data);
+			final byte[] header = new Struct().set(1, type).set(2, data.length).set(
+				3, compressed.length).set(headerField, pageHeader).toBytes();
+			out.write(header);
+			out.write(compressed);
+			uncompressed += header.length + data.length;
+		}
+
+		/** Plain-encodes the values of the given rows which are not missing. */
+		private static void writePlain(final Column<?> column, final int from,
+			final int to, final BitSet nulls, final int start,
+			final OutputColumn output, final ByteArrayOutputStream page)
+			throws IOException
+		{
+			if (output.physicalType == BYTE_ARRAY) {
+				for (int row = from; row < to; row++) {
+					if (!nulls.get(row - start)) writeText(column.get(row).toString(),
+						page);
+				}
+				return;
+			}
+			final Object array = ((PrimitiveColumn<?, ?>) column).getArray();
+			if (output.physicalType == BOOLEAN) {
+				final boolean[] values = (boolean[]) array;
+				int bits = 0, n = 0;
+				for (int row = from; row < to; row++) {
+					if (nulls.get(row - start)) continue;
+					if (values[row]) bits |= 1 << (n & 7);
+					if ((++n & 7) == 0) {
+						page.write(bits);
+						bits = 0;
+					}
+				}
+				if ((n & 7) != 0) page.write(bits);
+				return;
+			}
+			final boolean widen = output.elementType == byte.class ||
+				output.elementType == short.class;
+			final int nextNull = nulls.nextSetBit(from - start);
+			if (!widen && (nextNull < 0 || nextNull >= to - start)) {
+				ColumnBuffers.write((PrimitiveColumn<?, ?>) column, from, to, ORDER,
+					page);
+				return;
+			}
+			final ByteBuffer buf = ByteBuffer.allocate(8 * (to - from)).order(ORDER);
+			for (int row = from; row < to; row++) {
+				if (nulls.get(row - start)) continue;
+				if (array instanceof double[]) buf.putDouble(((double[]) array)[row]);
+				else if (array instanceof float[]) buf.putFloat(((float[]) array)[row]);
+				else if (array instanceof long[]) buf.putLong(((long[]) array)[row]);
+				else if (array instanceof int[]) buf.putInt(((int[]) array)[row]);
+				else if (array instanceof short[]) buf.putInt(((short[]) array)[row]);
+				else buf.putInt(((byte[]) array)[row]);
+			}
+			page.write(buf.array(), 0, buf.position());
+		}
+
+		private static void writeText(final String value,
+			final ByteArrayOutputStream out)
+		{
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			for (int b = 0; b < 4; b++)
+				out.write(bytes.length >>> 8 * b);
+			out.write(bytes, 0, bytes.length);
+		}
+
+		/**
+		 * Gets the statistics of a column chunk: its number of missing values,
+		 * and the minimum and maximum of numeric columns.
+		 */
+		private static Struct statistics(final OutputColumn output,
+			final int start, final int end, final BitSet nulls)
+		{
+			final Struct statistics = new Struct().set(3, (long) nulls
+				.cardinality());
+			if (output.physicalType == BYTE_ARRAY) return statistics;
+			final Column<?> column = output.column;
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			long minLong = Long.MAX_VALUE, maxLong = Long.MIN_VALUE;
+			boolean any = false;
+			for (int row = start; row < end; row++) {
+				if (nulls.get(row - start)) continue;
+				final Object value = column.get(row);
+				if (value instanceof Boolean) {
+					final long v = (Boolean) value ? 1 : 0;
+					minLong = Math.min(minLong, v);
+					maxLong = Math.max(maxLong, v);
+				}
+				else if (value instanceof Double || value instanceof Float) {
+					final double v = ((Number) value).doubleValue();
+					if (Double.isNaN(v)) continue;
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+				else {
+					final long v = ((Number) value).longValue();
+					minLong = Math.min(minLong, v);
+					maxLong = Math.max(maxLong, v);
+				}
+				any = true;
+			}
+			if (!any) return statistics;
+			// NB: zeros are written as -0.0 and +0.0, as the format requires
+			if (min == 0) min = -0.0;
+			if (max == 0) max = 0.0;
+			final int width = output.physicalType == BOOLEAN ? 1
+				: output.physicalType == INT64 || output.physicalType == DOUBLE ? 8
+					: 4;
+			final ByteBuffer lo = ByteBuffer.allocate(width).order(ORDER);
+			final ByteBuffer hi = ByteBuffer.allocate(width).order(ORDER);
+			switch (output.physicalType) {
+				case BOOLEAN:
+					lo.put((byte) minLong);
+					hi.put((byte) maxLong);
+					break;
+				case INT32:
+					lo.putInt((int) minLong);
+					hi.putInt((int) maxLong);
+					break;
+				case INT64:
+					lo.putLong(minLong);
+					hi.putLong(maxLong);
+					break;
+				case FLOAT:
+					lo.putFloat((float) min);
+					hi.putFloat((float) max);
+					break;
+				default:
+					lo.putDouble(min);
+					hi.putDouble(max);
+			}
+			return statistics.set(6, lo.array()).set(5, hi.array());
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.scijava.io.handle.DataHandle;
+import org.scijava.util.LongArray;
+
+/**
+ * Positions of every Nth row of a delimited text file, so that reading can
+ * start at any row without tokenizing all preceding ones.
+ * <p>
+ * The index is kept in a sidecar file next to the table. It describes the
+ * table only as it was when the index was built: the length and modification
+ * time of the file, the position of its first row of data and its quote
+ * character are recorded, and an index which does not match them is stale.
+ * </p>
+ */
+final class RowIndex {
+
+	/** Suffix appended to the name of a table's file to name its index. */
+	static final String SUFFIX = ".rowindex";
+
+	private static final int MAGIC = 0x534a5249; // "SJRI"
+	private static final int VERSION = 1;
+
+	/** Size of the sidecar's header, before the offsets. */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 2 + 8 + 4;
+
+	private final long length;
+	private final long lastModified;
+	private final long dataStart;
+	private final int interval;
+	private final char quote;
+	private final long rowCount;
+
+	/** The offset of every {@link #interval}th row. */
+	private final long[] offsets;
+
+	private RowIndex(final long length, final long lastModified,
+		final long dataStart, final int interval, final char quote,
+		final long rowCount, final long[] offsets)
+	{
+		this.length = length;
+		this.lastModified = lastModified;
+		this.dataStart = dataStart;
+		this.interval = interval;
+		this.quote = quote;
+		this.rowCount = rowCount;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Indexes the rows of a table.
+	 *
+	 * @param table The table's file.
+	 * @param tokenizer A tokenizer positioned at the first row of data.
+	 * @param dataStart The offset of the first row of data.
+	 * @param interval The number of rows between indexed rows.
+	 * @param quote The character quoting fields.
+	 */
+	static RowIndex build(final DataHandle<?> table,
+		final TableTokenizer tokenizer, final long dataStart, final int interval,
+		final char quote) throws IOException
+	{
+		tokenizer.select(new boolean[0]);
+		final LongArray offsets = new LongArray();
+		long row = 0;
+		while (tokenizer.next()) {
+			if (tokenizer.isBlank()) continue;
+			if (row % interval == 0) offsets.addValue(tokenizer.getRecordOffset());
+			row++;
+		}
+		return new RowIndex(table.length(), lastModified(table), dataStart,
+			interval, quote, row, Arrays.copyOf(offsets.getArray(), offsets
+				.size()));
+	}
+
+	/**
+	 * Reads an index from its sidecar file.
+	 *
+	 * @return The index, or null if the sidecar is not an index.
+	 */
+	static RowIndex read(final DataHandle<?> handle) throws IOException {
+		final long size = handle.length();
+		if (size < HEADER_SIZE || size > Integer.MAX_VALUE) return null;
+		final byte[] bytes = new byte[(int) size];
+		handle.seek(0);
+		if (handle.read(bytes) != bytes.length) return null;
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+		final long length = buffer.getLong();
+		final long lastModified = buffer.getLong();
+		final long dataStart = buffer.getLong();
+		final int interval = buffer.getInt();
+		final char quote = buffer.getChar();
+		final long rowCount = buffer.getLong();
+		final int count = buffer.getInt();
+		if (interval < 1 || count < 0 || buffer.remaining() != 8L * count) {
+			return null;
+		}
+		final long[] offsets = new long[count];
+		buffer.asLongBuffer().get(offsets);
+		return new RowIndex(length, lastModified, dataStart, interval, quote,
+			rowCount, offsets);
+	}
+
+	/** Writes the index to its sidecar file, replacing its contents. */
+	void write(final DataHandle<?> handle) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8 *
+			offsets.length);
+		buffer.putInt(MAGIC).putInt(VERSION);
+		buffer.putLong(length).putLong(lastModified).putLong(dataStart);
+		buffer.putInt(interval).putChar(quote);
+		buffer.putLong(rowCount).putInt(offsets.length);
+		buffer.asLongBuffer().put(offsets);
+		handle.seek(0);
+		handle.write(buffer.array());
+		handle.setLength(buffer.capacity());
+	}
+
+	/** Gets whether the index describes the given table as it is now. */
+	boolean isValid(final DataHandle<?> table, final long dataStart,
+		final int interval, final char quote) throws IOException
+	{
+		return length == table.length() && lastModified == lastModified(table) &&
+			this.dataStart == dataStart && this.interval == interval &&
+			this.quote == quote;
+	}
+
+	/** Gets the number of rows of the table. */
+	long getRowCount() {
+		return rowCount;
+	}
+
+	/** Gets the last indexed row at or before the given row. */
+	long indexedRow(final long row) {
+		return Math.min(row / interval, offsets.length - 1) * interval;
+	}
+
+	/** Gets the offset of an indexed row, as given by {@link #indexedRow}. */
+	long offset(final long indexedRow) {
+		return offsets[(int) (indexedRow / interval)];
+	}
+
+	// -- Helper methods --
+
+	private static long lastModified(final DataHandle<?> table)
+		throws IOException
+	{
+		final Date date = table.lastModified();
+		return date == null ? 0 : date.getTime();
+	}
+}
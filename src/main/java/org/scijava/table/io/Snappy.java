@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses data in the raw
+ * <a href="https://github.com/google/snappy/blob/main/format_description.txt">
+ * Snappy</a> block format, without native libraries.
+ */
+final class Snappy {
+
+	private static final int LITERAL = 0, COPY_1 = 1, COPY_2 = 2, COPY_4 = 3;
+
+	/** Size of the blocks compressed independently, as Snappy itself does. */
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private static final int HASH_BITS = 14;
+
+	private Snappy() {
+		// NB: prevent instantiation of utility class.
+	}
+
+	/** Compresses {@code length} bytes of an array, starting at {@code offset}. */
+	static byte[] compress(final byte[] input, final int offset,
+		final int length)
+	{
+		final byte[] out = new byte[32 + length + length / 6];
+		int pos = writeVarint(length, out, 0);
+		final int[] table = new int[1 << HASH_BITS];
+		for (int block = 0; block < length; block += BLOCK_SIZE) {
+			final int start = offset + block;
+			final int end = start + Math.min(BLOCK_SIZE, length - block);
+			Arrays.fill(table, -1);
+			int literal = start;
+			int i = start;
+			while (i + 4 <= end) {
+				final int h = hash(input, i);
+				final int candidate = table[h];
+				table[h] = i;
+				if (candidate < 0 || !equal4(input, candidate, i)) {
+					i++;
+					continue;
+				}
+				pos = writeLiteral(input, literal, i - literal, out, pos);
+				int matched = 4;
+				while (i + matched < end && input[candidate + matched] == input[i +
+					matched])
+				{
+					matched++;
+				}
+				pos = writeCopy(i - candidate, matched, out, pos);
+				i += matched;
+				literal = i;
+			}
+			pos = writeLiteral(input, literal, end - literal, out, pos);
+		}
+		return Arrays.copyOf(out, pos);
+	}
+
+	/** Decompresses {@code length} bytes of an array, from {@code offset}. */
+	static byte[] uncompress(final byte[] input, final int offset,
+		final int length) throws IOException
+	{
+		final int end = offset + length;
+		int pos = offset;
+		long size = 0;
+		for (int shift = 0;; shift += 7) {
+			if (pos >= end || shift > 28) throw corrupt();
+			final byte b = input[pos++];
+			size |= (long) (b & 0x7f) << shift;
+			if (b >= 0) break;
+		}
+		if (size > Integer.MAX_VALUE) throw corrupt();
+		final byte[] out = new byte[(int) size];
+		int o = 0;
+		while (pos < end) {
+			final int tag = input[pos++] & 0xff;
+			final int type = tag & 3;
+			if (type == LITERAL) {
+				int n = tag >>> 2;
+				if (n >= 60) {
+					final int bytes = n - 59;
+					if (pos + bytes > end) throw corrupt();
+					n = 0;
+					for (int b = 0; b < bytes; b++)
+						n |= (input[pos++] & 0xff) << 8 * b;
+				}
+				n++;
+				if (n <= 0 || pos + n > end || o + n > out.length) throw corrupt();
+				System.arraycopy(input, pos, out, o, n);
+				pos += n;
+				o += n;
+				continue;
+			}
+			final int n;
+			final int distance;
+			if (type == COPY_1) {
+				if (pos >= end) throw corrupt();
+				n = 4 + (tag >>> 2 & 7);
+				distance = (tag >>> 5) << 8 | input[pos++] & 0xff;
+			}
+			else if (type == COPY_2) {
+				if (pos + 2 > end) throw corrupt();
+				n = 1 + (tag >>> 2);
+				distance = input[pos] & 0xff | (input[pos + 1] & 0xff) << 8;
+				pos += 2;
+			}
+			else {
+				if (pos + 4 > end) throw corrupt();
+				n = 1 + (tag >>> 2);
+				distance = input[pos] & 0xff | (input[pos + 1] & 0xff) << 8 |
+					(input[pos + 2] & 0xff) << 16 | (input[pos + 3] & 0xff) << 24;
+				pos += 4;
+			}
+			if (distance <= 0 || distance > o || o + n > out.length) {
+				throw corrupt();
+			}
+			// NB: the source may overlap the bytes being written
+			for (int i = 0; i < n; i++, o++)
+				out[o] = out[o - distance];
+		}
+		if (o != out.length) throw corrupt();
+		return out;
+	}
+
+	// -- Helper methods --
+
+	private static int hash(final byte[] b, final int i) {
+		final int v = b[i] & 0xff | (b[i + 1] & 0xff) << 8 | (b[i + 2] &
+			0xff) << 16 | (b[i + 3] & 0xff) << 24;
+		return v * 0x1e35a7bd >>> 32 - HASH_BITS;
+	}
+
+	private static boolean equal4(final byte[] b, final int i, final int j) {
+		return b[i] == b[j] && b[i + 1] == b[j + 1] && b[i + 2] == b[j + 2] &&
+			b[i + 3] == b[j + 3];
+	}
+
+	private static int writeLiteral(final byte[] input, final int start,
+		final int length, final byte[] out, int pos)
+	{
+		if (length == 0) return pos;
+		final int n = length - 1;
+		if (n < 60) out[pos++] = (byte) (n << 2 | LITERAL);
+		else {
+			final int bytes = n < 1 << 8 ? 1 : n < 1 << 16 ? 2 : n < 1 << 24 ? 3 : 4;
+			out[pos++] = (byte) ((59 + bytes) << 2 | LITERAL);
+			for (int b = 0; b < bytes; b++)
+				out[pos++] = (byte) (n >>> 8 * b);
+		}
+		System.arraycopy(input, start, out, pos, length);
+		return pos + length;
+	}
+
+	private static int writeCopy(final int distance, int length, final byte[] out,
+		int pos)
+	{
+		// emit copies of at most 64 bytes, keeping the last one at least 4 long
+		while (length >= 68) {
+			pos = writeCopy2(distance, 64, out, pos);
+			length -= 64;
+		}
+		if (length > 64) {
+			pos = writeCopy2(distance, 60, out, pos);
+			length -= 60;
+		}
+		if (length < 12 && distance < 2048) {
+			out[pos++] = (byte) ((distance >>> 8) << 5 | (length - 4) << 2 | COPY_1);
+			out[pos++] = (byte) distance;
+			return pos;
+		}
+		return writeCopy2(distance, length, out, pos);
+	}
+
+	private static int writeCopy2(final int distance, final int length,
+		final byte[] out, int pos)
+	{
+		out[pos++] = (byte) ((length - 1) << 2 | COPY_2);
+		out[pos++] = (byte) distance;
+		out[pos++] = (byte) (distance >>> 8);
+		return pos;
+	}
+
+	private static int writeVarint(int value, final byte[] out, int pos) {
+		while ((value & ~0x7f) != 0) {
+			out[pos++] = (byte) (value & 0x7f | 0x80);
+			value >>>= 7;
+		}
+		out[pos++] = (byte) value;
+		return pos;
+	}
+
+	private static IOException corrupt() {
+		return new IOException("Corrupt Snappy data");
+	}
+}
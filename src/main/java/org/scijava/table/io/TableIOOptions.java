@@ -31,8 +31,16 @@
 package org.scijava.table.io;
 
 import org.scijava.optional.AbstractOptions;
-
+import org.scijava.table.NumberFormatter;
+import org.scijava.table.sketch.ColumnSketch;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -43,6 +51,7 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 
 	public final Values values = new Values();
 	private final Map<Integer, ColumnTableIOOptions> columnOptions;
+	private final Map<Integer, ColumnSketch<?>> columnSketches;
 	private static final String readColHeadersKey = "readColHeaders";
 	private static final String columnOptionsKey = "columnOptions";
 	private static final String writeColHeadersKey = "writeColHeaders";
@@ -55,10 +64,46 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 	private static final String guessParserKey = "guessParser";
 	private static final String parserKey = "parser";
 	private static final String formatterKey = "formatter";
+	private static final String columnSketchesKey = "columnSketches";
+	private static final String threadCountKey = "threadCount";
+	private static final String charsetKey = "charset";
+	private static final String sampleSizeKey = "sampleSize";
+	private static final String nullTokensKey = "nullTokens";
+	private static final String selectedColumnsKey = "selectedColumns";
+	private static final String selectedColumnHeadersKey = "selectedColumnHeaders";
+	private static final String rowOffsetKey = "rowOffset";
+	private static final String rowLimitKey = "rowLimit";
+	private static final String rowIndexKey = "rowIndex";
+	private static final String verifyChecksumsKey = "verifyChecksums";
+	private static final String rowGroupSizeKey = "rowGroupSize";
+	private static final String compressionKey = "compression";
+	private static final String rowFilterColumnKey = "rowFilterColumn";
+	private static final String rowFilterMinKey = "rowFilterMin";
+	private static final String rowFilterMaxKey = "rowFilterMax";
+	private static final String fortranOrderKey = "fortranOrder";
+	private static final String backgroundDecompressionKey = "backgroundDecompression";
+
+	private static final List<String> DEFAULT_NULL_TOKENS = //
+		Collections.unmodifiableList(Arrays.asList("", "NA", "N/A", "n/a", "null",
+			"NULL"));
+
+	private static final Function<String, ?> STRING_PARSER = String::valueOf;
+	private static final Function<String, ?> DOUBLE_PARSER = Double::valueOf;
+	private static final Function<String, ?> FLOAT_PARSER = Float::valueOf;
+	private static final Function<String, ?> INTEGER_PARSER = Integer::valueOf;
+	private static final Function<String, ?> LONG_PARSER = Long::valueOf;
+	private static final Function<String, ?> BOOLEAN_PARSER = Boolean::valueOf;
+
+	/**
+	 * The default formatter, which writers may replace with a faster equivalent
+	 * for primitive values.
+	 */
+	static final Function<Object, String> DEFAULT_FORMATTER = String::valueOf;
 
 	public TableIOOptions() {
 		this.columnOptions = new HashMap<>();
 		setValue(columnOptionsKey, columnOptions);
+		this.columnSketches = new HashMap<>();
 	}
 
 	/**
@@ -126,7 +171,9 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 	}
 
 	/**
-	 * @param guessParser If true, allow opener to guess the data type of each column.
+	 * @param guessParser If true, allow opener to guess the data type of each
+	 *          column, as the narrowest type fitting its {@link #sampleSize
+	 *          sampled} values; true by default.
 	 */
 	public TableIOOptions guessParser(boolean guessParser) {
 		return setValue(guessParserKey, guessParser);
@@ -142,6 +189,8 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 
 	/**
 	 * @param formatter Formatter to use when writing data objects into table entries.
+	 *          A {@link NumberFormatter}, e.g. {@code NumberFormatter.fixed(3)},
+	 *          writes floating point numbers straight into the output.
 	 */
 	public TableIOOptions formatter(Function<Object, String> formatter) {
 		return setValue(formatterKey, formatter);
@@ -163,7 +212,7 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 	public TableIOOptions columnType(int column, Class<?> type) {
 		ColumnTableIOOptions options = new ColumnTableIOOptions();
 		columnOptions.putIfAbsent(column, options);
-		options.formatter(String::valueOf).parser(getParser(type));
+		options.formatter(DEFAULT_FORMATTER).parser(getParser(type));
 		return setValue(columnOptionsKey, columnOptions);
 	}
 
@@ -180,7 +229,8 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 
 	/**
 	 * @param column the index of the column
-	 * @param formatter the formatter used to convert data objects into entries of this column
+	 * @param formatter the formatter used to convert data objects into entries of this column,
+	 *          e.g. a {@link NumberFormatter}
 	 */
 	public TableIOOptions columnFormatter(int column, Function<Object, String> formatter) {
 		columnOptions.putIfAbsent(column, new ColumnTableIOOptions());
@@ -188,16 +238,272 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 		return this;
 	}
 
+	/**
+	 * Feeds each value of a column to a sketch while the table is being read,
+	 * e.g. a {@link org.scijava.table.sketch.HyperLogLog} or
+	 * {@link org.scijava.table.sketch.KllSketch}, so that summaries of a large
+	 * file need no second pass over the table: each block of rows is added as
+	 * soon as it has been parsed. Values read before their column is widened
+	 * to fit a later value are added with their earlier type. The sketch
+	 * accumulates the values of every table opened with these options.
+	 * @param column the index of the column
+	 * @param sketch the sketch to update with the parsed values of the column
+	 */
+	public TableIOOptions columnSketch(int column, ColumnSketch<?> sketch) {
+		columnSketches.put(column, sketch);
+		return setValue(columnSketchesKey, columnSketches);
+	}
+
+	/**
+	 * @param charset Encoding of the table's text, UTF-8 by default rather than
+	 *          the platform's charset.
+	 */
+	public TableIOOptions charset(Charset charset) {
+		return setValue(charsetKey, charset);
+	}
+
+	/**
+	 * Reads and writes large tables on multiple threads. When reading, the file
+	 * is divided into ranges of whole records, which are parsed concurrently and
+	 * then joined in order. When writing, blocks of rows are formatted
+	 * concurrently and written out in order, so formatters must be thread-safe.
+	 * @param threadCount the number of threads to use, or 1 to read and write
+	 *          sequentially
+	 */
+	public TableIOOptions threadCount(int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Invalid thread count: " + threadCount);
+		}
+		return setValue(threadCountKey, threadCount);
+	}
+
+	/**
+	 * When guessing the data type of each column, considers this many rows of
+	 * the input: half of them from its start, the others spread evenly through
+	 * the rest of the file. Each column then holds the narrowest of
+	 * {@code boolean}, {@code int}, {@code long}, {@code double} and
+	 * {@link String} which fits all sampled values. A value elsewhere which does
+	 * not fit widens its column, converting the values read before it.
+	 * @param sampleSize the number of rows to sample, 1000 by default
+	 */
+	public TableIOOptions sampleSize(int sampleSize) {
+		if (sampleSize < 1) {
+			throw new IllegalArgumentException("Invalid sample size: " + sampleSize);
+		}
+		return setValue(sampleSizeKey, sampleSize);
+	}
+
+	/**
+	 * Cells which stand for missing values in columns of numbers or booleans,
+	 * where they become nulls; columns of other types keep them as they are.
+	 * By default, empty cells and {@code NA}, {@code N/A}, {@code n/a},
+	 * {@code null} and {@code NULL}.
+	 * @param nullTokens the text of the missing values
+	 */
+	public TableIOOptions nullTokens(String... nullTokens) {
+		return setValue(nullTokensKey, Collections.unmodifiableList(Arrays.asList(
+			nullTokens.clone())));
+	}
+
+	/**
+	 * Reads only the given columns of the table, skipping the others without
+	 * parsing them. Options set for a column, such as its type, still refer to
+	 * its index among all columns of the file.
+	 * @param columns the indices of the columns to read, in addition to any
+	 *          selected by header
+	 */
+	public TableIOOptions selectColumns(int... columns) {
+		return setValue(selectedColumnsKey, columns.clone());
+	}
+
+	/**
+	 * Reads only the columns with the given headers, skipping the others without
+	 * parsing them.
+	 * @param headers the headers of the columns to read, in addition to any
+	 *          selected by index
+	 * @see #selectColumns(int...)
+	 */
+	public TableIOOptions selectColumns(String... headers) {
+		return setValue(selectedColumnHeadersKey, Collections.unmodifiableList(
+			Arrays.asList(headers.clone())));
+	}
+
+	/**
+	 * Reads the rows of the table starting at the given one, e.g. to page
+	 * through a large file. The preceding rows are skipped without parsing them,
+	 * or not read at all if a {@link #rowIndex row index} is kept.
+	 * @param rowOffset the index of the first row to read, among the rows of
+	 *          data
+	 */
+	public TableIOOptions rowOffset(long rowOffset) {
+		if (rowOffset < 0) {
+			throw new IllegalArgumentException("Invalid row offset: " + rowOffset);
+		}
+		return setValue(rowOffsetKey, rowOffset);
+	}
+
+	/**
+	 * @param rowLimit the maximum number of rows to read
+	 */
+	public TableIOOptions rowLimit(int rowLimit) {
+		if (rowLimit < 0) {
+			throw new IllegalArgumentException("Invalid row limit: " + rowLimit);
+		}
+		return setValue(rowLimitKey, rowLimit);
+	}
+
+	/**
+	 * Keeps the position of every Nth row of the table in a sidecar file next
+	 * to it, named after the table's file with the suffix {@code .rowindex}.
+	 * When reading from a {@link #rowOffset row offset}, the index lets the
+	 * reader seek close to the first row instead of scanning from the start of
+	 * the file. The index is built on first use, and rebuilt whenever the
+	 * table's file has changed.
+	 * @param interval the number of rows between indexed rows
+	 */
+	public TableIOOptions rowIndex(int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Invalid interval: " + interval);
+		}
+		return setValue(rowIndexKey, interval);
+	}
+
+	/**
+	 * Checks the data read from binary table formats against the checksums
+	 * stored with it, failing on corrupt files. The check reads all of the
+	 * selected data an extra time up front, so it is off unless requested.
+	 * @param verifyChecksums whether to verify checksums, false by default
+	 */
+	public TableIOOptions verifyChecksums(boolean verifyChecksums) {
+		return setValue(verifyChecksumsKey, verifyChecksums);
+	}
+
+	/**
+	 * When writing formats which store tables in blocks of rows, such as
+	 * Parquet's row groups, puts this many rows in each block. Larger blocks
+	 * compress better; smaller ones let readers skip more of the table.
+	 * @param rowGroupSize the number of rows per block, 1048576 by default
+	 */
+	public TableIOOptions rowGroupSize(int rowGroupSize) {
+		if (rowGroupSize < 1) {
+			throw new IllegalArgumentException("Invalid row group size: " +
+				rowGroupSize);
+		}
+		return setValue(rowGroupSizeKey, rowGroupSize);
+	}
+
+	/**
+	 * Compresses the data written in binary table formats which support it.
+	 * @param codec the name of the compression codec, such as
+	 *          {@code "snappy"}, {@code "gzip"} or {@code "uncompressed"}; which
+	 *          ones are available depends on the format
+	 */
+	public TableIOOptions compression(String codec) {
+		if (codec == null) {
+			throw new IllegalArgumentException("Invalid compression codec: null");
+		}
+		return setValue(compressionKey, codec.toLowerCase());
+	}
+
+	/**
+	 * Reads only the rows whose value in the given numeric column lies within
+	 * {@code [min, max]}, leaving out missing values and NaNs. Only supported
+	 * for Parquet files, which skip the row groups whose statistics rule out
+	 * such a value without reading them; other formats fail to open with a row
+	 * filter set. A {@link #rowOffset row offset} and {@link #rowLimit row
+	 * limit} then apply to the matching rows.
+	 * @param column the header of the column to filter by, which need not be
+	 *          among the selected columns
+	 * @param min the smallest value to keep
+	 * @param max the largest value to keep
+	 */
+	public TableIOOptions rowFilter(String column, double min, double max) {
+		if (column == null || !(min <= max)) {
+			throw new IllegalArgumentException("Invalid row filter: " + column +
+				" in [" + min + ", " + max + "]");
+		}
+		setValue(rowFilterMinKey, min);
+		setValue(rowFilterMaxKey, max);
+		return setValue(rowFilterColumnKey, column);
+	}
+
+	/**
+	 * Writes two-dimensional arrays, such as NumPy's, in Fortran order: column
+	 * by column rather than row by row. Each column is then written straight
+	 * from its values, without interleaving it with the others.
+	 * @param fortranOrder whether to write column by column, false by default
+	 */
+	public TableIOOptions fortranOrder(boolean fortranOrder) {
+		return setValue(fortranOrderKey, fortranOrder);
+	}
+
+	/**
+	 * Decompresses compressed tables, such as {@code .csv.gz} files, on a
+	 * separate thread while reading them, so that decompressing the data
+	 * overlaps with parsing it.
+	 * @param backgroundDecompression whether to decompress on a separate
+	 *          thread, false by default
+	 */
+	public TableIOOptions backgroundDecompression(boolean backgroundDecompression) {
+		return setValue(backgroundDecompressionKey, backgroundDecompression);
+	}
+
 	private Function<String, ?> getParser(Class<?> type) {
-		if(type.equals(String.class)) return String::valueOf;
-		if(type.equals(Double.class)) return Double::valueOf;
-		if(type.equals(Float.class)) return Float::valueOf;
-		if(type.equals(Integer.class)) return Integer::valueOf;
-		if(type.equals(Long.class)) return Long::valueOf;
-		if(type.equals(Boolean.class)) return Boolean::valueOf;
+		if(type.equals(String.class)) return STRING_PARSER;
+		if(type.equals(Double.class)) return DOUBLE_PARSER;
+		if(type.equals(Float.class)) return FLOAT_PARSER;
+		if(type.equals(Integer.class)) return INTEGER_PARSER;
+		if(type.equals(Long.class)) return LONG_PARSER;
+		if(type.equals(Boolean.class)) return BOOLEAN_PARSER;
 		return values.parser();
 	}
 
+	/**
+	 * Fails if a {@link #rowFilter row filter} is set, for readers of formats
+	 * which cannot apply one.
+	 * @param format the name of the format being read
+	 * @throws IOException if a row filter is set
+	 */
+	static void rejectRowFilter(Values options, String format)
+		throws IOException
+	{
+		if (options.rowFilterColumn() != null) {
+			throw new IOException("Row filters are only supported for Parquet " +
+				"files, not " + format + " ones");
+		}
+	}
+
+	/**
+	 * Gets the type of the values produced by a parser set via
+	 * {@link #type(Class)} or {@link #columnType(int, Class)}, so that readers
+	 * can store them in a matching primitive column.
+	 * @return the type, or null if the parser was provided by the caller
+	 */
+	static Class<?> typeOf(Function<String, ?> parser) {
+		if (parser == STRING_PARSER) return String.class;
+		if (parser == DOUBLE_PARSER) return Double.class;
+		if (parser == FLOAT_PARSER) return Float.class;
+		if (parser == INTEGER_PARSER) return Integer.class;
+		if (parser == LONG_PARSER) return Long.class;
+		if (parser == BOOLEAN_PARSER) return Boolean.class;
+		return null;
+	}
+
+	/**
+	 * Gets the values of these options, with another default for the
+	 * {@link #columnDelimiter(char) column delimiter}, for formats which imply
+	 * one.
+	 * @param delimiter the delimiter to use if none is set
+	 */
+	Values withDefaultColumnDelimiter(char delimiter) {
+		return new Values() {
+			@Override
+			public char columnDelimiter() {
+				return getValueOrDefault(columnDelimiterKey, delimiter);
+			}
+		};
+	}
+
 	public class Values extends AbstractValues
 	{
 		/**
@@ -274,7 +580,7 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 		 * @return Formatter to use when writing data objects into table entries.
 		 */
 		public Function<Object, String> formatter() {
-			return getValueOrDefault(formatterKey, String::valueOf);
+			return getValueOrDefault(formatterKey, DEFAULT_FORMATTER);
 		}
 
 		/**
@@ -287,5 +593,139 @@ public class TableIOOptions extends AbstractOptions<TableIOOptions> {
 			if (colOpts == null) return null;
 			return colOpts.values;
 		}
+
+		/**
+		 * @return Encoding of the table's text.
+		 */
+		public Charset charset() {
+			return getValueOrDefault(charsetKey, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return Number of rows to sample when guessing column types.
+		 */
+		public int sampleSize() {
+			return getValueOrDefault(sampleSizeKey, 1000);
+		}
+
+		/**
+		 * @return Cells which stand for missing values.
+		 */
+		public List<String> nullTokens() {
+			return getValueOrDefault(nullTokensKey, DEFAULT_NULL_TOKENS);
+		}
+
+		/**
+		 * @return Indices of the columns to read, or null to read all columns
+		 *         unless some are selected by header.
+		 */
+		public int[] selectedColumns() {
+			return getValueOrDefault(selectedColumnsKey, (int[]) null);
+		}
+
+		/**
+		 * @return Headers of the columns to read, or null to read all columns
+		 *         unless some are selected by index.
+		 */
+		public List<String> selectedColumnHeaders() {
+			return getValueOrDefault(selectedColumnHeadersKey, (List<String>) null);
+		}
+
+		/**
+		 * @return Index of the first row of data to read.
+		 */
+		public long rowOffset() {
+			return getValueOrDefault(rowOffsetKey, 0L);
+		}
+
+		/**
+		 * @return Maximum number of rows to read.
+		 */
+		public int rowLimit() {
+			return getValueOrDefault(rowLimitKey, Integer.MAX_VALUE);
+		}
+
+		/**
+		 * @return Number of rows between the rows kept in the row index, or 0 if
+		 *         no index is kept.
+		 */
+		public int rowIndex() {
+			return getValueOrDefault(rowIndexKey, 0);
+		}
+
+		/**
+		 * @return Whether to verify the checksums of binary table formats.
+		 */
+		public boolean verifyChecksums() {
+			return getValueOrDefault(verifyChecksumsKey, false);
+		}
+
+		/**
+		 * @return Number of rows in each block of formats which store tables in
+		 *         blocks of rows.
+		 */
+		public int rowGroupSize() {
+			return getValueOrDefault(rowGroupSizeKey, 1 << 20);
+		}
+
+		/**
+		 * @return Name of the compression codec of binary table formats, or null
+		 *         for the format's default.
+		 */
+		public String compression() {
+			return getValueOrDefault(compressionKey, null);
+		}
+
+		/**
+		 * @return Header of the column whose values select the rows to read, or
+		 *         null to read all rows.
+		 */
+		public String rowFilterColumn() {
+			return getValueOrDefault(rowFilterColumnKey, null);
+		}
+
+		/**
+		 * @return Smallest value of the {@link #rowFilterColumn()} to keep.
+		 */
+		public double rowFilterMin() {
+			return getValueOrDefault(rowFilterMinKey, Double.NEGATIVE_INFINITY);
+		}
+
+		/**
+		 * @return Largest value of the {@link #rowFilterColumn()} to keep.
+		 */
+		public double rowFilterMax() {
+			return getValueOrDefault(rowFilterMaxKey, Double.POSITIVE_INFINITY);
+		}
+
+		/**
+		 * @return Whether to write two-dimensional arrays column by column.
+		 */
+		public boolean fortranOrder() {
+			return getValueOrDefault(fortranOrderKey, false);
+		}
+
+		/**
+		 * @return Whether to decompress tables on a separate thread.
+		 */
+		public boolean backgroundDecompression() {
+			return getValueOrDefault(backgroundDecompressionKey, false);
+		}
+
+		/**
+		 * @return Number of threads to use for reading and writing.
+		 */
+		public int threadCount() {
+			return getValueOrDefault(threadCountKey, 1);
+		}
+
+		/**
+		 * @param column the index of the column
+		 * @return the sketch to update with the values of this column, or null
+		 */
+		public ColumnSketch<?> columnSketch(int column) {
+			return getValueOrDefault(columnSketchesKey,
+				new HashMap<Integer, ColumnSketch<?>>()).get(column);
+		}
 	}
 }
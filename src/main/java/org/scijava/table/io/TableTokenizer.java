@@ -0,0 +1,367 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits delimited text into records and fields, reading the input in chunks.
+ * <p>
+ * The tokenizer is a state machine over the bytes of the input. A field may be
+ * quoted in whole or in part; within quotes, delimiters and line breaks are
+ * taken literally and a doubled quote stands for the quote itself. Records end
+ * at {@code \n}, {@code \r} or {@code \r\n}.
+ * </p>
+ * <p>
+ * Only the current record is kept in memory: when a record extends past the
+ * end of the chunk, the record is moved to the front of the buffer, which grows
+ * only if a single record exceeds it. The fields of the current record are
+ * unquoted in place and exposed as ranges of the {@link #buffer()}, valid until
+ * the next call to {@link #next()}. Fields not {@link #select selected} are
+ * scanned for their end only, and exposed as empty ranges.
+ * </p>
+ */
+final class TableTokenizer {
+
+	/** Number of bytes read from the input at a time. */
+	static final int CHUNK_SIZE = 1 << 16;
+
+	private static final int UNQUOTED = 0;
+	private static final int QUOTED = 1;
+
+	/** A quote was seen within quotes: either closing or doubled. */
+	private static final int QUOTE_IN_QUOTES = 2;
+
+	private final InputStream in;
+	private final byte delimiter;
+	private final byte quote;
+
+	private byte[] buf;
+
+	/** Whether to keep each field, or null to keep all. */
+	private boolean[] selected;
+
+	/** Number of valid bytes in the buffer. */
+	private int limit;
+
+	/** Offset in the input of the first byte of the buffer. */
+	private long bufferOffset;
+
+	/** Whether the input is exhausted. */
+	private boolean eof;
+
+	/** Position of the next byte to scan. */
+	private int pos;
+
+	/** Whether a line feed following the previous record should be skipped. */
+	private boolean skipLF;
+
+	// -- Current record --
+
+	private int recordStart;
+	private int fieldStart;
+	private int write;
+	private int fieldCount;
+	private boolean blank;
+	private boolean quoted;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+
+	/**
+	 * Creates a tokenizer over the given input.
+	 *
+	 * @param in The input to read, which the tokenizer does not close.
+	 * @param offset The offset of the input within the file, for reporting.
+	 * @param delimiter The character separating the fields of a record.
+	 * @param quote The character quoting fields.
+	 * @param charset The encoding of the input, in which the delimiter and
+	 *          quote characters must be single bytes.
+	 */
+	TableTokenizer(final InputStream in, final long offset,
+		final char delimiter, final char quote, final Charset charset)
+	{
+		this(in, offset, delimiter, quote, charset, CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a tokenizer over the given input, reading it in chunks of the
+	 * given size, e.g. a small size to read only a few records.
+	 */
+	TableTokenizer(final InputStream in, final long offset,
+		final char delimiter, final char quote, final Charset charset,
+		final int chunkSize)
+	{
+		this.in = in;
+		bufferOffset = offset;
+		this.delimiter = singleByte(delimiter, charset);
+		this.quote = singleByte(quote, charset);
+		buf = new byte[chunkSize];
+	}
+
+	/**
+	 * Restricts the fields whose contents are kept.
+	 *
+	 * @param fields Whether to keep each field, by index, or null to keep all
+	 *          fields. Fields beyond the end of the array are not kept.
+	 */
+	void select(final boolean[] fields) {
+		selected = fields;
+	}
+
+	/**
+	 * Advances to the next record.
+	 *
+	 * @return false if there are no more records.
+	 * @throws IOException if the input cannot be read, or ends within quotes.
+	 */
+	boolean next() throws IOException {
+		fieldCount = 0;
+		blank = quoted = false;
+		recordStart = pos;
+		if (pos == limit && !fill()) return false;
+		if (skipLF) {
+			skipLF = false;
+			if (buf[pos] == '\n') {
+				recordStart = ++pos;
+				if (pos == limit && !fill()) return false;
+			}
+		}
+		recordStart = fieldStart = write = pos;
+		int state = UNQUOTED;
+		boolean keep = isSelected(0);
+		while (true) {
+			final byte[] b = buf;
+			final int n = limit;
+			int p = pos, w = write;
+			while (p < n) {
+				final byte c = b[p++];
+				if (state == UNQUOTED) {
+					if (c == delimiter) {
+						addField(w);
+						fieldStart = w;
+						keep = isSelected(fieldCount);
+					}
+					else if (c == '\n' || c == '\r') {
+						addField(w);
+						skipLF = c == '\r';
+						blank = p == recordStart + 1;
+						pos = p;
+						return true;
+					}
+					else if (c == quote) {
+						state = QUOTED;
+						quoted = true;
+					}
+					else if (keep) b[w++] = c;
+				}
+				else if (state == QUOTED) {
+					if (c == quote) state = QUOTE_IN_QUOTES;
+					else if (keep) b[w++] = c;
+				}
+				else if (c == quote) {
+					if (keep) b[w++] = c;
+					state = QUOTED;
+				}
+				else {
+					// NB: The quote was closing; process this byte unquoted.
+					state = UNQUOTED;
+					p--;
+				}
+			}
+			pos = p;
+			write = w;
+			if (!fill()) {
+				if (state == QUOTED) {
+					throw new IOException("Unbalanced quote in record at byte " +
+						getRecordOffset());
+				}
+				addField(write);
+				return true;
+			}
+		}
+	}
+
+	/** Gets the offset in the input of the current record. */
+	long getRecordOffset() {
+		return bufferOffset + recordStart;
+	}
+
+	/**
+	 * Gets the offset in the input following the current record, where a new
+	 * tokenizer could resume.
+	 */
+	long getOffset() {
+		return bufferOffset + pos;
+	}
+
+	/** Gets the number of fields of the current record. */
+	int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Gets whether the current record is a blank line, as opposed to, e.g., a
+	 * line holding a single empty quoted field.
+	 */
+	boolean isBlank() {
+		return blank;
+	}
+
+	/** Gets whether any field of the current record is quoted. */
+	boolean isQuoted() {
+		return quoted;
+	}
+
+	/** Gets the buffer holding the fields of the current record. */
+	byte[] buffer() {
+		return buf;
+	}
+
+	/** Gets the position in the {@link #buffer()} where a field starts. */
+	int start(final int field) {
+		return starts[field];
+	}
+
+	/** Gets the position in the {@link #buffer()} where a field ends. */
+	int end(final int field) {
+		return ends[field];
+	}
+
+	/** Decodes the given field of the current record. */
+	String string(final int field, final Charset charset) {
+		return new String(buf, starts[field], ends[field] - starts[field], charset);
+	}
+
+	/**
+	 * Divides part of the input into ranges of whole records, of roughly equal
+	 * size, by scanning for line breaks outside of quotes.
+	 *
+	 * @param in The input, positioned at the start of a record.
+	 * @param start The offset of the input's position within the file.
+	 * @param end The offset where the last range should end.
+	 * @param parts The desired number of ranges.
+	 * @param quote The character quoting fields.
+	 * @param charset The encoding of the input.
+	 * @return The offsets where the ranges start, followed by {@code end}. There
+	 *         are fewer ranges than requested if the records are too long.
+	 */
+	static long[] split(final InputStream in, final long start, final long end,
+		final int parts, final char quote, final Charset charset)
+		throws IOException
+	{
+		final byte q = singleByte(quote, charset);
+		final long[] bounds = new long[parts + 1];
+		bounds[0] = start;
+		int count = 1;
+		long target = start + (end - start) / parts;
+		boolean quoted = false;
+		final byte[] b = new byte[16 * CHUNK_SIZE];
+		long offset = start;
+		while (offset < end && count < parts) {
+			final int r = in.read(b, 0, (int) Math.min(b.length, end - offset));
+			if (r < 0) break;
+			for (int i = 0; i < r; i++) {
+				final byte c = b[i];
+				if (c == q) quoted = !quoted;
+				else if ((c == '\n' || c == '\r') && !quoted && offset + i >= target &&
+					offset + i + 1 < end)
+				{
+					// NB: After a \r\n, the next range starts with a blank line.
+					bounds[count++] = offset + i + 1;
+					if (count == parts) break;
+					target = start + count * (end - start) / parts;
+				}
+			}
+			offset += r;
+		}
+		bounds[count++] = end;
+		return Arrays.copyOf(bounds, count);
+	}
+
+	// -- Helper methods --
+
+	private boolean isSelected(final int field) {
+		return selected == null || field < selected.length && selected[field];
+	}
+
+	private void addField(final int end) {
+		if (fieldCount == starts.length) {
+			starts = Arrays.copyOf(starts, 2 * fieldCount);
+			ends = Arrays.copyOf(ends, 2 * fieldCount);
+		}
+		starts[fieldCount] = fieldStart;
+		ends[fieldCount++] = end;
+	}
+
+	/**
+	 * Reads more of the input, first moving the current record to the front of
+	 * the buffer.
+	 *
+	 * @return false if the input is exhausted.
+	 */
+	private boolean fill() throws IOException {
+		if (eof) return false;
+		final int shift = recordStart;
+		if (shift > 0) {
+			System.arraycopy(buf, shift, buf, 0, limit - shift);
+			limit -= shift;
+			pos -= shift;
+			recordStart -= shift;
+			fieldStart -= shift;
+			write -= shift;
+			for (int f = 0; f < fieldCount; f++) {
+				starts[f] -= shift;
+				ends[f] -= shift;
+			}
+			bufferOffset += shift;
+		}
+		if (limit == buf.length) buf = Arrays.copyOf(buf, 2 * buf.length);
+		final int r = in.read(buf, limit, buf.length - limit);
+		if (r < 0) {
+			eof = true;
+			return false;
+		}
+		limit += r;
+		return true;
+	}
+
+	private static byte singleByte(final char c, final Charset charset) {
+		final byte[] bytes = String.valueOf(c).getBytes(charset);
+		if (bytes.length != 1) {
+			throw new IllegalArgumentException("Not a single byte in " + charset +
+				": '" + c + "'");
+		}
+		return bytes[0];
+	}
+}
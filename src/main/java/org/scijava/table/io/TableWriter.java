@@ -0,0 +1,328 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.scijava.table.NumberFormatter;
+
+/**
+ * Encodes delimited text into a large reusable buffer, writing it out in
+ * blocks.
+ * <p>
+ * Cells are quoted if they are empty or contain the delimiter, the quote
+ * character or a line break; quotes within quoted cells are doubled. Numbers and booleans are
+ * formatted straight into the buffer, floating point numbers with a
+ * {@link NumberFormatter}, and are only scanned for the delimiter
+ * or quote character if either could occur in them. For JSON, text can also
+ * be written as {@link #writeJsonString JSON strings}, and other syntax
+ * {@link #write(byte[]) as is}.
+ * </p>
+ */
+final class TableWriter {
+
+	/** Number of bytes buffered before writing them out. */
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/** Characters which may occur in formatted numbers and booleans. */
+	private static final String NUMBER_CHARS = "+-.0123456789EINaefilnrstuy";
+
+	private final OutputStream out;
+	private final Charset charset;
+	private final char delimiter;
+	private final char quote;
+	private final byte[] delimiterBytes;
+	private final byte[] quoteBytes;
+	private final byte[] eolBytes;
+
+	/** Whether ASCII characters are encoded as themselves. */
+	private final boolean ascii;
+
+	/** Whether formatted numbers need to be scanned for quoting. */
+	private final boolean scanNumbers;
+
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int pos;
+
+	/** Buffer for formatting integers, which are written back to front. */
+	private final byte[] digits = new byte[20];
+
+	/**
+	 * @param out The output to write, which the writer does not close.
+	 * @param delimiter The character separating the cells of a row.
+	 * @param quote The character quoting cells.
+	 * @param eol The text ending each row.
+	 * @param charset The encoding of the output.
+	 */
+	TableWriter(final OutputStream out, final char delimiter, final char quote,
+		final String eol, final Charset charset)
+	{
+		this.out = out;
+		this.charset = charset;
+		this.delimiter = delimiter;
+		this.quote = quote;
+		delimiterBytes = String.valueOf(delimiter).getBytes(charset);
+		quoteBytes = String.valueOf(quote).getBytes(charset);
+		eolBytes = eol.getBytes(charset);
+		ascii = isAsciiCompatible(charset);
+		scanNumbers = !ascii || NUMBER_CHARS.indexOf(delimiter) >= 0 ||
+			NUMBER_CHARS.indexOf(quote) >= 0;
+	}
+
+	/** Writes the delimiter between two cells. */
+	void writeDelimiter() throws IOException {
+		write(delimiterBytes);
+	}
+
+	/** Ends the current row. */
+	void endRow() throws IOException {
+		write(eolBytes);
+	}
+
+	/** Writes a cell of text, quoting it if necessary. */
+	void writeText(final String text) throws IOException {
+		if (text == null || text.isEmpty()) {
+			write(quoteBytes);
+			write(quoteBytes);
+			return;
+		}
+		boolean hasQuote = false, hasDelimiter = false, isAscii = ascii;
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			if (c == quote) hasQuote = true;
+			else if (c == delimiter || c == '\n' || c == '\r') hasDelimiter = true;
+			if (c >= 0x80) isAscii = false;
+		}
+		if (hasQuote) {
+			final String q = String.valueOf(quote);
+			write(quoteBytes);
+			writeUnquoted(text.replace(q, q + q), isAscii);
+			write(quoteBytes);
+		}
+		else if (hasDelimiter) {
+			write(quoteBytes);
+			writeUnquoted(text, isAscii);
+			write(quoteBytes);
+		}
+		else writeUnquoted(text, isAscii);
+	}
+
+	/** Writes a cell holding a number formatted as text. */
+	void writeNumber(final String number) throws IOException {
+		if (scanNumbers) writeText(number);
+		else writeUnquoted(number, true);
+	}
+
+	void writeLong(final long value) throws IOException {
+		if (scanNumbers) {
+			writeText(Long.toString(value));
+			return;
+		}
+		// NB: Accumulate negatively, as Long.MIN_VALUE has no positive counterpart.
+		long v = value < 0 ? value : -value;
+		int d = digits.length;
+		do {
+			final long q = v / 10;
+			digits[--d] = (byte) ('0' + (q * 10 - v));
+			v = q;
+		}
+		while (v != 0);
+		if (value < 0) digits[--d] = '-';
+		write(digits, d, digits.length - d);
+	}
+
+	void writeDouble(final double value) throws IOException {
+		writeDouble(value, NumberFormatter.shortest());
+	}
+
+	void writeDouble(final double value, final NumberFormatter formatter)
+		throws IOException
+	{
+		if (scanNumbers) {
+			writeText(formatter.format(value));
+			return;
+		}
+		reserve(formatter.maxLength());
+		pos = formatter.format(value, buf, pos);
+	}
+
+	void writeFloat(final float value) throws IOException {
+		writeFloat(value, NumberFormatter.shortest());
+	}
+
+	void writeFloat(final float value, final NumberFormatter formatter)
+		throws IOException
+	{
+		if (scanNumbers) {
+			writeText(formatter.format(value));
+			return;
+		}
+		reserve(formatter.maxLength());
+		pos = formatter.format(value, buf, pos);
+	}
+
+	void writeBoolean(final boolean value) throws IOException {
+		writeNumber(value ? "true" : "false");
+	}
+
+	/**
+	 * Writes text as a quoted JSON string, escaping quotes, backslashes and
+	 * control characters. The text is encoded in UTF-8, as JSON requires,
+	 * regardless of the writer's encoding.
+	 */
+	void writeJsonString(final String text) throws IOException {
+		final int length = text.length();
+		// NB: No character takes more than six bytes, as an escape.
+		reserve(6 * length + 2);
+		final byte[] b = buf;
+		int p = pos;
+		b[p++] = '"';
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				b[p++] = '\\';
+				b[p++] = (byte) c;
+			}
+			else if (c >= 0x20 && c < 0x80) b[p++] = (byte) c;
+			else if (c == '\n') {
+				b[p++] = '\\';
+				b[p++] = 'n';
+			}
+			else if (c == '\r') {
+				b[p++] = '\\';
+				b[p++] = 'r';
+			}
+			else if (c == '\t') {
+				b[p++] = '\\';
+				b[p++] = 't';
+			}
+			else if (c < 0x20 || Character.isSurrogate(c) && !(Character
+				.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text
+					.charAt(i + 1))))
+			{
+				// control characters and unpaired surrogates
+				b[p++] = '\\';
+				b[p++] = 'u';
+				for (int shift = 12; shift >= 0; shift -= 4)
+					b[p++] = (byte) Character.forDigit(c >> shift & 0xf, 16);
+			}
+			else if (c < 0x800) {
+				b[p++] = (byte) (0xc0 | c >> 6);
+				b[p++] = (byte) (0x80 | c & 0x3f);
+			}
+			else if (Character.isHighSurrogate(c)) {
+				final int cp = Character.toCodePoint(c, text.charAt(++i));
+				b[p++] = (byte) (0xf0 | cp >> 18);
+				b[p++] = (byte) (0x80 | cp >> 12 & 0x3f);
+				b[p++] = (byte) (0x80 | cp >> 6 & 0x3f);
+				b[p++] = (byte) (0x80 | cp & 0x3f);
+			}
+			else {
+				b[p++] = (byte) (0xe0 | c >> 12);
+				b[p++] = (byte) (0x80 | c >> 6 & 0x3f);
+				b[p++] = (byte) (0x80 | c & 0x3f);
+			}
+		}
+		b[p++] = '"';
+		pos = p;
+	}
+
+	/** Writes bytes as they are, e.g. syntax already encoded. */
+	void write(final byte[] bytes) throws IOException {
+		write(bytes, 0, bytes.length);
+	}
+
+	/** Writes out the buffered bytes. */
+	void flush() throws IOException {
+		if (pos > 0) out.write(buf, 0, pos);
+		pos = 0;
+		out.flush();
+	}
+
+	// -- Helper methods --
+
+	private void writeUnquoted(final String text, final boolean isAscii)
+		throws IOException
+	{
+		if (!isAscii) {
+			write(text.getBytes(charset));
+			return;
+		}
+		final int length = text.length();
+		reserve(length);
+		final byte[] b = buf;
+		int p = pos;
+		for (int i = 0; i < length; i++)
+			b[p++] = (byte) text.charAt(i);
+		pos = p;
+	}
+
+	private void write(final byte[] bytes, final int offset, final int length)
+		throws IOException
+	{
+		if (pos + length > buf.length) {
+			flushBuffer();
+			if (length > buf.length) {
+				out.write(bytes, offset, length);
+				return;
+			}
+		}
+		System.arraycopy(bytes, offset, buf, pos, length);
+		pos += length;
+	}
+
+	/** Makes room for writing {@code length} bytes into the buffer. */
+	private void reserve(final int length) throws IOException {
+		if (pos + length > buf.length) {
+			flushBuffer();
+			if (length > buf.length) buf = new byte[length];
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buf, 0, pos);
+		pos = 0;
+	}
+
+	private static boolean isAsciiCompatible(final Charset charset) {
+		final char[] chars = new char[0x80];
+		for (int c = 0; c < chars.length; c++)
+			chars[c] = (char) c;
+		final byte[] encoded = new String(chars).getBytes(charset);
+		if (encoded.length != chars.length) return false;
+		for (int c = 0; c < chars.length; c++) {
+			if (encoded[c] != c) return false;
+		}
+		return true;
+	}
+}
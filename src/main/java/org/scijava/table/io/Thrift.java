@@ -0,0 +1,317 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes structs in the Thrift compact protocol, the serialization
+ * format of Parquet's metadata, without generated code.
+ * <p>
+ * Structs are read into maps from field ids to values: integers of any width
+ * become {@link Long}s, binaries {@code byte[]}s, lists {@link List}s and
+ * structs {@link Struct}s; sets and maps are skipped. When writing, the Java
+ * type of each value selects its Thrift type: {@link Byte}, {@link Short},
+ * {@link Integer} and {@link Long} become {@code i8}, {@code i16},
+ * {@code i32} and {@code i64}, and lists must be given their element type.
+ * </p>
+ */
+final class Thrift {
+
+	// -- Compact protocol types --
+
+	static final byte TRUE = 1, FALSE = 2, I8 = 3, I16 = 4, I32 = 5, I64 = 6,
+		DOUBLE = 7, BINARY = 8, LIST = 9, SET = 10, MAP = 11, STRUCT = 12;
+
+	private Thrift() {
+		// NB: prevent instantiation of utility class.
+	}
+
+	/** Reads a struct, advancing the buffer's position past it. */
+	static Struct read(final ByteBuffer buf) throws IOException {
+		try {
+			return readStruct(buf.order(ByteOrder.LITTLE_ENDIAN));
+		}
+		catch (final RuntimeException exc) {
+			throw new IOException("Corrupt Thrift struct", exc);
+		}
+	}
+
+	/** A Thrift struct, as read or to be written. */
+	static final class Struct {
+
+		private final Map<Integer, Object> fields = new TreeMap<>();
+
+		boolean has(final int field) {
+			return fields.containsKey(field);
+		}
+
+		int getInt(final int field, final int defaultValue) {
+			final Object value = fields.get(field);
+			return value instanceof Number ? ((Number) value).intValue()
+				: defaultValue;
+		}
+
+		long getLong(final int field, final long defaultValue) {
+			final Object value = fields.get(field);
+			return value instanceof Number ? ((Number) value).longValue()
+				: defaultValue;
+		}
+
+		boolean getBoolean(final int field, final boolean defaultValue) {
+			final Object value = fields.get(field);
+			return value instanceof Boolean ? (Boolean) value : defaultValue;
+		}
+
+		byte[] getBinary(final int field) {
+			final Object value = fields.get(field);
+			return value instanceof byte[] ? (byte[]) value : null;
+		}
+
+		String getString(final int field) {
+			final byte[] value = getBinary(field);
+			return value == null ? null : new String(value, StandardCharsets.UTF_8);
+		}
+
+		Struct getStruct(final int field) {
+			final Object value = fields.get(field);
+			return value instanceof Struct ? (Struct) value : null;
+		}
+
+		/** Gets the elements of a list, or an empty list if absent. */
+		@SuppressWarnings("unchecked")
+		<T> List<T> getList(final int field) {
+			final Object value = fields.get(field);
+			return value instanceof List ? (List<T>) value : new ArrayList<>();
+		}
+
+		/**
+		 * Sets a field to a value of type {@link Boolean}, {@link Byte},
+		 * {@link Short}, {@link Integer}, {@link Long}, {@link Double},
+		 * {@link String}, {@code byte[]} or {@link Struct}.
+		 */
+		Struct set(final int field, final Object value) {
+			fields.put(field, value);
+			return this;
+		}
+
+		/** Sets a field to a list of elements of the given type. */
+		Struct setList(final int field, final byte elementType,
+			final List<?> elements)
+		{
+			fields.put(field, new TypedList(elementType, elements));
+			return this;
+		}
+
+		/** Serializes the struct. */
+		byte[] toBytes() {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			writeStruct(this, out);
+			return out.toByteArray();
+		}
+	}
+
+	// -- Helper methods --
+
+	private static Struct readStruct(final ByteBuffer buf) throws IOException {
+		final Struct struct = new Struct();
+		int field = 0;
+		while (true) {
+			final int header = buf.get() & 0xff;
+			if (header == 0) return struct;
+			final byte type = (byte) (header & 0x0f);
+			final int delta = header >>> 4;
+			field = delta == 0 ? (short) zigzag(readVarint(buf)) : field + delta;
+			if (type == TRUE || type == FALSE) struct.fields.put(field, type == TRUE);
+			else struct.fields.put(field, readValue(buf, type));
+		}
+	}
+
+	private static Object readValue(final ByteBuffer buf, final byte type)
+		throws IOException
+	{
+		switch (type) {
+			case TRUE:
+			case FALSE:
+				return buf.get() == TRUE;
+			case I8:
+				return (long) buf.get();
+			case I16:
+			case I32:
+			case I64:
+				return zigzag(readVarint(buf));
+			case DOUBLE:
+				return buf.getDouble();
+			case BINARY:
+				final byte[] bytes = new byte[(int) readVarint(buf)];
+				buf.get(bytes);
+				return bytes;
+			case LIST:
+			case SET: {
+				final int header = buf.get() & 0xff;
+				final int size = (header >>> 4) == 15 ? (int) readVarint(buf)
+					: header >>> 4;
+				final byte elementType = (byte) (header & 0x0f);
+				final List<Object> list = new ArrayList<>();
+				for (int i = 0; i < size; i++)
+					list.add(readValue(buf, elementType));
+				return type == LIST ? list : null;
+			}
+			case MAP: {
+				final int size = (int) readVarint(buf);
+				if (size == 0) return null;
+				final int types = buf.get() & 0xff;
+				for (int i = 0; i < size; i++) {
+					readValue(buf, (byte) (types >>> 4));
+					readValue(buf, (byte) (types & 0x0f));
+				}
+				return null;
+			}
+			case STRUCT:
+				return readStruct(buf);
+			default:
+				throw new IOException("Invalid Thrift type: " + type);
+		}
+	}
+
+	private static long readVarint(final ByteBuffer buf) {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			final byte b = buf.get();
+			value |= (long) (b & 0x7f) << shift;
+			if (b >= 0) return value;
+		}
+	}
+
+	private static long zigzag(final long n) {
+		return n >>> 1 ^ -(n & 1);
+	}
+
+	private static void writeStruct(final Struct struct,
+		final ByteArrayOutputStream out)
+	{
+		int last = 0;
+		for (final Map.Entry<Integer, Object> entry : struct.fields.entrySet()) {
+			final int field = entry.getKey();
+			final Object value = entry.getValue();
+			if (value == null) continue;
+			final byte type = value instanceof Boolean ? (Boolean) value ? TRUE
+				: FALSE : typeOf(value);
+			final int delta = field - last;
+			if (delta > 0 && delta <= 15) out.write(delta << 4 | type);
+			else {
+				out.write(type);
+				writeVarint((long) field << 1 ^ field >> 31, out);
+			}
+			if (!(value instanceof Boolean)) writeValue(value, out);
+			last = field;
+		}
+		out.write(0);
+	}
+
+	private static byte typeOf(final Object value) {
+		if (value instanceof Boolean) return TRUE;
+		if (value instanceof Byte) return I8;
+		if (value instanceof Short) return I16;
+		if (value instanceof Integer) return I32;
+		if (value instanceof Long) return I64;
+		if (value instanceof Double) return DOUBLE;
+		if (value instanceof String || value instanceof byte[]) return BINARY;
+		if (value instanceof TypedList) return LIST;
+		if (value instanceof Struct) return STRUCT;
+		throw new IllegalArgumentException("Unsupported value: " + value);
+	}
+
+	private static void writeValue(final Object value,
+		final ByteArrayOutputStream out)
+	{
+		if (value instanceof Boolean) out.write((Boolean) value ? TRUE : FALSE);
+		else if (value instanceof Byte) out.write((Byte) value);
+		else if (value instanceof Double) {
+			final long bits = Double.doubleToLongBits((Double) value);
+			for (int i = 0; i < 8; i++)
+				out.write((int) (bits >>> 8 * i));
+		}
+		else if (value instanceof Number) {
+			final long n = ((Number) value).longValue();
+			writeVarint(n << 1 ^ n >> 63, out);
+		}
+		else if (value instanceof String || value instanceof byte[]) {
+			final byte[] bytes = value instanceof String ? ((String) value).getBytes(
+				StandardCharsets.UTF_8) : (byte[]) value;
+			writeVarint(bytes.length, out);
+			out.write(bytes, 0, bytes.length);
+		}
+		else if (value instanceof TypedList) {
+			final TypedList list = (TypedList) value;
+			final int size = list.elements.size();
+			if (size < 15) out.write(size << 4 | list.elementType);
+			else {
+				out.write(0xf0 | list.elementType);
+				writeVarint(size, out);
+			}
+			for (final Object element : list.elements)
+				writeValue(element, out);
+		}
+		else writeStruct((Struct) value, out);
+	}
+
+	private static void writeVarint(long value,
+		final ByteArrayOutputStream out)
+	{
+		while ((value & ~0x7fL) != 0) {
+			out.write((int) (value & 0x7f | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	// -- Helper classes --
+
+	private static final class TypedList {
+
+		private final byte elementType;
+		private final List<?> elements;
+
+		private TypedList(final byte elementType, final List<?> elements) {
+			this.elementType = elementType;
+			this.elements = elements;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import java.util.Arrays;
+
+import org.scijava.table.NumberParser;
+
+/**
+ * Infers the type of each column of a table from a sample of its records.
+ * <p>
+ * Each column's type starts out unknown and is widened by every sampled cell
+ * along the lattice {@code boolean} &rarr; {@code int} &rarr; {@code long}
+ * &rarr; {@code double} &rarr; {@link String}. A column mixing {@code boolean}
+ * and numeric cells holds strings; null tokens leave the type unchanged.
+ * </p>
+ */
+final class TypeInference {
+
+	private static final int UNKNOWN = 0;
+	private static final int BOOLEAN = 1;
+	private static final int INTEGER = 2;
+	private static final int LONG = 3;
+	private static final int DOUBLE = 4;
+	private static final int STRING = 5;
+
+	private final NumberParser numbers = new NumberParser();
+	private final NullTokens nullTokens;
+
+	/** Index of the first field holding data, after any row header. */
+	private final int first;
+
+	/** The columns whose types are inferred. */
+	private final int[] columns;
+
+	private int[] kinds;
+
+	/**
+	 * @param columnCount The number of columns of the table.
+	 * @param columns The columns whose types to infer.
+	 * @param first The index of the first field holding data.
+	 * @param nullTokens The cells standing for missing values.
+	 */
+	TypeInference(final int columnCount, final int[] columns, final int first,
+		final NullTokens nullTokens)
+	{
+		this.first = first;
+		this.columns = columns;
+		this.nullTokens = nullTokens;
+		kinds = new int[columnCount];
+	}
+
+	/**
+	 * Widens the column types to fit the current record of the tokenizer.
+	 *
+	 * @return false if the record was ignored, as it has the wrong number of
+	 *         fields.
+	 */
+	boolean sample(final TableTokenizer tokenizer) {
+		if (tokenizer.getFieldCount() - first != kinds.length) return false;
+		final byte[] buf = tokenizer.buffer();
+		for (final int i : columns) {
+			final int kind = kinds[i];
+			if (kind == STRING) continue;
+			final int start = tokenizer.start(first + i);
+			final int end = tokenizer.end(first + i);
+			if (nullTokens.matches(buf, start, end)) continue;
+			kinds[i] = widen(kind, kindOf(buf, start, end, kind));
+		}
+		return true;
+	}
+
+	/**
+	 * Widens the type of a column to fit the cell at {@code buf[start, end)},
+	 * adding the column if it lies beyond the known ones, e.g. for formats
+	 * whose records name their fields.
+	 */
+	void sample(final int column, final byte[] buf, final int start,
+		final int end)
+	{
+		grow(column);
+		final int kind = kinds[column];
+		if (kind != STRING) kinds[column] = widen(kind, kindOf(buf, start, end,
+			kind));
+	}
+
+	/**
+	 * Widens the type of a column to {@link String}, e.g. for a cell which is
+	 * quoted, adding the column if it lies beyond the known ones.
+	 */
+	void sampleString(final int column) {
+		grow(column);
+		kinds[column] = STRING;
+	}
+
+	/**
+	 * Gets the inferred type of a column: {@link Boolean}, {@link Integer},
+	 * {@link Long}, {@link Double} or {@link String}.
+	 */
+	Class<?> type(final int column) {
+		if (column >= kinds.length) return String.class;
+		switch (kinds[column]) {
+			case BOOLEAN:
+				return Boolean.class;
+			case INTEGER:
+				return Integer.class;
+			case LONG:
+				return Long.class;
+			case DOUBLE:
+				return Double.class;
+			default:
+				return String.class;
+		}
+	}
+
+	// -- Helper methods --
+
+	private void grow(final int column) {
+		if (column >= kinds.length) {
+			kinds = Arrays.copyOf(kinds, Math.max(column + 1, 2 * kinds.length));
+		}
+	}
+
+	/**
+	 * Determines the narrowest kind of a cell, trying only kinds at least as
+	 * wide as the column's current kind.
+	 */
+	private int kindOf(final byte[] buf, final int start, final int end,
+		final int current)
+	{
+		if (current <= BOOLEAN && isBoolean(buf, start, end)) return BOOLEAN;
+		if (current != BOOLEAN) {
+			if (current <= LONG && numbers.parseLong(buf, start, end)) {
+				final long value = numbers.longValue();
+				return value == (int) value ? INTEGER : LONG;
+			}
+			if (numbers.parseDouble(buf, start, end)) return DOUBLE;
+		}
+		return STRING;
+	}
+
+	private static int widen(final int a, final int b) {
+		if (a == UNKNOWN) return b;
+		if ((a == BOOLEAN) != (b == BOOLEAN)) return STRING;
+		return Math.max(a, b);
+	}
+
+	private static boolean isBoolean(final byte[] buf, final int start,
+		final int end)
+	{
+		return is(buf, start, end, "true") || is(buf, start, end, "false");
+	}
+
+	/** Compares a cell with a lowercase ASCII word, ignoring case. */
+	private static boolean is(final byte[] buf, final int start, final int end,
+		final String word)
+	{
+		if (end - start != word.length()) return false;
+		for (int i = 0; i < word.length(); i++) {
+			if ((buf[start + i] | 0x20) != word.charAt(i)) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+/**
+ * An aggregation computed over each group of a {@link Query#groupBy} step.
+ * <p>
+ * Numeric aggregations skip {@link Double#NaN} (and {@code null}) values.
+ * </p>
+ */
+public final class Aggregate {
+
+	/** The supported kinds of aggregation. */
+	enum Kind {
+			COUNT, SUM, MEAN, MIN, MAX
+	}
+
+	private final Kind kind;
+	private final String column;
+	private final String name;
+
+	private Aggregate(final Kind kind, final String column, final String name) {
+		this.kind = kind;
+		this.column = column;
+		this.name = name;
+	}
+
+	/** Counts the rows of each group. */
+	public static Aggregate count() {
+		return new Aggregate(Kind.COUNT, null, "count");
+	}
+
+	/** Sums the values of the given column within each group. */
+	public static Aggregate sum(final String column) {
+		return of(Kind.SUM, column);
+	}
+
+	/** Averages the values of the given column within each group. */
+	public static Aggregate mean(final String column) {
+		return of(Kind.MEAN, column);
+	}
+
+	/** Finds the smallest value of the given column within each group. */
+	public static Aggregate min(final String column) {
+		return of(Kind.MIN, column);
+	}
+
+	/** Finds the largest value of the given column within each group. */
+	public static Aggregate max(final String column) {
+		return of(Kind.MAX, column);
+	}
+
+	/** Gets a copy of this aggregation with the given output column header. */
+	public Aggregate as(final String header) {
+		return new Aggregate(kind, column, header);
+	}
+
+	/** Gets the header of the column holding this aggregation's results. */
+	public String name() {
+		return name;
+	}
+
+	/** Gets the column being aggregated, or null for {@link #count()}. */
+	public String column() {
+		return column;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	// -- Internal methods --
+
+	Kind kind() {
+		return kind;
+	}
+
+	// -- Helper methods --
+
+	private static Aggregate of(final Kind kind, final String column) {
+		if (column == null) throw new NullPointerException("column");
+		return new Aggregate(kind, column, kind.name().toLowerCase() + "(" +
+			column + ")");
+	}
+}
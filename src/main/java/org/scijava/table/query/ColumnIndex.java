@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import org.scijava.table.Column;
+
+/**
+ * Base class for secondary indexes over a single {@link Column}.
+ * <p>
+ * An index never needs to be rebuilt explicitly: it is built on first use, and
+ * rebuilt lazily on the next lookup after the column's
+ * {@link Column#getModificationCount() modification count} changes. Columns
+ * which do not count their modifications are reindexed on every lookup, so
+ * indexes are only worthwhile for the built-in column types. Changes written
+ * directly to a column's backing array must be followed by a call to
+ * {@link #invalidate()}.
+ * </p>
+ * <p>
+ * Like the tables themselves, indexes are not thread-safe.
+ * </p>
+ */
+public abstract class ColumnIndex {
+
+	private final Column<?> column;
+
+	/** Modification count of the column when the index was last built. */
+	private long indexed;
+
+	private boolean stale = true;
+
+	protected ColumnIndex(final Column<?> column) {
+		this.column = column;
+	}
+
+	/** Gets the column being indexed. */
+	public Column<?> getColumn() {
+		return column;
+	}
+
+	/** Gets whether the index must be rebuilt before the next lookup. */
+	public boolean isStale() {
+		final long count = column.getModificationCount();
+		return stale || count < 0 || count != indexed;
+	}
+
+	/** Forces the index to be rebuilt before the next lookup. */
+	public void invalidate() {
+		stale = true;
+	}
+
+	// -- Internal methods --
+
+	/** Rebuilds the index from the column's current data. */
+	protected abstract void build();
+
+	/** Rebuilds the index if it is stale. Called before every lookup. */
+	protected void update() {
+		if (!isStale()) return;
+		indexed = column.getModificationCount();
+		build();
+		stale = false;
+	}
+}
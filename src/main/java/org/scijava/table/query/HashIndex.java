@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.scijava.table.Column;
+import org.scijava.util.IntArray;
+
+/**
+ * An index answering equality lookups on a column in time proportional to the
+ * number of matching rows.
+ * <p>
+ * Numbers are compared by value regardless of their type, so that e.g.
+ * {@code rows(42)} finds the matching rows of an {@code IntColumn} as well as
+ * of a {@code DoubleColumn}. Other values are compared with
+ * {@link Object#equals(Object)}.
+ * </p>
+ */
+public class HashIndex extends ColumnIndex {
+
+	private static final int[] NONE = {};
+
+	private Map<Object, IntArray> rows;
+
+	public HashIndex(final Column<?> column) {
+		super(column);
+	}
+
+	/** Gets the rows holding the given value, in ascending order. */
+	public int[] rows(final Object value) {
+		update();
+		final IntArray matches = rows.get(key(value));
+		return matches == null ? NONE : matches.copyArray();
+	}
+
+	/** Gets the number of rows holding the given value. */
+	public int count(final Object value) {
+		update();
+		final IntArray matches = rows.get(key(value));
+		return matches == null ? 0 : matches.size();
+	}
+
+	/** Gets the number of distinct values in the column. */
+	public int distinctCount() {
+		update();
+		return rows.size();
+	}
+
+	// -- Internal methods --
+
+	@Override
+	protected void build() {
+		final Column<?> column = getColumn();
+		final Map<Object, IntArray> index = new HashMap<>();
+		for (int r = 0; r < column.size(); r++) {
+			index.computeIfAbsent(key(column.get(r)), k -> new IntArray()).addValue(
+				r);
+		}
+		rows = index;
+	}
+
+	// -- Helper methods --
+
+	/** Maps equal numbers of different types to the same key. */
+	private static Object key(final Object value) {
+		if (!(value instanceof Number)) return value;
+		if (value instanceof Long || value instanceof Integer ||
+			value instanceof Short || value instanceof Byte)
+		{
+			return ((Number) value).longValue();
+		}
+		final double d = ((Number) value).doubleValue();
+		final long l = (long) d;
+		// NB: Both zeroes map to the same key, as they do for integer columns.
+		return l == d && l != Long.MAX_VALUE ? (Object) l : (Object) d;
+	}
+}
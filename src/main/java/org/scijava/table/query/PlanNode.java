@@ -0,0 +1,231 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+
+import org.scijava.table.Table;
+
+/**
+ * A node of a {@link Query}'s logical plan. Each node has a single input,
+ * except for the {@link Scan} at the bottom of the plan.
+ */
+abstract class PlanNode {
+
+	final PlanNode input;
+
+	PlanNode(final PlanNode input) {
+		this.input = input;
+	}
+
+	/** Creates a copy of this node reading from the given input. */
+	abstract PlanNode withInput(PlanNode newInput);
+
+	/** Describes this node, for {@link Query#explain()}. */
+	abstract String describe();
+
+	// -- Node types --
+
+	/** Reads the columns of a table. */
+	static final class Scan extends PlanNode {
+
+		final Table<?, ?> table;
+
+		/** Headers of the columns to read, or null for all columns. */
+		final Collection<String> columns;
+
+		Scan(final Table<?, ?> table, final Collection<String> columns) {
+			super(null);
+			this.table = table;
+			this.columns = columns;
+		}
+
+		@Override
+		PlanNode withInput(final PlanNode newInput) {
+			return this;
+		}
+
+		@Override
+		String describe() {
+			return "Scan " + (columns == null ? "*" : columns);
+		}
+	}
+
+	/** Keeps the rows whose value in a column matches a predicate. */
+	static final class Filter extends PlanNode {
+
+		final String column;
+		final DoublePredicate numeric;
+		final Predicate<Object> generic;
+
+		/**
+		 * Bounds of the accepted values, if the filter is a range filter; NaN
+		 * otherwise.
+		 */
+		final double min, max;
+
+		Filter(final PlanNode input, final String column,
+			final DoublePredicate numeric, final Predicate<Object> generic)
+		{
+			this(input, column, numeric, generic, Double.NaN, Double.NaN);
+		}
+
+		Filter(final PlanNode input, final String column, final double min,
+			final double max)
+		{
+			this(input, column, v -> v >= min && v <= max, null, min, max);
+		}
+
+		private Filter(final PlanNode input, final String column,
+			final DoublePredicate numeric, final Predicate<Object> generic,
+			final double min, final double max)
+		{
+			super(input);
+			this.column = column;
+			this.numeric = numeric;
+			this.generic = generic;
+			this.min = min;
+			this.max = max;
+		}
+
+		boolean isRange() {
+			return min == min;
+		}
+
+		@Override
+		PlanNode withInput(final PlanNode newInput) {
+			return new Filter(newInput, column, numeric, generic, min, max);
+		}
+
+		@Override
+		String describe() {
+			return "Filter " + column + (isRange() ? " [" + min + ", " + max + "]"
+				: "");
+		}
+	}
+
+	/** Selects a subset of the columns. */
+	static final class Project extends PlanNode {
+
+		final String[] columns;
+
+		Project(final PlanNode input, final String... columns) {
+			super(input);
+			this.columns = columns;
+		}
+
+		boolean contains(final String column) {
+			return Arrays.asList(columns).contains(column);
+		}
+
+		@Override
+		PlanNode withInput(final PlanNode newInput) {
+			return new Project(newInput, columns);
+		}
+
+		@Override
+		String describe() {
+			return "Project " + Arrays.toString(columns);
+		}
+	}
+
+	/** Groups the rows by the values of a column, aggregating each group. */
+	static final class Group extends PlanNode {
+
+		final String key;
+		final Aggregate[] aggregates;
+
+		Group(final PlanNode input, final String key,
+			final Aggregate... aggregates)
+		{
+			super(input);
+			this.key = key;
+			this.aggregates = aggregates;
+		}
+
+		@Override
+		PlanNode withInput(final PlanNode newInput) {
+			return new Group(newInput, key, aggregates);
+		}
+
+		@Override
+		String describe() {
+			return "Group " + key + " " + Arrays.toString(aggregates);
+		}
+	}
+
+	/** Orders the rows by the values of a column. */
+	static final class Sort extends PlanNode {
+
+		final String column;
+		final boolean ascending;
+
+		Sort(final PlanNode input, final String column, final boolean ascending) {
+			super(input);
+			this.column = column;
+			this.ascending = ascending;
+		}
+
+		@Override
+		PlanNode withInput(final PlanNode newInput) {
+			return new Sort(newInput, column, ascending);
+		}
+
+		@Override
+		String describe() {
+			return "Sort " + column + (ascending ? " ascending" : " descending");
+		}
+	}
+
+	/** Keeps only the first rows. */
+	static final class Limit extends PlanNode {
+
+		final int count;
+
+		Limit(final PlanNode input, final int count) {
+			super(input);
+			this.count = count;
+		}
+
+		@Override
+		PlanNode withInput(final PlanNode newInput) {
+			return new Limit(newInput, count);
+		}
+
+		@Override
+		String describe() {
+			return "Limit " + count;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+
+import org.scijava.table.GenericTable;
+import org.scijava.table.Table;
+import org.scijava.table.query.PlanNode.Filter;
+import org.scijava.table.query.PlanNode.Group;
+import org.scijava.table.query.PlanNode.Limit;
+import org.scijava.table.query.PlanNode.Project;
+import org.scijava.table.query.PlanNode.Scan;
+import org.scijava.table.query.PlanNode.Sort;
+
+/**
+ * A lazily evaluated query over a {@link Table}.
+ * <p>
+ * Each step returns a new query extending the logical plan of this one;
+ * nothing is computed until {@link #execute()} is called. Before running, the
+ * plan is optimized: filters are pushed below projections and sorts, columns
+ * which no later step reads are pruned, and consecutive filters, projections
+ * and limits are fused into a single pass over the rows. A numeric sort followed
+ * by a limit only selects the top rows, using {@link TopK}. Intermediate steps
+ * work on row indices only, so the source data is copied once, into the final
+ * result.
+ * </p>
+ * <pre>
+ * GenericTable brightest = Query.from(table) //
+ * 	.filter("Area", area -&gt; area &gt; 100) //
+ * 	.sort("Mean", false) //
+ * 	.select("Label", "Mean") //
+ * 	.limit(10) //
+ * 	.execute();
+ * </pre>
+ */
+public final class Query {
+
+	private final PlanNode plan;
+
+	private Query(final PlanNode plan) {
+		this.plan = plan;
+	}
+
+	/** Starts a query reading from the given table. */
+	public static Query from(final Table<?, ?> table) {
+		if (table == null) throw new NullPointerException("table");
+		return new Query(new Scan(table, null));
+	}
+
+	/**
+	 * Keeps only the rows whose value in the given numeric column matches the
+	 * predicate.
+	 */
+	public Query filter(final String column, final DoublePredicate predicate) {
+		if (predicate == null) throw new NullPointerException("predicate");
+		return new Query(new Filter(plan, column, predicate, null));
+	}
+
+	/**
+	 * Keeps only the rows whose value in the given numeric column lies within
+	 * {@code [min, max]}. Unlike {@link #filter(String, DoublePredicate)}, this
+	 * lets whole blocks of rows be skipped using the column's
+	 * {@link org.scijava.table.ColumnStatistics zone map}, when filtering the
+	 * source table.
+	 */
+	public Query filterRange(final String column, final double min,
+		final double max)
+	{
+		if (Double.isNaN(min) || Double.isNaN(max)) {
+			throw new IllegalArgumentException("Invalid range: [" + min + ", " +
+				max + "]");
+		}
+		return new Query(new Filter(plan, column, min, max));
+	}
+
+	/**
+	 * Keeps only the rows whose value in the given column matches the
+	 * predicate. Prefer {@link #filter(String, DoublePredicate)} for numeric
+	 * columns, which avoids boxing the values.
+	 */
+	public Query filterValues(final String column,
+		final Predicate<Object> predicate)
+	{
+		if (predicate == null) throw new NullPointerException("predicate");
+		return new Query(new Filter(plan, column, null, predicate));
+	}
+
+	/** Keeps only the given columns, in the given order. */
+	public Query select(final String... columns) {
+		return new Query(new Project(plan, columns.clone()));
+	}
+
+	/**
+	 * Groups the rows by the values of the given column. The result has one row
+	 * per distinct value, in order of first appearance, with the key column
+	 * followed by one column per aggregation.
+	 */
+	public Query groupBy(final String column, final Aggregate... aggregates) {
+		return new Query(new Group(plan, column, aggregates.clone()));
+	}
+
+	/** Orders the rows by ascending values of the given column. */
+	public Query sort(final String column) {
+		return sort(column, true);
+	}
+
+	/**
+	 * Orders the rows by the values of the given column. The sort is stable,
+	 * and missing values ({@code null} or {@link Double#NaN}) come last.
+	 */
+	public Query sort(final String column, final boolean ascending) {
+		return new Query(new Sort(plan, column, ascending));
+	}
+
+	/** Keeps at most the given number of rows. */
+	public Query limit(final int count) {
+		if (count < 0) //
+			throw new IllegalArgumentException("Invalid limit: " + count);
+		return new Query(new Limit(plan, count));
+	}
+
+	/**
+	 * Describes the optimized plan which {@link #execute()} would run, one step
+	 * per line, starting with the last step.
+	 */
+	public String explain() {
+		final StringBuilder sb = new StringBuilder();
+		String indent = "";
+		for (PlanNode node = QueryOptimizer.optimize(plan); node != null;
+			node = node.input)
+		{
+			sb.append(indent).append(node.describe()).append("\n");
+			indent += "  ";
+		}
+		return sb.toString();
+	}
+
+	/** Runs the query, returning its results as a new table. */
+	public GenericTable execute() {
+		return new QueryExecutor().execute(QueryOptimizer.optimize(plan));
+	}
+
+	@Override
+	public String toString() {
+		return explain();
+	}
+}
@@ -0,0 +1,415 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+import org.scijava.table.Column;
+import org.scijava.table.ColumnStatistics;
+import org.scijava.table.Columns;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.Table;
+import org.scijava.table.query.PlanNode.Filter;
+import org.scijava.table.query.PlanNode.Group;
+import org.scijava.table.query.PlanNode.Limit;
+import org.scijava.table.query.PlanNode.Project;
+import org.scijava.table.query.PlanNode.Scan;
+import org.scijava.table.query.PlanNode.Sort;
+import org.scijava.util.IntArray;
+
+/**
+ * Runs an optimized {@link Query} plan.
+ * <p>
+ * Rows are tracked as a selection vector of row indices into the current
+ * source table, so that filters, projections, limits and sorts never copy any
+ * column data. Consecutive filters, projections and limits are fused into a
+ * single pass over the rows. Column data is only copied when grouping, and
+ * when building the final result.
+ * </p>
+ */
+final class QueryExecutor {
+
+	/** The table currently being read. */
+	private Table<?, ?> table;
+
+	/** Indices of the selected rows of {@link #table}, or null for all rows. */
+	private int[] rows;
+
+	/** Number of selected rows. */
+	private int count;
+
+	/** Indices of the visible columns of {@link #table}. */
+	private int[] columns;
+
+	/** Runs the given plan, returning the resulting table. */
+	GenericTable execute(final PlanNode plan) {
+		final List<PlanNode> steps = new ArrayList<>();
+		for (PlanNode node = plan; node != null; node = node.input) {
+			steps.add(node);
+		}
+		Collections.reverse(steps);
+
+		int s = 0;
+		while (s < steps.size()) {
+			final PlanNode step = steps.get(s);
+			if (step instanceof Scan) {
+				scan((Scan) step);
+				s++;
+			}
+			else if (step instanceof Group) {
+				group((Group) step);
+				s++;
+			}
+			else if (step instanceof Sort) {
+				sort((Sort) step, limit(steps, s + 1));
+				s++;
+			}
+			else {
+				// fuse all consecutive row-wise steps into a single pass
+				int end = s;
+				while (end < steps.size() && isRowWise(steps.get(end)))
+					end++;
+				pass(steps.subList(s, end));
+				s = end;
+			}
+		}
+		return result();
+	}
+
+	// -- Helper methods --
+
+	private static boolean isRowWise(final PlanNode node) {
+		return node instanceof Filter || node instanceof Project ||
+			node instanceof Limit;
+	}
+
+	private void scan(final Scan scan) {
+		table = scan.table;
+		rows = null;
+		count = table.getRowCount();
+		if (scan.columns == null) {
+			columns = new int[table.getColumnCount()];
+			for (int c = 0; c < columns.length; c++)
+				columns[c] = c;
+		}
+		else {
+			final IntArray indices = new IntArray();
+			for (int c = 0; c < table.getColumnCount(); c++) {
+				if (scan.columns.contains(table.getColumnHeader(c))) {
+					indices.addValue(c);
+				}
+			}
+			columns = indices.copyArray();
+		}
+	}
+
+	/** Runs a sequence of filters, projections and limits in one pass. */
+	private void pass(final List<PlanNode> steps) {
+		// NB: Each row-wise step becomes one stage of the pass. A stage is either
+		// a filter, or a limit on the number of rows reaching it.
+		final List<IntPredicate> filters = new ArrayList<>();
+		final List<Integer> limits = new ArrayList<>();
+		// NB: Range filters ahead of any limit can skip whole zones of rows, when
+		// all rows of the table are selected.
+		final List<Filter> ranges = new ArrayList<>();
+		final List<ColumnStatistics> zoneMaps = new ArrayList<>();
+		boolean limited = false;
+		for (final PlanNode step : steps) {
+			if (step instanceof Filter) {
+				final Filter f = (Filter) step;
+				filters.add(predicate(f));
+				limits.add(-1);
+				if (f.isRange() && !limited && rows == null) {
+					ranges.add(f);
+					zoneMaps.add(table.get(colIndex(f.column)).getStatistics());
+				}
+			}
+			else if (step instanceof Limit) {
+				filters.add(null);
+				limits.add(((Limit) step).count);
+				limited = true;
+			}
+			else if (step instanceof Project) {
+				final String[] headers = ((Project) step).columns;
+				final int[] projected = new int[headers.length];
+				for (int c = 0; c < headers.length; c++)
+					projected[c] = colIndex(headers[c]);
+				columns = projected;
+			}
+		}
+		final int stages = filters.size();
+		if (stages == 0) return;
+		final IntPredicate[] filter = filters.toArray(new IntPredicate[stages]);
+		final int[] limit = new int[stages];
+		for (int i = 0; i < stages; i++)
+			limit[i] = limits.get(i);
+		final int[] passed = new int[stages];
+
+		// NB: Selected rows are compacted in place; the output never overtakes
+		// the input.
+		final int[] in = rows;
+		final int[] out = in == null ? new int[count] : in;
+		final boolean skipZones = !ranges.isEmpty();
+		int n = 0;
+		rowLoop:
+		for (int i = 0; i < count; i++) {
+			if (skipZones && i % ColumnStatistics.ZONE_SIZE == 0) {
+				final int zone = i / ColumnStatistics.ZONE_SIZE;
+				if (!mayMatch(zoneMaps, ranges, zone)) {
+					i += ColumnStatistics.ZONE_SIZE - 1;
+					continue;
+				}
+			}
+			final int r = in == null ? i : in[i];
+			for (int st = 0; st < stages; st++) {
+				if (limit[st] >= 0) {
+					// every later row reaching this stage would be rejected too
+					if (passed[st] == limit[st]) break rowLoop;
+					passed[st]++;
+				}
+				else if (!filter[st].test(r)) continue rowLoop;
+			}
+			out[n++] = r;
+		}
+		rows = out;
+		count = n;
+	}
+
+	/** Checks the zone maps of the given range filters' columns. */
+	private static boolean mayMatch(final List<ColumnStatistics> zoneMaps,
+		final List<Filter> ranges, final int zone)
+	{
+		for (int i = 0; i < ranges.size(); i++) {
+			final Filter range = ranges.get(i);
+			if (!zoneMaps.get(i).mayContain(zone, range.min, range.max)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private IntPredicate predicate(final Filter filter) {
+		final Column<?> column = table.get(colIndex(filter.column));
+		if (filter.numeric != null) {
+			final IntToDoubleFunction values = Columns.doubleValues(column);
+			return r -> filter.numeric.test(values.applyAsDouble(r));
+		}
+		return r -> filter.generic.test(column.get(r));
+	}
+
+	/**
+	 * Gets the row limit which applies directly after the given step, or -1 if
+	 * there is none.
+	 */
+	private static int limit(final List<PlanNode> steps, final int s) {
+		int next = s;
+		while (next < steps.size() && steps.get(next) instanceof Project)
+			next++;
+		if (next == steps.size()) return -1;
+		final PlanNode step = steps.get(next);
+		return step instanceof Limit ? ((Limit) step).count : -1;
+	}
+
+	/**
+	 * Sorts the selected rows. If only the first {@code limit} rows are needed,
+	 * numeric columns are ranked by {@link TopK} selection instead.
+	 */
+	private void sort(final Sort sort, final int limit) {
+		final Column<?> column = table.get(colIndex(sort.column));
+		final boolean numeric = Columns.isNumeric(column) && column
+			.getType() != Object.class;
+		if (numeric && limit >= 0 && limit < count) {
+			rows = TopK.select(Columns.doubleValues(column), rows, count, limit,
+				sort.ascending);
+			count = rows.length;
+			return;
+		}
+		final int[] sorted = new int[count];
+		for (int i = 0; i < count; i++)
+			sorted[i] = rows == null ? i : rows[i];
+		if (numeric) {
+			final IntToDoubleFunction values = Columns.doubleValues(column);
+			final double[] keys = new double[count];
+			for (int i = 0; i < count; i++)
+				keys[i] = values.applyAsDouble(sorted[i]);
+			RowSorter.sort(sorted, keys, sort.ascending);
+		}
+		else {
+			final Comparator<Object> order = naturalOrder(sort.ascending);
+			final Object[] keys = new Object[count];
+			for (int i = 0; i < count; i++)
+				keys[i] = column.get(sorted[i]);
+			RowSorter.sort(sorted, keys, order);
+		}
+		rows = sorted;
+	}
+
+	private void group(final Group group) {
+		final Column<?> key = table.get(colIndex(group.key));
+		final Map<Object, Integer> groups = new HashMap<>();
+		final IntArray firstRows = new IntArray();
+		final int[] groupOf = new int[count];
+		for (int i = 0; i < count; i++) {
+			final int r = rows == null ? i : rows[i];
+			final Object value = key.get(r);
+			Integer g = groups.get(value);
+			if (g == null) {
+				g = groups.size();
+				groups.put(value, g);
+				firstRows.addValue(r);
+			}
+			groupOf[i] = g;
+		}
+		final int groupCount = groups.size();
+
+		final GenericTable grouped = new DefaultGenericTable();
+		grouped.add(Columns.copy(key, firstRows.getArray(), groupCount));
+		for (final Aggregate aggregate : group.aggregates) {
+			grouped.add(aggregate(aggregate, groupOf, groupCount));
+		}
+		table = grouped;
+		rows = null;
+		count = groupCount;
+		columns = new int[grouped.getColumnCount()];
+		for (int c = 0; c < columns.length; c++)
+			columns[c] = c;
+	}
+
+	private Column<?> aggregate(final Aggregate aggregate, final int[] groupOf,
+		final int groupCount)
+	{
+		final int[] counts = new int[groupCount];
+		if (aggregate.kind() == Aggregate.Kind.COUNT) {
+			for (int i = 0; i < count; i++)
+				counts[groupOf[i]]++;
+			final IntColumn result = new IntColumn(aggregate.name());
+			result.fill(counts);
+			return result;
+		}
+		final IntToDoubleFunction values = //
+			Columns.doubleValues(table.get(colIndex(aggregate.column())));
+		final double[] acc = new double[groupCount];
+		final double init;
+		switch (aggregate.kind()) {
+			case MIN:
+				init = Double.POSITIVE_INFINITY;
+				break;
+			case MAX:
+				init = Double.NEGATIVE_INFINITY;
+				break;
+			default:
+				init = 0;
+		}
+		Arrays.fill(acc, init);
+		for (int i = 0; i < count; i++) {
+			final double v = values.applyAsDouble(rows == null ? i : rows[i]);
+			if (Double.isNaN(v)) continue;
+			final int g = groupOf[i];
+			counts[g]++;
+			switch (aggregate.kind()) {
+				case MIN:
+					if (v < acc[g]) acc[g] = v;
+					break;
+				case MAX:
+					if (v > acc[g]) acc[g] = v;
+					break;
+				default:
+					acc[g] += v;
+			}
+		}
+		for (int g = 0; g < groupCount; g++) {
+			if (counts[g] == 0 && aggregate.kind() != Aggregate.Kind.SUM) {
+				acc[g] = Double.NaN;
+			}
+			else if (aggregate.kind() == Aggregate.Kind.MEAN) acc[g] /= counts[g];
+		}
+		final DoubleColumn result = new DoubleColumn(aggregate.name());
+		result.fill(acc);
+		return result;
+	}
+
+	/** Copies the selected rows of the visible columns into a new table. */
+	private GenericTable result() {
+		final int[] selected;
+		if (rows == null) {
+			selected = new int[count];
+			for (int i = 0; i < count; i++)
+				selected[i] = i;
+		}
+		else selected = rows;
+
+		final GenericTable result = new DefaultGenericTable();
+		for (final int c : columns) {
+			result.add(Columns.copy(table.get(c), selected, count));
+		}
+		result.setRowCount(count);
+		for (int i = 0; i < count; i++) {
+			final String header = table.getRowHeader(selected[i]);
+			if (header != null) result.setRowHeader(i, header);
+		}
+		return result;
+	}
+
+	/** Gets the index of the first visible column with the given header. */
+	private int colIndex(final String header) {
+		for (final int c : columns) {
+			if (Objects.equals(header, table.getColumnHeader(c))) return c;
+		}
+		throw new IllegalArgumentException("No such column: " + header);
+	}
+
+	private static Comparator<Object> naturalOrder(final boolean ascending) {
+		final Comparator<Object> order = (a, b) -> {
+			if (a == null) return b == null ? 0 : 1;
+			if (b == null) return -1;
+			@SuppressWarnings({ "rawtypes", "unchecked" })
+			final int result = ((Comparable) a).compareTo(b);
+			return result;
+		};
+		return ascending ? order : (a, b) -> {
+			// NB: Keep nulls last in both directions.
+			if (a == null || b == null) return order.compare(a, b);
+			return order.compare(b, a);
+		};
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.scijava.table.query.PlanNode.Filter;
+import org.scijava.table.query.PlanNode.Group;
+import org.scijava.table.query.PlanNode.Limit;
+import org.scijava.table.query.PlanNode.Project;
+import org.scijava.table.query.PlanNode.Scan;
+import org.scijava.table.query.PlanNode.Sort;
+
+/**
+ * Rewrites the logical plan of a {@link Query} into an equivalent, cheaper
+ * one.
+ */
+final class QueryOptimizer {
+
+	private QueryOptimizer() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Optimizes the given plan by pushing filters as close to the scan as
+	 * possible, merging adjacent projections, and pruning columns which no later
+	 * step reads.
+	 */
+	static PlanNode optimize(final PlanNode plan) {
+		return prune(mergeProjections(pushDownFilters(plan)), null);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Moves filters below projections and sorts, as well as below groupings by
+	 * the filtered column, so that fewer rows reach the later steps.
+	 */
+	private static PlanNode pushDownFilters(final PlanNode node) {
+		if (node instanceof Scan) return node;
+		final PlanNode input = pushDownFilters(node.input);
+		if (node instanceof Filter && commutes((Filter) node, input)) {
+			final PlanNode pushed = ((Filter) node).withInput(input.input);
+			return input.withInput(pushDownFilters(pushed));
+		}
+		return node.withInput(input);
+	}
+
+	private static boolean commutes(final Filter filter, final PlanNode input) {
+		if (input instanceof Sort) return true;
+		if (input instanceof Project) {
+			return ((Project) input).contains(filter.column);
+		}
+		if (input instanceof Group) return ((Group) input).key.equals(
+			filter.column);
+		return false;
+	}
+
+	/** Collapses directly nested projections into the outermost one. */
+	private static PlanNode mergeProjections(final PlanNode node) {
+		if (node instanceof Scan) return node;
+		final PlanNode input = mergeProjections(node.input);
+		if (node instanceof Project && input instanceof Project &&
+			containsAll((Project) input, ((Project) node).columns))
+		{
+			return node.withInput(input.input);
+		}
+		return node.withInput(input);
+	}
+
+	private static boolean containsAll(final Project project,
+		final String[] columns)
+	{
+		return Arrays.asList(project.columns).containsAll(Arrays.asList(columns));
+	}
+
+	/**
+	 * Restricts each step to the columns required by the steps after it.
+	 *
+	 * @param required Headers of the columns read after this node, or null if
+	 *          all of the node's columns are needed.
+	 */
+	private static PlanNode prune(final PlanNode node,
+		final Set<String> required)
+	{
+		if (node instanceof Scan) {
+			return new Scan(((Scan) node).table, required);
+		}
+		if (node instanceof Project) {
+			final Project project = (Project) node;
+			final List<String> kept = new ArrayList<>();
+			for (final String column : project.columns) {
+				if (required == null || required.contains(column)) kept.add(column);
+			}
+			final String[] columns = kept.toArray(new String[kept.size()]);
+			return new Project(prune(node.input, new LinkedHashSet<>(kept)),
+				columns);
+		}
+		if (node instanceof Filter) {
+			return node.withInput(prune(node.input, plus(required,
+				((Filter) node).column)));
+		}
+		if (node instanceof Sort) {
+			return node.withInput(prune(node.input, plus(required,
+				((Sort) node).column)));
+		}
+		if (node instanceof Limit) {
+			return node.withInput(prune(node.input, required));
+		}
+		if (node instanceof Group) {
+			final Group group = (Group) node;
+			final Set<String> reads = new LinkedHashSet<>();
+			reads.add(group.key);
+			final List<Aggregate> kept = new ArrayList<>();
+			for (final Aggregate aggregate : group.aggregates) {
+				if (required != null && !required.contains(aggregate.name())) continue;
+				kept.add(aggregate);
+				if (aggregate.column() != null) reads.add(aggregate.column());
+			}
+			return new Group(prune(node.input, reads), group.key, kept.toArray(
+				new Aggregate[kept.size()]));
+		}
+		throw new IllegalStateException("Unknown plan node: " + node);
+	}
+
+	private static Set<String> plus(final Set<String> columns,
+		final String column)
+	{
+		if (columns == null) return null;
+		final Set<String> result = new LinkedHashSet<>(columns);
+		result.add(column);
+		return result;
+	}
+}
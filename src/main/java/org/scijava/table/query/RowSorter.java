@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import java.util.Comparator;
+
+/**
+ * Stable merge sort of row indices by precomputed keys, avoiding the boxing of
+ * {@link java.util.Arrays#sort(Object[], Comparator)} for numeric keys.
+ */
+final class RowSorter {
+
+	/** Runs shorter than this are sorted by insertion. */
+	private static final int INSERTION_THRESHOLD = 16;
+
+	private RowSorter() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Sorts the given rows by their numeric keys. {@link Double#NaN} keys sort
+	 * last regardless of direction.
+	 */
+	static void sort(final int[] rows, final double[] keys,
+		final boolean ascending)
+	{
+		mergeSort(rows.clone(), keys.clone(), rows, keys, 0, rows.length,
+			ascending);
+	}
+
+	/** Sorts the given rows by their keys, using the given order. */
+	static void sort(final int[] rows, final Object[] keys,
+		final Comparator<Object> order)
+	{
+		mergeSort(rows.clone(), keys.clone(), rows, keys, 0, rows.length, order);
+	}
+
+	// -- Helper methods --
+
+	private static int compare(final double a, final double b,
+		final boolean ascending)
+	{
+		final boolean nanA = a != a, nanB = b != b;
+		if (nanA || nanB) return nanA == nanB ? 0 : nanA ? 1 : -1;
+		return ascending ? Double.compare(a, b) : Double.compare(b, a);
+	}
+
+	/**
+	 * Sorts {@code [from, to)} of {@code srcRows}/{@code srcKeys} into
+	 * {@code destRows}/{@code destKeys}. Both pairs of arrays must start out
+	 * with the same contents.
+	 */
+	private static void mergeSort(final int[] srcRows, final double[] srcKeys,
+		final int[] destRows, final double[] destKeys, final int from,
+		final int to, final boolean ascending)
+	{
+		if (to - from < INSERTION_THRESHOLD) {
+			for (int i = from + 1; i < to; i++) {
+				final int row = destRows[i];
+				final double key = destKeys[i];
+				int j = i - 1;
+				while (j >= from && compare(destKeys[j], key, ascending) > 0) {
+					destRows[j + 1] = destRows[j];
+					destKeys[j + 1] = destKeys[j];
+					j--;
+				}
+				destRows[j + 1] = row;
+				destKeys[j + 1] = key;
+			}
+			return;
+		}
+		final int mid = (from + to) >>> 1;
+		mergeSort(destRows, destKeys, srcRows, srcKeys, from, mid, ascending);
+		mergeSort(destRows, destKeys, srcRows, srcKeys, mid, to, ascending);
+		int p = from, q = mid;
+		for (int i = from; i < to; i++) {
+			if (q >= to || p < mid && compare(srcKeys[p], srcKeys[q],
+				ascending) <= 0)
+			{
+				destRows[i] = srcRows[p];
+				destKeys[i] = srcKeys[p++];
+			}
+			else {
+				destRows[i] = srcRows[q];
+				destKeys[i] = srcKeys[q++];
+			}
+		}
+	}
+
+	private static void mergeSort(final int[] srcRows, final Object[] srcKeys,
+		final int[] destRows, final Object[] destKeys, final int from,
+		final int to, final Comparator<Object> order)
+	{
+		if (to - from < INSERTION_THRESHOLD) {
+			for (int i = from + 1; i < to; i++) {
+				final int row = destRows[i];
+				final Object key = destKeys[i];
+				int j = i - 1;
+				while (j >= from && order.compare(destKeys[j], key) > 0) {
+					destRows[j + 1] = destRows[j];
+					destKeys[j + 1] = destKeys[j];
+					j--;
+				}
+				destRows[j + 1] = row;
+				destKeys[j + 1] = key;
+			}
+			return;
+		}
+		final int mid = (from + to) >>> 1;
+		mergeSort(destRows, destKeys, srcRows, srcKeys, from, mid, order);
+		mergeSort(destRows, destKeys, srcRows, srcKeys, mid, to, order);
+		int p = from, q = mid;
+		for (int i = from; i < to; i++) {
+			if (q >= to || p < mid && order.compare(srcKeys[p], srcKeys[q]) <= 0) {
+				destRows[i] = srcRows[p];
+				destKeys[i] = srcKeys[p++];
+			}
+			else {
+				destRows[i] = srcRows[q];
+				destKeys[i] = srcKeys[q++];
+			}
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+
+/**
+ * An index answering range lookups on a numeric column in
+ * {@code O(log n + k)} time, {@code k} being the number of matching rows.
+ * <p>
+ * The index holds the column's rows sorted by value. {@link Double#NaN} and
+ * {@code null} values are never matched by a range.
+ * </p>
+ */
+public class SortedIndex extends ColumnIndex {
+
+	/** Rows of the column, sorted by value; rows with NaN values come last. */
+	private int[] rows;
+
+	/** Values of {@link #rows}. */
+	private double[] keys;
+
+	/** Number of rows with a value other than NaN. */
+	private int valid;
+
+	/**
+	 * @throws IllegalArgumentException if the column does not hold numbers
+	 */
+	public SortedIndex(final Column<?> column) {
+		super(column);
+		if (!Columns.isNumeric(column)) {
+			throw new IllegalArgumentException("Not a numeric column: " + column
+				.getHeader());
+		}
+	}
+
+	/** Gets the rows holding the given value, in ascending order. */
+	public int[] rows(final double value) {
+		return range(value, value);
+	}
+
+	/**
+	 * Gets the rows with values in {@code [min, max]}, ordered by value, then
+	 * by row.
+	 */
+	public int[] range(final double min, final double max) {
+		return range(min, true, max, true);
+	}
+
+	/**
+	 * Gets the rows with values between {@code min} and {@code max}, ordered by
+	 * value, then by row. Infinite bounds can be used for one-sided ranges.
+	 */
+	public int[] range(final double min, final boolean minInclusive,
+		final double max, final boolean maxInclusive)
+	{
+		update();
+		final int from = minInclusive ? lowerBound(min) : upperBound(min);
+		final int to = maxInclusive ? upperBound(max) : lowerBound(max);
+		return from < to ? Arrays.copyOfRange(rows, from, to) : new int[0];
+	}
+
+	/** Gets the number of rows with values in {@code [min, max]}. */
+	public int count(final double min, final double max) {
+		update();
+		return Math.max(0, upperBound(max) - lowerBound(min));
+	}
+
+	/** Gets the smallest value of the column, or NaN if there is none. */
+	public double min() {
+		update();
+		return valid == 0 ? Double.NaN : keys[0];
+	}
+
+	/** Gets the largest value of the column, or NaN if there is none. */
+	public double max() {
+		update();
+		return valid == 0 ? Double.NaN : keys[valid - 1];
+	}
+
+	// -- Internal methods --
+
+	@Override
+	protected void build() {
+		final Column<?> column = getColumn();
+		final int size = column.size();
+		final IntToDoubleFunction values = Columns.doubleValues(column);
+		final int[] sorted = new int[size];
+		final double[] sortedKeys = new double[size];
+		for (int r = 0; r < size; r++) {
+			sorted[r] = r;
+			sortedKeys[r] = values.applyAsDouble(r);
+		}
+		RowSorter.sort(sorted, sortedKeys, true);
+		int n = size;
+		while (n > 0 && Double.isNaN(sortedKeys[n - 1]))
+			n--;
+		rows = sorted;
+		keys = sortedKeys;
+		valid = n;
+	}
+
+	// -- Helper methods --
+
+	/** Index of the first value not less than {@code value}. */
+	private int lowerBound(final double value) {
+		if (value != value) return valid;
+		int lo = 0, hi = valid;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (keys[mid] < value) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	/** Index of the first value greater than {@code value}. */
+	private int upperBound(final double value) {
+		if (value != value) return 0;
+		int lo = 0, hi = valid;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (keys[mid] <= value) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+import org.scijava.table.GenericTable;
+import org.scijava.table.Table;
+
+/**
+ * Selection of the rows with the largest or smallest values of a numeric
+ * column, without sorting the whole column.
+ * <p>
+ * Each block of rows is scanned with a bounded heap of its best {@code k}
+ * rows, in parallel for large columns, and the per-block heaps are then
+ * merged into a single heap of {@code k} rows. This takes
+ * {@code O(n log k)} time, and at most one slot per row for the block heaps.
+ * When {@code k} is a large fraction of the rows, they are sorted instead.
+ * The result is the same as that of a stable sort followed by taking the first
+ * {@code k} rows: ties are broken by row order, and {@link Double#NaN} and
+ * {@code null} values rank last.
+ * </p>
+ */
+public final class TopK {
+
+	/** Number of rows scanned by each parallel task. */
+	static final int BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * Rows are sorted rather than selected by heap when more than one in this
+	 * many of them are selected.
+	 */
+	static final int SORT_RATIO = 8;
+
+	private TopK() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Gets the indices of the {@code k} rows with the largest values, from the
+	 * largest down.
+	 */
+	public static int[] largest(final Column<?> column, final int k) {
+		return select(Columns.doubleValues(column), null, column.size(), k,
+			false);
+	}
+
+	/**
+	 * Gets the indices of the {@code k} rows with the smallest values, from the
+	 * smallest up.
+	 */
+	public static int[] smallest(final Column<?> column, final int k) {
+		return select(Columns.doubleValues(column), null, column.size(), k, true);
+	}
+
+	/**
+	 * Gets the {@code k} rows of the table with the largest values in the given
+	 * column, from the largest down.
+	 */
+	public static GenericTable largest(final Table<?, ?> table,
+		final String column, final int k)
+	{
+		return Query.from(table).sort(column, false).limit(k).execute();
+	}
+
+	/**
+	 * Gets the {@code k} rows of the table with the smallest values in the
+	 * given column, from the smallest up.
+	 */
+	public static GenericTable smallest(final Table<?, ?> table,
+		final String column, final int k)
+	{
+		return Query.from(table).sort(column, true).limit(k).execute();
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Selects the first {@code k} of the given rows, in the order of a stable
+	 * sort by value.
+	 *
+	 * @param values The values of the rows.
+	 * @param rows The candidate rows, or null for rows {@code 0} to
+	 *          {@code count - 1}.
+	 * @param count The number of candidate rows.
+	 * @param k The maximum number of rows to select.
+	 * @param ascending Whether to select the smallest rather than the largest
+	 *          values.
+	 * @return The selected rows, in order.
+	 */
+	static int[] select(final IntToDoubleFunction values, final int[] rows,
+		final int count, final int k, final boolean ascending)
+	{
+		if (k < 0) throw new IllegalArgumentException("Invalid count: " + k);
+		final int n = Math.min(k, count);
+		final int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final int[] selected;
+		if (n > count / SORT_RATIO) selected = sort(values, rows, count, n,
+			ascending);
+		else if (blocks <= 1) {
+			selected = scan(values, rows, 0, count, n, ascending).drain();
+		}
+		else {
+			final Heap[] heaps = IntStream.range(0, blocks).parallel() //
+				.mapToObj(b -> scan(values, rows, b * BLOCK_SIZE, Math.min(count, (b +
+					1) * BLOCK_SIZE), n, ascending)) //
+				.toArray(Heap[]::new);
+			final Heap best = new Heap(n, ascending);
+			for (final Heap heap : heaps)
+				best.merge(heap);
+			selected = best.drain();
+		}
+		if (rows != null) {
+			for (int i = 0; i < selected.length; i++)
+				selected[i] = rows[selected[i]];
+		}
+		return selected;
+	}
+
+	// -- Helper methods --
+
+	/** Selects the first {@code k} rows of a block, by a heap of its size. */
+	private static Heap scan(final IntToDoubleFunction values, final int[] rows,
+		final int from, final int to, final int k, final boolean ascending)
+	{
+		final Heap heap = new Heap(Math.min(k, to - from), ascending);
+		for (int i = from; i < to; i++) {
+			heap.offer(values.applyAsDouble(rows == null ? i : rows[i]), i);
+		}
+		return heap;
+	}
+
+	/** Selects the first {@code k} rows by a stable sort of all of them. */
+	private static int[] sort(final IntToDoubleFunction values, final int[] rows,
+		final int count, final int k, final boolean ascending)
+	{
+		final int[] positions = new int[count];
+		final double[] keys = new double[count];
+		for (int i = 0; i < count; i++) {
+			positions[i] = i;
+			keys[i] = values.applyAsDouble(rows == null ? i : rows[i]);
+		}
+		RowSorter.sort(positions, keys, ascending);
+		return Arrays.copyOf(positions, k);
+	}
+
+	/**
+	 * A bounded heap of positions in the candidate rows, keeping the first ones
+	 * in selection order. The root is the last of the kept positions.
+	 */
+	private static final class Heap {
+
+		private final boolean ascending;
+		private final double[] keys;
+		private final int[] positions;
+		private int size;
+
+		Heap(final int capacity, final boolean ascending) {
+			this.ascending = ascending;
+			keys = new double[capacity];
+			positions = new int[capacity];
+		}
+
+		void offer(final double key, final int position) {
+			if (size < keys.length) {
+				keys[size] = key;
+				positions[size] = position;
+				siftUp(size++);
+			}
+			else if (size > 0 && before(key, position, keys[0], positions[0])) {
+				keys[0] = key;
+				positions[0] = position;
+				siftDown(0);
+			}
+		}
+
+		Heap merge(final Heap other) {
+			for (int i = 0; i < other.size; i++)
+				offer(other.keys[i], other.positions[i]);
+			return this;
+		}
+
+		/** Empties the heap, returning its positions in selection order. */
+		int[] drain() {
+			final int[] result = new int[size];
+			while (size > 0) {
+				result[size - 1] = positions[0];
+				size--;
+				keys[0] = keys[size];
+				positions[0] = positions[size];
+				siftDown(0);
+			}
+			return result;
+		}
+
+		/** Gets whether entry {@code a} comes before entry {@code b}. */
+		private boolean before(final double keyA, final int posA,
+			final double keyB, final int posB)
+		{
+			final boolean nanA = keyA != keyA, nanB = keyB != keyB;
+			if (nanA || nanB) return nanA == nanB ? posA < posB : nanB;
+			final int c = ascending ? Double.compare(keyA, keyB) : Double.compare(
+				keyB, keyA);
+			return c < 0 || c == 0 && posA < posB;
+		}
+
+		private boolean before(final int i, final int j) {
+			return before(keys[i], positions[i], keys[j], positions[j]);
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				final int parent = (i - 1) / 2;
+				if (!before(parent, i)) break;
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int last = 2 * i + 1;
+				if (last >= size) break;
+				if (last + 1 < size && before(last, last + 1)) last++;
+				if (!before(i, last)) break;
+				swap(i, last);
+				i = last;
+			}
+		}
+
+		private void swap(final int i, final int j) {
+			final double key = keys[i];
+			keys[i] = keys[j];
+			keys[j] = key;
+			final int position = positions[i];
+			positions[i] = positions[j];
+			positions[j] = position;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.sketch;
+
+import org.scijava.table.Column;
+
+/**
+ * A compact, approximate summary of the values of a {@link Column}, built in
+ * a single streaming pass.
+ * <p>
+ * Sketches are mergeable: sketches of disjoint parts of the data can be built
+ * independently, e.g. in parallel by {@link Sketches#compute}, and then merged
+ * into a sketch of all of the data. Sketches are not thread-safe.
+ * </p>
+ *
+ * @param <S> The type of sketch this one can be merged with.
+ */
+public interface ColumnSketch<S extends ColumnSketch<S>> {
+
+	/** Adds a value to the sketch. {@code null} values are ignored. */
+	void update(Object value);
+
+	/** Adds the values of the given rows of a column to the sketch. */
+	default void update(final Column<?> column, final int from, final int to) {
+		for (int r = from; r < to; r++)
+			update(column.get(r));
+	}
+
+	/** Adds all values summarized by another sketch to this one. */
+	void merge(S other);
+}
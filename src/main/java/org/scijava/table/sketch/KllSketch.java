@@ -0,0 +1,285 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.sketch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+import org.scijava.table.Column;
+import org.scijava.table.Columns;
+import org.scijava.util.DoubleArray;
+
+/**
+ * A KLL sketch (Karnin, Lang and Liberty), estimating quantiles of numeric
+ * values.
+ * <p>
+ * The sketch keeps a hierarchy of buffers ("compactors"); when a buffer fills
+ * up, it is sorted and every other value is promoted to the next level, where
+ * it stands for two values. With the default {@code k} of 200, the rank error
+ * of the estimated quantiles is typically below 1%, using a few kilobytes of
+ * memory regardless of the number of values. The smallest and largest values
+ * are tracked exactly. {@code null}, {@link Double#NaN} and non-numeric values
+ * are ignored.
+ * </p>
+ */
+public class KllSketch implements ColumnSketch<KllSketch> {
+
+	/** The default accuracy parameter. */
+	public static final int DEFAULT_K = 200;
+
+	/** Ratio of the capacities of consecutive compactors. */
+	private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+	private final int k;
+	private final List<DoubleArray> compactors = new ArrayList<>();
+	private final Random random = new Random(0x5eed);
+
+	/** Number of values held by all compactors. */
+	private int size;
+
+	/** Total capacity of all compactors. */
+	private int maxSize;
+
+	private long count;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public KllSketch() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * @param k The accuracy parameter, i.e. the capacity of the top compactor;
+	 *          the rank error shrinks roughly in proportion to {@code 1/k}.
+	 */
+	public KllSketch(final int k) {
+		if (k < 8) throw new IllegalArgumentException("Invalid k: " + k);
+		this.k = k;
+		grow();
+	}
+
+	/** Adds a number to the sketch. */
+	public void update(final double value) {
+		if (value != value) return;
+		count++;
+		if (value < min) min = value;
+		if (value > max) max = value;
+		compactors.get(0).addValue(value);
+		if (++size >= maxSize) compress();
+	}
+
+	/** Gets the number of values added to the sketch. */
+	public long getCount() {
+		return count;
+	}
+
+	/** Gets the smallest value, or NaN if the sketch is empty. */
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	/** Gets the largest value, or NaN if the sketch is empty. */
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	/**
+	 * Estimates the given quantile.
+	 *
+	 * @param q The quantile, between 0 (the minimum) and 1 (the maximum); e.g.
+	 *          0.5 for the median.
+	 * @return The estimated quantile, or NaN if the sketch is empty.
+	 */
+	public double quantile(final double q) {
+		return quantiles(q)[0];
+	}
+
+	/** Estimates several quantiles at once; see {@link #quantile(double)}. */
+	public double[] quantiles(final double... q) {
+		final double[] result = new double[q.length];
+		for (final double p : q) {
+			if (!(p >= 0 && p <= 1)) {
+				throw new IllegalArgumentException("Invalid quantile: " + p);
+			}
+		}
+		if (count == 0) {
+			Arrays.fill(result, Double.NaN);
+			return result;
+		}
+		final double[][] items = sortedItems();
+		final double[] values = items[0], cumulative = items[1];
+		final double total = cumulative[cumulative.length - 1];
+		for (int i = 0; i < q.length; i++) {
+			if (q[i] == 0) result[i] = min;
+			else if (q[i] == 1) result[i] = max;
+			else {
+				int index = Arrays.binarySearch(cumulative, q[i] * total);
+				if (index < 0) index = -index - 1;
+				result[i] = values[Math.min(index, values.length - 1)];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Estimates the fraction of values less than or equal to the given value.
+	 */
+	public double rank(final double value) {
+		if (count == 0) return Double.NaN;
+		long below = 0, total = 0;
+		for (int h = 0; h < compactors.size(); h++) {
+			final DoubleArray compactor = compactors.get(h);
+			final double[] a = compactor.getArray();
+			for (int i = 0; i < compactor.size(); i++) {
+				if (a[i] <= value) below += 1L << h;
+			}
+			total += (long) compactor.size() << h;
+		}
+		return (double) below / total;
+	}
+
+	// -- ColumnSketch methods --
+
+	@Override
+	public void update(final Object value) {
+		if (value instanceof Number) update(((Number) value).doubleValue());
+	}
+
+	@Override
+	public void update(final Column<?> column, final int from, final int to) {
+		if (!Columns.isNumeric(column) || column.getType() == Object.class) {
+			ColumnSketch.super.update(column, from, to);
+			return;
+		}
+		final IntToDoubleFunction values = Columns.doubleValues(column);
+		for (int r = from; r < to; r++)
+			update(values.applyAsDouble(r));
+	}
+
+	@Override
+	public void merge(final KllSketch other) {
+		while (compactors.size() < other.compactors.size())
+			grow();
+		for (int h = 0; h < other.compactors.size(); h++) {
+			final DoubleArray source = other.compactors.get(h);
+			final DoubleArray target = compactors.get(h);
+			final double[] a = source.getArray();
+			for (int i = 0; i < source.size(); i++)
+				target.addValue(a[i]);
+		}
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		size += other.size;
+		while (size >= maxSize)
+			compress();
+	}
+
+	@Override
+	public String toString() {
+		return "KllSketch[count=" + count + ", median=" + quantile(0.5) + "]";
+	}
+
+	// -- Helper methods --
+
+	private int capacity(final int level) {
+		final int height = compactors.size() - level - 1;
+		return (int) Math.ceil(Math.pow(CAPACITY_RATIO, height) * k) + 1;
+	}
+
+	private void grow() {
+		compactors.add(new DoubleArray());
+		maxSize = 0;
+		for (int h = 0; h < compactors.size(); h++)
+			maxSize += capacity(h);
+	}
+
+	/** Compacts full compactors until the sketch is within its capacity. */
+	private void compress() {
+		for (int h = 0; h < compactors.size(); h++) {
+			final DoubleArray compactor = compactors.get(h);
+			if (compactor.size() < capacity(h)) continue;
+			if (h + 1 == compactors.size()) grow();
+			final DoubleArray next = compactors.get(h + 1);
+			final double[] a = compactor.getArray();
+			final int n = compactor.size();
+			Arrays.sort(a, 0, n);
+			// NB: Promote either the even or the odd values of each sorted pair; an
+			// odd value out stays behind.
+			final int odd = n & 1;
+			final int offset = random.nextBoolean() ? 1 : 0;
+			for (int i = odd; i + 1 < n; i += 2)
+				next.addValue(a[i + offset]);
+			compactor.setSize(odd);
+			size -= (n - odd) / 2;
+			if (size < maxSize) break;
+		}
+	}
+
+	/**
+	 * Gets all values held by the sketch in ascending order, along with their
+	 * cumulative weights.
+	 */
+	private double[][] sortedItems() {
+		final double[] values = new double[size];
+		final long[] weights = new long[size];
+		int n = 0;
+		for (int h = 0; h < compactors.size(); h++) {
+			final DoubleArray compactor = compactors.get(h);
+			final double[] sorted = Arrays.copyOf(compactor.getArray(), compactor
+				.size());
+			Arrays.sort(sorted);
+			// merge the sorted level into the values gathered so far
+			int i = n - 1, j = sorted.length - 1;
+			n += sorted.length;
+			for (int out = n - 1; j >= 0; out--) {
+				if (i >= 0 && values[i] > sorted[j]) {
+					values[out] = values[i];
+					weights[out] = weights[i--];
+				}
+				else {
+					values[out] = sorted[j--];
+					weights[out] = 1L << h;
+				}
+			}
+		}
+		final double[] cumulative = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += weights[i];
+			cumulative[i] = sum;
+		}
+		return new double[][] { values, cumulative };
+	}
+}
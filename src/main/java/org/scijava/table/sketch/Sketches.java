@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.sketch;
+
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.scijava.table.Column;
+
+/**
+ * Utility methods for building {@link ColumnSketch}es over columns.
+ */
+public final class Sketches {
+
+	/** Number of rows summarized by each parallel task. */
+	static final int BLOCK_SIZE = 1 << 16;
+
+	private Sketches() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Builds a sketch of the given column. Large columns are split into blocks
+	 * which are sketched in parallel, and the resulting sketches merged.
+	 *
+	 * @param column The column to summarize.
+	 * @param factory Creates empty sketches.
+	 */
+	public static <S extends ColumnSketch<S>> S compute(final Column<?> column,
+		final Supplier<S> factory)
+	{
+		final int size = column.size();
+		final int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		if (blocks <= 1) {
+			final S sketch = factory.get();
+			sketch.update(column, 0, size);
+			return sketch;
+		}
+		return IntStream.range(0, blocks).parallel().mapToObj(b -> {
+			final S sketch = factory.get();
+			sketch.update(column, b * BLOCK_SIZE, Math.min(size, (b + 1) *
+				BLOCK_SIZE));
+			return sketch;
+		}).reduce((a, b) -> {
+			a.merge(b);
+			return a;
+		}).get();
+	}
+
+	/** Estimates the number of distinct values of the given column. */
+	public static long distinctCount(final Column<?> column) {
+		return compute(column, HyperLogLog::new).estimate();
+	}
+
+	/** Estimates quantiles of the given numeric column. */
+	public static double[] quantiles(final Column<?> column,
+		final double... q)
+	{
+		return compute(column, KllSketch::new).quantiles(q);
+	}
+}
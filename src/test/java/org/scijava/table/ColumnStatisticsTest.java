@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ColumnStatistics}.
+ */
+public class ColumnStatisticsTest {
+
+	@Test
+	public void testPrimitiveColumn() {
+		final DoubleColumn column = new DoubleColumn("Area");
+		column.fill(new double[] { 3, Double.NaN, -2, 7 });
+		final ColumnStatistics stats = column.getStatistics();
+		assertEquals(4, stats.getRowCount());
+		assertEquals(0, stats.getNullCount());
+		assertEquals(1, stats.getNaNCount());
+		assertEquals(-2, stats.getMin(), 0);
+		assertEquals(7, stats.getMax(), 0);
+		assertEquals(1, stats.getZoneCount());
+	}
+
+	@Test
+	public void testCaching() {
+		final IntColumn column = new IntColumn("Slice");
+		column.fill(new int[] { 1, 2, 3 });
+		final ColumnStatistics stats = column.getStatistics();
+		assertSame(stats, column.getStatistics());
+
+		column.setValue(0, 10);
+		final ColumnStatistics updated = column.getStatistics();
+		assertNotSame(stats, updated);
+		assertEquals(10, updated.getMax(), 0);
+
+		column.add(-5);
+		assertEquals(-5, column.getStatistics().getMin(), 0);
+		assertEquals(4, column.getStatistics().getRowCount());
+
+		column.clear();
+		assertEquals(0, column.getStatistics().getRowCount());
+		assertTrue(Double.isNaN(column.getStatistics().getMin()));
+	}
+
+	@Test
+	public void testGenericColumn() {
+		final GenericColumn numbers = new GenericColumn("Numbers");
+		numbers.add(4);
+		numbers.add(null);
+		numbers.add(2.5);
+		final ColumnStatistics stats = numbers.getStatistics();
+		assertTrue(stats.isNumeric());
+		assertEquals(1, stats.getNullCount());
+		assertEquals(2.5, stats.getMin(), 0);
+		assertEquals(4, stats.getMax(), 0);
+
+		numbers.add("five");
+		final ColumnStatistics mixed = numbers.getStatistics();
+		assertFalse(mixed.isNumeric());
+		assertTrue(Double.isNaN(mixed.getMax()));
+		assertTrue(mixed.mayContain(0, 100, 200));
+	}
+
+	@Test
+	public void testZoneMap() {
+		final int size = 3 * ColumnStatistics.ZONE_SIZE + 1;
+		final double[] values = new double[size];
+		for (int i = 0; i < size; i++)
+			values[i] = i;
+		final DoubleColumn column = new DoubleColumn("Index");
+		column.fill(values);
+		final ColumnStatistics stats = column.getStatistics();
+		assertEquals(4, stats.getZoneCount());
+		assertEquals(ColumnStatistics.ZONE_SIZE, stats.getZoneMin(1), 0);
+		assertEquals(2 * ColumnStatistics.ZONE_SIZE - 1, stats.getZoneMax(1), 0);
+		assertEquals(size - 1, stats.getZoneMin(3), 0);
+		assertTrue(stats.mayContain(0, -10, 0));
+		assertFalse(stats.mayContain(0, ColumnStatistics.ZONE_SIZE, size));
+		assertFalse(stats.mayContain(2, Double.NaN, size));
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.IntToDoubleFunction;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Columns}, and the tracking of missing values by primitive
+ * columns.
+ */
+public class ColumnsTest {
+
+	@Test
+	public void testCompact() {
+		assertTrue(compact(true, null, false) instanceof BoolColumn);
+		assertTrue(compact('a', 'b') instanceof CharColumn);
+		assertTrue(compact((byte) 1, (byte) 2) instanceof ByteColumn);
+		assertTrue(compact((byte) 1, (short) 2) instanceof ShortColumn);
+		assertTrue(compact(1, (short) 2, null) instanceof IntColumn);
+		assertTrue(compact(1L, 2) instanceof LongColumn);
+		assertTrue(compact(1f, 2f) instanceof FloatColumn);
+		assertTrue(compact(1, 2.5f) instanceof DoubleColumn);
+
+		final Column<?> mixed = compact(1, 2.5);
+		assertTrue(mixed instanceof DoubleColumn);
+		assertEquals(1.0, mixed.get(0));
+		assertEquals(2.5, mixed.get(1));
+
+		assertTrue(compact(1L, 2.5) instanceof GenericColumn);
+		assertTrue(compact(1, "two") instanceof GenericColumn);
+		assertTrue(compact(null, null) instanceof GenericColumn);
+		assertTrue(compact() instanceof GenericColumn);
+
+		final DoubleColumn primitive = new DoubleColumn();
+		assertSame(primitive, Columns.compact(primitive));
+	}
+
+	@Test
+	public void testNulls() {
+		final IntColumn column = new IntColumn("Slice");
+		column.fill(new int[] { 1, 2, 3, 4 });
+		assertEquals(0, column.getNullCount());
+
+		assertEquals(Integer.valueOf(2), column.set(1, null));
+		assertNull(column.get(1));
+		assertTrue(column.isNull(1));
+		assertEquals(0, column.getValue(1));
+		assertEquals(1, column.getNullCount());
+		assertTrue(Columns.hasNulls(column));
+
+		// missing values move with their rows
+		column.insert(0, 2);
+		assertTrue(column.isNull(3));
+		assertFalse(column.isNull(1));
+		column.delete(0, 3);
+		assertTrue(column.isNull(0));
+		assertEquals(Integer.valueOf(3), column.get(1));
+		column.add(0, null);
+		assertTrue(column.isNull(0));
+		assertTrue(column.isNull(1));
+		assertEquals(2, column.getNullCount());
+
+		// setting or truncating values forgets them
+		assertNull(column.set(0, 7));
+		assertEquals(Integer.valueOf(7), column.get(0));
+		column.setSize(1);
+		assertEquals(0, column.getNullCount());
+		column.setSize(3);
+		assertFalse(column.isNull(2));
+	}
+
+	@Test
+	public void testNullValues() {
+		final IntColumn column = new IntColumn();
+		column.fill(new int[] { 1, 2, 3 });
+		column.set(1, null);
+		final IntToDoubleFunction values = Columns.doubleValues(column);
+		assertEquals(1, values.applyAsDouble(0), 0);
+		assertTrue(Double.isNaN(values.applyAsDouble(1)));
+		assertEquals(1, column.getStatistics().getNullCount());
+		assertEquals(3, column.getStatistics().getMax(), 0);
+
+		final Column<Integer> copy = Columns.copy(column, new int[] { 2, 1 }, 2);
+		assertTrue(copy instanceof IntColumn);
+		assertArrayEquals(new Object[] { 3, null }, copy.toArray());
+	}
+
+	@Test
+	public void testNullSearch() {
+		final IntColumn ints = new IntColumn();
+		ints.fill(new int[] { 5, 0, 5, 0, 5 });
+		assertFalse(ints.contains(null));
+		assertEquals(-1, ints.indexOf(null));
+		ints.set(0, null);
+		ints.set(3, null);
+		assertTrue(ints.contains(null));
+		assertEquals(0, ints.indexOf(null));
+		assertEquals(3, ints.lastIndexOf(null));
+		// missing rows hold 0, but do not match it
+		assertEquals(1, ints.indexOf(0));
+		assertEquals(1, ints.lastIndexOf(0));
+		assertEquals(2, ints.indexOf(5));
+		ints.set(1, null);
+		assertFalse(ints.contains(0));
+		assertEquals(-1, ints.lastIndexOf(0));
+
+		final BoolColumn bools = new BoolColumn();
+		bools.fill(new boolean[] { true, false, true });
+		bools.set(1, null);
+		assertFalse(bools.contains(false));
+		assertEquals(1, bools.indexOf(null));
+		assertEquals(2, bools.lastIndexOf(true));
+
+		final DoubleColumn doubles = new DoubleColumn();
+		doubles.fill(new double[] { 1, 2 });
+		doubles.set(0, null);
+		assertTrue(doubles.contains(null));
+		assertEquals(0, doubles.lastIndexOf(null));
+		assertEquals(1, doubles.indexOf(2.0));
+	}
+
+	// -- Helper methods --
+
+	private Column<?> compact(final Object... values) {
+		final GenericColumn column = new GenericColumn("column");
+		for (final Object value : values)
+			column.add(value);
+		final Column<?> result = Columns.compact(column);
+		assertEquals("column", result.getHeader());
+		assertEquals(values.length, result.size());
+		for (int r = 0; r < values.length; r++) {
+			if (values[r] == null) assertNull(result.get(r));
+		}
+		return result;
+	}
+}
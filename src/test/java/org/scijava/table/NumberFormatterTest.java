@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link NumberFormatter}.
+ */
+public class NumberFormatterTest {
+
+	private final NumberFormatter shortest = NumberFormatter.shortest();
+
+	@Test
+	public void testLayout() {
+		assertEquals("0.0", shortest.format(0.0));
+		assertEquals("-0.0", shortest.format(-0.0));
+		assertEquals("123.0", shortest.format(123.0));
+		assertEquals("0.5", shortest.format(0.5));
+		assertEquals("0.001", shortest.format(0.001));
+		assertEquals("9.9E-4", shortest.format(0.00099));
+		assertEquals("9999999.0", shortest.format(9999999.0));
+		assertEquals("1.0E7", shortest.format(1e7));
+		assertEquals("1.2345678900987654E9", shortest.format(1234567890.0987654));
+		assertEquals("-1.0E300", shortest.format(-1e300));
+		assertEquals("1.0E23", shortest.format(1e23));
+		assertEquals("1.7976931348623157E308", shortest.format(Double.MAX_VALUE));
+		assertEquals("4.9E-324", shortest.format(Double.MIN_VALUE));
+		assertEquals("NaN", shortest.format(Double.NaN));
+		assertEquals("-Infinity", shortest.format(Double.NEGATIVE_INFINITY));
+		assertEquals("0.1", shortest.format(0.1f));
+		assertEquals("3.4028235E38", shortest.format(Float.MAX_VALUE));
+		assertEquals("1.4E-45", shortest.format(Float.MIN_VALUE));
+		assertEquals("Infinity", shortest.format(Float.POSITIVE_INFINITY));
+		assertEquals("12", shortest.apply(12));
+		assertEquals("null", shortest.apply(null));
+		assertEquals("2.5", shortest.apply(2.5f));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final Random r = new Random(0xcafe);
+		for (int i = 0; i < 200_000; i++) {
+			final double d = i % 2 == 0 ? Double.longBitsToDouble(r.nextLong()) //
+				: r.nextDouble() * Math.pow(10, r.nextInt(40) - 20);
+			if (Double.isNaN(d)) continue;
+			final String s = shortest.format(d);
+			assertEquals(s, Double.doubleToLongBits(d), Double.doubleToLongBits(
+				Double.parseDouble(s)));
+			assertTrue(s, s.length() <= Double.toString(d).length());
+
+			final float f = Float.intBitsToFloat(r.nextInt());
+			if (Float.isNaN(f)) continue;
+			final String t = shortest.format(f);
+			assertEquals(t, Float.floatToIntBits(f), Float.floatToIntBits(Float
+				.parseFloat(t)));
+			assertTrue(t, t.length() <= Float.toString(f).length());
+		}
+	}
+
+	@Test
+	public void testFixed() {
+		final NumberFormatter two = NumberFormatter.fixed(2);
+		assertEquals("1234.57", two.format(1234.5678));
+		assertEquals("0.15", two.format(0.145));
+		assertEquals("10.00", two.format(9.996));
+		assertEquals("-0.00", two.format(-0.001));
+		assertEquals("0.00", two.format(0.0));
+		assertEquals("1.00", two.format(1f));
+		assertEquals("NaN", two.format(Double.NaN));
+		assertEquals("1", NumberFormatter.fixed(0).format(0.5));
+		assertEquals(two.maxLength(), two.format(-Double.MAX_VALUE).length());
+
+		final Random r = new Random(0xbeef);
+		for (int decimals = 0; decimals < 6; decimals++) {
+			final NumberFormatter fixed = NumberFormatter.fixed(decimals);
+			for (int i = 0; i < 10_000; i++) {
+				final double d = r.nextDouble() * Math.pow(10, r.nextInt(20) - 10);
+				assertEquals(new BigDecimal(shortest.format(d)).setScale(decimals,
+					RoundingMode.HALF_UP).toPlainString(), fixed.format(d));
+			}
+		}
+	}
+
+	@Test
+	public void testScientific() {
+		final NumberFormatter two = NumberFormatter.scientific(2);
+		assertEquals("1.23E3", two.format(1234.5678));
+		assertEquals("1.00E4", two.format(9996.0));
+		assertEquals("-5.00E-7", two.format(-5e-7));
+		assertEquals("0.00E0", two.format(0.0));
+		assertEquals("-Infinity", two.format(Double.NEGATIVE_INFINITY));
+		assertEquals("2E-3", NumberFormatter.scientific(0).format(0.0015));
+	}
+
+	@Test
+	public void testBytes() {
+		final NumberFormatter fixed = NumberFormatter.fixed(1);
+		final byte[] buf = new byte[3 + fixed.maxLength()];
+		buf[0] = 'x';
+		final int end = fixed.format(-2.25, buf, 1);
+		assertEquals("x-2.3", new String(buf, 0, end, StandardCharsets.US_ASCII));
+	}
+}
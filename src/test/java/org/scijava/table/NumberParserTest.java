@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link NumberParser}.
+ */
+public class NumberParserTest {
+
+	private final NumberParser numbers = new NumberParser();
+
+	@Test
+	public void testSyntax() {
+		assertDouble(3, "3");
+		assertDouble(-0.5, " -.5 ");
+		assertDouble(5, "+5.");
+		assertDouble(1.5, "1.5f");
+		assertDouble(1e-3, "1E-3d");
+		assertDouble(8, "0x1p3");
+		assertDouble(Double.NaN, "Nan");
+		assertDouble(Double.NEGATIVE_INFINITY, "-infinity");
+		assertDouble(Double.POSITIVE_INFINITY, "+Infinity");
+		assertDouble(-0.0, "-0e5");
+		for (final String s : new String[] { "", " ", "-", ".", "e5", "1e",
+			"1e+", "1.2.3", "1,5", "0x", "nan", "Inf", "12abc", "½" })
+		{
+			assertFalse(s, numbers.parseDouble(s));
+		}
+	}
+
+	@Test
+	public void testExtremes() {
+		for (final String s : new String[] { "1.7976931348623157e308",
+			"1.7976931348623158e308", "1.8e308", "4.9e-324", "2.4703282292062327e-324",
+			"2.4703282292062328e-324", "2.2250738585072011e-308",
+			"2.2250738585072012e-308", "9007199254740993", "9007199254740995",
+			"1e23", "8.41e21", "7.3177701707893310e15", "123456789012345678901234567890",
+			"0.000000000000000000000000000001234567890123456789", "1e-400", "1e400",
+			"4503599627370496.5", "4503599627370497.5", "2.0000000000000002220446" })
+		{
+			assertDouble(Double.parseDouble(s), s);
+		}
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final Random random = new Random(0xcafe);
+		for (int i = 0; i < 100000; i++) {
+			final double d = Double.longBitsToDouble(random.nextLong());
+			if (Double.isNaN(d)) continue;
+			assertDouble(d, Double.toString(d));
+			assertDouble(d, new BigDecimal(d).toString());
+		}
+	}
+
+	@Test
+	public void testRandomDigits() {
+		final Random random = new Random(0xbeef);
+		for (int i = 0; i < 100000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			final int digits = 1 + random.nextInt(25);
+			for (int d = 0; d < digits; d++) {
+				sb.append((char) ('0' + random.nextInt(10)));
+			}
+			if (random.nextBoolean()) sb.insert(random.nextInt(digits + 1), '.');
+			sb.append('e').append(random.nextInt(700) - 350);
+			final String s = sb.toString();
+			assertDouble(Double.parseDouble(s), s);
+		}
+	}
+
+	@Test
+	public void testLong() {
+		assertLong(0, "0");
+		assertLong(-42, "-42");
+		assertLong(7, "+007");
+		assertLong(Long.MAX_VALUE, "9223372036854775807");
+		assertLong(Long.MIN_VALUE, "-9223372036854775808");
+		for (final String s : new String[] { "", "-", "+", " 1", "1.0", "1e3",
+			"9223372036854775808", "-9223372036854775809", "99999999999999999999" })
+		{
+			assertFalse(s, numbers.parseLong(s));
+		}
+		final byte[] bytes = "2147483648".getBytes(StandardCharsets.US_ASCII);
+		assertTrue(numbers.parseLong(bytes, 0, bytes.length));
+		assertFalse(numbers.parseInt(bytes, 0, bytes.length));
+		assertTrue(numbers.parseInt(bytes, 1, bytes.length));
+		assertEquals(147483648, numbers.longValue());
+	}
+
+	// -- Helper methods --
+
+	private void assertDouble(final double expected, final String s) {
+		assertTrue(s, numbers.parseDouble(s));
+		assertEquals(s, Double.doubleToLongBits(expected), Double.doubleToLongBits(
+			numbers.doubleValue()));
+	}
+
+	private void assertLong(final long expected, final String s) {
+		assertTrue(s, numbers.parseLong(s));
+		assertEquals(s, expected, numbers.longValue());
+	}
+}
@@ -31,6 +31,8 @@
 package org.scijava.table;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -163,6 +165,32 @@ public class TablesTest {
 		assertEquals(popColumn, table.get(1));
 	}
 
+	@Test
+	public void testCompact() {
+		final GenericTable table = new DefaultGenericTable(4, 3);
+		table.setColumnHeader(0, "Area");
+		table.setColumnHeader(1, "Slice");
+		table.setColumnHeader(2, "Label");
+		table.setColumnHeader(3, "Empty");
+		for (int r = 0; r < 3; r++) {
+			table.set(0, r, 1.5 * r);
+			table.set(1, r, r == 1 ? null : r);
+			table.set(2, r, "cell" + r);
+		}
+
+		assertEquals(2, Tables.compact(table));
+		assertTrue(table.get(0) instanceof DoubleColumn);
+		assertTrue(table.get(1) instanceof IntColumn);
+		assertTrue(table.get(2) instanceof GenericColumn);
+		assertTrue(table.get(3) instanceof GenericColumn);
+		assertEquals("Slice", table.getColumnHeader(1));
+		assertEquals(3.0, table.get(0, 2));
+		assertEquals(2, table.get(1, 2));
+		assertNull(table.get(1, 1));
+		assertEquals(1, ((IntColumn) table.get(1)).getNullCount());
+		assertEquals(0, Tables.compact(table));
+	}
+
 	private Map<Object, Object> map(final Object... kv) {
 		final LinkedHashMap<Object, Object> map = new LinkedHashMap<>();
 		for (int i = 0; i < kv.length; i += 2)
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.expression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.scijava.table.DefaultDoubleTable;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.DoubleTable;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+
+/**
+ * Tests {@link ColumnExpression} and {@link CompiledExpression}.
+ */
+public class ColumnExpressionTest {
+
+	@Test
+	public void testArithmetic() {
+		final DoubleColumn result = ColumnExpression.parse("Mean/Area*1000")
+			.evaluate(createTable());
+		assertEquals("Mean/Area*1000", result.getHeader());
+		assertArrayEquals(new double[] { 20, 50, 1000 }, result.getArray(), 1e-9);
+	}
+
+	@Test
+	public void testFunctions() {
+		final GenericTable table = createTable();
+		assertArrayEquals(new double[] { Math.log(10), Math.log(20), Math.log(30) },
+			ColumnExpression.parse("log(IntDen)").evaluate(table).getArray(), 1e-12);
+		assertArrayEquals(new double[] { 2, 2, 8 }, ColumnExpression.parse(
+			"max(Slice, 2) * (Area > 20 ? 1 : 2)").evaluate(table).getArray(), 0);
+	}
+
+	@Test
+	public void testQuotedHeader() {
+		final GenericTable table = createTable();
+		final ColumnExpression expression = //
+			ColumnExpression.parse("`Mean (px)` - Mean + -pi");
+		assertTrue(expression.getVariables().contains("Mean (px)"));
+		final CompiledExpression compiled = expression.compile(table);
+		assertEquals(3, compiled.getRowCount());
+		assertEquals(1 - Math.PI, compiled.evaluate(0), 1e-12);
+		assertEquals(3 - Math.PI, compiled.evaluate(2), 1e-12);
+	}
+
+	@Test
+	public void testParallel() {
+		final int rows = 3 * CompiledExpression.BLOCK_SIZE + 17;
+		final DoubleTable table = new DefaultDoubleTable(2, rows);
+		table.setColumnHeader(0, "x");
+		table.setColumnHeader(1, "y");
+		for (int r = 0; r < rows; r++) {
+			table.setValue(0, r, r);
+			table.setValue(1, r, r % 7);
+		}
+		final CompiledExpression compiled = //
+			ColumnExpression.parse("x * y + x % 3").compile(table);
+		final double[] serial = compiled.evaluate("z", false).getArray();
+		final double[] parallel = compiled.evaluate("z", true).getArray();
+		assertEquals(rows, parallel.length);
+		assertArrayEquals(serial, parallel, 0);
+		final int r = rows - 1;
+		assertEquals(r * (r % 7) + r % 3, parallel[r], 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownColumn() {
+		ColumnExpression.parse("Mean / Perimeter").compile(createTable());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnbalancedQuote() {
+		ColumnExpression.parse("`Mean (px) * 2");
+	}
+
+	// -- Helper methods --
+
+	private GenericTable createTable() {
+		final GenericTable table = new DefaultGenericTable();
+		table.add(column("Area", 50, 40, 2));
+		table.add(column("Mean", 1, 2, 2));
+		table.add(column("Mean (px)", 2, 3, 5));
+		table.add(column("IntDen", 10, 20, 30));
+		final IntColumn slice = new IntColumn("Slice");
+		slice.fill(new int[] { 1, 2, 4 });
+		table.add(slice);
+		return table;
+	}
+
+	private DoubleColumn column(final String header, final double... values) {
+		final DoubleColumn column = new DoubleColumn(header);
+		column.fill(values);
+		return column;
+	}
+}
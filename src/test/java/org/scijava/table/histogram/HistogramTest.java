@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.histogram;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.IntColumn;
+
+/**
+ * Tests {@link Bins}, {@link Histogram} and {@link Histogram2D}.
+ */
+public class HistogramTest {
+
+	@Test
+	public void testUniformBins() {
+		final Bins bins = Bins.uniform(0, 10, 5);
+		assertEquals(-1, bins.indexOf(-0.1));
+		assertEquals(0, bins.indexOf(0));
+		assertEquals(0, bins.indexOf(1.999));
+		assertEquals(1, bins.indexOf(2));
+		assertEquals(4, bins.indexOf(10));
+		assertEquals(-1, bins.indexOf(10.001));
+		assertEquals(-1, bins.indexOf(Double.NaN));
+		assertArrayEquals(new double[] { 0, 2, 4, 6, 8, 10 }, bins.getEdges(), 0);
+	}
+
+	@Test
+	public void testLogBins() {
+		final Bins bins = Bins.log(1, 1000, 3);
+		assertEquals(-1, bins.indexOf(-5));
+		assertEquals(-1, bins.indexOf(0));
+		assertEquals(0, bins.indexOf(9));
+		assertEquals(1, bins.indexOf(11));
+		assertEquals(2, bins.indexOf(999));
+		assertEquals(2, bins.indexOf(1000));
+		assertEquals(100, bins.getUpperEdge(1), 1e-9);
+	}
+
+	@Test
+	public void testEdgeBins() {
+		final Bins bins = Bins.edges(-1, 0, 5, 100);
+		assertEquals(-1, bins.indexOf(-2));
+		assertEquals(0, bins.indexOf(-1));
+		assertEquals(1, bins.indexOf(-0.0));
+		assertEquals(1, bins.indexOf(4.9));
+		assertEquals(2, bins.indexOf(5));
+		assertEquals(2, bins.indexOf(100));
+		assertEquals(-1, bins.indexOf(101));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidEdges() {
+		Bins.edges(0, 2, 1);
+	}
+
+	@Test
+	public void testHistogram() {
+		final int size = 3 * Histogram.BLOCK_SIZE + 5;
+		final int[] values = new int[size];
+		for (int i = 0; i < size; i++)
+			values[i] = i % 12 - 1;
+		final IntColumn column = new IntColumn("Slice");
+		column.fill(values);
+
+		final Histogram histogram = Histogram.of(column, Bins.uniform(0, 10, 2));
+		final long cycles = size / 12;
+		// the first 5 rows of the last, incomplete cycle are -1, 0, 1, 2, 3
+		assertArrayEquals(new long[] { 5 * cycles + 4, 6 * cycles }, histogram
+			.getCounts());
+		assertEquals(cycles + 1, histogram.getUnderflow());
+		assertEquals(0, histogram.getOverflow());
+		assertEquals(size - cycles - 1, histogram.getTotal());
+	}
+
+	@Test
+	public void testMissingValues() {
+		final GenericColumn column = new GenericColumn("Area");
+		column.add(null);
+		column.add(1.5);
+		column.add(Double.NaN);
+		column.add(7);
+		final Histogram histogram = Histogram.of(column, Bins.uniform(0, 5, 5));
+		assertEquals(1, histogram.getCount(1));
+		assertEquals(1, histogram.getOverflow());
+		assertEquals(2, histogram.getNaNCount());
+	}
+
+	@Test
+	public void testHistogram2D() {
+		final DoubleColumn x = new DoubleColumn("X");
+		final DoubleColumn y = new DoubleColumn("Y");
+		x.fill(new double[] { 0.5, 1.5, 1.5, 0.2, 5, Double.NaN });
+		y.fill(new double[] { 0.5, 0.5, 1.5, 0.7, 0.5, 0.5 });
+		final Histogram2D histogram = Histogram2D.of(x, y, Bins.uniform(0, 2, 2),
+			Bins.uniform(0, 2, 2));
+		assertEquals(2, histogram.getCount(0, 0));
+		assertEquals(1, histogram.getCount(1, 0));
+		assertEquals(1, histogram.getCount(1, 1));
+		assertEquals(0, histogram.getCount(0, 1));
+		assertArrayEquals(new long[] { 0, 1 }, histogram.getCounts()[1]);
+		assertEquals(2, histogram.getOutsideCount());
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.IOService;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.table.BoolColumn;
+import org.scijava.table.ByteColumn;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link ArrowTableIOPlugin}.
+ */
+@SuppressWarnings("rawtypes")
+public class ArrowTableIOPluginTest {
+
+	private Context ctx;
+	private ArrowTableIOPlugin tableIO;
+
+	@Before
+	public void setUp() {
+		ctx = new Context(IOService.class, DataHandleService.class);
+		tableIO = ctx.service(IOService.class)//
+			.getInstance(ArrowTableIOPlugin.class);
+	}
+
+	@After
+	public void tearDown() {
+		ctx.dispose();
+		ctx = null;
+		tableIO = null;
+	}
+
+	@Test
+	public void testSupports() throws IOException {
+		final File file = createTempFile("supports", ".arrow");
+		assertTrue(tableIO.supportsOpen(new FileLocation(file)));
+		assertTrue(tableIO.supportsSave(new FileLocation("table.feather")));
+		assertTrue(tableIO.supportsSave(new FileLocation("table.arrows")));
+		assertFalse(tableIO.supportsSave(new FileLocation("table.csv")));
+		assertFalse(tableIO.supportsOpen(new FileLocation("missing.arrow")));
+	}
+
+	@Test
+	public void testFileRoundTrip() throws IOException {
+		final File file = createTempFile("file", ".arrow");
+		assertRoundTrip(file, 100000);
+
+		// file magic at both ends
+		final byte[] bytes = Files.readAllBytes(file.toPath());
+		final byte[] magic = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+		assertArrayEquals(magic, Arrays.copyOf(bytes, 6));
+		assertArrayEquals(magic, Arrays.copyOfRange(bytes, bytes.length - 6,
+			bytes.length));
+	}
+
+	@Test
+	public void testStreamRoundTrip() throws IOException {
+		final File file = createTempFile("stream", ".arrows");
+		assertRoundTrip(file, 100000);
+		// stream ends with the end-of-stream marker
+		final byte[] bytes = Files.readAllBytes(file.toPath());
+		assertArrayEquals(new byte[] { -1, -1, -1, -1, 0, 0, 0, 0 }, Arrays
+			.copyOfRange(bytes, bytes.length - 8, bytes.length));
+	}
+
+	/**
+	 * Reads files encoded independently of the plugin, from the specification,
+	 * with pyarrow's layout; see {@code src/test/scripts/make_arrow_fixtures.py}.
+	 */
+	@Test
+	public void testFixtures() throws IOException, URISyntaxException {
+		for (final String name : new String[] { "fixture.arrow",
+			"fixture.arrows" })
+		{
+			assertFixture(name);
+		}
+	}
+
+	/**
+	 * Reads files written by pyarrow itself, if they have been generated; see
+	 * {@code src/test/scripts/make_arrow_reference.py}.
+	 */
+	@Test
+	public void testReferenceFixtures() throws IOException, URISyntaxException {
+		for (final String name : new String[] { "reference.arrow",
+			"reference.arrows" })
+		{
+			assumeNotNull(getClass().getResource(name));
+			assertFixture(name);
+		}
+	}
+
+	@Test
+	public void testDictionary() throws IOException {
+		final GenericTable table = new DefaultGenericTable();
+		final GenericColumn genotype = new GenericColumn("Genotype");
+		for (int r = 0; r < 10000; r++)
+			genotype.add(r % 7 == 0 ? null : r % 2 == 0 ? "wild type" : "mutant");
+		table.add(genotype);
+		final File file = createTempFile("dictionary", ".feather");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file));
+
+		assertEquals(10000, result.getRowCount());
+		for (int r = 0; r < 10000; r++)
+			assertEquals(genotype.get(r), result.get(0, r));
+		// rows share the dictionary's values
+		assertSame(result.get(0, 1), result.get(0, 3));
+		// dictionary-encoded: rows hold 4 byte indices rather than the text
+		assertTrue(file.length() < 5 * 10000);
+	}
+
+	@Test
+	public void testSelection() throws IOException {
+		final GenericTable table = createTable(100000);
+		final File file = createTempFile("selection", ".arrow");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		// the range spans two record batches
+		final int offset = (1 << 16) - 5;
+		final Table result = tableIO.open(new FileLocation(file),
+			new TableIOOptions().selectColumns("Label", "Area").rowOffset(offset)
+				.rowLimit(10));
+		assertEquals(2, result.getColumnCount());
+		assertEquals(10, result.getRowCount());
+		assertEquals("Area", result.getColumnHeader(0));
+		assertEquals("Label", result.getColumnHeader(1));
+		for (int r = 0; r < 10; r++) {
+			assertEquals(table.get(0, r + offset), result.get(0, r));
+			assertEquals(table.get(4, r + offset), result.get(1, r));
+			assertEquals(table.getRowHeader(r + offset), result.getRowHeader(r));
+		}
+
+		final Table noHeaders = tableIO.open(new FileLocation(file),
+			new TableIOOptions().readRowHeaders(false).rowLimit(1));
+		assertEquals(6, noHeaders.getColumnCount());
+		assertEquals(ArrowTableIOPlugin.INDEX_COLUMN, noHeaders.getColumnHeader(
+			5));
+		assertEquals("row 0", noHeaders.get(5, 0));
+	}
+
+	private void assertRoundTrip(final File file, final int rowCount)
+		throws IOException
+	{
+		final GenericTable table = createTable(rowCount);
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file));
+
+		assertEquals(5, result.getColumnCount());
+		assertEquals(rowCount, result.getRowCount());
+		assertTrue(result.get(0) instanceof DoubleColumn);
+		assertTrue(result.get(1) instanceof IntColumn);
+		assertTrue(result.get(2) instanceof BoolColumn);
+		assertTrue(result.get(3) instanceof ByteColumn);
+		assertTrue(result.get(4) instanceof GenericColumn);
+		for (int c = 0; c < 5; c++) {
+			assertEquals(table.getColumnHeader(c), result.getColumnHeader(c));
+			for (int r = 0; r < rowCount; r++)
+				assertEquals(table.get(c, r), result.get(c, r));
+		}
+		for (int r = 0; r < rowCount; r++)
+			assertEquals(table.getRowHeader(r), result.getRowHeader(r));
+		assertNull(result.get(1, 7));
+		assertNull(result.get(4, 5));
+		assertEquals("ü 0", result.get(4, 0));
+	}
+
+	private static GenericTable createTable(final int rowCount) {
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn area = new DoubleColumn("Area");
+		final IntColumn count = new IntColumn("Count");
+		final BoolColumn valid = new BoolColumn("Valid");
+		final ByteColumn channel = new ByteColumn("Channel");
+		final GenericColumn label = new GenericColumn("Label");
+		for (int r = 0; r < rowCount; r++) {
+			area.add(r / 3.0);
+			count.add(-r);
+			valid.add(r % 3 == 0);
+			channel.add((byte) r);
+			label.add(r % 5 == 0 && r > 0 ? null : "ü " + r);
+		}
+		count.set(7, null);
+		valid.set(4, null);
+		table.add(area);
+		table.add(count);
+		table.add(valid);
+		table.add(channel);
+		table.add(label);
+		for (int r = 0; r < rowCount; r++)
+			table.setRowHeader(r, "row " + r);
+		return table;
+	}
+
+	private void assertFixture(final String name) throws IOException,
+		URISyntaxException
+	{
+		final String[] headers = { "id", "count", "value", "flag", "name",
+			"label" };
+		final File file = new File(getClass().getResource(name).toURI());
+		final Table table = tableIO.open(new FileLocation(file));
+		assertEquals(headers.length, table.getColumnCount());
+		assertEquals(5, table.getRowCount());
+		for (int c = 0; c < headers.length; c++)
+			assertEquals(headers[c], table.getColumnHeader(c));
+		assertTrue(table.get(0) instanceof LongColumn);
+		assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), table.get(0));
+		assertTrue(table.get(1) instanceof IntColumn);
+		assertEquals(Arrays.asList(10, null, 30, -40, null), table.get(1));
+		assertTrue(table.get(2) instanceof DoubleColumn);
+		assertEquals(Arrays.asList(1.5, null, Double.NaN, -0.25, 1e300), table
+			.get(2));
+		assertTrue(table.get(3) instanceof BoolColumn);
+		assertEquals(Arrays.asList(true, false, null, true, false), table.get(3));
+		assertEquals(Arrays.asList("a", null, "", "\u00fcn\u00ef",
+			"long string"), table.get(4));
+		assertEquals(Arrays.asList("x", "y", "x", null, "y"), table.get(5));
+		assertSame(table.get(5, 0), table.get(5, 2));
+	}
+
+	private File createTempFile(final String prefix, final String suffix)
+		throws IOException
+	{
+		final File tempFile = //
+			File.createTempFile(getClass().getName() + "." + prefix, suffix);
+		tempFile.deleteOnExit();
+		return tempFile;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.IOService;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.table.BoolColumn;
+import org.scijava.table.Columns;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link BinaryTableIOPlugin}.
+ */
+@SuppressWarnings("rawtypes")
+public class BinaryTableIOPluginTest {
+
+	private Context ctx;
+	private BinaryTableIOPlugin tableIO;
+
+	@Before
+	public void setUp() {
+		ctx = new Context(IOService.class, DataHandleService.class);
+		tableIO = ctx.service(IOService.class)//
+			.getInstance(BinaryTableIOPlugin.class);
+	}
+
+	@After
+	public void tearDown() {
+		ctx.dispose();
+		ctx = null;
+		tableIO = null;
+	}
+
+	@Test
+	public void testSupports() throws IOException {
+		final File file = createTempFile("supports");
+		assertTrue(tableIO.supportsOpen(new FileLocation(file)));
+		assertTrue(tableIO.supportsSave(new FileLocation(file)));
+		assertFalse(tableIO.supportsSave(new FileLocation("table.csv")));
+		assertFalse(tableIO.supportsOpen(new FileLocation("missing.sjt")));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final GenericTable table = createTable(1000);
+		final File file = createTempFile("roundTrip");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file));
+
+		assertEquals(4, result.getColumnCount());
+		assertEquals(1000, result.getRowCount());
+		assertTrue(result.get(0) instanceof DoubleColumn);
+		assertTrue(result.get(1) instanceof IntColumn);
+		assertTrue(result.get(2) instanceof BoolColumn);
+		assertTrue(result.get(3) instanceof GenericColumn);
+		assertArrayEquals(((DoubleColumn) table.get(0)).copyArray(),
+			((DoubleColumn) result.get(0)).getArray(), 0);
+		for (int c = 0; c < 4; c++) {
+			assertEquals(table.getColumnHeader(c), result.getColumnHeader(c));
+			for (int r = 0; r < 1000; r++)
+				assertEquals(table.get(c, r), result.get(c, r));
+		}
+		for (int r = 0; r < 1000; r++)
+			assertEquals(table.getRowHeader(r), result.getRowHeader(r));
+		assertNull(result.get(1, 7));
+		assertNull(result.get(3, 5));
+		assertEquals("ü 0", result.get(3, 0));
+	}
+
+	@Test
+	public void testDeclaredType() throws IOException {
+		final GenericTable table = new DefaultGenericTable();
+		final GenericColumn ids = new GenericColumn("Id");
+		ids.add(1L);
+		ids.add(null);
+		ids.add(3L);
+		table.add(ids);
+		table.add(Columns.compact(ids));
+		final File file = createTempFile("declared");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions()
+			.writeRowHeaders(false));
+		final Table result = tableIO.open(new FileLocation(file));
+		assertTrue(result.get(0) instanceof GenericColumn);
+		assertEquals("3", result.get(0, 2));
+		assertNull(result.get(0, 1));
+		assertTrue(result.get(1) instanceof LongColumn);
+		assertEquals(3L, result.get(1, 2));
+		assertNull(result.get(1, 1));
+		assertNull(result.getRowHeader(0));
+	}
+
+	@Test
+	public void testSelection() throws IOException {
+		final GenericTable table = createTable(1000);
+		final File file = createTempFile("selection");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file),
+			new TableIOOptions().selectColumns("Label", "Area").rowOffset(5)
+				.rowLimit(10));
+		assertEquals(2, result.getColumnCount());
+		assertEquals(10, result.getRowCount());
+		assertEquals("Area", result.getColumnHeader(0));
+		assertEquals("Label", result.getColumnHeader(1));
+		for (int r = 0; r < 10; r++) {
+			assertEquals(table.get(0, r + 5), result.get(0, r));
+			assertEquals(table.get(3, r + 5), result.get(1, r));
+			assertEquals(table.getRowHeader(r + 5), result.getRowHeader(r));
+		}
+
+		final Table past = tableIO.open(new FileLocation(file),
+			new TableIOOptions().rowOffset(2000));
+		assertEquals(4, past.getColumnCount());
+		assertEquals(0, past.getRowCount());
+	}
+
+	@Test
+	public void testChecksum() throws IOException {
+		final File file = createTempFile("checksum");
+		tableIO.save(createTable(100), new FileLocation(file),
+			new TableIOOptions());
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			// corrupt the last value of the text column
+			raf.seek(raf.length() - 1);
+			final int last = raf.read();
+			raf.seek(raf.length() - 1);
+			raf.write(last ^ 1);
+		}
+		try {
+			tableIO.open(new FileLocation(file), new TableIOOptions()
+				.verifyChecksums(true));
+			fail("Expected a checksum mismatch");
+		}
+		catch (final IOException exc) {
+			assertEquals("Checksum mismatch in column Label", exc.getMessage());
+		}
+		tableIO.open(new FileLocation(file));
+	}
+
+	private static GenericTable createTable(final int rowCount) {
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn area = new DoubleColumn("Area");
+		final IntColumn count = new IntColumn("Count");
+		final BoolColumn valid = new BoolColumn("Valid");
+		final GenericColumn label = new GenericColumn("Label");
+		for (int r = 0; r < rowCount; r++) {
+			area.add(r / 3.0);
+			count.add(-r);
+			valid.add(r % 2 == 0);
+			label.add(r % 5 == 0 && r > 0 ? null : "ü " + r);
+		}
+		count.set(7, null);
+		table.add(area);
+		table.add(count);
+		table.add(valid);
+		table.add(label);
+		for (int r = 0; r < rowCount; r++)
+			table.setRowHeader(r, "row " + r);
+		return table;
+	}
+
+	private File createTempFile(final String prefix) throws IOException {
+		final File tempFile = //
+			File.createTempFile(getClass().getName() + "." + prefix, ".sjt");
+		tempFile.deleteOnExit();
+		return tempFile;
+	}
+}
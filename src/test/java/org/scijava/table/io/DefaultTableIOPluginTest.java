@@ -30,14 +30,22 @@
 
 package org.scijava.table.io;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.scijava.table.io.DefaultTableIOPlugin.guessParser;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -48,9 +56,18 @@ import org.scijava.io.handle.DataHandle;
 import org.scijava.io.handle.DataHandleService;
 import org.scijava.io.location.FileLocation;
 import org.scijava.io.location.Location;
+import org.scijava.table.BoolColumn;
 import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.FloatColumn;
+import org.scijava.table.GenericColumn;
 import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.NumberFormatter;
 import org.scijava.table.Table;
+import org.scijava.table.sketch.HyperLogLog;
+import org.scijava.table.sketch.KllSketch;
 
 /**
  * Tests for {@link DefaultTableIOPlugin}.
@@ -106,6 +123,11 @@ public class DefaultTableIOPluginTest {
 		// Non-existent TIFF file: not table compatible.
 		final File nonExistentTIFF = new File("thisFileDoesNotExist.tif");
 		assertSupports(nonExistentTIFF, false, false);
+
+		// Compressed files: supported if the uncompressed file is.
+		assertSupports(new File("thisFileDoesNotExist.csv.gz"), false, true);
+		assertSupports(new File("thisFileDoesNotExist.tsv.deflate"), false, true);
+		assertSupports(new File("thisFileDoesNotExist.tif.gz"), false, false);
 	}
 
 	/**
@@ -273,6 +295,502 @@ public class DefaultTableIOPluginTest {
 		tableIO.open(nonExistentCSV.getPath());
 	}
 
+	@Test
+	public void testColumnSketch() throws IOException {
+		final HyperLogLog distinct = new HyperLogLog();
+		final KllSketch quantiles = new KllSketch();
+		final TableIOOptions options = TableIOOptions.options() //
+			.readRowHeaders(false) //
+			.columnSketch(0, distinct) //
+			.columnSketch(1, quantiles);
+		final String source = "Label,Area\na,3\nb,1\na,2\nc,5\nb,4\n";
+		final Table table = openTable(source, options);
+		assertEquals(5, table.getRowCount());
+		assertEquals(3, distinct.estimate());
+		assertEquals(5, quantiles.getCount());
+		assertEquals(3.0, quantiles.quantile(0.5), 0);
+		assertEquals(5.0, quantiles.getMax(), 0);
+
+		// many blocks of rows, with missing values, read in parallel
+		final StringBuilder sb = new StringBuilder("Label,Area\n");
+		final int rows = 500000;
+		for (int r = 0; r < rows; r++) {
+			sb.append("label").append(r % 100).append(',');
+			sb.append(r % 7 == 0 ? "NA" : String.valueOf(r % 1000)).append('\n');
+		}
+		final KllSketch parallel = new KllSketch();
+		options.columnSketch(1, parallel).threadCount(4);
+		assertEquals(rows, openTable(sb.toString(), options).getRowCount());
+		assertEquals(rows - (rows + 6) / 7, parallel.getCount());
+		assertEquals(0.0, parallel.getMin(), 0);
+		assertEquals(999.0, parallel.getMax(), 0);
+	}
+
+	@Test
+	public void testPrimitiveColumns() throws IOException {
+		final TableIOOptions options = TableIOOptions.options() //
+			.readRowHeaders(false) //
+			.columnType(1, Integer.class) //
+			.columnType(2, Long.class);
+		final String source = "Area,Slice,Frame,Label,Valid\n" +
+			"1.5,1,10,a,true\n" + "2.5,2,20,b,false\n";
+		final Table table = openTable(source, options);
+		assertTrue(table.get(0) instanceof DoubleColumn);
+		assertTrue(table.get(1) instanceof IntColumn);
+		assertTrue(table.get(2) instanceof LongColumn);
+		assertTrue(table.get(3) instanceof GenericColumn);
+		assertTrue(table.get(4) instanceof BoolColumn);
+		assertEquals(2, table.getRowCount());
+		assertEquals(2.5, table.get(0, 1));
+		assertEquals(2, table.get(1, 1));
+		assertEquals(20L, table.get(2, 1));
+		assertEquals("b", table.get(3, 1));
+		assertEquals(false, table.get(4, 1));
+		assertEquals("Frame", table.getColumnHeader(2));
+
+		options.type(Float.class);
+		final Table floats = openTable("x,y\n1,2\n", options);
+		assertTrue(floats.get(0) instanceof FloatColumn);
+		assertTrue(floats.get(1) instanceof IntColumn);
+		assertEquals(1f, floats.get(0, 0));
+	}
+
+	@Test
+	public void testParallel() throws IOException {
+		final StringBuilder sb = new StringBuilder("Row,Area,Label,Slice\r\n");
+		final int rows = 150000;
+		for (int r = 0; r < rows; r++) {
+			sb.append("r").append(r).append(',').append(r * 0.25).append(',');
+			if (r % 1000 == 7) sb.append("\"multi\r\nline, \"\"").append(r).append(
+				"\"\"\"");
+			else sb.append("cell").append(r);
+			sb.append(',').append(r % 17).append("\r\n");
+		}
+		final TableIOOptions options = TableIOOptions.options() //
+			.columnType(2, Integer.class);
+		final Table serial = openTable(sb.toString(), options);
+		final Table parallel = openTable(sb.toString(), options.threadCount(4));
+		assertEquals(rows, parallel.getRowCount());
+		assertEquals(3, parallel.getColumnCount());
+		assertTrue(parallel.get(0) instanceof DoubleColumn);
+		assertTrue(parallel.get(2) instanceof IntColumn);
+		for (int c = 0; c < 3; c++) {
+			assertEquals(serial.getColumnHeader(c), parallel.getColumnHeader(c));
+			assertEquals(serial.get(c), parallel.get(c));
+		}
+		for (int r = 0; r < rows; r++)
+			assertEquals(serial.getRowHeader(r), parallel.getRowHeader(r));
+		assertEquals("r149999", parallel.getRowHeader(rows - 1));
+		assertEquals("multi\r\nline, \"123007\"", parallel.get(1, 123007));
+	}
+
+	@Test
+	public void testCharset() throws IOException {
+		final String source = "Name,Size\nZ\u00fcrich,1\nS\u00e3o Paulo,2\n";
+		final TableIOOptions options = TableIOOptions.options() //
+			.readRowHeaders(false).writeRowHeaders(false).rowDelimiter("\n");
+		final Table utf8 = openTable(source.getBytes(StandardCharsets.UTF_8),
+			options);
+		assertEquals("Z\u00fcrich", utf8.get(0, 0));
+		assertEquals("S\u00e3o Paulo", utf8.get(0, 1));
+
+		options.charset(StandardCharsets.ISO_8859_1);
+		final Table latin1 = openTable(source.getBytes(
+			StandardCharsets.ISO_8859_1), options);
+		assertEquals("S\u00e3o Paulo", latin1.get(0, 1));
+		assertEquals(2, latin1.get(1, 1));
+		assertEquals("Name,Size\nZ\u00fcrich,1\nS\u00e3o Paulo,2\n",
+			new String(saveBytes(latin1, options), StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void testNumberCells() throws IOException {
+		final String source = "x,y,z\n" + //
+			"  3.25 ,-7,TRUE\n" + //
+			"1e400,12345678901,false\n" + //
+			"0x1p3,+0,x\n" + //
+			"-0.0,-9223372036854775808,True\n" + //
+			"1234567890.0987654321,007,true\n" + //
+			"4.9e-324,9223372036854775807,t\n";
+		final TableIOOptions options = TableIOOptions.options() //
+			.readRowHeaders(false).columnType(1, Long.class) //
+			.columnType(2, Boolean.class);
+		final Table table = openTable(source, options);
+		final double[] x = ((DoubleColumn) table.get(0)).getArray();
+		assertEquals(3.25, x[0], 0);
+		assertEquals(Double.POSITIVE_INFINITY, x[1], 0);
+		assertEquals(8.0, x[2], 0);
+		assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(x[3]));
+		assertEquals(1234567890.0987654321, x[4], 0);
+		assertEquals(Double.MIN_VALUE, x[5], 0);
+		assertArrayEquals(new long[] { -7, 12345678901L, 0, Long.MIN_VALUE, 7,
+			Long.MAX_VALUE }, Arrays.copyOf(((LongColumn) table.get(1)).getArray(),
+				6));
+		assertArrayEquals(new boolean[] { true, false, false, true, true, false },
+			Arrays.copyOf(((BoolColumn) table.get(2)).getArray(), 6));
+	}
+
+	@Test
+	public void testTypeInference() throws IOException {
+		final StringBuilder sb = new StringBuilder("a,b,c,d,e,f,g\n");
+		final int rows = 20000;
+		for (int r = 0; r < rows; r++) {
+			sb.append(r % 3 == 0 ? "true" : "FALSE").append(',');
+			sb.append(r).append(',');
+			sb.append(r / 1000 == 10 ? "1.5" : "2").append(',');
+			sb.append(r % 5 == 0 ? "NA" : String.valueOf(r)).append(',');
+			sb.append(r >= rows - 1000 ? "x" : "1").append(',');
+			sb.append(r < 3 ? "" : "1e10").append(',');
+			sb.append(r % 2 == 0 ? "true" : "0").append('\n');
+		}
+		final TableIOOptions options = TableIOOptions.options() //
+			.readRowHeaders(false);
+		final Table table = openTable(sb.toString(), options);
+		assertEquals(rows, table.getRowCount());
+		assertTrue(table.get(0) instanceof BoolColumn);
+		assertTrue(table.get(1) instanceof IntColumn);
+		assertTrue(table.get(2) instanceof DoubleColumn);
+		assertEquals(1.5, table.get(2, 10500));
+		assertTrue(table.get(3) instanceof IntColumn);
+		assertEquals(null, table.get(3, 5));
+		assertEquals(6, table.get(3, 6));
+		assertEquals(rows / 5, ((IntColumn) table.get(3)).getNullCount());
+		assertTrue(table.get(4) instanceof GenericColumn);
+		assertEquals("x", table.get(4, rows - 1));
+		assertTrue(table.get(5) instanceof DoubleColumn);
+		assertEquals(null, table.get(5, 0));
+		assertEquals(1e10, table.get(5, 3));
+		assertTrue(table.get(6) instanceof GenericColumn);
+		assertEquals("0", table.get(6, 1));
+
+		// a sample of the first row only
+		options.sampleSize(1).nullTokens("-");
+		final Table head = openTable("x,y\n-,\n3,\n", options);
+		assertTrue(head.get(0) instanceof GenericColumn);
+		assertEquals("-", head.get(0, 0));
+		assertTrue(head.get(1) instanceof GenericColumn);
+		assertEquals("", head.get(1, 1));
+		final Table longs = openTable("x\n12345678901\n-\n", options);
+		assertTrue(longs.get(0) instanceof LongColumn);
+		assertEquals(null, longs.get(0, 1));
+	}
+
+	@Test
+	public void testWidening() throws IOException {
+		// values beyond the sample which do not fit the inferred types
+		final StringBuilder sb = new StringBuilder("a,b,c,d\n");
+		final int rows = 300000;
+		for (int r = 0; r < rows; r++) {
+			sb.append(r == 123457 ? "1.5" : "1").append(',');
+			sb.append(r == 234567 ? "12345678901" : "2").append(',');
+			sb.append(r == 200000 ? "maybe" : r == 5 ? "NA" : "true").append(',');
+			sb.append(r == 100000 ? "1e300" : r == 250000 ? "x" : "3").append('\n');
+		}
+		final TableIOOptions options = TableIOOptions.options() //
+			.readRowHeaders(false).sampleSize(2);
+		final Table table = openTable(sb.toString(), options);
+		assertEquals(rows, table.getRowCount());
+		assertTrue(table.get(0) instanceof DoubleColumn);
+		assertEquals(1.0, table.get(0, 0));
+		assertEquals(1.5, table.get(0, 123457));
+		assertTrue(table.get(1) instanceof LongColumn);
+		assertEquals(2L, table.get(1, 0));
+		assertEquals(12345678901L, table.get(1, 234567));
+		assertTrue(table.get(2) instanceof GenericColumn);
+		assertEquals("true", table.get(2, 0));
+		assertEquals(null, table.get(2, 5));
+		assertEquals("maybe", table.get(2, 200000));
+		assertTrue(table.get(3) instanceof GenericColumn);
+		assertEquals("3.0", table.get(3, 0));
+		assertEquals("3", table.get(3, rows - 1));
+		assertEquals("1.0E300", table.get(3, 100000));
+		assertEquals("x", table.get(3, 250000));
+
+		// segments read in parallel widen independently
+		final Table parallel = openTable(sb.toString(), options.threadCount(4));
+		for (int c = 0; c < table.getColumnCount(); c++)
+			assertEquals(table.get(c), parallel.get(c));
+	}
+
+	@Test
+	public void testSelectColumns() throws IOException {
+		final HyperLogLog distinct = new HyperLogLog();
+		final String source = "Row,Label,Area,Notes,Slice\n" + //
+			"r1,a,1.5,\"x,\"\"y\"\"\",1\n" + //
+			"r2,b,2.5,\"multi\nline\",2\n";
+		final TableIOOptions options = TableIOOptions.options() //
+			.selectColumns("Slice", "Label").selectColumns(1) //
+			.columnType(3, Long.class).columnSketch(0, distinct);
+		final Table table = openTable(source, options);
+		assertEquals(3, table.getColumnCount());
+		assertEquals(2, table.getRowCount());
+		assertEquals("Label", table.getColumnHeader(0));
+		assertEquals("Area", table.getColumnHeader(1));
+		assertEquals("Slice", table.getColumnHeader(2));
+		assertEquals("r2", table.getRowHeader(1));
+		assertEquals("b", table.get(0, 1));
+		assertEquals(2.5, table.get(1, 1));
+		assertTrue(table.get(2) instanceof LongColumn);
+		assertEquals(2L, table.get(2, 1));
+		assertEquals(2, distinct.estimate());
+
+		final Table parallel = openTable(source, options.threadCount(4));
+		assertEquals(table.get(2), parallel.get(2));
+
+		final Table noHeaders = openTable("1,x,true\n2,y,false\n", //
+			TableIOOptions.options().readColumnHeaders(false).readRowHeaders(false)
+				.selectColumns(2));
+		assertEquals(1, noHeaders.getColumnCount());
+		assertEquals(false, noHeaders.get(0, 1));
+	}
+
+	@Test(expected = IOException.class)
+	public void testSelectMissingColumn() throws IOException {
+		openTable("a,b\n1,2\n", TableIOOptions.options().selectColumns("c"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testRowFilterUnsupported() throws IOException {
+		openTable("a,b\n1,2\n", TableIOOptions.options().rowFilter("a", 0, 1));
+	}
+
+	@Test
+	public void testRowRange() throws IOException {
+		final File file = createTempFile("testRowRange");
+		final File sidecar = new File(file.getPath() + RowIndex.SUFFIX);
+		sidecar.deleteOnExit();
+		final StringBuilder sb = new StringBuilder("Row,Value,Note\r\n");
+		for (int r = 0; r < 5000; r++) {
+			sb.append('r').append(r).append(',').append(r).append(',');
+			sb.append(r % 100 == 0 ? "\"multi\r\nline\"" : "x").append("\r\n");
+			if (r % 777 == 0) sb.append("\r\n");
+		}
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		final FileLocation location = new FileLocation(file);
+
+		final TableIOOptions options = TableIOOptions.options() //
+			.rowOffset(2345).rowLimit(10);
+		final Table scanned = tableIO.open(location, options);
+		assertEquals(10, scanned.getRowCount());
+		assertEquals("r2345", scanned.getRowHeader(0));
+		assertEquals(2354, scanned.get(0, 9));
+		assertFalse(sidecar.exists());
+
+		options.rowIndex(100);
+		final Table indexed = tableIO.open(location, options);
+		assertTrue(sidecar.exists());
+		assertEquals(scanned.get(0), indexed.get(0));
+		for (int r = 0; r < 10; r++)
+			assertEquals(scanned.getRowHeader(r), indexed.getRowHeader(r));
+		options.rowOffset(2400).rowLimit(2);
+		assertEquals("multi\r\nline", tableIO.open(location, options).get(1, 0));
+
+		// a stale index is rebuilt
+		Files.write(file.toPath(), "r5000,5000,y\r\n".getBytes(
+			StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		options.rowOffset(4995).rowLimit(100);
+		final Table tail = tableIO.open(location, options);
+		assertEquals(6, tail.getRowCount());
+		assertEquals("r5000", tail.getRowHeader(5));
+		options.rowOffset(6000);
+		assertEquals(0, tableIO.open(location, options).getRowCount());
+	}
+
+	@Test
+	public void testCompressed() throws IOException {
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn area = new DoubleColumn("Area");
+		final GenericColumn label = new GenericColumn("Label");
+		for (int r = 0; r < 20000; r++) {
+			area.add(r / 4.0);
+			label.add("cell " + r % 10);
+		}
+		table.add(area);
+		table.add(label);
+		for (int r = 0; r < 20000; r++)
+			table.setRowHeader(r, "r" + r);
+		final TableIOOptions options = TableIOOptions.options().columnDelimiter(
+			'\t');
+		final byte[] plain = saveBytes(table, options);
+
+		for (final String suffix : new String[] { ".tsv.gz", ".tsv.deflate" }) {
+			final File file = File.createTempFile(getClass().getName() +
+				".compressed", suffix);
+			file.deleteOnExit();
+			// NB: The file is longer than what is written over it.
+			Files.write(file.toPath(), new byte[plain.length]);
+			tableIO.save(table, new FileLocation(file), options);
+			assertTrue(file.length() < plain.length / 4);
+			if (suffix.endsWith(".gz")) {
+				try (final InputStream in = new GZIPInputStream(Files.newInputStream(
+					file.toPath())))
+				{
+					assertArrayEquals(plain, readAll(in));
+				}
+			}
+
+			for (final boolean background : new boolean[] { false, true }) {
+				options.backgroundDecompression(background);
+				final Table result = tableIO.open(new FileLocation(file), options);
+				assertEquals(2, result.getColumnCount());
+				assertEquals(20000, result.getRowCount());
+				assertEquals(area, result.get(0));
+				assertEquals("cell 7", result.get(1, 19997));
+				assertEquals("r19999", result.getRowHeader(19999));
+
+				final Table rows = tableIO.open(new FileLocation(file), options
+					.rowOffset(12345).rowLimit(3));
+				assertEquals(3, rows.getRowCount());
+				assertEquals(12346 / 4.0, rows.get(0, 1));
+				assertEquals("r12347", rows.getRowHeader(2));
+				options.rowOffset(0).rowLimit(Integer.MAX_VALUE);
+			}
+		}
+	}
+
+	@Test
+	public void testTsv() throws IOException {
+		final GenericTable table = new DefaultGenericTable();
+		final GenericColumn label = new GenericColumn("Label");
+		label.add("a,b");
+		label.add("c");
+		final IntColumn count = new IntColumn("Count");
+		count.fill(new int[] { 1, 2 });
+		table.add(label);
+		table.add(count);
+		final TableIOOptions options = TableIOOptions.options().writeRowHeaders(
+			false).readRowHeaders(false);
+		for (final String suffix : new String[] { ".tsv", ".TSV.gz" }) {
+			final File file = File.createTempFile(getClass().getName() + ".tsv",
+				suffix);
+			file.deleteOnExit();
+			tableIO.save(table, new FileLocation(file), options);
+			if (suffix.equals(".tsv")) {
+				assertEquals("Label\tCount\na,b\t1\nc\t2\n", new String(Files
+					.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+			}
+			final Table result = tableIO.open(new FileLocation(file), options);
+			assertEquals(2, result.getColumnCount());
+			assertEquals("a,b", result.get(0, 0));
+			assertEquals(2, result.get(1, 1));
+		}
+	}
+
+	@Test
+	public void testSavePrimitiveColumns() throws IOException {
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn area = new DoubleColumn("Area");
+		area.fill(new double[] { 0.5, -1e300, Double.NaN });
+		final LongColumn id = new LongColumn("Id");
+		id.fill(new long[] { Long.MIN_VALUE, 0, 42 });
+		final IntColumn slice = new IntColumn("Slice");
+		slice.fill(new int[] { -7, 8, 9 });
+		slice.set(1, null);
+		final BoolColumn valid = new BoolColumn("Valid");
+		valid.fill(new boolean[] { true, false, true });
+		table.add(area);
+		table.add(id);
+		table.add(slice);
+		table.add(valid);
+		table.setRowCount(3);
+		final TableIOOptions options = TableIOOptions.options() //
+			.writeRowHeaders(false).rowDelimiter("\n");
+		assertEquals("Area,Id,Slice,Valid\n" + //
+			"0.5,-9223372036854775808,-7,true\n" + //
+			"-1.0E300,0,null,false\n" + //
+			"NaN,42,9,true\n", saveTable(table, options));
+
+		options.columnDelimiter('.').columnFormatter(3, v -> (Boolean) v ? "Y"
+			: "N");
+		assertEquals("Area.Id.Slice.Valid\n" + //
+			"'0.5'.-9223372036854775808.-7.Y\n" + //
+			"'-1.0E300'.0.null.N\n" + //
+			"NaN.42.9.Y\n", saveTable(table, options.quote('\'')));
+	}
+
+	@Test
+	public void testSaveNumberFormatter() throws IOException {
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn area = new DoubleColumn("Area");
+		area.fill(new double[] { 1e23, 0.125, -2 });
+		final GenericColumn mixed = new GenericColumn("Mixed");
+		mixed.add(1234.5f);
+		mixed.add("n/a");
+		mixed.add(3.0);
+		table.add(area);
+		table.add(mixed);
+		final TableIOOptions options = TableIOOptions.options() //
+			.writeRowHeaders(false).rowDelimiter("\n");
+		assertEquals("Area,Mixed\n1.0E23,1234.5\n0.125,n/a\n-2.0,3.0\n",
+			saveTable(table, options));
+
+		options.columnFormatter(0, NumberFormatter.fixed(2)).columnFormatter(1,
+			NumberFormatter.scientific(1));
+		assertEquals("Area,Mixed\n" + //
+			"100000000000000000000000.00,1.2E3\n" + //
+			"0.13,n/a\n" + //
+			"-2.00,3.0E0\n", saveTable(table, options));
+	}
+
+	@Test
+	public void testSaveLineBreaks() throws IOException {
+		final GenericTable table = new DefaultGenericTable();
+		final GenericColumn note = new GenericColumn("Note");
+		note.add("two\nlines");
+		note.add("carriage\rreturn");
+		note.add("both\r\n");
+		final GenericColumn label = new GenericColumn("Label");
+		label.add("a");
+		label.add("b");
+		label.add("c");
+		table.add(note);
+		table.add(label);
+		final TableIOOptions options = TableIOOptions.options() //
+			.writeRowHeaders(false).rowDelimiter("\n");
+		final String saved = saveTable(table, options);
+		assertEquals("Note,Label\n\"two\nlines\",a\n" + //
+			"\"carriage\rreturn\",b\n\"both\r\n\",c\n", saved);
+
+		final Table<?, ?> result = openTable(saved, options.readRowHeaders(false)
+			.columnType(0, String.class).columnType(1, String.class));
+		assertEquals(2, result.getColumnCount());
+		assertEquals(3, result.getRowCount());
+		for (int row = 0; row < 3; row++) {
+			assertEquals(note.get(row), result.get(0, row));
+			assertEquals(label.get(row), result.get(1, row));
+		}
+	}
+
+	@Test
+	public void testSaveParallel() throws IOException {
+		final int rowCount = 100_000;
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn x = new DoubleColumn("X");
+		final IntColumn n = new IntColumn("N");
+		final GenericColumn label = new GenericColumn("Label");
+		for (int row = 0; row < rowCount; row++) {
+			x.add(row / 7.0);
+			n.add(row);
+			label.add(row % 3 == 0 ? "a,\"b\"" : "row " + row);
+		}
+		table.add(x);
+		table.add(n);
+		table.add(label);
+		for (int row = 0; row < rowCount; row++)
+			table.setRowHeader(row, "r" + row);
+		final String expected = saveTable(table, TableIOOptions.options());
+		final String actual = saveTable(table, TableIOOptions.options()
+			.threadCount(4));
+		assertEquals(expected.length(), actual.length());
+		assertEquals(expected, actual);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidNumber() throws IOException {
+		openTable("x\n1\n2.5\n", TableIOOptions.options().readRowHeaders(false)
+			.columnType(0, Integer.class));
+	}
+
 	@Test
 	public void testGuessParser() {
 		assertEquals("test", guessParser("test").apply("test"));
@@ -316,6 +834,12 @@ public class DefaultTableIOPluginTest {
 
 	private Table openTable(final String tableSource,
 		final TableIOOptions options) throws IOException
+	{
+		return openTable(tableSource.getBytes(), options);
+	}
+
+	private Table openTable(final byte[] tableSource,
+		final TableIOOptions options) throws IOException
 	{
 		final DataHandleService dataHandleService = //
 			ctx.service(DataHandleService.class);
@@ -324,7 +848,7 @@ public class DefaultTableIOPluginTest {
 		try (final DataHandle<Location> destHandle = //
 			dataHandleService.create(new FileLocation(tempFile)))
 		{
-			destHandle.write(tableSource.getBytes());
+			destHandle.write(tableSource);
 			result = tableIO.open(destHandle.get(), options);
 		}
 		return result;
@@ -346,6 +870,23 @@ public class DefaultTableIOPluginTest {
 		return result;
 	}
 
+	private byte[] saveBytes(final Table table, final TableIOOptions options)
+		throws IOException
+	{
+		final File tempFile = createTempFile("saveBytes");
+		tableIO.save(table, new FileLocation(tempFile), options);
+		return Files.readAllBytes(tempFile.toPath());
+	}
+
+	private static byte[] readAll(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) >= 0)
+			out.write(buf, 0, n);
+		return out.toByteArray();
+	}
+
 	private String makeTableSource(final String[][] cells, final String separator,
 		final String eol)
 	{
@@ -0,0 +1,226 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.IOService;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.table.BoolColumn;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.ShortColumn;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link JsonLinesTableIOPlugin}.
+ */
+@SuppressWarnings("rawtypes")
+public class JsonLinesTableIOPluginTest {
+
+	private Context ctx;
+	private JsonLinesTableIOPlugin tableIO;
+
+	@Before
+	public void setUp() {
+		ctx = new Context(IOService.class, DataHandleService.class);
+		tableIO = ctx.service(IOService.class)//
+			.getInstance(JsonLinesTableIOPlugin.class);
+	}
+
+	@After
+	public void tearDown() {
+		ctx.dispose();
+		ctx = null;
+		tableIO = null;
+	}
+
+	@Test
+	public void testSupports() throws IOException {
+		final File file = createTempFile("supports");
+		assertTrue(tableIO.supportsOpen(new FileLocation(file)));
+		assertTrue(tableIO.supportsSave(new FileLocation(file)));
+		assertTrue(tableIO.supportsSave(new FileLocation("events.ndjson")));
+		assertFalse(tableIO.supportsSave(new FileLocation("table.json")));
+		assertFalse(tableIO.supportsOpen(new FileLocation("missing.jsonl")));
+	}
+
+	@Test
+	public void testWrite() throws IOException {
+		final GenericTable table = createTable(3);
+		table.setColumnHeader(3, null);
+		final File file = createTempFile("write");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final String[] lines = new String(Files.readAllBytes(file.toPath()),
+			StandardCharsets.UTF_8).split("\n", -1);
+		assertEquals(4, lines.length);
+		assertEquals("{\"__index_level_0__\":\"row 0\",\"Area\":0.0," +
+			"\"Count\":0,\"Valid\":true,\"3\":0,\"Label\":\"\\\"ü\\\"\\n0\"}",
+			lines[0]);
+		assertEquals("{\"__index_level_0__\":\"row 1\",\"Area\":null," +
+			"\"Count\":null,\"Valid\":false,\"3\":1,\"Label\":null}", lines[1]);
+		assertEquals("", lines[3]);
+
+		// without row headers
+		tableIO.save(table, new FileLocation(file), new TableIOOptions()
+			.writeRowHeaders(false));
+		assertTrue(new String(Files.readAllBytes(file.toPath()),
+			StandardCharsets.UTF_8).startsWith("{\"Area\":0.0,"));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final GenericTable table = createTable(10000);
+		final File file = createTempFile("roundTrip");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file));
+		assertEquals(5, result.getColumnCount());
+		assertEquals(10000, result.getRowCount());
+		assertTrue(result.get(0) instanceof DoubleColumn);
+		assertTrue(result.get(1) instanceof IntColumn);
+		assertTrue(result.get(2) instanceof BoolColumn);
+		assertTrue(result.get(3) instanceof IntColumn);
+		assertTrue(result.get(4) instanceof GenericColumn);
+		for (int c = 0; c < 5; c++) {
+			assertEquals(table.getColumnHeader(c), result.getColumnHeader(c));
+			for (int r = 0; r < 10000; r++) {
+				final Object expected = table.get(c, r);
+				assertEquals(expected instanceof Short ? (int) (Short) expected
+					: expected, result.get(c, r));
+			}
+		}
+		for (int r = 0; r < 10000; r++)
+			assertEquals(table.getRowHeader(r), result.getRowHeader(r));
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		final File file = createTempFile("read");
+		Files.write(file.toPath(), ("{\"id\": 1, \"name\": \"a\", \"tags\": [1]}\n" +
+			"{\"name\": \"b\", \"id\": 3000000000, \"extra\": {\"x\": null}}\n" +
+			"\n" + //
+			"{\"id\": null, \"id\": 5, \"late\": 2.5}\n" + //
+			"{\"late\": true, \"name\": null}\n").getBytes(StandardCharsets.UTF_8));
+		final Table result = tableIO.open(new FileLocation(file),
+			new TableIOOptions().sampleSize(2));
+		assertEquals(5, result.getColumnCount());
+		assertEquals(4, result.getRowCount());
+		assertEquals("id", result.getColumnHeader(0));
+		assertEquals("name", result.getColumnHeader(1));
+		assertEquals("tags", result.getColumnHeader(2));
+		assertEquals("extra", result.getColumnHeader(3));
+		assertEquals("late", result.getColumnHeader(4));
+		assertTrue(result.get(0) instanceof LongColumn);
+		assertEquals(3000000000L, result.get(0, 1));
+		// the first of duplicate keys wins
+		assertNull(result.get(0, 2));
+		assertNull(result.get(0, 3));
+		assertEquals("b", result.get(1, 1));
+		assertNull(result.get(1, 2));
+		assertNull(result.get(1, 3));
+		assertEquals("[1]", result.get(2, 0));
+		assertEquals("{\"x\": null}", result.get(3, 1));
+		// keys first seen after the sample hold strings
+		assertNull(result.get(4, 1));
+		assertEquals("2.5", result.get(4, 2));
+		assertEquals("true", result.get(4, 3));
+		assertNull(result.getRowHeader(0));
+	}
+
+	@Test
+	public void testSelection() throws IOException {
+		final GenericTable table = createTable(1000);
+		final File file = createTempFile("selection");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file),
+			new TableIOOptions().selectColumns("Label", "Area").rowOffset(995)
+				.rowLimit(10));
+		assertEquals(2, result.getColumnCount());
+		assertEquals(5, result.getRowCount());
+		assertEquals("Area", result.getColumnHeader(0));
+		assertEquals("Label", result.getColumnHeader(1));
+		for (int r = 0; r < 5; r++) {
+			assertEquals(table.get(0, r + 995), result.get(0, r));
+			assertEquals(table.get(4, r + 995), result.get(1, r));
+			assertEquals(table.getRowHeader(r + 995), result.getRowHeader(r));
+		}
+	}
+
+	private static GenericTable createTable(final int rowCount) {
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn area = new DoubleColumn("Area");
+		final IntColumn count = new IntColumn("Count");
+		final BoolColumn valid = new BoolColumn("Valid");
+		final ShortColumn channel = new ShortColumn("Channel");
+		final GenericColumn label = new GenericColumn("Label");
+		for (int r = 0; r < rowCount; r++) {
+			area.add(r / 3.0);
+			count.add(-r);
+			valid.add(r % 3 == 0);
+			channel.add((short) (r % 4));
+			label.add(r % 5 == 1 ? null : "\"ü\"\n" + r);
+		}
+		area.set(1, null);
+		count.set(1, null);
+		table.add(area);
+		table.add(count);
+		table.add(valid);
+		table.add(channel);
+		table.add(label);
+		for (int r = 0; r < rowCount; r++)
+			table.setRowHeader(r, "row " + r);
+		return table;
+	}
+
+	private File createTempFile(final String prefix) throws IOException {
+		final File tempFile = //
+			File.createTempFile(getClass().getName() + "." + prefix, ".jsonl");
+		tempFile.deleteOnExit();
+		return tempFile;
+	}
+}
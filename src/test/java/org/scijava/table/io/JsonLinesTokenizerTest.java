@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link JsonLinesTokenizer}.
+ */
+public class JsonLinesTokenizerTest {
+
+	@Test
+	public void testRecords() throws IOException {
+		final String text = "{\"a\": 1, \"b\": -2.5e3, \"c\": true}\r\n" +
+			"\n  \n" + "{}\n" + "{ \"a\" : null ,\"b\":false }";
+		for (final boolean trickle : new boolean[] { false, true }) {
+			final List<List<String>> records = tokenize(text, trickle);
+			assertEquals(3, records.size());
+			assertEquals(Arrays.asList("a=1#1", "b=-2.5e3#1", "c=true#2"), records
+				.get(0));
+			assertEquals(Arrays.asList(), records.get(1));
+			assertEquals(Arrays.asList("a=null#3", "b=false#2"), records.get(2));
+		}
+	}
+
+	@Test
+	public void testStrings() throws IOException {
+		final String text = "{\"k\\\"ey\": \"tab\\there \\u00fc\\ud83d\\ude00 " +
+			"\\\\ \\/\", \"ü\": \"\"}\n";
+		for (final boolean trickle : new boolean[] { false, true }) {
+			final List<List<String>> records = tokenize(text, trickle);
+			assertEquals(Arrays.asList("k\"ey=tab\there ü😀 \\ /#0",
+				"ü=#0"), records.get(0));
+		}
+	}
+
+	@Test
+	public void testNested() throws IOException {
+		final String text = "{\"a\": {\"x\": [1, \"]}\"]}, \"b\": []}\n";
+		final List<List<String>> records = tokenize(text, false);
+		assertEquals(Arrays.asList("a={\"x\": [1, \"]}\"]}#4", "b=[]#4"), records
+			.get(0));
+	}
+
+	@Test
+	public void testSkip() throws IOException {
+		final JsonLinesTokenizer tokenizer = tokenizer(
+			"{\"a\": 1}\n\n{\"a\": 2}\n{\"a\": 3}\n", false);
+		assertTrue(tokenizer.skip());
+		assertTrue(tokenizer.skip());
+		assertTrue(tokenizer.next());
+		assertEquals(19, tokenizer.getRecordOffset());
+		assertEquals(3, tokenizer.buffer()[tokenizer.start(0)] - '0');
+		assertFalse(tokenizer.next());
+	}
+
+	@Test
+	public void testInvalid() throws IOException {
+		for (final String text : new String[] { "[1, 2]", "{\"a\" 1}",
+			"{\"a\": 1", "{\"a\": tru}", "{\"a\": \"b}", "{\"a\": 1} x" })
+		{
+			try {
+				tokenize("{}\n" + text + "\n", false);
+				fail("Expected invalid JSON to fail: " + text);
+			}
+			catch (final IOException exc) {
+				assertTrue(exc.getMessage().startsWith("Invalid JSON at byte "));
+			}
+		}
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		// a partly written last record, after bytes left by an earlier one
+		final StringBuilder spaces = new StringBuilder("{\"a\":");
+		while (spaces.length() < JsonLinesTokenizer.CHUNK_SIZE)
+			spaces.append(' ');
+		for (final String text : new String[] { "{\"a\":2", "{\"a\":", "{\"a\"",
+			"{", "{\"a\":\"x\\", "{\"a\":\"\\u00", "{\"a\":[\"x", spaces.toString() })
+		{
+			for (final boolean trickle : new boolean[] { false, true }) {
+				try {
+					tokenize("{\"a\":1}\n" + text, trickle);
+					fail("Expected a truncated record to fail: " + text);
+				}
+				catch (final IOException exc) {
+					assertTrue(exc.getMessage().startsWith("Invalid JSON at byte "));
+				}
+			}
+		}
+	}
+
+	private static JsonLinesTokenizer tokenizer(final String text,
+		final boolean trickle)
+	{
+		InputStream in = new ByteArrayInputStream(text.getBytes(
+			StandardCharsets.UTF_8));
+		if (trickle) in = new TrickleInputStream(in);
+		return new JsonLinesTokenizer(in, 0);
+	}
+
+	/** Tokenizes text into records of fields, as key=value#kind. */
+	private static List<List<String>> tokenize(final String text,
+		final boolean trickle) throws IOException
+	{
+		final JsonLinesTokenizer tokenizer = tokenizer(text, trickle);
+		final List<List<String>> records = new ArrayList<>();
+		while (tokenizer.next()) {
+			final byte[] buf = tokenizer.buffer();
+			final List<String> fields = new ArrayList<>();
+			for (int f = 0; f < tokenizer.getFieldCount(); f++) {
+				fields.add(string(buf, tokenizer.keyStart(f), tokenizer.keyEnd(f)) +
+					"=" + string(buf, tokenizer.start(f), tokenizer.end(f)) + "#" +
+					tokenizer.kind(f));
+			}
+			records.add(fields);
+		}
+		return records;
+	}
+
+	private static String string(final byte[] buf, final int start,
+		final int end)
+	{
+		return new String(buf, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	// -- Helper classes --
+
+	/** Returns a single byte per read, so every byte is a chunk boundary. */
+	private static class TrickleInputStream extends InputStream {
+
+		private final InputStream in;
+
+		private TrickleInputStream(final InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return in.read();
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+			throws IOException
+		{
+			return in.read(b, off, Math.min(len, 1));
+		}
+	}
+}
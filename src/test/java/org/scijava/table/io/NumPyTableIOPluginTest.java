@@ -0,0 +1,291 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.IOService;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.table.BoolColumn;
+import org.scijava.table.DefaultDoubleTable;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.DoubleTable;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.ShortColumn;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link NumPyTableIOPlugin}.
+ */
+@SuppressWarnings("rawtypes")
+public class NumPyTableIOPluginTest {
+
+	private Context ctx;
+	private NumPyTableIOPlugin tableIO;
+
+	@Before
+	public void setUp() {
+		ctx = new Context(IOService.class, DataHandleService.class);
+		tableIO = ctx.service(IOService.class)//
+			.getInstance(NumPyTableIOPlugin.class);
+	}
+
+	@After
+	public void tearDown() {
+		ctx.dispose();
+		ctx = null;
+		tableIO = null;
+	}
+
+	@Test
+	public void testSupports() throws IOException {
+		final File file = createTempFile("supports", ".npy");
+		assertTrue(tableIO.supportsOpen(new FileLocation(file)));
+		assertTrue(tableIO.supportsSave(new FileLocation(file)));
+		assertTrue(tableIO.supportsSave(new FileLocation("table.npz")));
+		assertFalse(tableIO.supportsSave(new FileLocation("table.csv")));
+		assertFalse(tableIO.supportsOpen(new FileLocation("missing.npy")));
+	}
+
+	@Test
+	public void testDoubleTable() throws IOException {
+		final DoubleTable table = new DefaultDoubleTable(3, 1000);
+		for (int c = 0; c < 3; c++) {
+			for (int r = 0; r < 1000; r++)
+				table.setValue(c, r, c * 1000 + r / 4.0);
+		}
+		for (final boolean fortranOrder : new boolean[] { false, true }) {
+			final File file = createTempFile("double", ".npy");
+			tableIO.save(table, new FileLocation(file), new TableIOOptions()
+				.fortranOrder(fortranOrder));
+
+			final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file
+				.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+			final int dataOffset = 10 + bytes.getShort(8);
+			assertEquals(0, dataOffset % 64);
+			assertEquals(dataOffset + 3 * 1000 * 8, bytes.limit());
+			final String header = new String(bytes.array(), 10, dataOffset - 10,
+				StandardCharsets.ISO_8859_1);
+			assertEquals("{'descr': '<f8', 'fortran_order': " + (fortranOrder
+				? "True" : "False") + ", 'shape': (1000, 3), }", header.trim());
+			// the second value is the next row in Fortran order, else column
+			assertEquals(fortranOrder ? 0.25 : 1000, bytes.getDouble(dataOffset +
+				8), 0);
+
+			final Table result = tableIO.open(new FileLocation(file));
+			assertEquals(3, result.getColumnCount());
+			assertEquals(1000, result.getRowCount());
+			for (int c = 0; c < 3; c++) {
+				assertTrue(result.get(c) instanceof DoubleColumn);
+				assertNull(result.getColumnHeader(c));
+				for (int r = 0; r < 1000; r++)
+					assertEquals(table.get(c, r), result.get(c, r));
+			}
+		}
+	}
+
+	@Test
+	public void testStructured() throws IOException {
+		final GenericTable table = createTable(1000);
+		final File file = createTempFile("structured", ".npy");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file));
+		assertEquals(5, result.getColumnCount());
+		assertEquals(1000, result.getRowCount());
+		assertTrue(result.get(0) instanceof DoubleColumn);
+		// missing values become NaN, or empty strings
+		assertTrue(result.get(1) instanceof DoubleColumn);
+		assertEquals(Double.NaN, result.get(1, 7));
+		assertEquals(-8.0, result.get(1, 8));
+		assertTrue(result.get(2) instanceof BoolColumn);
+		assertTrue(result.get(3) instanceof ShortColumn);
+		assertTrue(result.get(4) instanceof GenericColumn);
+		assertEquals("", result.get(4, 5));
+		for (int c = 0; c < 5; c++) {
+			assertEquals(table.getColumnHeader(c), result.getColumnHeader(c));
+		}
+		for (int r = 0; r < 1000; r++) {
+			assertEquals(table.get(0, r), result.get(0, r));
+			assertEquals(table.get(2, r), result.get(2, r));
+			assertEquals(table.get(3, r), result.get(3, r));
+			if (r != 5) assertEquals(table.get(4, r), result.get(4, r));
+			assertNull(result.getRowHeader(r));
+		}
+	}
+
+	@Test
+	public void testArchive() throws IOException {
+		final GenericTable table = createTable(1000);
+		((IntColumn) table.get(1)).set(7, -7);
+		for (final String codec : new String[] { "uncompressed", "deflate" }) {
+			final File file = createTempFile("archive", ".npz");
+			tableIO.save(table, new FileLocation(file), new TableIOOptions()
+				.compression(codec));
+			final Table result = tableIO.open(new FileLocation(file));
+			assertEquals(5, result.getColumnCount());
+			assertEquals(1000, result.getRowCount());
+			assertTrue(result.get(1) instanceof IntColumn);
+			for (int c = 0; c < 5; c++) {
+				assertEquals(table.getColumnHeader(c), result.getColumnHeader(c));
+				for (int r = 0; r < 1000; r++) {
+					if (c != 4 || r != 5) assertEquals(table.get(c, r), result.get(c,
+						r));
+				}
+			}
+			for (int r = 0; r < 1000; r++)
+				assertEquals(table.getRowHeader(r), result.getRowHeader(r));
+		}
+	}
+
+	@Test
+	public void testSelection() throws IOException {
+		final GenericTable table = createTable(10000);
+		for (final String extension : new String[] { ".npy", ".npz" }) {
+			final File file = createTempFile("selection", extension);
+			tableIO.save(table, new FileLocation(file), new TableIOOptions());
+			final Table result = tableIO.open(new FileLocation(file),
+				new TableIOOptions().selectColumns("Label", "Area").rowOffset(2995)
+					.rowLimit(10));
+			assertEquals(2, result.getColumnCount());
+			assertEquals(10, result.getRowCount());
+			assertEquals("Area", result.getColumnHeader(0));
+			assertEquals("Label", result.getColumnHeader(1));
+			for (int r = 0; r < 10; r++) {
+				assertEquals(table.get(0, r + 2995), result.get(0, r));
+				assertEquals(table.get(4, r + 2995), result.get(1, r));
+			}
+		}
+	}
+
+	@Test
+	public void testByteOrder() throws IOException {
+		// a big-endian array of 2 rows and 3 columns, in Fortran order
+		final File file = createTempFile("bigEndian", ".npy");
+		final ByteBuffer data = ByteBuffer.allocate(24);
+		for (int c = 0; c < 3; c++) {
+			for (int r = 0; r < 2; r++)
+				data.putInt(-(10 * r + c));
+		}
+		writeArray(file,
+			"{'descr': '>i4', 'fortran_order': True, 'shape': (2, 3), }", data
+				.array());
+		final Table result = tableIO.open(new FileLocation(file));
+		assertEquals(3, result.getColumnCount());
+		assertEquals(2, result.getRowCount());
+		assertTrue(result.get(0) instanceof IntColumn);
+		assertEquals(-12, result.get(2, 1));
+		assertEquals(-10, result.get(0, 1));
+
+		// unsigned integers widen
+		final File unsigned = createTempFile("unsigned", ".npy");
+		writeArray(unsigned,
+			"{'descr': [('id', '<u4'), ('', '|V4')], 'fortran_order': False, " +
+				"'shape': (2,), }", new byte[] { -1, -1, -1, -1, 0, 0, 0, 0, 1, 0, 0,
+					0, 0, 0, 0, 0 });
+		final Table ids = tableIO.open(new FileLocation(unsigned));
+		assertEquals(1, ids.getColumnCount());
+		assertEquals("id", ids.getColumnHeader(0));
+		assertTrue(ids.get(0) instanceof LongColumn);
+		assertEquals(0xffffffffL, ids.get(0, 0));
+		assertEquals(1L, ids.get(0, 1));
+	}
+
+	private static void writeArray(final File file, final String header,
+		final byte[] data) throws IOException
+	{
+		final StringBuilder sb = new StringBuilder(header);
+		while ((10 + sb.length() + 1) % 64 != 0)
+			sb.append(' ');
+		sb.append('\n');
+		try (final OutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[] { (byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0,
+				(byte) sb.length(), 0 });
+			out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+			out.write(data);
+		}
+	}
+
+	private static GenericTable createTable(final int rowCount) {
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn area = new DoubleColumn("Area");
+		final IntColumn count = new IntColumn("Count");
+		final BoolColumn valid = new BoolColumn("Valid");
+		final ShortColumn channel = new ShortColumn("Channel");
+		final GenericColumn label = new GenericColumn("Label");
+		for (int r = 0; r < rowCount; r++) {
+			area.add(r / 3.0);
+			count.add(-r);
+			valid.add(r % 3 == 0);
+			channel.add((short) (r % 4));
+			label.add("ü " + r);
+		}
+		count.set(7, null);
+		label.set(5, null);
+		table.add(area);
+		table.add(count);
+		table.add(valid);
+		table.add(channel);
+		table.add(label);
+		for (int r = 0; r < rowCount; r++)
+			table.setRowHeader(r, "row " + r);
+		return table;
+	}
+
+	private File createTempFile(final String prefix, final String suffix)
+		throws IOException
+	{
+		final File tempFile = //
+			File.createTempFile(getClass().getName() + "." + prefix, suffix);
+		tempFile.deleteOnExit();
+		return tempFile;
+	}
+}
@@ -0,0 +1,322 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.IOService;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.table.BoolColumn;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.ShortColumn;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link ParquetTableIOPlugin}.
+ */
+@SuppressWarnings("rawtypes")
+public class ParquetTableIOPluginTest {
+
+	private Context ctx;
+	private ParquetTableIOPlugin tableIO;
+
+	@Before
+	public void setUp() {
+		ctx = new Context(IOService.class, DataHandleService.class);
+		tableIO = ctx.service(IOService.class)//
+			.getInstance(ParquetTableIOPlugin.class);
+	}
+
+	@After
+	public void tearDown() {
+		ctx.dispose();
+		ctx = null;
+		tableIO = null;
+	}
+
+	@Test
+	public void testSupports() throws IOException {
+		final File file = createTempFile("supports");
+		assertTrue(tableIO.supportsOpen(new FileLocation(file)));
+		assertTrue(tableIO.supportsSave(new FileLocation(file)));
+		assertFalse(tableIO.supportsSave(new FileLocation("table.csv")));
+		assertFalse(tableIO.supportsOpen(new FileLocation("missing.parquet")));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		for (final String codec : new String[] { "snappy", "gzip",
+			"uncompressed" })
+		{
+			final GenericTable table = createTable(100000);
+			final File file = createTempFile(codec);
+			tableIO.save(table, new FileLocation(file), new TableIOOptions()
+				.compression(codec).rowGroupSize(30000));
+			assertEqualTables(table, tableIO.open(new FileLocation(file)));
+		}
+	}
+
+	/**
+	 * Reads files encoded independently of the plugin, from the specification,
+	 * as parquet-mr and pyarrow write them; see
+	 * {@code src/test/scripts/make_parquet_fixtures.py}.
+	 */
+	@Test
+	public void testFixtures() throws IOException, URISyntaxException {
+		for (final String name : new String[] { "fixture-snappy.parquet",
+			"fixture-gzip.parquet" })
+		{
+			assertFixture(name);
+		}
+
+		// row groups are skipped by their statistics: those of the second one
+		// claim ids 100 to 199, while it holds ids 10 to 19
+		final FileLocation stats = fixture("fixture-stats.parquet");
+		assertEquals(20, tableIO.open(stats).getRowCount());
+		assertEquals(0, tableIO.open(stats, new TableIOOptions().rowFilter("id",
+			10, 19)).getRowCount());
+		assertEquals(10, tableIO.open(stats, new TableIOOptions().rowFilter("id",
+			10, 150)).getRowCount());
+	}
+
+	/**
+	 * Reads files written by pyarrow itself, if they have been generated; see
+	 * {@code src/test/scripts/make_parquet_reference.py}.
+	 */
+	@Test
+	public void testReferenceFixtures() throws IOException, URISyntaxException {
+		for (final String name : new String[] { "reference-snappy.parquet",
+			"reference-gzip.parquet" })
+		{
+			assumeNotNull(getClass().getResource(name));
+			assertFixture(name);
+		}
+	}
+
+	@Test
+	public void testDictionary() throws IOException {
+		final GenericTable table = createTable(1000);
+		final File file = createTempFile("dictionary");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file));
+		// rows share the dictionary's values
+		assertEquals("mutant", result.get(5, 1));
+		assertSame(result.get(5, 1), result.get(5, 3));
+	}
+
+	@Test
+	public void testSelection() throws IOException {
+		final GenericTable table = createTable(10000);
+		final File file = createTempFile("selection");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions()
+			.rowGroupSize(1000));
+		final Table result = tableIO.open(new FileLocation(file),
+			new TableIOOptions().selectColumns("Label", "Area").rowOffset(2995)
+				.rowLimit(10));
+		assertEquals(2, result.getColumnCount());
+		assertEquals(10, result.getRowCount());
+		assertEquals("Area", result.getColumnHeader(0));
+		assertEquals("Label", result.getColumnHeader(1));
+		for (int r = 0; r < 10; r++) {
+			assertEquals(table.get(0, r + 2995), result.get(0, r));
+			assertEquals(table.get(4, r + 2995), result.get(1, r));
+			assertEquals(table.getRowHeader(r + 2995), result.getRowHeader(r));
+		}
+
+		final Table past = tableIO.open(new FileLocation(file),
+			new TableIOOptions().rowOffset(20000));
+		assertEquals(6, past.getColumnCount());
+		assertEquals(0, past.getRowCount());
+	}
+
+	@Test
+	public void testRowFilter() throws IOException {
+		final GenericTable table = createTable(10000);
+		final File file = createTempFile("rowFilter");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions()
+			.rowGroupSize(1000));
+		// Area is r / 3, so rows 3000 to 3030 match
+		final Table result = tableIO.open(new FileLocation(file),
+			new TableIOOptions().selectColumns("Count").rowFilter("Area", 1000,
+				1010));
+		assertEquals(1, result.getColumnCount());
+		assertEquals(31, result.getRowCount());
+		for (int r = 0; r < 31; r++) {
+			assertEquals(-(r + 3000), result.get(0, r));
+			assertEquals("row " + (r + 3000), result.getRowHeader(r));
+		}
+
+		// the row range applies to the matching rows; missing values never match
+		final Table page = tableIO.open(new FileLocation(file),
+			new TableIOOptions().rowFilter("Count", -20, 0).rowOffset(5).rowLimit(
+				5));
+		assertEquals(5, page.getRowCount());
+		assertEquals(-5, page.get(1, 0));
+		assertEquals(-10, page.get(1, 4));
+
+		try {
+			tableIO.open(new FileLocation(file), new TableIOOptions().rowFilter(
+				"Label", 0, 1));
+			fail("Expected a non-numeric filter column to fail");
+		}
+		catch (final IOException exc) {
+			assertEquals("Cannot filter by non-numeric column Label", exc
+				.getMessage());
+		}
+	}
+
+	@Test
+	public void testCompact() throws IOException {
+		final GenericTable table = new DefaultGenericTable();
+		final GenericColumn ids = new GenericColumn("Id");
+		ids.add(1L);
+		ids.add(null);
+		ids.add(3L);
+		table.add(ids);
+		final File file = createTempFile("compact");
+		tableIO.save(table, new FileLocation(file), new TableIOOptions());
+		final Table result = tableIO.open(new FileLocation(file));
+		assertTrue(result.get(0) instanceof LongColumn);
+		assertEquals(3L, result.get(0, 2));
+		assertNull(result.get(0, 1));
+		assertNull(result.getRowHeader(0));
+	}
+
+	private static void assertEqualTables(final Table expected,
+		final Table actual)
+	{
+		assertEquals(expected.getColumnCount(), actual.getColumnCount());
+		assertEquals(expected.getRowCount(), actual.getRowCount());
+		for (int c = 0; c < expected.getColumnCount(); c++) {
+			assertEquals(expected.getColumnHeader(c), actual.getColumnHeader(c));
+			assertEquals(expected.get(c).getClass(), actual.get(c).getClass());
+			for (int r = 0; r < expected.getRowCount(); r++)
+				assertEquals(expected.get(c, r), actual.get(c, r));
+		}
+		for (int r = 0; r < expected.getRowCount(); r++)
+			assertEquals(expected.getRowHeader(r), actual.getRowHeader(r));
+	}
+
+	private static GenericTable createTable(final int rowCount) {
+		final GenericTable table = new DefaultGenericTable();
+		final DoubleColumn area = new DoubleColumn("Area");
+		final IntColumn count = new IntColumn("Count");
+		final BoolColumn valid = new BoolColumn("Valid");
+		final ShortColumn channel = new ShortColumn("Channel");
+		final GenericColumn label = new GenericColumn("Label");
+		final GenericColumn genotype = new GenericColumn("Genotype");
+		for (int r = 0; r < rowCount; r++) {
+			area.add(r / 3.0);
+			count.add(-r);
+			valid.add(r % 3 == 0);
+			channel.add((short) (r % 4));
+			label.add(r % 5 == 0 && r > 0 ? null : "ü " + r);
+			genotype.add(r % 7 == 0 ? null : r % 2 == 0 ? "wild type" : "mutant");
+		}
+		count.set(7, null);
+		valid.set(4, null);
+		table.add(area);
+		table.add(count);
+		table.add(valid);
+		table.add(channel);
+		table.add(label);
+		table.add(genotype);
+		for (int r = 0; r < rowCount; r++)
+			table.setRowHeader(r, "row " + r);
+		return table;
+	}
+
+	private void assertFixture(final String name) throws IOException,
+		URISyntaxException
+	{
+		final String[] headers = { "id", "count", "value", "flag", "name" };
+		final Table table = tableIO.open(fixture(name));
+		assertEquals(headers.length, table.getColumnCount());
+		assertEquals(10, table.getRowCount());
+		for (int c = 0; c < headers.length; c++)
+			assertEquals(headers[c], table.getColumnHeader(c));
+		assertTrue(table.get(0) instanceof LongColumn);
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), table
+			.get(0));
+		assertTrue(table.get(1) instanceof IntColumn);
+		assertEquals(Arrays.asList(0, null, 20, 30, null, 50, 60, null, 80, 90),
+			table.get(1));
+		assertTrue(table.get(2) instanceof DoubleColumn);
+		assertEquals(Arrays.asList(0.5, 1.5, null, 0.5, 2.5, null, 1.5, 0.5, null,
+			2.5), table.get(2));
+		assertTrue(table.get(3) instanceof BoolColumn);
+		assertEquals(Arrays.asList(true, false, null, true, true, false, null,
+			false, true, null), table.get(3));
+		assertEquals(Arrays.asList("alpha", "beta", null, "alpha", "\u00fcn\u00ef",
+			"beta", null, "gamma", "alpha", ""), table.get(4));
+
+		// rows of the second row group only
+		final Table filtered = tableIO.open(fixture(name), new TableIOOptions()
+			.rowFilter("count", 40, 60));
+		assertEquals(2, filtered.getRowCount());
+		assertEquals(5L, filtered.get(0, 0));
+		assertEquals("beta", filtered.get(4, 0));
+		assertEquals(6L, filtered.get(0, 1));
+		assertNull(filtered.get(4, 1));
+	}
+
+	private FileLocation fixture(final String name) throws URISyntaxException {
+		return new FileLocation(new File(getClass().getResource(name).toURI()));
+	}
+
+	private File createTempFile(final String prefix) throws IOException {
+		final File tempFile = //
+			File.createTempFile(getClass().getName() + "." + prefix, ".parquet");
+		tempFile.deleteOnExit();
+		return tempFile;
+	}
+}
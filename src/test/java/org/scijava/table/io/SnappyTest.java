@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Snappy}.
+ */
+public class SnappyTest {
+
+	@Test
+	public void testLiteral() throws IOException {
+		final byte[] hello = "Hello".getBytes(StandardCharsets.US_ASCII);
+		final byte[] compressed = { 5, 4 << 2, 'H', 'e', 'l', 'l', 'o' };
+		assertArrayEquals(compressed, Snappy.compress(hello, 0, hello.length));
+		assertArrayEquals(hello, Snappy.uncompress(compressed, 0,
+			compressed.length));
+	}
+
+	@Test
+	public void testCopies() throws IOException {
+		// "abcd" four times: a literal, then a copy overlapping its source
+		final byte[] compressed = { 16, 3 << 2, 'a', 'b', 'c', 'd', 11 << 2 | 2,
+			4, 0 };
+		assertArrayEquals("abcdabcdabcdabcd".getBytes(StandardCharsets.US_ASCII),
+			Snappy.uncompress(compressed, 0, compressed.length));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final Random random = new Random(42);
+		final byte[] data = new byte[300000];
+		for (int i = 0; i < data.length; i++) {
+			// runs and repeats of a small alphabet, with some noise
+			data[i] = i % 1000 < 100 ? (byte) random.nextInt() : (byte) ('a' + i %
+				17 % 5);
+		}
+		final byte[] compressed = Snappy.compress(data, 0, data.length);
+		assertTrue(compressed.length < data.length / 4);
+		assertArrayEquals(data, Snappy.uncompress(compressed, 0,
+			compressed.length));
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TableTokenizer}.
+ */
+public class TableTokenizerTest {
+
+	private static final Charset UTF_8 = StandardCharsets.UTF_8;
+
+	@Test
+	public void testRecords() throws IOException {
+		final String text = "a,b,c\r\n1,,3\r4,5,6\n";
+		for (final boolean trickle : new boolean[] { false, true }) {
+			final List<List<String>> records = tokenize(text, trickle);
+			assertEquals(3, records.size());
+			assertEquals(Arrays.asList("a", "b", "c"), records.get(0));
+			assertEquals(Arrays.asList("1", "", "3"), records.get(1));
+			assertEquals(Arrays.asList("4", "5", "6"), records.get(2));
+		}
+	}
+
+	@Test
+	public void testQuotes() throws IOException {
+		final String text = "\"x,y\",'a''b',\"multi\nline\",par\"t,ial\"ly\n" +
+			"\"\",\"say \"\"hi\"\"\"";
+		for (final boolean trickle : new boolean[] { false, true }) {
+			final List<List<String>> records = tokenize(text, trickle);
+			assertEquals(2, records.size());
+			assertEquals(Arrays.asList("x,y", "'a''b'", "multi\nline", "part,ially"),
+				records.get(0));
+			assertEquals(Arrays.asList("", "say \"hi\""), records.get(1));
+		}
+	}
+
+	@Test
+	public void testBlankLines() throws IOException {
+		final TableTokenizer tokenizer = tokenizer("a\n\n\"\"\n\r\n", false);
+		assertTrue(tokenizer.next());
+		assertFalse(tokenizer.isBlank());
+		assertTrue(tokenizer.next());
+		assertTrue(tokenizer.isBlank());
+		assertTrue(tokenizer.next());
+		assertFalse(tokenizer.isBlank());
+		assertEquals(1, tokenizer.getFieldCount());
+		assertTrue(tokenizer.next());
+		assertTrue(tokenizer.isBlank());
+		assertFalse(tokenizer.next());
+	}
+
+	@Test
+	public void testRecordOffsets() throws IOException {
+		final TableTokenizer tokenizer = tokenizer("ab,c\r\n\"d\ne\"\nf", true);
+		assertTrue(tokenizer.next());
+		assertEquals(0, tokenizer.getRecordOffset());
+		assertTrue(tokenizer.next());
+		assertEquals(6, tokenizer.getRecordOffset());
+		assertTrue(tokenizer.next());
+		assertEquals(12, tokenizer.getRecordOffset());
+		assertFalse(tokenizer.next());
+	}
+
+	@Test
+	public void testLongRecord() throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < TableTokenizer.CHUNK_SIZE; i++)
+			sb.append(i % 10);
+		final String field = sb.toString();
+		final List<List<String>> records = tokenize("x\n" + field + "," + field +
+			"\ny", false);
+		assertEquals(3, records.size());
+		assertEquals(Arrays.asList(field, field), records.get(1));
+		assertEquals(Arrays.asList("y"), records.get(2));
+	}
+
+	@Test
+	public void testSelect() throws IOException {
+		for (final boolean trickle : new boolean[] { false, true }) {
+			final TableTokenizer tokenizer = tokenizer(
+				"a,\"b,\"\"c\",d,e\r\nf,g,\"h\ni\",j\n", trickle);
+			tokenizer.select(new boolean[] { false, true, false, true });
+			assertTrue(tokenizer.next());
+			assertEquals(4, tokenizer.getFieldCount());
+			assertEquals("", tokenizer.string(0, UTF_8));
+			assertEquals("b,\"c", tokenizer.string(1, UTF_8));
+			assertEquals("", tokenizer.string(2, UTF_8));
+			assertEquals("e", tokenizer.string(3, UTF_8));
+			assertTrue(tokenizer.next());
+			assertEquals(4, tokenizer.getFieldCount());
+			assertEquals("g", tokenizer.string(1, UTF_8));
+			assertEquals("", tokenizer.string(2, UTF_8));
+			assertEquals("j", tokenizer.string(3, UTF_8));
+			assertFalse(tokenizer.next());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnbalancedQuote() throws IOException {
+		tokenize("a,\"b\nc,d\n", false);
+	}
+
+	// -- Helper methods --
+
+	private TableTokenizer tokenizer(final String text, final boolean trickle) {
+		InputStream in = new ByteArrayInputStream(text.getBytes(UTF_8));
+		if (trickle) in = new TrickleInputStream(in);
+		return new TableTokenizer(in, 0, ',', '"', UTF_8);
+	}
+
+	private List<List<String>> tokenize(final String text,
+		final boolean trickle) throws IOException
+	{
+		final TableTokenizer tokenizer = tokenizer(text, trickle);
+		final List<List<String>> records = new ArrayList<>();
+		while (tokenizer.next()) {
+			final List<String> fields = new ArrayList<>();
+			for (int f = 0; f < tokenizer.getFieldCount(); f++)
+				fields.add(tokenizer.string(f, UTF_8));
+			records.add(fields);
+		}
+		return records;
+	}
+
+	// -- Helper classes --
+
+	/** Returns a single byte per read, so every byte is a chunk boundary. */
+	private static class TrickleInputStream extends InputStream {
+
+		private final InputStream in;
+
+		private TrickleInputStream(final InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return in.read();
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+			throws IOException
+		{
+			return in.read(b, off, Math.min(len, 1));
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TableWriter}.
+ */
+public class TableWriterTest {
+
+	@Test
+	public void testCells() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final TableWriter writer = writer(out, ',', StandardCharsets.UTF_8);
+		writer.writeText("plain");
+		writer.writeDelimiter();
+		writer.writeText("a,b");
+		writer.writeDelimiter();
+		writer.writeText("say \"hi\"");
+		writer.writeDelimiter();
+		writer.writeText("");
+		writer.writeDelimiter();
+		writer.writeText(null);
+		writer.endRow();
+		writer.writeLong(Long.MIN_VALUE);
+		writer.writeDelimiter();
+		writer.writeLong(0);
+		writer.writeDelimiter();
+		writer.writeDouble(-1.5e-7);
+		writer.writeDelimiter();
+		writer.writeBoolean(true);
+		writer.writeDelimiter();
+		writer.writeText("Zürich");
+		writer.endRow();
+		writer.flush();
+		assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\",\"\",\"\"\r\n" +
+			"-9223372036854775808,0,-1.5E-7,true,Zürich\r\n", new String(out
+				.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testNumberDelimiter() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final TableWriter writer = writer(out, '.', StandardCharsets.UTF_8);
+		writer.writeDouble(2.5);
+		writer.writeDelimiter();
+		writer.writeLong(-3);
+		writer.flush();
+		assertEquals("\"2.5\".-3", new String(out.toByteArray(),
+			StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testLongOutput() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final TableWriter writer = writer(out, '\t', StandardCharsets.UTF_16BE);
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < TableWriter.BUFFER_SIZE; i++) {
+			writer.writeLong(i);
+			writer.endRow();
+			sb.append(i).append("\r\n");
+		}
+		writer.flush();
+		assertEquals(sb.toString(), new String(out.toByteArray(),
+			StandardCharsets.UTF_16BE));
+	}
+
+	// -- Helper methods --
+
+	private TableWriter writer(final ByteArrayOutputStream out,
+		final char delimiter, final Charset charset)
+	{
+		return new TableWriter(out, delimiter, '"', "\r\n", charset);
+	}
+}
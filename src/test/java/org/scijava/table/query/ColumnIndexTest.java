@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.scijava.table.BoolColumn;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.IntColumn;
+
+/**
+ * Tests {@link HashIndex} and {@link SortedIndex}.
+ */
+public class ColumnIndexTest {
+
+	@Test
+	public void testHashIndex() {
+		final IntColumn slice = new IntColumn("Slice");
+		slice.fill(new int[] { 42, 7, 42, 3, 7, 42 });
+		final HashIndex index = new HashIndex(slice);
+
+		assertArrayEquals(new int[] { 0, 2, 5 }, index.rows(42));
+		assertArrayEquals(new int[] { 1, 4 }, index.rows(7.0));
+		assertEquals(0, index.rows(5).length);
+		assertEquals(3, index.distinctCount());
+
+		slice.setValue(1, 42);
+		assertTrue(index.isStale());
+		assertArrayEquals(new int[] { 0, 1, 2, 5 }, index.rows(42));
+		assertFalse(index.isStale());
+
+		slice.delete(0, 2);
+		assertArrayEquals(new int[] { 0, 3 }, index.rows(42L));
+		assertEquals(1, index.count(7));
+	}
+
+	@Test
+	public void testHashIndexGeneric() {
+		final GenericColumn labels = new GenericColumn("Label");
+		labels.add("a");
+		labels.add(null);
+		labels.add("b");
+		labels.add("a");
+		final HashIndex index = new HashIndex(labels);
+		assertArrayEquals(new int[] { 0, 3 }, index.rows("a"));
+		assertArrayEquals(new int[] { 1 }, index.rows(null));
+
+		labels.set(2, "a");
+		assertArrayEquals(new int[] { 0, 2, 3 }, index.rows("a"));
+	}
+
+	@Test
+	public void testSortedIndex() {
+		final DoubleColumn area = new DoubleColumn("Area");
+		area.fill(new double[] { 150, Double.NaN, 50, 200, 100, 120, 100 });
+		final SortedIndex index = new SortedIndex(area);
+
+		assertArrayEquals(new int[] { 4, 6, 5, 0, 3 }, index.range(100, 200));
+		assertArrayEquals(new int[] { 5, 0 }, index.range(100, false, 200,
+			false));
+		assertArrayEquals(new int[] { 2, 4, 6 }, index.range(
+			Double.NEGATIVE_INFINITY, 100));
+		assertArrayEquals(new int[] { 4, 6 }, index.rows(100));
+		assertEquals(0, index.range(Double.NaN, 1000).length);
+		assertEquals(0, index.range(300, 400).length);
+		assertEquals(5, index.count(100, 200));
+		assertEquals(50, index.min(), 0);
+		assertEquals(200, index.max(), 0);
+
+		area.add(110.0);
+		assertArrayEquals(new int[] { 4, 6, 7 }, index.range(100, 110));
+
+		area.set(0, 1.5);
+		assertArrayEquals(new int[] { 0 }, index.range(0, 2));
+		assertEquals(200, index.max(), 0);
+	}
+
+	@Test
+	public void testInvalidate() {
+		final DoubleColumn area = new DoubleColumn("Area");
+		area.fill(new double[] { 1, 2, 3 });
+		final SortedIndex index = new SortedIndex(area);
+		assertArrayEquals(new int[] { 0 }, index.rows(1));
+
+		// NB: Writes to the backing array are not tracked by the column.
+		area.getArray()[0] = 4;
+		assertFalse(index.isStale());
+		index.invalidate();
+		assertArrayEquals(new int[] { 0 }, index.rows(4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSortedIndexNonNumeric() {
+		new SortedIndex(new BoolColumn("Flag"));
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.scijava.table.Column;
+import org.scijava.table.ColumnStatistics;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+
+/**
+ * Tests {@link Query}.
+ */
+public class QueryTest {
+
+	@Test
+	public void testFilterSortLimit() {
+		final GenericTable result = Query.from(createTable()) //
+			.filter("Area", area -> area > 100) //
+			.sort("Mean", false) //
+			.limit(2) //
+			.execute();
+
+		assertEquals(4, result.getColumnCount());
+		assertEquals(2, result.getRowCount());
+		assertEquals("b", result.get("Label", 0));
+		assertEquals("d", result.get("Label", 1));
+		assertEquals(9.0, result.get("Mean", 0));
+		assertTrue(result.get("Mean") instanceof DoubleColumn);
+		assertTrue(result.get("Slice") instanceof IntColumn);
+	}
+
+	@Test
+	public void testFilterRange() {
+		final Query query = Query.from(createTable()) //
+			.filterRange("Area", 100, 130) //
+			.select("Label");
+		assertEquals("Project [Label]\n" + //
+			"  Filter Area [100.0, 130.0]\n" + //
+			"    Scan [Label, Area]\n", query.explain());
+		final GenericTable result = query.execute();
+		assertEquals(3, result.getRowCount());
+		assertEquals("b", result.get(0, 0));
+		assertEquals("d", result.get(0, 1));
+		assertEquals("e", result.get(0, 2));
+	}
+
+	@Test
+	public void testFilterRangeSkipsZones() {
+		final int size = 3 * ColumnStatistics.ZONE_SIZE;
+		final double[] values = new double[size];
+		for (int i = 0; i < size; i++)
+			values[i] = i;
+		final DoubleColumn index = new DoubleColumn("Index");
+		index.fill(values);
+		final DefaultGenericTable table = new DefaultGenericTable();
+		table.add(index);
+
+		// NB: Count the rows tested by the second filter.
+		final int[] tested = new int[1];
+		final GenericTable result = Query.from(table) //
+			.filterRange("Index", size - 10, size) //
+			.filter("Index", v -> ++tested[0] > 0) //
+			.execute();
+		assertEquals(10, result.getRowCount());
+		assertEquals(size - 10.0, result.get(0, 0));
+		assertEquals(10, tested[0]);
+	}
+
+	@Test
+	public void testSelect() {
+		final GenericTable result = Query.from(createTable()) //
+			.select("Mean", "Label") //
+			.filterValues("Label", label -> !"c".equals(label)) //
+			.execute();
+
+		assertEquals(2, result.getColumnCount());
+		assertEquals("Mean", result.getColumnHeader(0));
+		assertEquals("Label", result.getColumnHeader(1));
+		assertEquals(5, result.getRowCount());
+		assertEquals("d", result.get(1, 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFilterOnDroppedColumn() {
+		Query.from(createTable()) //
+			.select("Label") //
+			.filter("Area", area -> area > 100) //
+			.execute();
+	}
+
+	@Test
+	public void testGroupBy() {
+		final GenericTable result = Query.from(createTable()) //
+			.groupBy("Slice", Aggregate.count(), Aggregate.mean("Area"), Aggregate
+				.max("Mean").as("Brightest")) //
+			.sort("Slice") //
+			.execute();
+
+		assertEquals(4, result.getColumnCount());
+		assertEquals(2, result.getRowCount());
+		assertEquals("Slice", result.getColumnHeader(0));
+		assertEquals("count", result.getColumnHeader(1));
+		assertEquals("mean(Area)", result.getColumnHeader(2));
+		assertEquals("Brightest", result.getColumnHeader(3));
+		assertEquals(1, result.get(0, 0));
+		assertEquals(4, result.get(1, 0));
+		assertEquals(127.5, result.get(2, 0));
+		assertEquals(9.0, result.get(3, 0));
+		assertEquals(2, result.get(0, 1));
+		assertEquals(2, result.get(1, 1));
+	}
+
+	@Test
+	public void testRowHeaders() {
+		final DefaultGenericTable table = createTable();
+		for (int r = 0; r < table.getRowCount(); r++) {
+			table.setRowHeader(r, "row" + r);
+		}
+		final GenericTable result = Query.from(table) //
+			.filter("Area", area -> area < 100) //
+			.execute();
+		assertEquals(2, result.getRowCount());
+		assertEquals("row2", result.getRowHeader(0));
+		assertEquals("row5", result.getRowHeader(1));
+	}
+
+	@Test
+	public void testPlanOptimization() {
+		final Query query = Query.from(createTable()) //
+			.select("Label", "Area", "Mean") //
+			.sort("Mean") //
+			.filter("Area", area -> area > 100) //
+			.select("Label");
+
+		final String expected = "Project [Label]\n" + //
+			"  Sort Mean ascending\n" + //
+			"    Project [Label, Mean]\n" + //
+			"      Filter Area\n" + //
+			"        Scan [Label, Mean, Area]\n";
+		assertEquals(expected, query.explain());
+
+		final GenericTable result = query.execute();
+		assertEquals(1, result.getColumnCount());
+		assertEquals(4, result.getRowCount());
+		assertEquals("a", result.get(0, 0));
+		assertEquals("b", result.get(0, 3));
+	}
+
+	@Test
+	public void testGroupPruning() {
+		final Query query = Query.from(createTable()) //
+			.groupBy("Slice", Aggregate.count(), Aggregate.sum("Area")) //
+			.filter("Slice", slice -> slice == 2) //
+			.select("Slice", "count");
+
+		final String expected = "Project [Slice, count]\n" + //
+			"  Group Slice [count]\n" + //
+			"    Filter Slice\n" + //
+			"      Scan [Slice]\n";
+		assertEquals(expected, query.explain());
+
+		final GenericTable result = query.execute();
+		assertEquals(1, result.getRowCount());
+		assertEquals(2, result.get("count", 0));
+	}
+
+	@Test
+	public void testNullsSortLast() {
+		final GenericTable table = new DefaultGenericTable();
+		final Column<Object> names = new GenericColumn("Name");
+		names.add("b");
+		names.add(null);
+		names.add("a");
+		table.add(names);
+
+		final GenericTable ascending = Query.from(table).sort("Name").execute();
+		assertEquals("a", ascending.get(0, 0));
+		assertEquals("b", ascending.get(0, 1));
+		assertNull(ascending.get(0, 2));
+
+		final GenericTable descending = //
+			Query.from(table).sort("Name", false).execute();
+		assertEquals("b", descending.get(0, 0));
+		assertEquals("a", descending.get(0, 1));
+		assertNull(descending.get(0, 2));
+	}
+
+	// -- Helper methods --
+
+	private DefaultGenericTable createTable() {
+		final String[] labels = { "a", "b", "c", "d", "e", "f" };
+		final double[] areas = { 150, 120, 50, 130, 110, 80 };
+		final double[] means = { 1, 9, 10, 5, 2, 3 };
+		final int[] slices = { 1, 1, 2, 1, 1, 2 };
+
+		final DefaultGenericTable table = new DefaultGenericTable();
+		final GenericColumn label = new GenericColumn("Label");
+		for (final String l : labels)
+			label.add(l);
+		final DoubleColumn area = new DoubleColumn("Area");
+		area.fill(areas);
+		final DoubleColumn mean = new DoubleColumn("Mean");
+		mean.fill(means);
+		final IntColumn slice = new IntColumn("Slice");
+		slice.fill(slices);
+		table.add(label);
+		table.add(area);
+		table.add(mean);
+		table.add(slice);
+		return table;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.IntColumn;
+
+/**
+ * Tests {@link TopK}.
+ */
+public class TopKTest {
+
+	@Test
+	public void testTies() {
+		final IntColumn column = new IntColumn("Slice");
+		column.fill(new int[] { 3, 7, 5, 7, 1, 5 });
+		assertArrayEquals(new int[] { 1, 3, 2 }, TopK.largest(column, 3));
+		assertArrayEquals(new int[] { 4, 0, 2, 5 }, TopK.smallest(column, 4));
+		assertEquals(0, TopK.largest(column, 0).length);
+		assertEquals(6, TopK.largest(column, 100).length);
+	}
+
+	@Test
+	public void testNaNRanksLast() {
+		final DoubleColumn column = new DoubleColumn("Mean");
+		column.fill(new double[] { Double.NaN, 2, Double.NaN, 1 });
+		assertArrayEquals(new int[] { 1, 3, 0 }, TopK.largest(column, 3));
+		assertArrayEquals(new int[] { 3, 1, 0, 2 }, TopK.smallest(column, 4));
+	}
+
+	@Test
+	public void testParallelMatchesSort() {
+		final int size = 5 * TopK.BLOCK_SIZE + 123;
+		final Random random = new Random(0xdecade);
+		final double[] values = new double[size];
+		for (int i = 0; i < size; i++)
+			values[i] = random.nextInt(1000);
+		final DoubleColumn column = new DoubleColumn("Mean");
+		column.fill(values);
+
+		final int[] rows = new int[size];
+		for (int i = 0; i < size; i++)
+			rows[i] = i;
+		RowSorter.sort(rows, values.clone(), false);
+		final int[] expected = new int[100];
+		System.arraycopy(rows, 0, expected, 0, expected.length);
+		assertArrayEquals(expected, TopK.largest(column, 100));
+
+		// many rows, by heap and by sort
+		final int[] many = Arrays.copyOf(rows, size / TopK.SORT_RATIO);
+		assertArrayEquals(many, TopK.largest(column, many.length));
+		final int[] most = Arrays.copyOf(rows, size / 2);
+		assertArrayEquals(most, TopK.largest(column, most.length));
+	}
+
+	@Test
+	public void testTable() {
+		final DefaultGenericTable table = new DefaultGenericTable();
+		final GenericColumn labels = new GenericColumn("Label");
+		final DoubleColumn means = new DoubleColumn("Mean");
+		final String[] l = { "a", "b", "c", "d", "e" };
+		final double[] m = { 4, 9, 1, 9, 6 };
+		for (final String s : l)
+			labels.add(s);
+		means.fill(m);
+		table.add(labels);
+		table.add(means);
+
+		final GenericTable brightest = TopK.largest(table, "Mean", 3);
+		assertEquals(3, brightest.getRowCount());
+		assertEquals("b", brightest.get("Label", 0));
+		assertEquals("d", brightest.get("Label", 1));
+		assertEquals("e", brightest.get("Label", 2));
+
+		// ranks the rows left after filtering, in selection order
+		final GenericTable dimmest = Query.from(table) //
+			.filter("Mean", mean -> mean > 1) //
+			.sort("Mean") //
+			.select("Label") //
+			.limit(2) //
+			.execute();
+		assertEquals(1, dimmest.getColumnCount());
+		assertEquals(2, dimmest.getRowCount());
+		assertEquals("a", dimmest.get(0, 0));
+		assertEquals("e", dimmest.get(0, 1));
+	}
+}
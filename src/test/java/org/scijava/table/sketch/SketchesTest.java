@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Table structures for SciJava.
+ * %%
+ * Copyright (C) 2012 - 2022 Board of Regents of the University of
+ * Wisconsin-Madison, and Friedrich Miescher Institute for Biomedical Research.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.table.sketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.IntColumn;
+
+/**
+ * Tests {@link HyperLogLog}, {@link KllSketch} and {@link Sketches}.
+ */
+public class SketchesTest {
+
+	@Test
+	public void testDistinctCount() {
+		final int size = 3 * Sketches.BLOCK_SIZE;
+		final int[] values = new int[size];
+		for (int i = 0; i < size; i++)
+			values[i] = i % 100000;
+		final IntColumn column = new IntColumn("Label");
+		column.fill(values);
+		final long estimate = Sketches.distinctCount(column);
+		assertEquals(100000, estimate, 100000 * 0.05);
+	}
+
+	@Test
+	public void testSmallDistinctCount() {
+		final HyperLogLog sketch = new HyperLogLog();
+		for (int i = 0; i < 10; i++) {
+			sketch.update("label" + i % 4);
+			sketch.update(i % 3);
+		}
+		// NB: 0, 1 and 2 also match their floating point counterparts.
+		sketch.update(2.0);
+		sketch.update(null);
+		assertEquals(7, sketch.estimate());
+	}
+
+	@Test
+	public void testMergeDistinctCounts() {
+		final HyperLogLog a = new HyperLogLog(14), b = new HyperLogLog(14);
+		for (int i = 0; i < 50000; i++) {
+			a.update(i);
+			b.update(i + 25000);
+		}
+		a.merge(b);
+		assertEquals(75000, a.estimate(), 75000 * 0.03);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergePrecisionMismatch() {
+		new HyperLogLog(10).merge(new HyperLogLog(12));
+	}
+
+	@Test
+	public void testQuantiles() {
+		final int size = 4 * Sketches.BLOCK_SIZE + 17;
+		final Random random = new Random(42);
+		final double[] values = new double[size];
+		for (int i = 0; i < size; i++)
+			values[i] = random.nextGaussian();
+		final DoubleColumn column = new DoubleColumn("Mean");
+		column.fill(values);
+
+		final KllSketch sketch = Sketches.compute(column, KllSketch::new);
+		assertEquals(size, sketch.getCount());
+		final double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		assertEquals(sorted[0], sketch.getMin(), 0);
+		assertEquals(sorted[size - 1], sketch.getMax(), 0);
+		for (final double q : new double[] { 0.01, 0.25, 0.5, 0.75, 0.99 }) {
+			final double estimate = sketch.quantile(q);
+			// compare ranks rather than values: the rank error is bounded
+			final int rank = Arrays.binarySearch(sorted, estimate);
+			assertTrue(rank >= 0);
+			assertEquals(q, (double) rank / size, 0.02);
+			assertEquals(q, sketch.rank(estimate), 0.02);
+		}
+	}
+
+	@Test
+	public void testQuantilesIgnoreMissingValues() {
+		final GenericColumn column = new GenericColumn("Area");
+		column.add(null);
+		column.add(2);
+		column.add("n/a");
+		column.add(1.0);
+		column.add(Double.NaN);
+		column.add(3L);
+		final double[] q = Sketches.quantiles(column, 0, 0.5, 1);
+		assertEquals(1, q[0], 0);
+		assertEquals(2, q[1], 0);
+		assertEquals(3, q[2], 0);
+
+		final KllSketch empty = new KllSketch();
+		assertTrue(Double.isNaN(empty.quantile(0.5)));
+	}
+}
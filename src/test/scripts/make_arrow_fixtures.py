@@ -0,0 +1,366 @@
+#!/usr/bin/env python3
+"""
+Writes the Arrow IPC fixtures read by ArrowTableIOPluginTest: fixture.arrow
+(file format) and fixture.arrows (stream format), into the test resources.
+
+The files are encoded straight from the Arrow columnar format specification,
+independently of ArrowTableIOPlugin's own encoder, with pyarrow's layout:
+flatbuffers built back to front with shared vtables, buffers padded to 8
+bytes, omitted validity bitmaps for columns without nulls, and a dictionary
+batch ahead of the record batches. They hold two record batches of this table:
+
+    id:int64  count:int32  value:double  flag:bool  name:utf8      label:dict
+    1         10           1.5           true       "a"            "x"
+    2         null         null          false      null           "y"
+    3         30           NaN           null       ""             "x"
+    4         -40          -0.25         true       "ünï"  null
+    5         null         1e300         false      "long string"  "y"
+"""
+
+import os
+import struct
+
+OUT = os.path.join(os.path.dirname(os.path.abspath(__file__)), "..",
+                   "resources", "org", "scijava", "table", "io")
+
+
+class Builder:
+    """A minimal flatbuffers builder, writing from the end of the buffer."""
+
+    def __init__(self):
+        self.buf = bytearray(64)
+        self.head = len(self.buf)
+        self.minalign = 1
+        self.vtables = []
+        self.fields = None
+        self.object_end = 0
+
+    def offset(self):
+        return len(self.buf) - self.head
+
+    def grow(self):
+        extra = len(self.buf)
+        self.buf = bytearray(extra) + self.buf
+        self.head += extra
+
+    def prep(self, size, additional):
+        self.minalign = max(self.minalign, size)
+        pad = -(self.offset() + additional) % size
+        while self.head < pad + size + additional:
+            self.grow()
+        for _ in range(pad):
+            self.head -= 1
+            self.buf[self.head] = 0
+
+    def place(self, fmt, value):
+        self.head -= struct.calcsize(fmt)
+        struct.pack_into("<" + fmt, self.buf, self.head, value)
+
+    def prepend(self, fmt, value):
+        self.prep(struct.calcsize(fmt), 0)
+        self.place(fmt, value)
+
+    def prepend_offset(self, target):
+        self.prep(4, 0)
+        self.place("I", self.offset() - target + 4)
+
+    def string(self, text):
+        data = text.encode("utf-8")
+        self.prep(4, len(data) + 1)
+        self.place("B", 0)
+        self.head -= len(data)
+        self.buf[self.head:self.head + len(data)] = data
+        self.place("I", len(data))
+        return self.offset()
+
+    def offsets(self, targets):
+        self.prep(4, 4 * len(targets))
+        for target in reversed(targets):
+            self.prepend_offset(target)
+        self.place("I", len(targets))
+        return self.offset()
+
+    def structs(self, items, size, write):
+        self.prep(4, size * len(items))
+        self.prep(8, size * len(items))
+        for item in reversed(items):
+            write(item)
+        self.prep(4, 0)
+        self.place("I", len(items))
+        return self.offset()
+
+    def start(self, count):
+        self.fields = [0] * count
+        self.object_end = self.offset()
+
+    def add(self, slot, fmt, value, default=0):
+        if value != default:
+            self.prepend(fmt, value)
+            self.fields[slot] = self.offset()
+
+    def add_offset(self, slot, target):
+        self.prepend_offset(target)
+        self.fields[slot] = self.offset()
+
+    def end(self):
+        self.prepend("i", 0)
+        table = self.offset()
+        fields = list(self.fields)
+        while fields and fields[-1] == 0:
+            fields.pop()
+        entries = [table - f if f else 0 for f in fields]
+        vtable = struct.pack("<%dH" % (len(entries) + 2), 4 + 2 * len(entries),
+                             table - self.object_end, *entries)
+        for existing in self.vtables:
+            pos = len(self.buf) - existing
+            if bytes(self.buf[pos:pos + len(vtable)]) == vtable:
+                break
+        else:
+            for value in reversed(struct.unpack("<%dH" % (len(vtable) // 2),
+                                                vtable)):
+                self.prepend("H", value)
+            existing = self.offset()
+            self.vtables.append(existing)
+        struct.pack_into("<i", self.buf, len(self.buf) - table, existing - table)
+        self.fields = None
+        return table
+
+    def finish(self, root):
+        self.prep(self.minalign, 4)
+        self.prepend_offset(root)
+        return bytes(self.buf[self.head:])
+
+
+# -- Schema --
+
+INT, FLOATING_POINT, UTF8, BOOL = 2, 3, 5, 6
+SCHEMA, DICTIONARY_BATCH, RECORD_BATCH = 1, 2, 3
+V5 = 4
+
+
+def int_type(b, bits):
+    b.start(2)
+    b.add(0, "i", bits)
+    b.add(1, "B", 1)
+    return b.end()
+
+
+def empty(b):
+    b.start(0)
+    return b.end()
+
+
+def field(b, name, type_type, make_type, dictionary=None):
+    name_offset = b.string(name)
+    type_offset = make_type(b)
+    children = b.offsets([])
+    encoding = None
+    if dictionary is not None:
+        index = int_type(b, 32)
+        b.start(4)
+        b.add_offset(1, index)
+        b.add(0, "q", dictionary)
+        encoding = b.end()
+    b.start(7)
+    b.add_offset(0, name_offset)
+    b.add_offset(3, type_offset)
+    b.add_offset(5, children)
+    if encoding is not None:
+        b.add_offset(4, encoding)
+    b.add(2, "B", type_type)
+    b.add(1, "B", 1)
+    return b.end()
+
+
+def double_type(b):
+    b.start(1)
+    b.add(0, "h", 2)
+    return b.end()
+
+
+def schema(b):
+    fields = [
+        field(b, "id", INT, lambda b: int_type(b, 64)),
+        field(b, "count", INT, lambda b: int_type(b, 32)),
+        field(b, "value", FLOATING_POINT, double_type),
+        field(b, "flag", BOOL, empty),
+        field(b, "name", UTF8, empty),
+        field(b, "label", UTF8, empty, dictionary=0),
+    ]
+    vector = b.offsets(fields)
+    b.start(4)
+    b.add_offset(1, vector)
+    return b.end()
+
+
+# -- Bodies --
+
+def pad8(data):
+    return data + bytes(-len(data) % 8)
+
+
+def bitmap(flags):
+    data = bytearray((len(flags) + 7) // 8)
+    for i, flag in enumerate(flags):
+        if flag:
+            data[i // 8] |= 1 << (i % 8)
+    return bytes(data)
+
+
+class Body:
+    """The buffers of a record batch, each padded to 8 bytes."""
+
+    def __init__(self, length):
+        self.length = length
+        self.nodes = []
+        self.buffers = []
+        self.data = b""
+
+    def buffer(self, data):
+        self.buffers.append((len(self.data), len(data)))
+        self.data += pad8(data)
+
+    def validity(self, values):
+        nulls = sum(v is None for v in values)
+        self.nodes.append((len(values), nulls))
+        # NB: Like pyarrow, omit the bitmap of a column without nulls.
+        self.buffer(bitmap([v is not None for v in values]) if nulls else b"")
+
+    def fixed(self, values, fmt):
+        self.validity(values)
+        self.buffer(struct.pack("<%d%s" % (len(values), fmt),
+                                *[0 if v is None else v for v in values]))
+
+    def bools(self, values):
+        self.validity(values)
+        self.buffer(bitmap([bool(v) for v in values]))
+
+    def strings(self, values):
+        self.validity(values)
+        ends = [0]
+        data = b""
+        for v in values:
+            data += b"" if v is None else v.encode("utf-8")
+            ends.append(len(data))
+        self.buffer(struct.pack("<%di" % len(ends), *ends))
+        self.buffer(data)
+
+
+def record_batch(b, body):
+    def node(item):
+        b.prep(8, 16)
+        b.place("q", item[1])
+        b.place("q", item[0])
+
+    def buf(item):
+        b.prep(8, 16)
+        b.place("q", item[1])
+        b.place("q", item[0])
+
+    buffers = b.structs(body.buffers, 16, buf)
+    nodes = b.structs(body.nodes, 16, node)
+    b.start(4)
+    b.add(0, "q", body.length)
+    b.add_offset(1, nodes)
+    b.add_offset(2, buffers)
+    return b.end()
+
+
+def message(header_type, make_header, body_length):
+    b = Builder()
+    header = make_header(b)
+    b.start(5)
+    b.add(3, "q", body_length)
+    b.add_offset(2, header)
+    b.add(0, "h", V5)
+    b.add(1, "B", header_type)
+    return b.finish(b.end())
+
+
+def encapsulate(metadata, body=b""):
+    metadata = metadata + bytes(-(len(metadata) + 8) % 8)
+    return struct.pack("<Ii", 0xFFFFFFFF, len(metadata)) + metadata + body
+
+
+def dictionary_batch():
+    body = Body(2)
+    body.strings(["x", "y"])
+
+    def header(b):
+        data = record_batch(b, body)
+        b.start(3)
+        b.add_offset(1, data)
+        return b.end()
+
+    return message(DICTIONARY_BATCH, header, len(body.data)), body.data
+
+
+def batch(ids, counts, values, flags, names, labels):
+    body = Body(len(ids))
+    body.fixed(ids, "q")
+    body.fixed(counts, "i")
+    body.fixed(values, "d")
+    body.bools(flags)
+    body.strings(names)
+    body.fixed([None if l is None else "xy".index(l) for l in labels], "i")
+    return message(RECORD_BATCH, lambda b: record_batch(b, body),
+                   len(body.data)), body.data
+
+
+def messages():
+    nan = float("nan")
+    return [
+        (message(SCHEMA, schema, 0), b""),
+        dictionary_batch(),
+        batch([1, 2, 3], [10, None, 30], [1.5, None, nan], [True, False, None],
+              ["a", None, ""], ["x", "y", "x"]),
+        batch([4, 5], [-40, None], [-0.25, 1e300], [True, False],
+              ["ünï", "long string"], [None, "y"]),
+    ]
+
+
+def footer(blocks):
+    b = Builder()
+    root_schema = schema(b)
+
+    def block(item):
+        b.prep(8, 24)
+        b.place("q", item[2])
+        b.place("i", 0)
+        b.place("i", item[1])
+        b.place("q", item[0])
+
+    # NB: The first block is the dictionary batch.
+    batches = b.structs(blocks[1:], 24, block)
+    dictionaries = b.structs(blocks[:1], 24, block)
+    b.start(5)
+    b.add_offset(1, root_schema)
+    b.add_offset(2, dictionaries)
+    b.add_offset(3, batches)
+    b.add(0, "h", V5)
+    return b.finish(b.end())
+
+
+def main():
+    eos = struct.pack("<Ii", 0xFFFFFFFF, 0)
+    stream = b""
+    out = b"ARROW1\0\0"
+    blocks = []
+    for metadata, body in messages():
+        encoded = encapsulate(metadata, body)
+        blocks.append((len(out), len(encoded) - len(body), len(body)))
+        stream += encoded
+        out += encoded
+    stream += eos
+    out += eos
+    # NB: The footer lists the blocks after the schema.
+    meta = footer(blocks[1:])
+    out += meta + struct.pack("<i", len(meta)) + b"ARROW1"
+    with open(os.path.join(OUT, "fixture.arrows"), "wb") as f:
+        f.write(stream)
+    with open(os.path.join(OUT, "fixture.arrow"), "wb") as f:
+        f.write(out)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,47 @@
+#!/usr/bin/env python3
+"""
+Writes Arrow IPC files with pyarrow, the reference implementation, for
+ArrowTableIOPluginTest.testReferenceFixtures: reference.arrow (file format)
+and reference.arrows (stream format), into the test resources. They hold the
+same table as the fixtures of make_arrow_fixtures.py, in record batches of 3
+and 2 rows, so that the test checks both against the same values.
+
+Requires pyarrow (pip install pyarrow). The test is skipped until the files
+have been generated and committed.
+"""
+
+import os
+
+import pyarrow as pa
+
+OUT = os.path.join(os.path.dirname(os.path.abspath(__file__)), "..",
+                   "resources", "org", "scijava", "table", "io")
+
+
+def table():
+    return pa.table({
+        "id": pa.array([1, 2, 3, 4, 5], pa.int64()),
+        "count": pa.array([10, None, 30, -40, None], pa.int32()),
+        "value": pa.array([1.5, None, float("nan"), -0.25, 1e300],
+                          pa.float64()),
+        "flag": pa.array([True, False, None, True, False], pa.bool_()),
+        "name": pa.array(["a", None, "", "ünï", "long string"], pa.utf8()),
+        "label": pa.array(["x", "y", "x", None, "y"]).dictionary_encode(),
+    })
+
+
+def main():
+    t = table()
+    batches = t.to_batches(max_chunksize=3)
+    with pa.OSFile(os.path.join(OUT, "reference.arrow"), "wb") as sink:
+        with pa.ipc.new_file(sink, t.schema) as writer:
+            for batch in batches:
+                writer.write_batch(batch)
+    with pa.OSFile(os.path.join(OUT, "reference.arrows"), "wb") as sink:
+        with pa.ipc.new_stream(sink, t.schema) as writer:
+            for batch in batches:
+                writer.write_batch(batch)
+
+
+if __name__ == "__main__":
+    main()
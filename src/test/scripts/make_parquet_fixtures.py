@@ -0,0 +1,431 @@
+#!/usr/bin/env python3
+"""
+Writes the Parquet fixtures read by ParquetTableIOPluginTest, into the test
+resources.
+
+The files are encoded straight from the Parquet format specification,
+independently of ParquetTableIOPlugin's own encoder:
+
+- fixture-snappy.parquet: as parquet-mr writes it, with SNAPPY compression
+  and version 1 data pages; dictionaries encoded as PLAIN_DICTIONARY, and a
+  column chunk falling back to PLAIN after its first page.
+- fixture-gzip.parquet: as pyarrow writes it, with GZIP compression, version
+  2 data pages and RLE_DICTIONARY encoding.
+- fixture-stats.parquet: two row groups of ids, the second of which claims
+  by its statistics to hold ids 100 to 199 while holding 10 to 19, so that a
+  row filter shows whether row groups are skipped by their statistics.
+
+Both of the first two hold this table, in row groups of 4, 4 and 2 rows:
+
+    id:int64  count:int32  value:double  flag:bool  name:utf8
+    0         0            0.5           true       "alpha"
+    1         null         1.5           false      "beta"
+    2         20           null          null       null
+    3         30           0.5           true       "alpha"
+    4         null         2.5           true       "ünï"
+    5         50           null          false      "beta"
+    6         60           1.5           null       null
+    7         null         0.5           false      "gamma"
+    8         80           null          true       "alpha"
+    9         90           2.5           null       ""
+"""
+
+import gzip
+import os
+import struct
+
+OUT = os.path.join(os.path.dirname(os.path.abspath(__file__)), "..",
+                   "resources", "org", "scijava", "table", "io")
+
+# -- Thrift compact protocol --
+
+STOP, TRUE, FALSE, I32, I64, BINARY, LIST, STRUCT = 0, 1, 2, 5, 6, 8, 9, 12
+
+
+def varint(n):
+    out = bytearray()
+    while True:
+        if n < 0x80:
+            out.append(n)
+            return bytes(out)
+        out.append(n & 0x7F | 0x80)
+        n >>= 7
+
+
+def zigzag(n):
+    return varint((n << 1) ^ (n >> 63))
+
+
+class Struct:
+    """A Thrift struct: a list of (id, type, value) fields, in order."""
+
+    def __init__(self, *fields):
+        self.fields = [f for f in fields if f is not None]
+
+    def encode(self):
+        out = bytearray()
+        last = 0
+        for fid, kind, value in self.fields:
+            if kind == "bool":
+                kind_id = TRUE if value else FALSE
+            else:
+                kind_id = {"i32": I32, "i64": I64, "binary": BINARY,
+                           "list": LIST, "struct": STRUCT}[kind]
+            delta = fid - last
+            if 0 < delta <= 15:
+                out.append(delta << 4 | kind_id)
+            else:
+                out.append(kind_id)
+                out += zigzag(fid)
+            last = fid
+            out += encode_value(kind, value)
+        out.append(STOP)
+        return bytes(out)
+
+
+def encode_value(kind, value):
+    if kind == "bool":
+        return b""
+    if kind in ("i32", "i64"):
+        return zigzag(value)
+    if kind == "binary":
+        data = value.encode("utf-8") if isinstance(value, str) else value
+        return varint(len(data)) + data
+    if kind == "struct":
+        return value.encode()
+    elem_kind, items = value
+    elem_id = {"i32": I32, "binary": BINARY, "struct": STRUCT}[elem_kind]
+    out = bytearray()
+    if len(items) < 15:
+        out.append(len(items) << 4 | elem_id)
+    else:
+        out.append(0xF0 | elem_id)
+        out += varint(len(items))
+    for item in items:
+        out += encode_value(elem_kind, item)
+    return bytes(out)
+
+
+# -- Compression --
+
+def snappy(data):
+    """Compresses a raw Snappy block, greedily copying repeats of 4 bytes."""
+    out = bytearray(varint(len(data)))
+    table = {}
+    literal = 0
+    i = 0
+
+    def emit_literal(start, end):
+        while start < end:
+            n = min(end - start, 65536)
+            if n <= 60:
+                out.append(n - 1 << 2)
+            elif n <= 256:
+                out.append(60 << 2)
+                out.append(n - 1)
+            else:
+                out.append(61 << 2)
+                out.extend(struct.pack("<H", n - 1))
+            out.extend(data[start:start + n])
+            start += n
+
+    while i + 4 <= len(data):
+        key = data[i:i + 4]
+        candidate = table.get(key)
+        table[key] = i
+        if candidate is None or i - candidate > 0xFFFF:
+            i += 1
+            continue
+        length = 4
+        while (i + length < len(data) and length < 64
+               and data[candidate + length] == data[i + length]):
+            length += 1
+        emit_literal(literal, i)
+        out.append(length - 1 << 2 | 2)
+        out += struct.pack("<H", i - candidate)
+        i += length
+        literal = i
+    emit_literal(literal, len(data))
+    return bytes(out)
+
+
+UNCOMPRESSED, SNAPPY, GZIP = 0, 1, 2
+
+
+def compress(codec, data):
+    if codec == SNAPPY:
+        return snappy(data)
+    if codec == GZIP:
+        return gzip.compress(data, mtime=0)
+    return data
+
+
+# -- Encodings --
+
+PLAIN, PLAIN_DICTIONARY, RLE, BIT_PACKED, RLE_DICTIONARY = 0, 2, 3, 4, 8
+BOOLEAN, INT32, INT64, DOUBLE, BYTE_ARRAY = 0, 1, 2, 5, 6
+REQUIRED, OPTIONAL = 0, 1
+DATA_PAGE, DICTIONARY_PAGE, DATA_PAGE_V2 = 0, 2, 3
+
+
+def bit_pack(values, width):
+    """Packs values into groups of 8, least significant bits first."""
+    padded = list(values) + [0] * (-len(values) % 8)
+    bits = 0
+    count = 0
+    out = bytearray()
+    for v in padded:
+        bits |= v << count
+        count += width
+        while count >= 8:
+            out.append(bits & 0xFF)
+            bits >>= 8
+            count -= 8
+    return bytes(out)
+
+
+def hybrid(values, width):
+    """Encodes values with the RLE/bit-packing hybrid: runs of at least 8
+    equal values as RLE runs, the others as bit-packed groups."""
+    out = bytearray()
+    i = 0
+    while i < len(values):
+        run = 1
+        while i + run < len(values) and values[i + run] == values[i]:
+            run += 1
+        if run >= 8:
+            out += varint(run << 1)
+            out += values[i].to_bytes((width + 7) // 8, "little")
+            i += run
+            continue
+        # NB: A bit-packed run ends at the next long run, or the end.
+        end = i
+        while end < len(values):
+            same = 1
+            while (end + same < len(values)
+                   and values[end + same] == values[end]):
+                same += 1
+            if same >= 8 and (end - i) % 8 == 0:
+                break
+            end += 1
+        group = values[i:end]
+        out += varint((len(group) + 7) // 8 << 1 | 1)
+        out += bit_pack(group, width)
+        i = end
+    return bytes(out)
+
+
+def plain(kind, values):
+    if kind == BOOLEAN:
+        return bit_pack([int(v) for v in values], 1)
+    if kind == INT32:
+        return struct.pack("<%di" % len(values), *values)
+    if kind == INT64:
+        return struct.pack("<%dq" % len(values), *values)
+    if kind == DOUBLE:
+        return struct.pack("<%dd" % len(values), *values)
+    out = b""
+    for v in values:
+        data = v.encode("utf-8")
+        out += struct.pack("<i", len(data)) + data
+    return out
+
+
+def stat_bytes(kind, value):
+    if kind == BYTE_ARRAY:
+        return value.encode("utf-8")
+    return plain(kind, [value])
+
+
+def statistics(kind, values, override=None):
+    present = [v for v in values if v is not None]
+    fields = [(3, "i64", len(values) - len(present))]
+    if present and kind != BOOLEAN:
+        low, high = override or (min(present), max(present))
+        fields = [(1, "binary", stat_bytes(kind, high)),
+                  (2, "binary", stat_bytes(kind, low))] + fields + \
+                 [(5, "binary", stat_bytes(kind, high)),
+                  (6, "binary", stat_bytes(kind, low))]
+    return Struct(*fields)
+
+
+# -- Files --
+
+COLUMNS = [
+    ("id", INT64, REQUIRED, list(range(10))),
+    ("count", INT32, OPTIONAL,
+     [0, None, 20, 30, None, 50, 60, None, 80, 90]),
+    ("value", DOUBLE, OPTIONAL,
+     [0.5, 1.5, None, 0.5, 2.5, None, 1.5, 0.5, None, 2.5]),
+    ("flag", BOOLEAN, OPTIONAL,
+     [True, False, None, True, True, False, None, False, True, None]),
+    ("name", BYTE_ARRAY, OPTIONAL,
+     ["alpha", "beta", None, "alpha", "ünï", "beta", None, "gamma", "alpha",
+      ""]),
+]
+
+
+class Writer:
+
+    def __init__(self, codec, version, dict_encoding, created_by):
+        self.out = bytearray(b"PAR1")
+        self.codec = codec
+        self.version = version
+        self.dict_encoding = dict_encoding
+        self.created_by = created_by
+        self.row_groups = []
+
+    def page(self, header, payload):
+        self.out += header.encode() + payload
+
+    def data_page(self, kind, repetition, values, indices=None, dictionary=0):
+        """Writes a data page of plain values, or of dictionary indices."""
+        present = [v for v in values if v is not None]
+        levels = b""
+        if repetition == OPTIONAL:
+            levels = hybrid([int(v is not None) for v in values], 1)
+        if indices is not None:
+            width = max(1, (dictionary - 1).bit_length())
+            body = bytes([width]) + hybrid(indices, width)
+            encoding = self.dict_encoding
+        else:
+            body = plain(kind, present)
+            encoding = PLAIN
+        stats = statistics(kind, values)
+        if self.version == 1:
+            if levels:
+                levels = struct.pack("<i", len(levels)) + levels
+            raw = levels + body
+            data = compress(self.codec, raw)
+            header = Struct((1, "i32", DATA_PAGE), (2, "i32", len(raw)),
+                            (3, "i32", len(data)),
+                            (5, "struct", Struct(
+                                (1, "i32", len(values)), (2, "i32", encoding),
+                                (3, "i32", RLE), (4, "i32", BIT_PACKED),
+                                (5, "struct", stats))))
+            self.page(header, data)
+        else:
+            data = compress(self.codec, body)
+            header = Struct((1, "i32", DATA_PAGE_V2),
+                            (2, "i32", len(levels) + len(body)),
+                            (3, "i32", len(levels) + len(data)),
+                            (8, "struct", Struct(
+                                (1, "i32", len(values)),
+                                (2, "i32", len(values) - len(present)),
+                                (3, "i32", len(values)),
+                                (4, "i32", encoding), (5, "i32", len(levels)),
+                                (6, "i32", 0), (8, "struct", stats))))
+            self.page(header, levels + data)
+        return encoding
+
+    def chunk(self, name, kind, repetition, values, dictionary=False,
+              fallback=0, override=None):
+        """Writes a column chunk, returning its ColumnChunk metadata."""
+        start = len(self.out)
+        dictionary_offset = None
+        encodings = {RLE, BIT_PACKED} if self.version == 1 else {RLE}
+        present = [v for v in values if v is not None]
+        if dictionary:
+            # NB: The first pages are dictionary-encoded; after a fallback, the
+            # rest are plain, as parquet-mr writes once a dictionary fills up.
+            encoded = values[:len(values) - fallback]
+            entries = []
+            for v in encoded:
+                if v is not None and v not in entries:
+                    entries.append(v)
+            raw = plain(kind, entries)
+            data = compress(self.codec, raw)
+            dict_encoding = PLAIN_DICTIONARY if self.version == 1 else PLAIN
+            self.page(Struct((1, "i32", DICTIONARY_PAGE),
+                             (2, "i32", len(raw)), (3, "i32", len(data)),
+                             (7, "struct", Struct(
+                                 (1, "i32", len(entries)),
+                                 (2, "i32", dict_encoding)))), data)
+            encodings.add(dict_encoding)
+            dictionary_offset = start
+            data_offset = len(self.out)
+            encodings.add(self.data_page(
+                kind, repetition, encoded,
+                [entries.index(v) for v in encoded if v is not None],
+                len(entries)))
+            if fallback:
+                encodings.add(self.data_page(kind, repetition,
+                                             values[len(encoded):]))
+        else:
+            data_offset = len(self.out)
+            encodings.add(self.data_page(kind, repetition, values))
+        size = len(self.out) - start
+        meta = Struct(
+            (1, "i32", kind), (2, "list", ("i32", sorted(encodings))),
+            (3, "list", ("binary", [name])), (4, "i32", self.codec),
+            (5, "i64", len(values)), (6, "i64", size), (7, "i64", size),
+            (9, "i64", data_offset),
+            (11, "i64", dictionary_offset) if dictionary_offset else None,
+            (12, "struct", statistics(kind, values, override)))
+        return Struct((2, "i64", start), (3, "struct", meta)), size
+
+    def row_group(self, columns, rows):
+        start = len(self.out)
+        chunks = []
+        total = 0
+        for args in columns:
+            chunk, size = self.chunk(*args[:4], **args[4])
+            chunks.append(chunk)
+            total += size
+        self.row_groups.append(Struct(
+            (1, "list", ("struct", chunks)), (2, "i64", total),
+            (3, "i64", rows), (5, "i64", start), (6, "i64", total),
+            (7, "i32", len(self.row_groups))))
+
+    def finish(self, path, schema, rows):
+        elements = [Struct((4, "binary", "schema"),
+                           (5, "i32", len(schema)))]
+        for name, kind, repetition in schema:
+            utf8 = kind == BYTE_ARRAY
+            elements.append(Struct(
+                (1, "i32", kind), (3, "i32", repetition), (4, "binary", name),
+                (6, "i32", 0) if utf8 else None,
+                (10, "struct", Struct((1, "struct", Struct())))
+                if utf8 and self.version == 2 else None))
+        footer = Struct((1, "i32", 1), (2, "list", ("struct", elements)),
+                        (3, "i64", rows),
+                        (4, "list", ("struct", self.row_groups)),
+                        (6, "binary", self.created_by)).encode()
+        self.out += footer + struct.pack("<i", len(footer)) + b"PAR1"
+        with open(os.path.join(OUT, path), "wb") as f:
+            f.write(self.out)
+
+
+def write_table(path, writer):
+    schema = [(name, kind, repetition) for name, kind, repetition, _ in COLUMNS]
+    for first, last in ((0, 4), (4, 8), (8, 10)):
+        columns = []
+        for name, kind, repetition, values in COLUMNS:
+            options = {}
+            if name in ("value", "name"):
+                options["dictionary"] = True
+            if name == "name" and first == 0 and writer.version == 1:
+                options["fallback"] = 2
+            columns.append((name, kind, repetition, values[first:last],
+                            options))
+        writer.row_group(columns, last - first)
+    writer.finish(path, schema, 10)
+
+
+def main():
+    write_table("fixture-snappy.parquet", Writer(
+        SNAPPY, 1, PLAIN_DICTIONARY,
+        "parquet-mr version 1.12.3 (build f8dced182c4c1fbdec6ccb3185537b5a01e6ed6b)"))
+    write_table("fixture-gzip.parquet", Writer(
+        GZIP, 2, RLE_DICTIONARY, "parquet-cpp-arrow version 14.0.1"))
+
+    stats = Writer(UNCOMPRESSED, 1, PLAIN_DICTIONARY,
+                   "parquet-mr version 1.12.3")
+    stats.row_group([("id", INT64, REQUIRED, list(range(10)), {})], 10)
+    stats.row_group([("id", INT64, REQUIRED, list(range(10, 20)),
+                      {"override": (100, 199)})], 10)
+    stats.finish("fixture-stats.parquet", [("id", INT64, REQUIRED)], 20)
+
+
+if __name__ == "__main__":
+    main()
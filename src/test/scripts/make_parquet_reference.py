@@ -0,0 +1,51 @@
+#!/usr/bin/env python3
+"""
+Writes Parquet files with pyarrow, the reference implementation, for
+ParquetTableIOPluginTest.testReferenceFixtures, into the test resources:
+
+- reference-snappy.parquet: SNAPPY compression and version 1 data pages.
+- reference-gzip.parquet: GZIP compression and version 2 data pages.
+
+Both hold the same table as the fixtures of make_parquet_fixtures.py, with
+dictionary encoding and in row groups of 4, 4 and 2 rows, so that the test
+checks them against the same values and row filters.
+
+Requires pyarrow (pip install pyarrow). The test is skipped until the files
+have been generated and committed.
+"""
+
+import os
+
+import pyarrow as pa
+import pyarrow.parquet as pq
+
+OUT = os.path.join(os.path.dirname(os.path.abspath(__file__)), "..",
+                   "resources", "org", "scijava", "table", "io")
+
+
+def table():
+    return pa.table({
+        "id": pa.array(range(10), pa.int64()),
+        "count": pa.array([0, None, 20, 30, None, 50, 60, None, 80, 90],
+                          pa.int32()),
+        "value": pa.array([0.5, 1.5, None, 0.5, 2.5, None, 1.5, 0.5, None,
+                           2.5], pa.float64()),
+        "flag": pa.array([True, False, None, True, True, False, None, False,
+                          True, None], pa.bool_()),
+        "name": pa.array(["alpha", "beta", None, "alpha", "ünï", "beta", None,
+                          "gamma", "alpha", ""], pa.utf8()),
+    })
+
+
+def main():
+    t = table()
+    pq.write_table(t, os.path.join(OUT, "reference-snappy.parquet"),
+                   row_group_size=4, compression="snappy",
+                   data_page_version="1.0", use_dictionary=True)
+    pq.write_table(t, os.path.join(OUT, "reference-gzip.parquet"),
+                   row_group_size=4, compression="gzip",
+                   data_page_version="2.0", use_dictionary=True)
+
+
+if __name__ == "__main__":
+    main()